@@ -0,0 +1,95 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * A fixed size, lock free histogram of millisecond latencies, laid out like an HDR histogram:
+ * values below {@link #SUB_BUCKET_COUNT} get a bucket each, larger values are grouped into
+ * buckets whose width doubles with every power of two, keeping the relative error of a reported
+ * percentile within about 6%. Values above {@link #MAX_VALUE} are recorded as {@link #MAX_VALUE}.
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+    /**
+     * Just over an hour
+     */
+    public static final long MAX_VALUE = (1L << 22) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucketIndex(MAX_VALUE) + 1);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        long clamped = Math.min(Math.max(0, value), MAX_VALUE);
+        counts.incrementAndGet(bucketIndex(clamped));
+        max.accumulate(clamped);
+    }
+
+    public LatencySummary getSummary() {
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        long highest = max.get();
+        return new LatencySummary(count,
+                                  valueAtPercentile(snapshot, count, 50, highest),
+                                  valueAtPercentile(snapshot, count, 95, highest),
+                                  valueAtPercentile(snapshot, count, 99, highest),
+                                  highest);
+    }
+
+    private static long valueAtPercentile(long[] snapshot, long count, double percentile, long highest) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestValueInBucket(i), highest);
+            }
+        }
+        return highest;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >> shift) - SUB_BUCKET_HALF_COUNT;
+        return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT + subBucket;
+    }
+
+    static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + SUB_BUCKET_BITS;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS + 1;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
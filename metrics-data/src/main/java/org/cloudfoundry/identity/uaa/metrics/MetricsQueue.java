@@ -19,120 +19,103 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import org.cloudfoundry.identity.uaa.metrics.MetricsUtil.MutableDouble;
-import org.cloudfoundry.identity.uaa.metrics.MetricsUtil.MutableLong;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
-import static java.util.Optional.ofNullable;
-import static org.cloudfoundry.identity.uaa.metrics.MetricsUtil.addAverages;
 
+/**
+ * Per status code group summaries of the requests for one URL group, plus the last
+ * {@link #MAX_ENTRIES} requests. {@link #offer(RequestMetric)} takes no locks: the last
+ * requests are kept in a fixed size ring buffer and the summaries use striped counters.
+ */
 @JsonIgnoreProperties(ignoreUnknown = true)
 @JsonInclude(NON_NULL)
 public class MetricsQueue  {
 
     public static final int MAX_ENTRIES = 5;
 
-    private ConcurrentLinkedDeque<RequestMetric> queue;
-    private Map<StatusCodeGroup, RequestMetricSummary> statistics;
+    private final AtomicReferenceArray<RequestMetric> lastRequests = new AtomicReferenceArray<>(MAX_ENTRIES);
+    private final AtomicLong offered = new AtomicLong(0);
+    private final ConcurrentMap<StatusCodeGroup, RequestMetricSummary> statistics = new ConcurrentHashMap<>();
 
     public MetricsQueue() {
         this(null,null);
     }
 
     @JsonCreator
-    public MetricsQueue(@JsonProperty("lastRequests") ConcurrentLinkedDeque<RequestMetric> queue,
+    public MetricsQueue(@JsonProperty("lastRequests") List<RequestMetric> queue,
                         @JsonProperty("detailed") Map<StatusCodeGroup, RequestMetricSummary> statistics) {
-        this.queue = ofNullable(queue).orElse(new ConcurrentLinkedDeque<>());
-        this.statistics = ofNullable(statistics).orElse(new ConcurrentHashMap<>());
+        if (queue != null) {
+            queue.forEach(this::addLastRequest);
+        }
+        if (statistics != null) {
+            this.statistics.putAll(statistics);
+        }
     }
 
     public boolean offer(RequestMetric metric) {
-        queue.offer(metric);
-        //remove earliest entries
-        while (queue.size() > MAX_ENTRIES) {
-            queue.removeFirst();
-        }
+        addLastRequest(metric);
 
         StatusCodeGroup statusCode = StatusCodeGroup.valueOf(metric.getStatusCode());
-        if (!statistics.containsKey(statusCode)) {
-            statistics.putIfAbsent(statusCode, new RequestMetricSummary());
-        }
         RequestMetricSummary totals = statistics.get(statusCode);
+        if (totals == null) {
+            totals = statistics.computeIfAbsent(statusCode, k -> new RequestMetricSummary());
+        }
+        long intolerableQueries = 0;
+        long intolerableQueryTime = 0;
+        for (QueryMetric query : metric.getQueries()) {
+            if (query.isIntolerable()) {
+                intolerableQueries++;
+                intolerableQueryTime += query.getRequestCompleteTime() - query.getRequestStartTime();
+            }
+        }
         long time = metric.getRequestCompleteTime() - metric.getRequestStartTime();
         totals.add(time,
                    time < metric.getUriGroup().getLimit(),
                    metric.getNrOfDatabaseQueries(),
                    metric.getDatabaseQueryTime(),
-                   metric.getQueries().stream().filter(q -> q.isIntolerable()).count(),
-                   metric.getQueries().stream().filter(q -> q.isIntolerable()).mapToLong(q -> q.getRequestCompleteTime()-q.getRequestStartTime()).sum()
+                   intolerableQueries,
+                   intolerableQueryTime
         );
         return true;
     }
 
+    private void addLastRequest(RequestMetric metric) {
+        long slot = offered.getAndIncrement();
+        lastRequests.set((int) (slot % MAX_ENTRIES), metric);
+    }
+
     public Map<StatusCodeGroup, RequestMetricSummary> getDetailed() {
         return statistics;
     }
 
-
-    public ConcurrentLinkedDeque<RequestMetric> getLastRequests() {
-        return queue;
+    /**
+     * @return the last requests, oldest first
+     */
+    public List<RequestMetric> getLastRequests() {
+        long end = offered.get();
+        List<RequestMetric> result = new ArrayList<>(MAX_ENTRIES);
+        for (long slot = Math.max(0, end - MAX_ENTRIES); slot < end; slot++) {
+            RequestMetric metric = lastRequests.get((int) (slot % MAX_ENTRIES));
+            if (metric != null) {
+                result.add(metric);
+            }
+        }
+        return result;
     }
 
     @JsonProperty("summary")
     public RequestMetricSummary getTotals() {
-        MutableLong count = new MutableLong(0);
-        MutableDouble averageTime = new MutableDouble(0);
-        MutableLong intolerableCount = new MutableLong(0);
-        MutableDouble averageIntolerableTime = new MutableDouble(0);
-        MutableLong databaseQueryCount = new MutableLong(0);
-        MutableDouble averageDatabaseQueryTime = new MutableDouble(0);
-        MutableLong databaseIntolerableQueryCount = new MutableLong(0);
-        MutableDouble averageDatabaseIntolerableQueryTime = new MutableDouble(0);
-        statistics.entrySet().stream().forEach( s -> {
-            RequestMetricSummary summary = s.getValue();
-            averageTime.set(addAverages(count.get(),
-                                        averageTime.get(),
-                                        summary.getCount(),
-                                        summary.getAverageTime())
-            );
-            count.add(summary.getCount());
-
-            averageIntolerableTime.set(addAverages(intolerableCount.get(),
-                                                   averageIntolerableTime.get(),
-                                                   summary.getIntolerableCount(),
-                                                   summary.getAverageIntolerableTime())
-            );
-            intolerableCount.add(summary.getIntolerableCount());
-
-            averageDatabaseQueryTime.set(addAverages(databaseQueryCount.get(),
-                                                     averageDatabaseQueryTime.get(),
-                                                     summary.getDatabaseQueryCount(),
-                                                     summary.getAverageDatabaseQueryTime()
-                                                     )
-            );
-            databaseQueryCount.add(summary.getDatabaseQueryCount());
-
-            averageDatabaseIntolerableQueryTime.set(addAverages(databaseIntolerableQueryCount.get(),
-                                                           averageDatabaseIntolerableQueryTime.get(),
-                                                     summary.getDatabaseIntolerableQueryCount(),
-                                                     summary.getAverageDatabaseIntolerableQueryTime()
-                                         )
-            );
-            databaseIntolerableQueryCount.add(summary.getDatabaseIntolerableQueryCount());
-
-        });
-        return new RequestMetricSummary(count.get(),
-                                        averageTime.get(),
-                                        intolerableCount.get(),
-                                        averageIntolerableTime.get(),
-                                        databaseQueryCount.get(),
-                                        averageDatabaseQueryTime.get(),
-                                        databaseIntolerableQueryCount.get(),
-                                        averageDatabaseIntolerableQueryTime.get());
+        RequestMetricSummary totals = new RequestMetricSummary();
+        statistics.values().forEach(totals::addAll);
+        return totals;
     }
 
 }
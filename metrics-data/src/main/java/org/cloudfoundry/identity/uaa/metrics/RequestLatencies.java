@@ -0,0 +1,82 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Request time and database time histograms for one URL group. When an interval is configured the
+ * histograms start over at the beginning of every interval, and {@link #getSummaries(long)} reports
+ * the last completed interval, so that every reader sees the same, stable percentiles. Without an
+ * interval the histograms cover the lifetime of the server.
+ */
+public class RequestLatencies {
+
+    public static final String REQUEST_TIME = "requestTime";
+    public static final String DATABASE_TIME = "databaseTime";
+
+    private final long intervalMillis;
+    private final AtomicReference<Interval> current;
+    private volatile Interval completed;
+
+    public RequestLatencies(long intervalMillis, long now) {
+        this.intervalMillis = intervalMillis;
+        this.current = new AtomicReference<>(new Interval(now));
+    }
+
+    public void record(RequestMetric metric, long now) {
+        Interval interval = getCurrent(now);
+        interval.requestTime.record(metric.getRequestCompleteTime() - metric.getRequestStartTime());
+        if (metric.getNrOfDatabaseQueries() > 0) {
+            interval.databaseTime.record(metric.getDatabaseQueryTime());
+        }
+    }
+
+    public Map<String, LatencySummary> getSummaries(long now) {
+        Interval interval = getCurrent(now);
+        Interval reported = completed == null ? interval : completed;
+        Map<String, LatencySummary> summaries = new LinkedHashMap<>();
+        summaries.put(REQUEST_TIME, reported.requestTime.getSummary());
+        summaries.put(DATABASE_TIME, reported.databaseTime.getSummary());
+        return summaries;
+    }
+
+    private Interval getCurrent(long now) {
+        Interval interval = current.get();
+        while (intervalMillis > 0 && now - interval.start >= intervalMillis) {
+            long elapsed = now - interval.start;
+            Interval next = new Interval(now - elapsed % intervalMillis);
+            if (current.compareAndSet(interval, next)) {
+                //if a whole interval passed without requests, the last completed interval was empty
+                completed = elapsed < 2 * intervalMillis ? interval : new Interval(next.start - intervalMillis);
+                return next;
+            }
+            interval = current.get();
+        }
+        return interval;
+    }
+
+    private static final class Interval {
+        private final long start;
+        private final LatencyHistogram requestTime = new LatencyHistogram();
+        private final LatencyHistogram databaseTime = new LatencyHistogram();
+
+        private Interval(long start) {
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2017] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.metrics;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTests {
+
+    private UrlGroup uriGroup = new UrlGroup()
+        .setGroup("/uri")
+        .setLimit(3000)
+        .setPattern("/uri")
+        .setCategory("test");
+
+    @Test
+    public void buckets_cover_all_values() throws Exception {
+        for (long value = 0; value <= LatencyHistogram.MAX_VALUE; value += 1 + value / 100) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(value <= LatencyHistogram.highestValueInBucket(index));
+            assertTrue(index == 0 || value > LatencyHistogram.highestValueInBucket(index - 1));
+        }
+    }
+
+    @Test
+    public void percentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i=1; i<=1000; i++) {
+            histogram.record(i);
+        }
+        LatencySummary summary = histogram.getSummary();
+        assertEquals(1000, summary.getCount());
+        assertEquals(1000, summary.getMax());
+        assertWithinBucket(500, summary.getP50());
+        assertWithinBucket(950, summary.getP95());
+        assertWithinBucket(990, summary.getP99());
+    }
+
+    @Test
+    public void empty_histogram() throws Exception {
+        LatencySummary summary = new LatencyHistogram().getSummary();
+        assertEquals(0, summary.getCount());
+        assertEquals(0, summary.getP99());
+        assertEquals(0, summary.getMax());
+    }
+
+    @Test
+    public void values_are_clamped() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+        LatencySummary summary = histogram.getSummary();
+        assertEquals(2, summary.getCount());
+        assertEquals(0, summary.getP50());
+        assertEquals(LatencyHistogram.MAX_VALUE, summary.getMax());
+    }
+
+    @Test
+    public void intervals_report_last_completed_interval() throws Exception {
+        RequestLatencies latencies = new RequestLatencies(1000, 0);
+        latencies.record(metric(10, 0), 100);
+        latencies.record(metric(20, 2), 200);
+        assertEquals(2, latencies.getSummaries(500).get(RequestLatencies.REQUEST_TIME).getCount());
+        assertEquals(1, latencies.getSummaries(500).get(RequestLatencies.DATABASE_TIME).getCount());
+
+        latencies.record(metric(30, 0), 1100);
+        Map<String, LatencySummary> summaries = latencies.getSummaries(1500);
+        assertEquals(2, summaries.get(RequestLatencies.REQUEST_TIME).getCount());
+        assertEquals(20, summaries.get(RequestLatencies.REQUEST_TIME).getMax());
+
+        assertEquals(1, latencies.getSummaries(2500).get(RequestLatencies.REQUEST_TIME).getCount());
+        assertEquals(0, latencies.getSummaries(5000).get(RequestLatencies.REQUEST_TIME).getCount());
+    }
+
+    private RequestMetric metric(long time, int queries) {
+        RequestMetric metric = RequestMetric.start("uri", uriGroup, 0);
+        for (int i=0; i<queries; i++) {
+            metric.addQuery(new QueryMetric("query", 0, 1, false));
+        }
+        metric.stop(200, time);
+        return metric;
+    }
+
+    private void assertWithinBucket(long expected, long actual) {
+        assertTrue(actual + " should be close to " + expected, actual >= expected && actual <= expected * 17 / 16);
+    }
+}
@@ -21,6 +21,7 @@ import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
@@ -137,6 +138,21 @@ public class MetricsQueueTests {
 
     }
 
+    @Test
+    public void last_requests_are_kept_oldest_first() throws Exception {
+        queue = new MetricsQueue();
+        for (int i=0; i<MetricsQueue.MAX_ENTRIES + 2; i++) {
+            RequestMetric metric = RequestMetric.start("uri"+i, uriGroup, 0);
+            metric.stop(200, 2);
+            queue.offer(metric);
+        }
+        List<RequestMetric> lastRequests = queue.getLastRequests();
+        assertEquals(MetricsQueue.MAX_ENTRIES, lastRequests.size());
+        assertEquals("uri2", lastRequests.get(0).getUri());
+        assertEquals("uri"+(MetricsQueue.MAX_ENTRIES + 1), lastRequests.get(MetricsQueue.MAX_ENTRIES - 1).getUri());
+        assertEquals(MetricsQueue.MAX_ENTRIES + 2, queue.getTotals().getCount());
+    }
+
     @Test
     public void offer() throws Exception {
         queue = new MetricsQueue();
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.resources;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -27,6 +29,8 @@ public class SearchResults<T> {
     private int itemsPerPage;
     private int totalResults;
     private Collection<String> schemas;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
 
     public SearchResults() {}
     public SearchResults(Collection<String> schemas, Collection<T> resources, int startIndex, int itemsPerPage,
@@ -58,6 +62,17 @@ public class SearchResults<T> {
         return resources;
     }
 
+    /**
+     * @return the token to request the next page with, when paginating with a cursor. Null on the last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder("SearchResults[schemas:");
@@ -55,6 +55,8 @@ public class TokenPolicy {
     }
 
     private Map<String, String> keys;
+    @JsonIgnore
+    private int keysRevision = 0;
     private String activeKeyId;
 
     public TokenPolicy() {
@@ -106,6 +108,21 @@ public class TokenPolicy {
             });
         }
         this.keys = keys == null ? null : new HashMap<>(keys);
+        keysRevision++;
+    }
+
+    /**
+     * @return a counter that changes whenever the keys of this policy are replaced, so that
+     * callers holding on to this policy can tell whether its keys changed without copying them
+     */
+    @JsonIgnore
+    public int getKeysRevision() {
+        return keysRevision;
+    }
+
+    @JsonIgnore
+    public boolean hasKeys() {
+        return keys != null && !keys.isEmpty();
     }
 
     public boolean isRefreshTokenUnique() {
@@ -12,7 +12,9 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.approval;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface ApprovalStore {
 
@@ -30,5 +32,7 @@ public interface ApprovalStore {
 
     public List<Approval> getApprovalsForUser(String userId, final String zoneId);
 
+    public Map<String, List<Approval>> getApprovalsForUsers(Collection<String> userIds, final String zoneId);
+
     public List<Approval> getApprovalsForClient(String clientId, final String zoneId);
 }
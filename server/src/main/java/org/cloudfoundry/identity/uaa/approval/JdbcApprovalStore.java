@@ -35,8 +35,14 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import static org.cloudfoundry.identity.uaa.approval.Approval.ApprovalStatus.APPROVED;
 
@@ -75,6 +81,8 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
 
     public static final String DELETE_OF_USER_APPROVALS_BY_PROVIDER = "delete from authz_approvals where user_id in (select id from users where identity_zone_id = ? and origin = ?)";
 
+    private static final int MAX_IN_CLAUSE_PARAMETERS = 500;
+
 
     private boolean handleRevocationsAsExpiry = false;
     private ApplicationEventPublisher applicationEventPublisher;
@@ -229,6 +237,26 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
         );
     }
 
+    /**
+     * @return the approvals of each of the given users, keyed by user id. Users without approvals are left out.
+     */
+    @Override
+    public Map<String, List<Approval>> getApprovalsForUsers(Collection<String> userIds, final String zoneId) {
+        List<String> ids = new ArrayList<>(new HashSet<>(userIds));
+        Map<String, List<Approval>> result = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += MAX_IN_CLAUSE_PARAMETERS) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IN_CLAUSE_PARAMETERS));
+            String sql = GET_AUTHZ_SQL + " WHERE identity_zone_id = ? AND user_id IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+            List<Object> parameters = new ArrayList<>(chunk.size() + 1);
+            parameters.add(zoneId);
+            parameters.addAll(chunk);
+            for (Approval approval : jdbcTemplate.query(sql, rowMapper, parameters.toArray())) {
+                result.computeIfAbsent(approval.getUserId(), k -> new ArrayList<>()).add(approval);
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<Approval> getApprovalsForClient(String clientId, final String zoneId) {
         String sql = GET_AUTHZ_SQL + " WHERE client_id = ? AND identity_zone_id = ?";
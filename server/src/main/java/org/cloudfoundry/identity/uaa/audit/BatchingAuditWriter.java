@@ -0,0 +1,266 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.audit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes audit statements to the database from a background thread.
+ * <p>
+ * Statements are queued in a bounded queue and written every flush interval, with consecutive
+ * statements of the same kind sent as a single JDBC batch. Statements are written in the order they were queued.
+ * When the queue is full the {@link OverflowPolicy} decides whether the caller waits for room, the oldest
+ * queued statement is dropped, or the queue is flushed and the statement written on the caller's thread.
+ * A queue capacity of zero disables the queue and every statement is written immediately.
+ */
+@ManagedResource(
+    objectName = "cloudfoundry.identity:name=AuditWriter",
+    description = "UAA Audit Writer Metrics"
+)
+public class BatchingAuditWriter implements InitializingBean, DisposableBean {
+
+    public enum OverflowPolicy {
+        BLOCK,
+        DROP_OLDEST,
+        SYNCHRONOUS
+    }
+
+    private static final Log logger = LogFactory.getLog(BatchingAuditWriter.class);
+
+    private final JdbcTemplate template;
+    private final BlockingQueue<Statement> queue;
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.SYNCHRONOUS;
+    private int batchSize = 100;
+    private long flushInterval = 100;
+    private ScheduledExecutorService scheduler;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    public BatchingAuditWriter(JdbcTemplate template, int queueCapacity) {
+        Assert.notNull(template);
+        this.template = template;
+        this.queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : null;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (queue != null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "audit-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void update(String sql, Object... args) {
+        if (queue == null) {
+            template.update(sql, args);
+            return;
+        }
+        Statement statement = new Statement(sql, args);
+        if (queue.offer(statement)) {
+            return;
+        }
+        overflows.increment();
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(statement);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment();
+                    logger.warn("Interrupted while waiting to queue audit statement, statement dropped.");
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(statement)) {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                }
+                break;
+            case SYNCHRONOUS:
+            default:
+                synchronized (this) {
+                    //keep the order of statements, everything queued before this one is written first
+                    flush();
+                    write(Collections.singletonList(statement));
+                }
+                break;
+        }
+    }
+
+    /**
+     * Writes all queued statements.
+     * @return the number of statements written
+     */
+    public synchronized int flush() {
+        if (queue == null) {
+            return 0;
+        }
+        int count = 0;
+        List<Statement> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            count += write(batch);
+            batch.clear();
+        }
+        return count;
+    }
+
+    private int write(List<Statement> statements) {
+        int count = 0;
+        int start = 0;
+        while (start < statements.size()) {
+            String sql = statements.get(start).sql;
+            int end = start + 1;
+            while (end < statements.size() && sql.equals(statements.get(end).sql)) {
+                end++;
+            }
+            count += write(sql, statements.subList(start, end));
+            start = end;
+        }
+        return count;
+    }
+
+    private int write(String sql, List<Statement> statements) {
+        List<Object[]> args = new ArrayList<>(statements.size());
+        for (Statement statement : statements) {
+            args.add(statement.args);
+        }
+        try {
+            if (args.size() == 1) {
+                template.update(sql, args.get(0));
+            } else {
+                template.batchUpdate(sql, args);
+            }
+            batches.increment();
+            written.add(args.size());
+            return args.size();
+        } catch (DataAccessException e) {
+            logger.warn("Unable to write " + args.size() + " audit statements, statements dropped.", e);
+            failed.add(args.size());
+            return 0;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Unable to flush audit statements", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(flushInterval, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushQuietly();
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param flushInterval milliseconds between writes of queued statements
+     */
+    public void setFlushInterval(long flushInterval) {
+        Assert.isTrue(flushInterval > 0, "flushInterval must be positive");
+        this.flushInterval = flushInterval;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Queued Audit Statements")
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Written Audit Statements")
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Average Audit Batch Size")
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) written.sum() / count;
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Dropped Audit Statements")
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Failed Audit Statements")
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Audit Queue Overflows")
+    public long getOverflowCount() {
+        return overflows.sum();
+    }
+
+    static final class Statement {
+        final String sql;
+        final Object[] args;
+
+        Statement(String sql, Object[] args) {
+            this.sql = sql;
+            this.args = args;
+        }
+    }
+}
@@ -25,6 +25,8 @@ public class JdbcAuditService implements UaaAuditService {
 
     private final JdbcTemplate template;
 
+    private BatchingAuditWriter auditWriter;
+
     public JdbcAuditService(JdbcTemplate template) {
         this.template = template;
     }
@@ -33,6 +35,18 @@ public class JdbcAuditService implements UaaAuditService {
         return template;
     }
 
+    public void setAuditWriter(BatchingAuditWriter auditWriter) {
+        this.auditWriter = auditWriter;
+    }
+
+    protected void update(String sql, Object... args) {
+        if (auditWriter != null) {
+            auditWriter.update(sql, args);
+        } else {
+            template.update(sql, args);
+        }
+    }
+
     @Override
     public List<AuditEvent> find(String principalId, long after, String zoneId) {
         return template.query("select event_type, principal_id, origin, event_data, created, identity_zone_id from sec_audit where " +
@@ -48,7 +62,7 @@ public class JdbcAuditService implements UaaAuditService {
         origin = origin.length() > 255 ? origin.substring(0, 255) : origin;
         data = data == null ? "" : data;
         data = data.length() > 255 ? data.substring(0, 255) : data;
-        template.update("insert into sec_audit (principal_id, event_type, origin, event_data, identity_zone_id) values (?,?,?,?,?)",
+        update("insert into sec_audit (principal_id, event_type, origin, event_data, identity_zone_id) values (?,?,?,?,?)",
                         auditEvent.getPrincipalId(), auditEvent.getType().getCode(), origin,
                         data, zoneId);
     }
@@ -0,0 +1,113 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.audit;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Counts failed logins per principal and failure event type in the {@code failed_login_counter} table,
+ * so that nodes can share failed login counts without reading the audit table.
+ * <p>
+ * Failures are counted in time buckets, one row per bucket, each a tenth of the counting window long.
+ * The count of a principal is the sum of the buckets that saw a failure within the window, so the window
+ * slides with time: old failures stop counting one bucket at a time instead of all at once. Failures in
+ * the bucket that straddles the start of the window are counted in full, so the count errs on the safe side
+ * by at most one bucket. Buckets that fell out of the window are deleted when the next failure is recorded.
+ */
+public class JdbcFailedLoginCounter {
+
+    public static final int BUCKETS_PER_WINDOW = 10;
+
+    public static final String GET_COUNTER_SQL = "select sum(failure_count), max(last_failure) from failed_login_counter where identity_zone_id=? and principal_id=? and event_type=? and last_failure > ?";
+
+    public static final String INCREMENT_COUNTER_SQL = "update failed_login_counter set failure_count = failure_count + 1, last_failure = ? where identity_zone_id=? and principal_id=? and event_type=? and bucket_start=?";
+
+    public static final String INSERT_COUNTER_SQL = "insert into failed_login_counter (identity_zone_id, principal_id, event_type, bucket_start, failure_count, last_failure) values (?,?,?,?,1,?)";
+
+    public static final String EXPIRE_COUNTER_SQL = "delete from failed_login_counter where identity_zone_id=? and principal_id=? and event_type=? and last_failure <= ?";
+
+    public static final String DELETE_COUNTER_SQL = "delete from failed_login_counter where identity_zone_id=? and principal_id=? and event_type=?";
+
+    private final JdbcTemplate template;
+
+    public JdbcFailedLoginCounter(JdbcTemplate template) {
+        this.template = template;
+    }
+
+    /**
+     * Counts a failure.
+     * @param time the time of the failure in milliseconds
+     * @param windowMillis failures older than this are no longer counted
+     */
+    public void recordFailure(String principalId, AuditEventType type, String zoneId, long time, long windowMillis) {
+        long bucketStart = getBucketStart(time, windowMillis);
+        if (!increment(principalId, type, zoneId, time, bucketStart)) {
+            try {
+                template.update(INSERT_COUNTER_SQL, zoneId, principalId, type.getCode(), bucketStart, time);
+            } catch (DuplicateKeyException e) {
+                //another node inserted the bucket first
+                increment(principalId, type, zoneId, time, bucketStart);
+            }
+        }
+        template.update(EXPIRE_COUNTER_SQL, zoneId, principalId, type.getCode(), time - windowMillis);
+    }
+
+    private boolean increment(String principalId, AuditEventType type, String zoneId, long time, long bucketStart) {
+        return template.update(INCREMENT_COUNTER_SQL, time, zoneId, principalId, type.getCode(), bucketStart) > 0;
+    }
+
+    public void reset(String principalId, AuditEventType type, String zoneId) {
+        template.update(DELETE_COUNTER_SQL, zoneId, principalId, type.getCode());
+    }
+
+    /**
+     * @param windowStart failures at or before this time, in milliseconds, are not counted
+     * @return the failures counted within the window, with a count of zero if there were none
+     */
+    public Counter getCounter(String principalId, AuditEventType type, String zoneId, long windowStart) {
+        return template.queryForObject(
+            GET_COUNTER_SQL,
+            (rs, rowNum) -> new Counter(rs.getInt(1), rs.getLong(2)),
+            zoneId,
+            principalId,
+            type.getCode(),
+            windowStart
+        );
+    }
+
+    static long getBucketStart(long time, long windowMillis) {
+        long bucketMillis = Math.max(1000, windowMillis / BUCKETS_PER_WINDOW);
+        return time - (time % bucketMillis);
+    }
+
+    public static class Counter {
+        private final int failureCount;
+        private final long lastFailure;
+
+        public Counter(int failureCount, long lastFailure) {
+            this.failureCount = failureCount;
+            this.lastFailure = lastFailure;
+        }
+
+        public int getFailureCount() {
+            return failureCount;
+        }
+
+        public long getLastFailure() {
+            return lastFailure;
+        }
+    }
+}
@@ -76,7 +76,7 @@ public class JdbcUnsuccessfulLoginCountingAuditService extends JdbcAuditService
     }
 
     private void resetAuthenticationEvents(AuditEvent auditEvent, String zoneId, AuditEventType eventType) {
-        getJdbcTemplate().update("delete from sec_audit where principal_id=? and identity_zone_id=? and event_type=?", auditEvent.getPrincipalId(), zoneId, eventType.getCode());
+        update("delete from sec_audit where principal_id=? and identity_zone_id=? and event_type=?", auditEvent.getPrincipalId(), zoneId, eventType.getCode());
     }
 
 
@@ -84,7 +84,7 @@ public class JdbcUnsuccessfulLoginCountingAuditService extends JdbcAuditService
         long now = timeService.getCurrentTimeMillis();
         long lastCheck = lastDelete.get();
         if (now - lastCheck > timeBetweenDeleteMillis && lastDelete.compareAndSet(lastCheck, now)) {
-            getJdbcTemplate().update("delete from sec_audit where created < ?",
+            update("delete from sec_audit where created < ?",
                                      new Timestamp(System.currentTimeMillis()
                                                        - saveDataPeriodMillis));
         }
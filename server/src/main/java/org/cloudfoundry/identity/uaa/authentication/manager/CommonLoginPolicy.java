@@ -100,4 +100,24 @@ public class CommonLoginPolicy implements LoginPolicy {
     public LockoutPolicyRetriever getLockoutPolicyRetriever() {
         return lockoutPolicyRetriever;
     }
+
+    protected UaaAuditService getAuditService() {
+        return auditService;
+    }
+
+    protected AuditEventType getSuccessEventType() {
+        return successEventType;
+    }
+
+    protected AuditEventType getFailureEventType() {
+        return failureEventType;
+    }
+
+    protected TimeService getTimeService() {
+        return timeService;
+    }
+
+    protected boolean isEnabled() {
+        return enabled;
+    }
 }
@@ -3,7 +3,10 @@ package org.cloudfoundry.identity.uaa.authentication.manager;
 import org.cloudfoundry.identity.uaa.authentication.event.IdentityProviderAuthenticationFailureEvent;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.impl.config.EnvironmentPropertiesFactoryBean;
+import org.cloudfoundry.identity.uaa.impl.config.LdapGroupsConfig;
+import org.cloudfoundry.identity.uaa.impl.config.LdapIntegrationConfig;
 import org.cloudfoundry.identity.uaa.provider.LdapIdentityProviderDefinition;
+import org.cloudfoundry.identity.uaa.provider.ldap.LdapGroupSearchMetrics;
 import org.cloudfoundry.identity.uaa.scim.ScimGroupExternalMembershipManager;
 import org.cloudfoundry.identity.uaa.scim.ScimGroupProvisioning;
 import org.cloudfoundry.identity.uaa.util.LdapUtils;
@@ -15,12 +18,15 @@ import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.context.support.GenericApplicationContext;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 
 import java.nio.file.ProviderNotFoundException;
+import java.util.HashMap;
+import java.util.Map;
 
 public class DynamicLdapAuthenticationManager implements AuthenticationManager {
     private final LdapIdentityProviderDefinition definition;
@@ -31,6 +37,12 @@ public class DynamicLdapAuthenticationManager implements AuthenticationManager {
     private AuthenticationManager manager;
     private AuthenticationManager ldapManagerActual;
     private ApplicationEventPublisher eventPublisher;
+    private int connectionPoolSize = 0;
+    private int connectionPoolIdleEvictionSeconds = 300;
+    private long connectionPoolMaxWaitMillis = 5000;
+    private int maxConcurrentGroupSearches = 1;
+    private int groupCacheTtlSeconds = 0;
+    private LdapGroupSearchMetrics groupSearchMetrics = new LdapGroupSearchMetrics();
 
 
     public DynamicLdapAuthenticationManager(LdapIdentityProviderDefinition definition,
@@ -56,11 +68,19 @@ public class DynamicLdapAuthenticationManager implements AuthenticationManager {
         }
         if (context==null) {
             ConfigurableEnvironment environment = LdapUtils.getLdapConfigurationEnvironment(definition);
+            Map<String, Object> runtimeProperties = new HashMap<>();
+            runtimeProperties.put(LdapIntegrationConfig.LDAP_CONNECTION_POOL_SIZE, String.valueOf(connectionPoolSize));
+            runtimeProperties.put(LdapIntegrationConfig.LDAP_CONNECTION_POOL_IDLE_EVICTION_SECONDS, String.valueOf(connectionPoolIdleEvictionSeconds));
+            runtimeProperties.put(LdapIntegrationConfig.LDAP_CONNECTION_POOL_MAX_WAIT_MILLIS, String.valueOf(connectionPoolMaxWaitMillis));
+            runtimeProperties.put(LdapGroupsConfig.LDAP_GROUPS_MAX_CONCURRENT_SEARCHES, String.valueOf(maxConcurrentGroupSearches));
+            runtimeProperties.put(LdapGroupsConfig.LDAP_GROUPS_CACHE_TTL_SECONDS, String.valueOf(groupCacheTtlSeconds));
+            environment.getPropertySources().addLast(new MapPropertySource("ldapRuntime", runtimeProperties));
             //create parent BeanFactory to inject singletons from the parent
             DefaultListableBeanFactory parentBeanFactory = new DefaultListableBeanFactory();
             parentBeanFactory.registerSingleton("externalGroupMembershipManager", scimGroupExternalMembershipManager);
             parentBeanFactory.registerSingleton("scimGroupProvisioning", scimGroupProvisioning);
             parentBeanFactory.registerSingleton("ldapLoginAuthenticationMgr", ldapLoginAuthenticationManager);
+            parentBeanFactory.registerSingleton("ldapGroupSearchMetrics", groupSearchMetrics);
             GenericApplicationContext parent = new GenericApplicationContext(parentBeanFactory);
             parent.refresh();
 
@@ -125,6 +145,33 @@ public class DynamicLdapAuthenticationManager implements AuthenticationManager {
         this.eventPublisher = applicationEventPublisher;
     }
 
+    /**
+     * @param connectionPoolSize maximum number of pooled connections bound as the manager DN, zero disables pooling
+     */
+    public void setConnectionPoolSize(int connectionPoolSize) {
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    public void setConnectionPoolIdleEvictionSeconds(int connectionPoolIdleEvictionSeconds) {
+        this.connectionPoolIdleEvictionSeconds = connectionPoolIdleEvictionSeconds;
+    }
+
+    public void setConnectionPoolMaxWaitMillis(long connectionPoolMaxWaitMillis) {
+        this.connectionPoolMaxWaitMillis = connectionPoolMaxWaitMillis;
+    }
+
+    public void setMaxConcurrentGroupSearches(int maxConcurrentGroupSearches) {
+        this.maxConcurrentGroupSearches = maxConcurrentGroupSearches;
+    }
+
+    public void setGroupCacheTtlSeconds(int groupCacheTtlSeconds) {
+        this.groupCacheTtlSeconds = groupCacheTtlSeconds;
+    }
+
+    public void setGroupSearchMetrics(LdapGroupSearchMetrics groupSearchMetrics) {
+        this.groupSearchMetrics = groupSearchMetrics;
+    }
+
     protected void publish(ApplicationEvent event) {
         if (eventPublisher != null) {
             eventPublisher.publishEvent(event);
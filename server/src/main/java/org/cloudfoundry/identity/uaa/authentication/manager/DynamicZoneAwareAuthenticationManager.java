@@ -22,6 +22,7 @@ import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
 import org.cloudfoundry.identity.uaa.provider.IdentityProviderProvisioning;
 import org.cloudfoundry.identity.uaa.provider.LdapIdentityProviderDefinition;
+import org.cloudfoundry.identity.uaa.provider.ldap.LdapGroupSearchMetrics;
 import org.cloudfoundry.identity.uaa.scim.ScimGroupExternalMembershipManager;
 import org.cloudfoundry.identity.uaa.scim.ScimGroupProvisioning;
 import org.cloudfoundry.identity.uaa.util.ObjectUtils;
@@ -41,15 +42,28 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Authenticates against the internal user store and the LDAP provider of the current zone.
+ * <p>
+ * The authentication chain of a zone is kept per login hint origin and reused until the id, version,
+ * last modification or active flag of the zone's UAA or LDAP provider changes.
+ */
 public class DynamicZoneAwareAuthenticationManager implements AuthenticationManager, ApplicationEventPublisherAware {
 
     private final IdentityProviderProvisioning provisioning;
     private final AuthenticationManager internalUaaAuthenticationManager;
     private final ConcurrentMap<IdentityZone, DynamicLdapAuthenticationManager> ldapAuthManagers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CachedChain> chains = new ConcurrentHashMap<>();
     private final ScimGroupExternalMembershipManager scimGroupExternalMembershipManager;
     private final ScimGroupProvisioning scimGroupProvisioning;
     private final LdapLoginAuthenticationManager ldapLoginAuthenticationManager;
     private ApplicationEventPublisher eventPublisher;
+    private int ldapConnectionPoolSize = 0;
+    private int ldapConnectionPoolIdleEvictionSeconds = 300;
+    private long ldapConnectionPoolMaxWaitMillis = 5000;
+    private int ldapMaxConcurrentGroupSearches = 1;
+    private int ldapGroupCacheTtlSeconds = 0;
+    private LdapGroupSearchMetrics ldapGroupSearchMetrics = new LdapGroupSearchMetrics();
 
     public DynamicZoneAwareAuthenticationManager(IdentityProviderProvisioning provisioning,
                                                  AuthenticationManager internalUaaAuthenticationManager,
@@ -93,9 +107,25 @@ public class DynamicZoneAwareAuthenticationManager implements AuthenticationMana
         IdentityProvider ldapProvider = getProvider(OriginKeys.LDAP, zone);
         IdentityProvider uaaProvider = getProvider(OriginKeys.UAA, zone);
 
+        String origin = loginHint == null ? null : loginHint.getOrigin();
+        String key = zone.getId() + "|" + origin;
+        String fingerprint = getFingerprint(uaaProvider) + "|" + getFingerprint(ldapProvider);
+        CachedChain cached = chains.get(key);
+        if (cached != null && cached.fingerprint.equals(fingerprint)) {
+            return cached.manager;
+        }
+
+        ChainedAuthenticationManager result = buildChainedAuthenticationManager(zone, origin, uaaProvider, ldapProvider);
+        chains.put(key, new CachedChain(fingerprint, result));
+        return result;
+    }
+
+    protected ChainedAuthenticationManager buildChainedAuthenticationManager(IdentityZone zone,
+                                                                             String origin,
+                                                                             IdentityProvider uaaProvider,
+                                                                             IdentityProvider ldapProvider) {
         List<AuthenticationManagerConfiguration> delegates = new LinkedList<>();
 
-        String origin = loginHint == null ? null : loginHint.getOrigin();
         if (uaaProvider.isActive() && (origin == null || origin.equals("uaa"))) {
             AuthenticationManagerConfiguration uaaConfig = new AuthenticationManagerConfiguration(internalUaaAuthenticationManager, null);
             uaaConfig.setStopIf(
@@ -129,6 +159,11 @@ public class DynamicZoneAwareAuthenticationManager implements AuthenticationMana
         return result;
     }
 
+    protected String getFingerprint(IdentityProvider provider) {
+        return provider.getId() + ":" + provider.getVersion() + ":" +
+            (provider.getLastModified() == null ? 0 : provider.getLastModified().getTime()) + ":" + provider.isActive();
+    }
+
     protected IdentityProvider getProvider(String origin, IdentityZone zone) {
         try {
             IdentityProvider result = provisioning.retrieveByOrigin(origin, zone.getId());
@@ -157,11 +192,18 @@ public class DynamicZoneAwareAuthenticationManager implements AuthenticationMana
             scimGroupProvisioning,
             ldapLoginAuthenticationManager);
         ldapMgr.setApplicationEventPublisher(eventPublisher);
+        ldapMgr.setConnectionPoolSize(ldapConnectionPoolSize);
+        ldapMgr.setConnectionPoolIdleEvictionSeconds(ldapConnectionPoolIdleEvictionSeconds);
+        ldapMgr.setConnectionPoolMaxWaitMillis(ldapConnectionPoolMaxWaitMillis);
+        ldapMgr.setMaxConcurrentGroupSearches(ldapMaxConcurrentGroupSearches);
+        ldapMgr.setGroupCacheTtlSeconds(ldapGroupCacheTtlSeconds);
+        ldapMgr.setGroupSearchMetrics(ldapGroupSearchMetrics);
         ldapAuthManagers.putIfAbsent(zone, ldapMgr);
         return ldapAuthManagers.get(zone);
     }
 
     public void destroy() {
+        chains.clear();
         for (Map.Entry<IdentityZone, DynamicLdapAuthenticationManager> entry : ldapAuthManagers.entrySet()) {
             entry.getValue().destroy();
         }
@@ -171,4 +213,53 @@ public class DynamicZoneAwareAuthenticationManager implements AuthenticationMana
     public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
         this.eventPublisher = applicationEventPublisher;
     }
+
+    /**
+     * @param ldapConnectionPoolSize maximum number of pooled LDAP connections per zone, zero disables pooling
+     */
+    public void setLdapConnectionPoolSize(int ldapConnectionPoolSize) {
+        this.ldapConnectionPoolSize = ldapConnectionPoolSize;
+    }
+
+    /**
+     * @param ldapConnectionPoolIdleEvictionSeconds time after which an idle pooled LDAP connection is closed
+     */
+    public void setLdapConnectionPoolIdleEvictionSeconds(int ldapConnectionPoolIdleEvictionSeconds) {
+        this.ldapConnectionPoolIdleEvictionSeconds = ldapConnectionPoolIdleEvictionSeconds;
+    }
+
+    /**
+     * @param ldapConnectionPoolMaxWaitMillis time a login waits for a pooled LDAP connection when the pool is exhausted
+     */
+    public void setLdapConnectionPoolMaxWaitMillis(long ldapConnectionPoolMaxWaitMillis) {
+        this.ldapConnectionPoolMaxWaitMillis = ldapConnectionPoolMaxWaitMillis;
+    }
+
+    /**
+     * @param ldapMaxConcurrentGroupSearches number of nested LDAP group searches of a level that run at the same time
+     */
+    public void setLdapMaxConcurrentGroupSearches(int ldapMaxConcurrentGroupSearches) {
+        this.ldapMaxConcurrentGroupSearches = ldapMaxConcurrentGroupSearches;
+    }
+
+    /**
+     * @param ldapGroupCacheTtlSeconds how long the parent groups of a LDAP group are reused within a zone, zero disables caching
+     */
+    public void setLdapGroupCacheTtlSeconds(int ldapGroupCacheTtlSeconds) {
+        this.ldapGroupCacheTtlSeconds = ldapGroupCacheTtlSeconds;
+    }
+
+    public void setLdapGroupSearchMetrics(LdapGroupSearchMetrics ldapGroupSearchMetrics) {
+        this.ldapGroupSearchMetrics = ldapGroupSearchMetrics;
+    }
+
+    private static class CachedChain {
+        private final String fingerprint;
+        private final ChainedAuthenticationManager manager;
+
+        CachedChain(String fingerprint, ChainedAuthenticationManager manager) {
+            this.fingerprint = fingerprint;
+            this.manager = manager;
+        }
+    }
 }
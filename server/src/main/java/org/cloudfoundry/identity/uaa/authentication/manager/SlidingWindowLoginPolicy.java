@@ -0,0 +1,262 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.authentication.manager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.cloudfoundry.identity.uaa.account.event.PasswordChangeEvent;
+import org.cloudfoundry.identity.uaa.account.event.UserAccountUnlockedEvent;
+import org.cloudfoundry.identity.uaa.audit.AuditEvent;
+import org.cloudfoundry.identity.uaa.audit.AuditEventType;
+import org.cloudfoundry.identity.uaa.audit.JdbcFailedLoginCounter;
+import org.cloudfoundry.identity.uaa.audit.UaaAuditService;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.authentication.event.AbstractUaaAuthenticationEvent;
+import org.cloudfoundry.identity.uaa.provider.LockoutPolicy;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.springframework.context.ApplicationListener;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lockout policy that counts failures without reading the audit table on every attempt.
+ * <p>
+ * The source of the failure counts is chosen with {@link #setFailureSource(FailureSource)}:
+ * <ul>
+ *     <li>{@code AUDIT} queries the audit table, like {@link CommonLoginPolicy}. This is the default.</li>
+ *     <li>{@code MEMORY} keeps the recent failure times of each principal in memory. The audit table is
+ *     read once per principal to warm up the counts, for example after a restart. Counts are not shared between nodes.</li>
+ *     <li>{@code COUNTER} keeps failure counts per principal in time buckets of the {@code failed_login_counter}
+ *     table, shared by all nodes. See {@link JdbcFailedLoginCounter}.</li>
+ * </ul>
+ * Failures and resets are picked up from the published audit events.
+ */
+public class SlidingWindowLoginPolicy extends CommonLoginPolicy implements ApplicationListener<AbstractUaaEvent> {
+
+    public enum FailureSource {
+        AUDIT,
+        MEMORY,
+        COUNTER
+    }
+
+    private FailureSource failureSource = FailureSource.AUDIT;
+    private Set<AuditEventType> resetEventTypes;
+    private JdbcFailedLoginCounter failedLoginCounter;
+    private int maxFailuresPerPrincipal = 100;
+    private Cache<String, FailureWindow> failures = buildCache(100000);
+
+    public SlidingWindowLoginPolicy(UaaAuditService auditService,
+                                    LockoutPolicyRetriever lockoutPolicyRetriever,
+                                    AuditEventType successEventType,
+                                    AuditEventType failureEventType,
+                                    TimeService timeService,
+                                    boolean enabled) {
+        super(auditService, lockoutPolicyRetriever, successEventType, failureEventType, timeService, enabled);
+        resetEventTypes = EnumSet.of(successEventType, AuditEventType.UserAccountUnlockedEvent);
+    }
+
+    @Override
+    public Result isAllowed(String principalId) {
+        if (!isEnabled() || failureSource == FailureSource.AUDIT) {
+            return super.isAllowed(principalId);
+        }
+        LockoutPolicy lockoutPolicy = getLockoutPolicyRetriever().getLockoutPolicy();
+        String zoneId = IdentityZoneHolder.get().getId();
+        long now = getTimeService().getCurrentTimeMillis();
+        long windowStart = now - lockoutPolicy.getCountFailuresWithin() * 1000L;
+
+        int failureCount;
+        long lastFailure;
+        if (failureSource == FailureSource.COUNTER) {
+            JdbcFailedLoginCounter.Counter counter = failedLoginCounter.getCounter(principalId, getFailureEventType(), zoneId, windowStart);
+            failureCount = counter.getFailureCount();
+            lastFailure = counter.getLastFailure();
+        } else {
+            FailureWindow window = getFailureWindow(principalId, zoneId, windowStart);
+            synchronized (window) {
+                window.expire(windowStart);
+                failureCount = window.size();
+                lastFailure = window.last();
+            }
+        }
+
+        if (failureCount >= lockoutPolicy.getLockoutAfterFailures() &&
+            lastFailure > now - lockoutPolicy.getLockoutPeriodSeconds() * 1000L) {
+            return new Result(false, failureCount);
+        }
+        return new Result(true, failureCount);
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (!isEnabled() || failureSource == FailureSource.AUDIT || !isLoginEvent(event)) {
+            return;
+        }
+        AuditEvent auditEvent = event.getAuditEvent();
+        AuditEventType type = auditEvent.getType();
+        boolean failure = type == getFailureEventType();
+        if (!failure && !resetEventTypes.contains(type)) {
+            return;
+        }
+        String principalId = auditEvent.getPrincipalId();
+        String zoneId = auditEvent.getIdentityZoneId();
+        if (failureSource == FailureSource.COUNTER) {
+            if (failure) {
+                long windowMillis = getLockoutPolicyRetriever().getLockoutPolicy().getCountFailuresWithin() * 1000L;
+                failedLoginCounter.recordFailure(principalId, type, zoneId, auditEvent.getTime(), windowMillis);
+            } else {
+                failedLoginCounter.reset(principalId, getFailureEventType(), zoneId);
+            }
+        } else if (failure) {
+            //principals without a window are warmed up from the audit table on their next attempt
+            FailureWindow window = failures.getIfPresent(getKey(principalId, zoneId));
+            if (window != null) {
+                synchronized (window) {
+                    window.add(auditEvent.getTime());
+                }
+            }
+        } else {
+            failures.put(getKey(principalId, zoneId), new FailureWindow(maxFailuresPerPrincipal));
+        }
+    }
+
+    /**
+     * Building the audit event can be costly for other events, a token issued event decodes its token,
+     * so only the event classes that can carry a login failure or reset are looked at.
+     */
+    private static boolean isLoginEvent(AbstractUaaEvent event) {
+        return event instanceof AbstractUaaAuthenticationEvent ||
+            event instanceof PasswordChangeEvent ||
+            event instanceof UserAccountUnlockedEvent;
+    }
+
+    private FailureWindow getFailureWindow(String principalId, String zoneId, long windowStart) {
+        String key = getKey(principalId, zoneId);
+        FailureWindow window = failures.getIfPresent(key);
+        if (window == null) {
+            window = loadFailureWindow(principalId, zoneId, windowStart);
+            FailureWindow existing = failures.asMap().putIfAbsent(key, window);
+            if (existing != null) {
+                window = existing;
+            }
+        }
+        return window;
+    }
+
+    private FailureWindow loadFailureWindow(String principalId, String zoneId, long windowStart) {
+        List<AuditEvent> events = getAuditService().find(principalId, windowStart, zoneId);
+        FailureWindow window = new FailureWindow(maxFailuresPerPrincipal);
+        //events are ordered most recent first
+        for (AuditEvent event : events) {
+            if (event.getType() == getFailureEventType()) {
+                window.addOldest(event.getTime());
+            } else if (resetEventTypes.contains(event.getType())) {
+                break;
+            }
+        }
+        return window;
+    }
+
+    private static String getKey(String principalId, String zoneId) {
+        return zoneId + ":" + principalId;
+    }
+
+    private static Cache<String, FailureWindow> buildCache(int maxPrincipals) {
+        return CacheBuilder
+            .newBuilder()
+            .maximumSize(maxPrincipals)
+            .expireAfterAccess(1, TimeUnit.DAYS)
+            .build();
+    }
+
+    public FailureSource getFailureSource() {
+        return failureSource;
+    }
+
+    public void setFailureSource(FailureSource failureSource) {
+        this.failureSource = failureSource;
+    }
+
+    /**
+     * @param resetEventTypes event types, in addition to the success event type, that clear the failure count
+     */
+    public void setResetEventTypes(Collection<AuditEventType> resetEventTypes) {
+        Set<AuditEventType> types = EnumSet.of(getSuccessEventType());
+        types.addAll(resetEventTypes);
+        this.resetEventTypes = types;
+    }
+
+    public void setFailedLoginCounter(JdbcFailedLoginCounter failedLoginCounter) {
+        this.failedLoginCounter = failedLoginCounter;
+    }
+
+    public void setMaxPrincipals(int maxPrincipals) {
+        this.failures = buildCache(maxPrincipals);
+    }
+
+    public void setMaxFailuresPerPrincipal(int maxFailuresPerPrincipal) {
+        this.maxFailuresPerPrincipal = maxFailuresPerPrincipal;
+    }
+
+    public long getCachedPrincipalCount() {
+        return failures.size();
+    }
+
+    /**
+     * Failure times of a principal, oldest first. Only the most recent failures are kept.
+     */
+    static class FailureWindow {
+        private final Deque<Long> times = new ArrayDeque<>();
+        private final int capacity;
+
+        FailureWindow(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void add(long time) {
+            times.addLast(time);
+            while (times.size() > capacity) {
+                times.removeFirst();
+            }
+        }
+
+        void addOldest(long time) {
+            if (times.size() < capacity) {
+                times.addFirst(time);
+            }
+        }
+
+        void expire(long windowStart) {
+            while (!times.isEmpty() && times.peekFirst() <= windowStart) {
+                times.removeFirst();
+            }
+        }
+
+        int size() {
+            return times.size();
+        }
+
+        long last() {
+            return times.isEmpty() ? 0 : times.peekLast();
+        }
+    }
+}
@@ -18,9 +18,13 @@ package org.cloudfoundry.identity.uaa.cache;
 import com.google.common.base.Ticker;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.util.TimeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
@@ -28,21 +32,72 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Caches URL content, such as SAML metadata and OIDC discovery documents, for a fixed expiration.
+ * <p>
+ * Concurrent requests for content that is not cached share a single fetch. Content that expired less than
+ * {@code maxStale} ago keeps being served while one refresh runs in the background. When a failure backoff
+ * is set, a URL that could not be fetched is not fetched again until the backoff has passed, and the backoff
+ * doubles with every consecutive failure up to {@code maxFailureBackoff}. Both are disabled by default.
+ * Fetch counts, failures and latencies are kept per URL.
+ */
+@ManagedResource(
+    objectName = "cloudfoundry.identity:name=UrlContentCache",
+    description = "UAA URL Content Cache Metrics"
+)
 public class ExpiringUrlCache implements UrlContentCache {
     private static final Logger logger = LoggerFactory.getLogger(ExpiringUrlCache.class);
 
     private final Duration cacheExpiration;
     private final TimeService timeService;
-    private final Cache<String, CacheEntry> cache;
+    private final int maxEntries;
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> loading = new ConcurrentHashMap<>();
+    private final Cache<String, FailedFetch> failures;
+    private final Cache<String, UrlStatistics> statistics;
+    private Cache<String, CacheEntry> cache;
+
+    private Duration maxStale = Duration.ZERO;
+    private Duration failureBackoff = Duration.ZERO;
+    private Duration maxFailureBackoff = Duration.ofMinutes(5);
+    private Executor refreshExecutor;
+
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder fetchFailures = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder staleServed = new LongAdder();
+    private final LongAdder backedOff = new LongAdder();
 
     public ExpiringUrlCache(Duration cacheExpiration, TimeService timeService, int maxEntries) {
         this.cacheExpiration = cacheExpiration;
         this.timeService = timeService;
-        cache = CacheBuilder
+        this.maxEntries = maxEntries;
+        this.cache = buildCache(cacheExpiration);
+        this.failures = CacheBuilder
+                .newBuilder()
+                .expireAfterWrite(1, TimeUnit.DAYS)
+                .maximumSize(maxEntries)
+                .build();
+        this.statistics = CacheBuilder
+                .newBuilder()
+                .maximumSize(maxEntries)
+                .build();
+    }
+
+    private Cache<String, CacheEntry> buildCache(Duration retention) {
+        return CacheBuilder
                 .newBuilder()
-                .expireAfterWrite(this.cacheExpiration.toMillis(), TimeUnit.MILLISECONDS)
+                .expireAfterWrite(retention.toMillis(), TimeUnit.MILLISECONDS)
                 .maximumSize(maxEntries)
                 .ticker(Ticker.systemTicker())
                 .build();
@@ -50,33 +105,166 @@ public class ExpiringUrlCache implements UrlContentCache {
 
     @Override
     public byte[] getUrlContent(String uri, final RestTemplate template) {
+        final URI netUri;
         try {
-            final URI netUri = new URI(uri);
-            CacheEntry entry = cache.getIfPresent(uri);
-            byte[] metadata = entry != null ? entry.data : null;
-            if (metadata == null || isEntryExpired(entry)) {
-                logger.debug("Fetching metadata for "+uri);
-                metadata = template.getForObject(netUri, byte[].class);
-                Instant now = Instant.ofEpochMilli(timeService.getCurrentTimeMillis());
-                cache.put(uri, new CacheEntry(now, metadata));
+            netUri = new URI(uri);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+        CacheEntry entry = cache.getIfPresent(uri);
+        if (entry != null && entry.data != null) {
+            Instant now = Instant.ofEpochMilli(timeService.getCurrentTimeMillis());
+            Duration age = Duration.between(entry.timeEntered, now);
+            if (age.compareTo(cacheExpiration) <= 0) {
+                return entry.data;
             }
+            if (age.compareTo(cacheExpiration.plus(maxStale)) <= 0) {
+                staleServed.increment();
+                refreshInBackground(uri, netUri, template, now);
+                return entry.data;
+            }
+        }
+        FailedFetch failure = failures.getIfPresent(uri);
+        if (failure != null && Instant.ofEpochMilli(timeService.getCurrentTimeMillis()).isBefore(failure.retryAt)) {
+            backedOff.increment();
+            throw new RestClientException("Not fetching " + uri + " until " + failure.retryAt + " after " + failure.count + " failed attempts", failure.cause);
+        }
+        return load(uri, netUri, template);
+    }
+
+    private byte[] load(String uri, URI netUri, RestTemplate template) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = loading.putIfAbsent(uri, future);
+        if (existing != null) {
+            coalesced.increment();
+            return join(uri, existing);
+        }
+        try {
+            byte[] metadata = fetch(uri, netUri, template);
+            future.complete(metadata);
+            return metadata;
+        } catch (RuntimeException x) {
+            future.completeExceptionally(x);
+            throw x;
+        } finally {
+            loading.remove(uri, future);
+        }
+    }
+
+    private byte[] fetch(String uri, URI netUri, RestTemplate template) {
+        UrlStatistics urlStatistics = getOrCreateStatistics(uri);
+        long start = System.nanoTime();
+        try {
+            logger.debug("Fetching metadata for "+uri);
+            byte[] metadata = template.getForObject(netUri, byte[].class);
+            urlStatistics.record(System.nanoTime() - start, false);
+            fetches.increment();
+            Instant now = Instant.ofEpochMilli(timeService.getCurrentTimeMillis());
+            cache.put(uri, new CacheEntry(now, metadata));
+            failures.invalidate(uri);
             return metadata;
         } catch (RestClientException x) {
+            urlStatistics.record(System.nanoTime() - start, true);
+            fetches.increment();
+            fetchFailures.increment();
+            recordFailure(uri, x);
             logger.warn("Unable to fetch metadata for "+uri, x);
             throw x;
-        } catch (URISyntaxException e) {
-            throw new IllegalArgumentException(e);
         }
     }
 
-    private boolean isEntryExpired(CacheEntry entry) {
+    private byte[] join(String uri, CompletableFuture<byte[]> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RestClientException("Interrupted while waiting for " + uri, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RestClientException("Unable to fetch metadata for " + uri, e.getCause());
+        }
+    }
+
+    private void refreshInBackground(String uri, URI netUri, RestTemplate template, Instant now) {
+        FailedFetch failure = failures.getIfPresent(uri);
+        if (loading.containsKey(uri) || (failure != null && now.isBefore(failure.retryAt))) {
+            return;
+        }
+        getRefreshExecutor().execute(() -> {
+            try {
+                load(uri, netUri, template);
+            } catch (RuntimeException x) {
+                logger.debug("Serving stale content for " + uri + " after failed refresh");
+            }
+        });
+    }
+
+    private void recordFailure(String uri, RestClientException cause) {
+        if (failureBackoff.isZero() || failureBackoff.isNegative()) {
+            return;
+        }
+        FailedFetch previous = failures.getIfPresent(uri);
+        int count = previous == null ? 1 : previous.count + 1;
+        Duration backoff = failureBackoff.multipliedBy(1L << Math.min(count - 1, 20));
+        if (backoff.compareTo(maxFailureBackoff) > 0) {
+            backoff = maxFailureBackoff;
+        }
         Instant now = Instant.ofEpochMilli(timeService.getCurrentTimeMillis());
-        return Duration.between(entry.timeEntered, now).compareTo(cacheExpiration) > 0;
+        failures.put(uri, new FailedFetch(cause, count, now.plus(backoff)));
+    }
+
+    private UrlStatistics getOrCreateStatistics(String uri) {
+        UrlStatistics result = statistics.getIfPresent(uri);
+        if (result == null) {
+            result = new UrlStatistics();
+            UrlStatistics existing = statistics.asMap().putIfAbsent(uri, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    private synchronized Executor getRefreshExecutor() {
+        if (refreshExecutor == null) {
+            refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "url-content-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return refreshExecutor;
+    }
+
+    public synchronized void setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * @param maxStale how long expired content may still be served while it is refreshed in the background
+     */
+    public void setMaxStale(Duration maxStale) {
+        this.maxStale = maxStale.isNegative() ? Duration.ZERO : maxStale;
+        this.cache = buildCache(cacheExpiration.plus(this.maxStale));
+    }
+
+    /**
+     * @param failureBackoff how long a URL is not fetched after a failed fetch, zero disables the backoff
+     */
+    public void setFailureBackoff(Duration failureBackoff) {
+        this.failureBackoff = failureBackoff;
+    }
+
+    public void setMaxFailureBackoff(Duration maxFailureBackoff) {
+        this.maxFailureBackoff = maxFailureBackoff;
     }
 
     @Override
     public void clear() {
         cache.invalidateAll();
+        failures.invalidateAll();
     }
 
     @Override
@@ -84,6 +272,42 @@ public class ExpiringUrlCache implements UrlContentCache {
         return cache.size();
     }
 
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "URL Content Fetches")
+    public long getFetchCount() {
+        return fetches.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Failed URL Content Fetches")
+    public long getFailureCount() {
+        return fetchFailures.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Requests Sharing a URL Content Fetch")
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Stale URL Content Served")
+    public long getStaleCount() {
+        return staleServed.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Requests Rejected During Failure Backoff")
+    public long getBackedOffCount() {
+        return backedOff.sum();
+    }
+
+    @ManagedMetric(displayName = "URL Content Fetch Statistics per URL")
+    public Map<String, String> getUrlStatistics() {
+        Map<String, String> data = new HashMap<>();
+        statistics.asMap().forEach((uri, value) -> data.put(uri, JsonUtils.writeValueAsString(value)));
+        return data;
+    }
+
+    UrlStatistics getStatistics(String uri) {
+        return statistics.getIfPresent(uri);
+    }
+
     static class CacheEntry {
         final Instant timeEntered;
         final byte[] data;
@@ -93,4 +317,49 @@ public class ExpiringUrlCache implements UrlContentCache {
             this.data = data;
         }
     }
+
+    static class FailedFetch {
+        final RestClientException cause;
+        final int count;
+        final Instant retryAt;
+
+        FailedFetch(RestClientException cause, int count, Instant retryAt) {
+            this.cause = cause;
+            this.count = count;
+            this.retryAt = retryAt;
+        }
+    }
+
+    public static class UrlStatistics {
+        private final LongAdder fetches = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalLatencyNanos = new LongAdder();
+        private volatile long lastLatencyNanos;
+
+        void record(long latencyNanos, boolean failed) {
+            fetches.increment();
+            if (failed) {
+                failures.increment();
+            }
+            totalLatencyNanos.add(latencyNanos);
+            lastLatencyNanos = latencyNanos;
+        }
+
+        public long getFetchCount() {
+            return fetches.sum();
+        }
+
+        public long getFailureCount() {
+            return failures.sum();
+        }
+
+        public double getAverageLatencyMillis() {
+            long count = fetches.sum();
+            return count == 0 ? 0 : totalLatencyNanos.sum() / 1000000.0 / count;
+        }
+
+        public double getLastLatencyMillis() {
+            return lastLatencyNanos / 1000000.0;
+        }
+    }
 }
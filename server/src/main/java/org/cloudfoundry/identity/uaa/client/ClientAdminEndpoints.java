@@ -23,6 +23,8 @@ import org.cloudfoundry.identity.uaa.oauth.client.ClientDetailsModification;
 import org.cloudfoundry.identity.uaa.oauth.client.SecretChangeRequest;
 import org.cloudfoundry.identity.uaa.resources.ActionResult;
 import org.cloudfoundry.identity.uaa.resources.AttributeNameMapper;
+import org.cloudfoundry.identity.uaa.resources.CursorPage;
+import org.cloudfoundry.identity.uaa.resources.PageCursor;
 import org.cloudfoundry.identity.uaa.resources.QueryableResourceManager;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
@@ -462,6 +464,20 @@ public class ClientAdminEndpoints implements InitializingBean, ApplicationEventP
     }
 
 
+    public SearchResults<?> listClientDetails(String attributesCommaSeparated,
+                                              String filter,
+                                              String sortBy,
+                                              String sortOrder,
+                                              int startIndex,
+                                              int count) throws Exception {
+        return listClientDetails(attributesCommaSeparated, filter, sortBy, sortOrder, startIndex, count, null, true);
+    }
+
+    /**
+     * @param cursor when present, the clients are paged by cursor instead of by startIndex. Pass an empty
+     *               cursor for the first page, and the returned nextCursor for the following pages.
+     * @param countTotal false to skip counting the total number of results when paging by cursor
+     */
     @RequestMapping(value = "/oauth/clients", method = RequestMethod.GET)
     @ResponseBody
     public SearchResults<?> listClientDetails(
@@ -470,18 +486,40 @@ public class ClientAdminEndpoints implements InitializingBean, ApplicationEventP
                     @RequestParam(required = false, defaultValue = "client_id") String sortBy,
                     @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
                     @RequestParam(required = false, defaultValue = "1") int startIndex,
-                    @RequestParam(required = false, defaultValue = "100") int count) throws Exception {
+                    @RequestParam(required = false, defaultValue = "100") int count,
+                    @RequestParam(required = false) String cursor,
+                    @RequestParam(required = false, defaultValue = "true") boolean countTotal) throws Exception {
 
         if (count > clientMaxCount) {
             count = clientMaxCount;
         }
 
+        PageCursor after;
+        try {
+            after = StringUtils.hasText(cursor) ? PageCursor.decode(cursor) : null;
+        } catch (IllegalArgumentException e) {
+            throw new UaaException("Invalid cursor: [" + cursor + "]", HttpStatus.BAD_REQUEST.value());
+        }
+
         List<ClientDetails> result = new ArrayList<ClientDetails>();
-        List<ClientDetails> clients;
+        List<ClientDetails> page;
+        int total;
+        PageCursor next = null;
         try {
-            clients = clientDetailsService.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder), IdentityZoneHolder.get().getId());
-            if (count > clients.size()) {
-                count = clients.size();
+            if (cursor == null) {
+                List<ClientDetails> clients = clientDetailsService.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder), IdentityZoneHolder.get().getId());
+                if (count > clients.size()) {
+                    count = clients.size();
+                }
+                page = UaaPagingUtils.subList(clients, startIndex, count);
+                total = clients.size();
+            } else {
+                startIndex = 1;
+                count = Math.max(count, 1);
+                CursorPage<ClientDetails> clients = clientDetailsService.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder), after, count, countTotal, IdentityZoneHolder.get().getId());
+                page = clients.getResources();
+                total = clients.getTotalResults();
+                next = clients.getNext();
             }
         } catch (IllegalArgumentException e) {
             String msg = "Invalid filter expression: [" + filter + "]";
@@ -490,26 +528,30 @@ public class ClientAdminEndpoints implements InitializingBean, ApplicationEventP
             }
             throw new UaaException(msg, HttpStatus.BAD_REQUEST.value());
         }
-        for (ClientDetails client : UaaPagingUtils.subList(clients, startIndex, count)) {
+        for (ClientDetails client : page) {
             result.add(removeSecret(client));
         }
 
+        SearchResults<?> results;
         if (!StringUtils.hasLength(attributesCommaSeparated)) {
-            return new SearchResults<>(Arrays.asList(SCIM_CLIENTS_SCHEMA_URI), result, startIndex, count,
-                clients.size());
+            results = new SearchResults<>(Arrays.asList(SCIM_CLIENTS_SCHEMA_URI), result, startIndex, count, total);
+        } else {
+            String[] attributes = attributesCommaSeparated.split(",");
+            try {
+                results = SearchResultsFactory.buildSearchResultFrom(result, startIndex, count, total, attributes,
+                                attributeNameMapper, Arrays.asList(SCIM_CLIENTS_SCHEMA_URI));
+            } catch (SpelParseException e) {
+                throw new UaaException("Invalid attributes: [" + attributesCommaSeparated + "]",
+                                HttpStatus.BAD_REQUEST.value());
+            } catch (SpelEvaluationException e) {
+                throw new UaaException("Invalid attributes: [" + attributesCommaSeparated + "]",
+                                HttpStatus.BAD_REQUEST.value());
+            }
         }
-
-        String[] attributes = attributesCommaSeparated.split(",");
-        try {
-            return SearchResultsFactory.buildSearchResultFrom(result, startIndex, count, clients.size(), attributes,
-                            attributeNameMapper, Arrays.asList(SCIM_CLIENTS_SCHEMA_URI));
-        } catch (SpelParseException e) {
-            throw new UaaException("Invalid attributes: [" + attributesCommaSeparated + "]",
-                            HttpStatus.BAD_REQUEST.value());
-        } catch (SpelEvaluationException e) {
-            throw new UaaException("Invalid attributes: [" + attributesCommaSeparated + "]",
-                            HttpStatus.BAD_REQUEST.value());
+        if (next != null) {
+            results.setNextCursor(next.encode());
         }
+        return results;
     }
 
     @RequestMapping(value = "/oauth/clients/{client_id}/secret", method = RequestMethod.PUT)
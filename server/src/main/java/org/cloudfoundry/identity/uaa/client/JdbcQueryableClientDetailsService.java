@@ -62,6 +62,11 @@ public class JdbcQueryableClientDetailsService extends AbstractQueryable<ClientD
         return CLIENT_DETAILS_TABLE;
     }
 
+    @Override
+    protected String getIdColumn() {
+        return "client_id";
+    }
+
     @Override
     public List<ClientDetails> retrieveAll(String zoneId) {
         return delegate.listClientDetails(zoneId);
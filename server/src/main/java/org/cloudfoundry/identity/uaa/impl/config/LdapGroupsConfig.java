@@ -1,6 +1,8 @@
 package org.cloudfoundry.identity.uaa.impl.config;
 
+import org.cloudfoundry.identity.uaa.provider.ldap.LdapGroupSearchMetrics;
 import org.cloudfoundry.identity.uaa.provider.ldap.extension.NestedLdapAuthoritiesPopulator;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.env.Environment;
 import org.springframework.ldap.core.ContextSource;
@@ -12,8 +14,12 @@ import java.util.HashSet;
 import static java.util.Optional.ofNullable;
 
 public class LdapGroupsConfig {
+  public static final String LDAP_GROUPS_MAX_CONCURRENT_SEARCHES = "ldap.groups.maxConcurrentSearches";
+  public static final String LDAP_GROUPS_CACHE_TTL_SECONDS = "ldap.groups.cacheTtlSeconds";
+
   @Bean
-  public LdapAuthoritiesPopulator nestedLdapAuthoritiesPopulator(ContextSource contextSource, Environment environment, String configuredGroupRoleAttribute) {
+  public LdapAuthoritiesPopulator nestedLdapAuthoritiesPopulator(ContextSource contextSource, Environment environment, String configuredGroupRoleAttribute,
+                                                                 ObjectProvider<LdapGroupSearchMetrics> ldapGroupSearchMetrics) {
     String searchBase = ofNullable(environment.getProperty("ldap.groups.searchBase")).orElse("ou=scopes,dc=test,dc=com");
     boolean searchSubtree = ofNullable(environment.getProperty("ldap.groups.searchSubtree")).map(Boolean::parseBoolean).orElse(true);
     String groupSearchFilter = ofNullable(environment.getProperty("ldap.groups.groupSearchFilter")).orElse("member={0}");
@@ -26,6 +32,12 @@ public class LdapGroupsConfig {
     nestedLdapAuthoritiesPopulator.setMaxSearchDepth(ofNullable(Integer.parseInt(environment.getProperty("ldap.groups.maxSearchDepth"))).orElse(10));
     nestedLdapAuthoritiesPopulator.setAttributeNames(new HashSet<>(Arrays.asList("cn")));
     nestedLdapAuthoritiesPopulator.setIgnorePartialResultException(ofNullable(environment.getProperty("ldap.groups.ignorePartialResultException")).map(Boolean::parseBoolean).orElse(true));
+    nestedLdapAuthoritiesPopulator.setMaxConcurrentSearches(ofNullable(environment.getProperty(LDAP_GROUPS_MAX_CONCURRENT_SEARCHES)).map(Integer::parseInt).orElse(1));
+    nestedLdapAuthoritiesPopulator.setParentGroupCacheTtl(ofNullable(environment.getProperty(LDAP_GROUPS_CACHE_TTL_SECONDS)).map(Integer::parseInt).orElse(0));
+    LdapGroupSearchMetrics metrics = ldapGroupSearchMetrics.getIfAvailable();
+    if (metrics != null) {
+      nestedLdapAuthoritiesPopulator.setMetrics(metrics);
+    }
     return nestedLdapAuthoritiesPopulator;
   }
 }
@@ -1,11 +1,19 @@
 package org.cloudfoundry.identity.uaa.impl.config;
 
 import org.cloudfoundry.identity.uaa.provider.ldap.ExtendedLdapUserMapper;
+import org.cloudfoundry.identity.uaa.provider.ldap.PooledLdapContextSource;
 import org.cloudfoundry.identity.uaa.provider.ldap.ProcessLdapProperties;
 
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.security.ldap.DefaultSpringSecurityContextSource;
 
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
@@ -13,11 +21,24 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static java.lang.Boolean.parseBoolean;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
 import static java.util.Optional.ofNullable;
 
 @Configuration
 public class LdapIntegrationConfig {
 
+  public static final String LDAP_CONNECTION_POOL_SIZE = "ldap.connectionPool.size";
+  public static final String LDAP_CONNECTION_POOL_IDLE_EVICTION_SECONDS = "ldap.connectionPool.idleEvictionSeconds";
+  public static final String LDAP_CONNECTION_POOL_MAX_WAIT_MILLIS = "ldap.connectionPool.maxWaitMillis";
+
+  public static class IfPooled implements Condition {
+    @Override
+    public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+      return parseInt(ofNullable(context.getEnvironment().getProperty(LDAP_CONNECTION_POOL_SIZE)).orElse("0")) > 0;
+    }
+  }
+
   @Bean
   public ProcessLdapProperties ldapPropertyProcessor(Environment environment) {
     boolean skipSslVerification = parseBoolean(environment.getProperty("ldap.ssl.skipverification"));
@@ -34,6 +55,16 @@ public class LdapIntegrationConfig {
     return ldapPropertyProcessor(environment).process(initialLdapProperties);
   }
 
+  @Bean
+  @Primary
+  @Conditional(IfPooled.class)
+  public BaseLdapPathContextSource pooledLdapContextSource(DefaultSpringSecurityContextSource defaultSpringSecurityContextSource, Environment environment) {
+    int size = parseInt(environment.getProperty(LDAP_CONNECTION_POOL_SIZE));
+    int idleEvictionSeconds = parseInt(ofNullable(environment.getProperty(LDAP_CONNECTION_POOL_IDLE_EVICTION_SECONDS)).orElse("300"));
+    long maxWaitMillis = parseLong(ofNullable(environment.getProperty(LDAP_CONNECTION_POOL_MAX_WAIT_MILLIS)).orElse("5000"));
+    return new PooledLdapContextSource(defaultSpringSecurityContextSource, size, idleEvictionSeconds, maxWaitMillis);
+  }
+
   @Bean
   public ExtendedLdapUserMapper extendedLdapUserDetailsMapper(Environment environment) {
     String mailAttributeName = ofNullable(environment.getProperty("ldap.base.mailAttributeName")).orElse("mail");
@@ -637,7 +637,7 @@ public class LoginInfoEndpoint {
     protected Map<String, AbstractXOAuthIdentityProviderDefinition> getOauthIdentityProviderDefinitions(List<String> allowedIdps) {
 
         List<IdentityProvider> identityProviders =
-            xoAuthProviderConfigurator.retrieveAll(true, IdentityZoneHolder.get().getId());
+            xoAuthProviderConfigurator.retrieveAllWithLoadedMetadata(true, IdentityZoneHolder.get().getId());
 
         Map<String, AbstractXOAuthIdentityProviderDefinition> identityProviderDefinitions = identityProviders.stream()
                 .filter(p -> allowedIdps==null || allowedIdps.contains(p.getOriginKey()))
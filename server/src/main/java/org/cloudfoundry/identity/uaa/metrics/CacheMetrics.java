@@ -0,0 +1,28 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.metrics;
+
+/**
+ * Hit, miss and eviction counts of a cache whose effectiveness is reported by the {@link UaaMetricsFilter}.
+ */
+public interface CacheMetrics {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+}
@@ -17,6 +17,7 @@ package org.cloudfoundry.identity.uaa.metrics;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.util.BoundedPasswordEncoder;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.util.TimeService;
 import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
@@ -41,6 +42,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @ManagedResource(
@@ -60,9 +62,14 @@ public class UaaMetricsFilter extends OncePerRequestFilter implements UaaMetrics
     private TimeService timeService = new TimeServiceImpl();
     private IdleTimer inflight = new IdleTimer();
     private Map<String,MetricsQueue> perUriMetrics = new ConcurrentHashMap<>();
+    private Map<String,RequestLatencies> perUriLatencies = new ConcurrentHashMap<>();
+    private long latencyIntervalMillis = TimeUnit.MINUTES.toMillis(1);
     private LinkedHashMap<AntPathRequestMatcher, UrlGroup> urlGroups;
     private boolean enabled = true;
     private boolean perRequestMetrics = false;
+    private CacheMetrics tokenValidationCache;
+
+    private BoundedPasswordEncoder passwordHashingPool;
 
     private NotificationPublisher notificationPublisher;
 
@@ -92,9 +99,11 @@ public class UaaMetricsFilter extends OncePerRequestFilter implements UaaMetrics
                 if (isPerRequestMetrics()) {
                     sendRequestTime(uriGroup.getGroup(), metric.getRequestCompleteTime() - metric.getRequestStartTime());
                 }
+                long now = metric.getRequestCompleteTime();
                 for (String group : Arrays.asList(uriGroup.getGroup(), MetricsUtil.GLOBAL_GROUP)) {
                     MetricsQueue queue = getMetricsQueue(group);
                     queue.offer(metric);
+                    getRequestLatencies(group, now).record(metric, now);
                 }
             }
         } else {
@@ -117,6 +126,14 @@ public class UaaMetricsFilter extends OncePerRequestFilter implements UaaMetrics
         return perUriMetrics.get(uri);
     }
 
+    protected RequestLatencies getRequestLatencies(String uri, long now) {
+        RequestLatencies latencies = perUriLatencies.get(uri);
+        if (latencies == null) {
+            latencies = perUriLatencies.computeIfAbsent(uri, k -> new RequestLatencies(latencyIntervalMillis, now));
+        }
+        return latencies;
+    }
+
     /**
      *
      * @param request
@@ -170,6 +187,53 @@ public class UaaMetricsFilter extends OncePerRequestFilter implements UaaMetrics
         return JsonUtils.writeValueAsString(perUriMetrics.get(MetricsUtil.GLOBAL_GROUP));
     }
 
+    @Override
+    @ManagedMetric(category = "performance", displayName = "Server Request Latency Percentiles for all URI Groups")
+    public Map<String, String> getLatencies() {
+        long now = timeService.getCurrentTimeMillis();
+        Map<String, String> data = new HashMap<>();
+        perUriLatencies.entrySet().stream().forEach(entry -> data.put(entry.getKey(), JsonUtils.writeValueAsString(entry.getValue().getSummaries(now))));
+        return data;
+    }
+
+    @ManagedMetric(category = "performance", displayName = "Token validation cache hits")
+    public long getTokenValidationCacheHits() {
+        return tokenValidationCache == null ? 0 : tokenValidationCache.getHitCount();
+    }
+
+    @ManagedMetric(category = "performance", displayName = "Token validation cache misses")
+    public long getTokenValidationCacheMisses() {
+        return tokenValidationCache == null ? 0 : tokenValidationCache.getMissCount();
+    }
+
+    @ManagedMetric(category = "performance", displayName = "Token validation cache evictions")
+    public long getTokenValidationCacheEvictions() {
+        return tokenValidationCache == null ? 0 : tokenValidationCache.getEvictionCount();
+    }
+
+    public void setTokenValidationCache(CacheMetrics tokenValidationCache) {
+        this.tokenValidationCache = tokenValidationCache;
+    }
+
+    @ManagedMetric(category = "performance", displayName = "Password hashing rejections")
+    public long getPasswordHashingRejections() {
+        return passwordHashingPool == null ? 0 : passwordHashingPool.getRejectedCount();
+    }
+
+    @ManagedMetric(category = "performance", displayName = "Password hashing queue depth")
+    public int getPasswordHashingQueueDepth() {
+        return passwordHashingPool == null ? 0 : passwordHashingPool.getQueueDepth();
+    }
+
+    @ManagedMetric(category = "performance", displayName = "Password hashing average queue wait (ms)")
+    public double getPasswordHashingAverageQueueWaitTime() {
+        return passwordHashingPool == null ? 0 : passwordHashingPool.getAverageQueueWaitTime();
+    }
+
+    public void setPasswordHashingPool(BoundedPasswordEncoder passwordHashingPool) {
+        this.passwordHashingPool = passwordHashingPool;
+    }
+
     public TimeService getTimeService() {
         return timeService;
     }
@@ -207,6 +271,10 @@ public class UaaMetricsFilter extends OncePerRequestFilter implements UaaMetrics
         this.perRequestMetrics = perRequestMetrics;
     }
 
+    public void setLatencyIntervalSeconds(int latencyIntervalSeconds) {
+        this.latencyIntervalMillis = TimeUnit.SECONDS.toMillis(Math.max(0, latencyIntervalSeconds));
+    }
+
     public void setInflight(IdleTimer inflight) {
         this.inflight = inflight;
     }
@@ -0,0 +1,278 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.oauth;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import org.cloudfoundry.identity.uaa.account.event.PasswordChangeEvent;
+import org.cloudfoundry.identity.uaa.authentication.UaaPrincipal;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.ApprovalModifiedEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.client.event.AbstractClientAdminEvent;
+import org.cloudfoundry.identity.uaa.metrics.CacheMetrics;
+import org.cloudfoundry.identity.uaa.oauth.event.TokenRevocationEvent;
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.cloudfoundry.identity.uaa.scim.event.UserModifiedEvent;
+import org.cloudfoundry.identity.uaa.user.UaaUser;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.cloudfoundry.identity.uaa.util.UaaTokenUtils;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.springframework.context.ApplicationListener;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.EXP;
+
+/**
+ * Remembers successful token validations for /check_token and /introspect, so that
+ * resource servers presenting the same bearer token repeatedly do not pay for decoding,
+ * signature verification and user/client lookups on every call.
+ * <p>
+ * Entries are keyed by zone and a SHA-256 hash of the token, live for at most {@code ttlSeconds}
+ * and never beyond the token's own expiry. Revocations, user, client and approval changes evict
+ * the affected entries on this node; the TTL bounds staleness for changes made on other nodes.
+ * A TTL of zero disables caching.
+ */
+public class CachingResourceServerTokenServices implements ResourceServerTokenServices, CacheMetrics, ApplicationListener<AbstractUaaEvent> {
+
+    private final ResourceServerTokenServices delegate;
+    private final long ttlMillis;
+    private final Cache<String, ValidatedToken> cache;
+    private TimeService timeService = new TimeServiceImpl();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingResourceServerTokenServices(ResourceServerTokenServices delegate, int ttlSeconds, int maxEntries) {
+        this.delegate = delegate;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(Math.max(0, ttlSeconds));
+        this.cache = CacheBuilder
+                .newBuilder()
+                .expireAfterWrite(Math.max(1, ttlMillis), TimeUnit.MILLISECONDS)
+                .maximumSize(maxEntries)
+                .ticker(Ticker.systemTicker())
+                .build();
+    }
+
+    @Override
+    public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException, InvalidTokenException {
+        if (!isEnabled() || !StringUtils.hasText(accessToken)) {
+            return delegate.loadAuthentication(accessToken);
+        }
+        String key = getKey(accessToken);
+        ValidatedToken entry = getValid(key);
+        if (entry != null && entry.authentication != null) {
+            hits.increment();
+            return entry.authentication;
+        }
+        misses.increment();
+        OAuth2Authentication authentication = delegate.loadAuthentication(accessToken);
+        Long expiration = entry != null && entry.token != null ? null : getExpiration(accessToken);
+        store(key, entry, authentication, null, expiration);
+        return authentication;
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String accessToken) {
+        if (!isEnabled() || !StringUtils.hasText(accessToken)) {
+            return delegate.readAccessToken(accessToken);
+        }
+        String key = getKey(accessToken);
+        ValidatedToken entry = getValid(key);
+        if (entry != null && entry.token != null) {
+            hits.increment();
+            return entry.token;
+        }
+        misses.increment();
+        OAuth2AccessToken token = delegate.readAccessToken(accessToken);
+        store(key, entry, null, token, null);
+        return token;
+    }
+
+    private ValidatedToken getValid(String key) {
+        ValidatedToken entry = cache.getIfPresent(key);
+        if (entry != null && entry.expiresAt <= timeService.getCurrentTimeMillis()) {
+            cache.invalidate(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private void store(String key, ValidatedToken previous, OAuth2Authentication authentication, OAuth2AccessToken token, Long expiration) {
+        ValidatedToken entry = previous != null ? previous : new ValidatedToken();
+        if (authentication != null) {
+            entry.authentication = authentication;
+            entry.resolved = true;
+            if (authentication.getOAuth2Request() != null) {
+                entry.clientId = authentication.getOAuth2Request().getClientId();
+            }
+            if (authentication.getUserAuthentication() != null && authentication.getUserAuthentication().getPrincipal() instanceof UaaPrincipal) {
+                entry.userId = ((UaaPrincipal) authentication.getUserAuthentication().getPrincipal()).getId();
+            }
+        }
+        if (token != null) {
+            entry.token = token;
+        }
+        long now = timeService.getCurrentTimeMillis();
+        long expiresAt = now + ttlMillis;
+        if (entry.token != null) {
+            if (entry.token.getExpiration() != null) {
+                expiresAt = Math.min(expiresAt, entry.token.getExpiration().getTime());
+            }
+        } else if (expiration != null) {
+            expiresAt = Math.min(expiresAt, expiration);
+        } else {
+            //without the token we cannot tell when it expires
+            return;
+        }
+        if (previous != null) {
+            expiresAt = Math.min(expiresAt, previous.expiresAt);
+        }
+        entry.expiresAt = expiresAt;
+        if (expiresAt > now) {
+            cache.put(key, entry);
+        }
+    }
+
+    /**
+     * Reads the {@code exp} claim of a JWT access token, in milliseconds, or returns null for
+     * opaque tokens and tokens without an expiry. The delegate has already validated the token.
+     */
+    private static Long getExpiration(String accessToken) {
+        try {
+            Object exp = UaaTokenUtils.getClaims(accessToken).get(EXP);
+            return exp instanceof Number ? TimeUnit.SECONDS.toMillis(((Number) exp).longValue()) : null;
+        } catch (InvalidTokenException e) {
+            return null;
+        }
+    }
+
+    private String getKey(String accessToken) {
+        return IdentityZoneHolder.get().getId() + ":" + Hashing.sha256().hashString(accessToken, StandardCharsets.UTF_8).toString();
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (event instanceof TokenRevocationEvent) {
+            TokenRevocationEvent revocation = (TokenRevocationEvent) event;
+            evict(revocation.getZoneId(), revocation.getUserId(), revocation.getClientId());
+        } else if (event instanceof UserModifiedEvent) {
+            evict(null, ((UserModifiedEvent) event).getUserId(), null);
+        } else if (event instanceof PasswordChangeEvent && ((PasswordChangeEvent) event).getUser() != null) {
+            evict(null, ((PasswordChangeEvent) event).getUser().getId(), null);
+        } else if (event instanceof ApprovalModifiedEvent) {
+            evict(null, ((ApprovalModifiedEvent) event).getSource().getUserId(), null);
+        } else if (event instanceof AbstractClientAdminEvent && ((AbstractClientAdminEvent) event).getClient() != null) {
+            evict(IdentityZoneHolder.get().getId(), null, ((AbstractClientAdminEvent) event).getClient().getClientId());
+        } else if (event instanceof EntityDeletedEvent) {
+            Object deleted = ((EntityDeletedEvent<?>) event).getDeleted();
+            if (deleted instanceof IdentityZone) {
+                evict(((IdentityZone) deleted).getId(), null, null);
+            } else if (deleted instanceof ClientDetails) {
+                evict(IdentityZoneHolder.get().getId(), null, ((ClientDetails) deleted).getClientId());
+            } else if (deleted instanceof UaaUser) {
+                evict(null, ((UaaUser) deleted).getId(), null);
+            } else if (deleted instanceof ScimUser) {
+                evict(null, ((ScimUser) deleted).getId(), null);
+            }
+        }
+    }
+
+    /**
+     * Removes entries matching all of the non null arguments. Entries for which the user or
+     * client is not known yet are treated as matching.
+     */
+    protected void evict(String zoneId, String userId, String clientId) {
+        if (zoneId == null && userId == null && clientId == null) {
+            return;
+        }
+        String prefix = zoneId == null ? null : zoneId + ":";
+        Predicate<Map.Entry<String, ValidatedToken>> matches = e ->
+                (prefix == null || e.getKey().startsWith(prefix)) &&
+                matches(userId, e.getValue().userId, e.getValue().resolved) &&
+                matches(clientId, e.getValue().clientId, e.getValue().resolved);
+        cache.asMap().entrySet().removeIf(e -> {
+            boolean remove = matches.test(e);
+            if (remove) {
+                evictions.increment();
+            }
+            return remove;
+        });
+    }
+
+    private static boolean matches(String expected, String actual, boolean resolved) {
+        return expected == null || !resolved || expected.equals(actual);
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public void setTimeService(TimeService timeService) {
+        this.timeService = timeService;
+    }
+
+    private static class ValidatedToken {
+        private volatile OAuth2Authentication authentication;
+        private volatile OAuth2AccessToken token;
+        private volatile String userId;
+        private volatile String clientId;
+        private volatile boolean resolved;
+        private volatile long expiresAt;
+    }
+}
@@ -55,7 +55,12 @@ public class IntrospectEndpoint {
 
     private IntrospectionClaims getClaimsForToken(String token) {
         org.springframework.security.jwt.Jwt tokenJwt;
-        tokenJwt = JwtHelper.decode(token);
+        try {
+            tokenJwt = JwtHelper.decode(token);
+        } catch (IllegalArgumentException e) {
+            logger.error("Can't decode introspection claims in token.");
+            throw new InvalidTokenException("Cannot decode token", e);
+        }
 
         IntrospectionClaims claims;
         try {
@@ -14,18 +14,28 @@
  */
 package org.cloudfoundry.identity.uaa.oauth;
 
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
 import org.cloudfoundry.identity.uaa.impl.config.LegacyTokenKey;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneConfiguration;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.cloudfoundry.identity.uaa.zone.TokenPolicy;
+import org.springframework.context.ApplicationListener;
 import org.springframework.util.StringUtils;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.cloudfoundry.identity.uaa.util.UaaUrlUtils.addSubdomainToUrl;
 
-public class KeyInfoService {
+public class KeyInfoService implements ApplicationListener<AbstractUaaEvent> {
     private String uaaBaseURL;
+    private final ConcurrentMap<String, ZoneKeys> zoneKeys = new ConcurrentHashMap<>();
 
     public KeyInfoService(String uaaBaseURL) {
         this.uaaBaseURL = uaaBaseURL;
@@ -35,23 +45,60 @@ public class KeyInfoService {
         return getKeys().get(keyId);
     }
 
+    /**
+     * Returns the signing keys of the current zone. Parsed keys, together with their
+     * signers and verifiers, are kept per zone. As long as the zone carries the same
+     * token policy instance, with unchanged keys, and the same subdomain, the cached keys
+     * are returned without copying or comparing the configured keys.
+     */
     public Map<String, KeyInfo> getKeys() {
-        IdentityZoneConfiguration config = IdentityZoneHolder.get().getConfig();
-        if (config == null || config.getTokenPolicy().getKeys() == null || config.getTokenPolicy().getKeys().isEmpty()) {
-            config = IdentityZoneHolder.getUaaZone().getConfig();
+        IdentityZone zone = IdentityZoneHolder.get();
+        TokenPolicy policy = getTokenPolicy(zone.getConfig());
+        if (policy == null || !policy.hasKeys()) {
+            policy = getTokenPolicy(IdentityZoneHolder.getUaaZone().getConfig());
+        }
+        if (policy == null || !policy.hasKeys()) {
+            return Collections.singletonMap(LegacyTokenKey.LEGACY_TOKEN_KEY_ID, LegacyTokenKey.getLegacyTokenKeyInfo());
+        }
+
+        String subdomain = zone.getSubdomain();
+        ZoneKeys cached = zoneKeys.get(zone.getId());
+        if (cached != null && cached.isCurrent(policy, subdomain)) {
+            return cached.keys;
+        }
+
+        Map<String, String> signingKeys = policy.getKeys();
+        if (cached != null && cached.matches(signingKeys, subdomain)) {
+            //same keys in a different policy instance, keep the parsed keys
+            zoneKeys.put(zone.getId(), new ZoneKeys(policy, signingKeys, subdomain, cached.keys));
+            return cached.keys;
         }
 
+        String keyUrl = addSubdomainToUrl(uaaBaseURL);
         Map<String, KeyInfo> keys = new HashMap<>();
-        for (Map.Entry<String, String> entry : config.getTokenPolicy().getKeys().entrySet()) {
-            KeyInfo keyInfo = KeyInfoBuilder.build(entry.getKey(), entry.getValue(), addSubdomainToUrl(uaaBaseURL));
+        for (Map.Entry<String, String> entry : signingKeys.entrySet()) {
+            KeyInfo keyInfo = KeyInfoBuilder.build(entry.getKey(), entry.getValue(), keyUrl);
             keys.put(entry.getKey(), keyInfo);
         }
 
-        if (keys.isEmpty()) {
-            keys.put(LegacyTokenKey.LEGACY_TOKEN_KEY_ID, LegacyTokenKey.getLegacyTokenKeyInfo());
-        }
+        ZoneKeys built = new ZoneKeys(policy, signingKeys, subdomain, Collections.unmodifiableMap(keys));
+        zoneKeys.put(zone.getId(), built);
+        return built.keys;
+    }
+
+    private static TokenPolicy getTokenPolicy(IdentityZoneConfiguration config) {
+        return config == null ? null : config.getTokenPolicy();
+    }
 
-        return keys;
+    public void invalidate(String zoneId) {
+        zoneKeys.remove(zoneId);
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (event instanceof EntityDeletedEvent && ((EntityDeletedEvent) event).getDeleted() instanceof IdentityZone) {
+            invalidate(((IdentityZone) ((EntityDeletedEvent) event).getDeleted()).getId());
+        }
     }
 
     public KeyInfo getActiveKey() {
@@ -78,4 +125,28 @@ public class KeyInfoService {
 
         return activeKeyId;
     }
+
+    private static class ZoneKeys {
+        private final TokenPolicy policy;
+        private final int policyRevision;
+        private final Map<String, String> signingKeys;
+        private final String subdomain;
+        private final Map<String, KeyInfo> keys;
+
+        private ZoneKeys(TokenPolicy policy, Map<String, String> signingKeys, String subdomain, Map<String, KeyInfo> keys) {
+            this.policy = policy;
+            this.policyRevision = policy.getKeysRevision();
+            this.signingKeys = signingKeys;
+            this.subdomain = subdomain;
+            this.keys = keys;
+        }
+
+        private boolean isCurrent(TokenPolicy policy, String subdomain) {
+            return this.policy == policy && this.policyRevision == policy.getKeysRevision() && Objects.equals(this.subdomain, subdomain);
+        }
+
+        private boolean matches(Map<String, String> signingKeys, String subdomain) {
+            return this.signingKeys.equals(signingKeys) && Objects.equals(this.subdomain, subdomain);
+        }
+    }
 }
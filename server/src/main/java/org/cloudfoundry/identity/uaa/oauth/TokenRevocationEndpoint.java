@@ -25,8 +25,8 @@ import org.cloudfoundry.identity.uaa.oauth.token.RevocableTokenProvisioning;
 import org.cloudfoundry.identity.uaa.scim.ScimUser;
 import org.cloudfoundry.identity.uaa.scim.ScimUserProvisioning;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
+import org.cloudfoundry.identity.uaa.zone.ClientServicesExtension;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
-import org.cloudfoundry.identity.uaa.zone.MultitenantJdbcClientDetailsService;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.dao.EmptyResultDataAccessException;
@@ -58,12 +58,12 @@ public class TokenRevocationEndpoint implements ApplicationEventPublisherAware {
     protected final Log logger = LogFactory.getLog(getClass());
     private WebResponseExceptionTranslator exceptionTranslator = new DefaultWebResponseExceptionTranslator();
     private final ScimUserProvisioning userProvisioning;
-    private final MultitenantJdbcClientDetailsService clientDetailsService;
+    private final ClientServicesExtension clientDetailsService;
     private final RandomValueStringGenerator generator = new RandomValueStringGenerator(8);
     private final RevocableTokenProvisioning tokenProvisioning;
     private ApplicationEventPublisher eventPublisher;
 
-    public TokenRevocationEndpoint(MultitenantJdbcClientDetailsService clientDetailsService, ScimUserProvisioning userProvisioning, RevocableTokenProvisioning tokenProvisioning) {
+    public TokenRevocationEndpoint(ClientServicesExtension clientDetailsService, ScimUserProvisioning userProvisioning, RevocableTokenProvisioning tokenProvisioning) {
         this.clientDetailsService = clientDetailsService;
         this.userProvisioning = userProvisioning;
         this.tokenProvisioning = tokenProvisioning;
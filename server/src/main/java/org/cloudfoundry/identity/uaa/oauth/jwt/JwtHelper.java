@@ -3,13 +3,13 @@ package org.cloudfoundry.identity.uaa.oauth.jwt;
 import org.cloudfoundry.identity.uaa.oauth.KeyInfo;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.springframework.security.jwt.BinaryFormat;
+import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
 import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
 
 import java.nio.CharBuffer;
 
 import static org.springframework.security.jwt.codec.Codecs.b64UrlDecode;
 import static org.springframework.security.jwt.codec.Codecs.b64UrlEncode;
-import static org.springframework.security.jwt.codec.Codecs.concat;
 import static org.springframework.security.jwt.codec.Codecs.utf8Decode;
 import static org.springframework.security.jwt.codec.Codecs.utf8Encode;
 
@@ -18,8 +18,6 @@ import static org.springframework.security.jwt.codec.Codecs.utf8Encode;
  * @author Dave Syer
  */
 public class JwtHelper {
-    static byte[] PERIOD = utf8Encode(".");
-
     /**
      * Creates a token from an encoded token string.
      *
@@ -36,8 +34,6 @@ public class JwtHelper {
         CharBuffer buffer = CharBuffer.wrap(token, 0, firstPeriod);
         JwtHeader header = JwtHeaderHelper.create(buffer.toString());
 
-        buffer.limit(lastPeriod).position(firstPeriod + 1);
-        byte[] claims = b64UrlDecode(buffer);
         boolean emptyCrypto = lastPeriod == token.length() - 1;
 
         byte[] crypto;
@@ -52,15 +48,19 @@ public class JwtHelper {
             buffer.limit(token.length()).position(lastPeriod + 1);
             crypto = b64UrlDecode(buffer);
         }
-        return new JwtImpl(header, claims, crypto);
+        buffer.limit(lastPeriod).position(firstPeriod + 1);
+        String claims = utf8Decode(b64UrlDecode(buffer));
+        return new JwtImpl(header, token, lastPeriod, claims, crypto);
     }
 
     public static Jwt encode(CharSequence content, KeyInfo keyInfo) {
         JwtHeader header = JwtHeaderHelper.create(keyInfo.algorithm(), keyInfo.keyId(), keyInfo.keyURL());
         byte[] claims = utf8Encode(content);
-        byte[] crypto = keyInfo.getSigner()
-          .sign(concat(b64UrlEncode(header.bytes()), PERIOD, b64UrlEncode(claims)));
-        return new JwtImpl(header, claims, crypto);
+        String encodedHeader = utf8Decode(b64UrlEncode(header.bytes()));
+        String signingInput = encodedHeader + "." + utf8Decode(b64UrlEncode(claims));
+        byte[] crypto = keyInfo.getSigner().sign(utf8Encode(signingInput));
+        String token = signingInput + "." + utf8Decode(b64UrlEncode(crypto));
+        return new JwtImpl(header, token, signingInput.length(), content.toString(), crypto);
     }
 }
 
@@ -111,26 +111,34 @@ class JwtHeader implements BinaryFormat {
     }
 }
 
+/**
+ * JWT backed by its compact serialization. The signature is verified over the
+ * original encoded header and claims segments.
+ */
 class JwtImpl implements Jwt {
     private final JwtHeader header;
 
-    private final byte[] content;
+    private final String encoded;
 
-    private final byte[] crypto;
+    private final int lastPeriod;
+
+    private final String claims;
 
-    private String claims;
+    private final byte[] crypto;
 
     /**
-     * @param header  the header, containing the JWS/JWE algorithm information.
-     * @param content the base64-decoded "claims" segment (may be encrypted, depending on
-     *                header information).
-     * @param crypto  the base64-decoded "crypto" segment.
+     * @param header      the header, containing the JWS/JWE algorithm information.
+     * @param encoded     the compact serialization of the token
+     * @param lastPeriod  index of the "." separating the claims and crypto segments
+     * @param claims      the decoded claims segment
+     * @param crypto      the base64-decoded "crypto" segment.
      */
-    JwtImpl(JwtHeader header, byte[] content, byte[] crypto) {
+    JwtImpl(JwtHeader header, String encoded, int lastPeriod, String claims, byte[] crypto) {
         this.header = header;
-        this.content = content;
+        this.encoded = encoded;
+        this.lastPeriod = lastPeriod;
+        this.claims = claims;
         this.crypto = crypto;
-        claims = utf8Decode(content);
     }
 
     /**
@@ -143,17 +151,19 @@ class JwtImpl implements Jwt {
         verifier.verify(signingInput(), crypto);
     }
 
+    /**
+     * @return the ASCII bytes of the encoded header and claims segments, as they were signed
+     */
     private byte[] signingInput() {
-        return concat(safeB64UrlEncode(header.bytes()), JwtHelper.PERIOD,
-          safeB64UrlEncode(content));
-    }
-
-    private byte[] safeB64UrlEncode(byte[] bytes) {
-        if (bytes.length == 0) {
-            return bytes;
-        } else {
-            return b64UrlEncode(bytes);
+        byte[] input = new byte[lastPeriod];
+        for (int i = 0; i < lastPeriod; i++) {
+            char c = encoded.charAt(i);
+            if (c > 0x7f) {
+                throw new InvalidSignatureException("JWT signing input contains non ASCII characters");
+            }
+            input[i] = (byte) c;
         }
+        return input;
     }
 
     /**
@@ -164,23 +174,22 @@ class JwtImpl implements Jwt {
      */
     @Override
     public byte[] bytes() {
-        return concat(b64UrlEncode(header.bytes()), JwtHelper.PERIOD,
-          b64UrlEncode(content), JwtHelper.PERIOD, b64UrlEncode(crypto));
+        return utf8Encode(encoded);
     }
 
     @Override
     public String getClaims() {
-        return utf8Decode(content);
+        return claims;
     }
 
     @Override
     public String getEncoded() {
-        return utf8Decode(bytes());
+        return encoded;
     }
 
     @Override
     public String toString() {
-        return header + " " + claims + " [" + crypto.length + " crypto bytes]";
+        return header + " " + getClaims() + " [" + crypto.length + " crypto bytes]";
     }
 
     @Override
@@ -0,0 +1,293 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.provider;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityProviderModifiedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves the identity provider lookups of the login paths from a per zone snapshot, so that rendering the
+ * login page and authenticating do not query the {@code identity_provider} table and parse the provider
+ * configurations on every request.
+ * <p>
+ * A snapshot holds all providers of a zone, indexed by id and origin key. It expires after {@code ttlSeconds}
+ * and is dropped when a provider of the zone is created, updated or deleted on this node. When a
+ * {@link JdbcTemplate} and a poll interval are configured, the number of providers of the zone and their latest
+ * {@code lastmodified} timestamp are checked at most once per interval, and the snapshot is rebuilt when either
+ * changed, which picks up changes made on other nodes. A TTL of zero disables caching.
+ * <p>
+ * Callers receive copies of the cached providers. The definitions are parsed once per snapshot and shared, except
+ * for OIDC definitions which are cloned because {@code XOAuthProviderConfigurator} fills in their discovered
+ * endpoints. Callers must not modify any other definition.
+ */
+public class CachingIdentityProviderProvisioning implements IdentityProviderProvisioning, ApplicationListener<AbstractUaaEvent> {
+
+    private static final Log logger = LogFactory.getLog(CachingIdentityProviderProvisioning.class);
+
+    public static final String PROVIDER_FINGERPRINT_QUERY = "select count(*), max(lastmodified) from identity_provider where identity_zone_id=?";
+
+    private final IdentityProviderProvisioning delegate;
+    private final long ttlMillis;
+    private final Cache<String, Snapshot> snapshots;
+    private final AtomicLong generation = new AtomicLong(0);
+
+    private JdbcTemplate jdbcTemplate;
+    private long pollIntervalMillis = 0;
+    private TimeService timeService = new TimeServiceImpl();
+
+    public CachingIdentityProviderProvisioning(IdentityProviderProvisioning delegate, int ttlSeconds, int maxZones) {
+        this.delegate = delegate;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(Math.max(0, ttlSeconds));
+        this.snapshots = CacheBuilder
+            .newBuilder()
+            .expireAfterWrite(Math.max(1, ttlMillis), TimeUnit.MILLISECONDS)
+            .maximumSize(maxZones)
+            .build();
+    }
+
+    @Override
+    public IdentityProvider create(IdentityProvider identityProvider, String zoneId) {
+        try {
+            return delegate.create(identityProvider, zoneId);
+        } finally {
+            invalidate(zoneId);
+        }
+    }
+
+    @Override
+    public IdentityProvider update(IdentityProvider identityProvider, String zoneId) {
+        try {
+            return delegate.update(identityProvider, zoneId);
+        } finally {
+            invalidate(zoneId);
+        }
+    }
+
+    @Override
+    public IdentityProvider retrieve(String id, String zoneId) {
+        Snapshot snapshot = getSnapshot(zoneId);
+        if (snapshot == null) {
+            return delegate.retrieve(id, zoneId);
+        }
+        return copyOf(snapshot.byId.get(id));
+    }
+
+    @Override
+    public List<IdentityProvider> retrieveActive(String zoneId) {
+        return retrieveAll(true, zoneId);
+    }
+
+    @Override
+    public List<IdentityProvider> retrieveAll(boolean activeOnly, String zoneId) {
+        Snapshot snapshot = getSnapshot(zoneId);
+        if (snapshot == null) {
+            return delegate.retrieveAll(activeOnly, zoneId);
+        }
+        List<IdentityProvider> result = new ArrayList<>();
+        for (IdentityProvider provider : snapshot.providers) {
+            if (!activeOnly || provider.isActive()) {
+                result.add(copyOf(provider));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public IdentityProvider retrieveByOrigin(String origin, String zoneId) {
+        Snapshot snapshot = getSnapshot(zoneId);
+        if (snapshot == null) {
+            return delegate.retrieveByOrigin(origin, zoneId);
+        }
+        IdentityProvider provider = snapshot.byOrigin.get(origin);
+        return copyOf(provider != null && provider.isActive() ? provider : null);
+    }
+
+    @Override
+    public IdentityProvider retrieveByOriginIgnoreActiveFlag(String origin, String zoneId) {
+        Snapshot snapshot = getSnapshot(zoneId);
+        if (snapshot == null) {
+            return delegate.retrieveByOriginIgnoreActiveFlag(origin, zoneId);
+        }
+        return copyOf(snapshot.byOrigin.get(origin));
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (event instanceof IdentityProviderModifiedEvent) {
+            invalidate(((IdentityProvider) event.getSource()).getIdentityZoneId());
+        } else if (event instanceof EntityDeletedEvent) {
+            Object deleted = ((EntityDeletedEvent) event).getDeleted();
+            if (deleted instanceof IdentityProvider) {
+                invalidate(((IdentityProvider) deleted).getIdentityZoneId());
+            } else if (deleted instanceof IdentityZone) {
+                invalidate(((IdentityZone) deleted).getId());
+            }
+        }
+    }
+
+    protected Snapshot getSnapshot(String zoneId) {
+        if (ttlMillis <= 0 || zoneId == null) {
+            return null;
+        }
+        Snapshot snapshot = snapshots.getIfPresent(zoneId);
+        if (snapshot != null && isStale(snapshot, zoneId)) {
+            logger.debug("Identity providers changed in zone " + zoneId + ", rebuilding provider snapshot");
+            snapshots.invalidate(zoneId);
+            snapshot = null;
+        }
+        if (snapshot == null) {
+            long currentGeneration = generation.get();
+            try {
+                snapshot = new Snapshot(getFingerprint(zoneId), delegate.retrieveAll(false, zoneId), timeService.getCurrentTimeMillis());
+            } catch (RuntimeException e) {
+                logger.debug("Unable to build identity provider snapshot for zone " + zoneId, e);
+                return null;
+            }
+            //a provider changed while the snapshot was built, serve it once but do not keep it
+            if (generation.get() == currentGeneration) {
+                snapshots.put(zoneId, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    protected boolean isStale(Snapshot snapshot, String zoneId) {
+        if (jdbcTemplate == null || pollIntervalMillis <= 0) {
+            return false;
+        }
+        long now = timeService.getCurrentTimeMillis();
+        long last = snapshot.lastPoll.get();
+        if (now - last < pollIntervalMillis || !snapshot.lastPoll.compareAndSet(last, now)) {
+            return false;
+        }
+        try {
+            return !snapshot.fingerprint.equals(getFingerprint(zoneId));
+        } catch (RuntimeException e) {
+            logger.debug("Unable to check identity providers of zone " + zoneId, e);
+            return true;
+        }
+    }
+
+    protected String getFingerprint(String zoneId) {
+        if (jdbcTemplate == null || pollIntervalMillis <= 0) {
+            return "";
+        }
+        return jdbcTemplate.queryForObject(PROVIDER_FINGERPRINT_QUERY, (rs, rowNum) -> {
+            Timestamp lastModified = rs.getTimestamp(2);
+            return rs.getLong(1) + ":" + (lastModified == null ? 0 : lastModified.getTime());
+        }, zoneId);
+    }
+
+    protected IdentityProvider copyOf(IdentityProvider provider) {
+        if (provider == null) {
+            throw new EmptyResultDataAccessException(1);
+        }
+        AbstractIdentityProviderDefinition config = provider.getConfig();
+        if (config instanceof OIDCIdentityProviderDefinition) {
+            try {
+                config = (AbstractIdentityProviderDefinition) ((OIDCIdentityProviderDefinition) config).clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        //the origin and zone are set after the config, which fills them into the copied SAML definitions
+        IdentityProvider copy = new IdentityProvider();
+        copy.setConfig(config);
+        copy.setType(provider.getType());
+        copy.setId(provider.getId());
+        copy.setVersion(provider.getVersion());
+        copy.setCreated(provider.getCreated());
+        copy.setLastModified(provider.getLastModified());
+        copy.setName(provider.getName());
+        copy.setOriginKey(provider.getOriginKey());
+        copy.setActive(provider.isActive());
+        copy.setIdentityZoneId(provider.getIdentityZoneId());
+        return copy;
+    }
+
+    public void invalidate(String zoneId) {
+        generation.incrementAndGet();
+        if (zoneId != null) {
+            snapshots.invalidate(zoneId);
+        }
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        snapshots.invalidateAll();
+    }
+
+    public long size() {
+        return snapshots.size();
+    }
+
+    public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void setPollIntervalSeconds(int pollIntervalSeconds) {
+        this.pollIntervalMillis = TimeUnit.SECONDS.toMillis(Math.max(0, pollIntervalSeconds));
+    }
+
+    public void setTimeService(TimeService timeService) {
+        this.timeService = timeService;
+    }
+
+    /**
+     * The identity providers of one zone, as loaded by the delegate.
+     */
+    protected static class Snapshot {
+        private final String fingerprint;
+        private final List<IdentityProvider> providers;
+        private final Map<String, IdentityProvider> byId;
+        private final Map<String, IdentityProvider> byOrigin;
+        private final AtomicLong lastPoll;
+
+        Snapshot(String fingerprint, List<IdentityProvider> providers, long created) {
+            this.fingerprint = fingerprint;
+            this.providers = Collections.unmodifiableList(new ArrayList<>(providers));
+            Map<String, IdentityProvider> byId = new HashMap<>();
+            Map<String, IdentityProvider> byOrigin = new HashMap<>();
+            for (IdentityProvider provider : this.providers) {
+                byId.put(provider.getId(), provider);
+                byOrigin.put(provider.getOriginKey(), provider);
+            }
+            this.byId = Collections.unmodifiableMap(byId);
+            this.byOrigin = Collections.unmodifiableMap(byOrigin);
+            this.lastPoll = new AtomicLong(created);
+        }
+    }
+}
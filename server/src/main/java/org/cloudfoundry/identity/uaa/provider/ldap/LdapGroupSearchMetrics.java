@@ -0,0 +1,108 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.provider.ldap;
+
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the LDAP group searches performed to resolve the group membership of users during login,
+ * across the LDAP providers of all zones.
+ */
+@ManagedResource(
+    objectName = "cloudfoundry.identity:name=LdapGroupSearch",
+    description = "UAA LDAP Group Search Metrics"
+)
+public class LdapGroupSearchMetrics {
+
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder loginMillis = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder searchMillis = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final AtomicLong maxSearchesPerLogin = new AtomicLong(0);
+    private volatile long lastLoginSearches = 0;
+    private volatile long lastLoginMillis = 0;
+
+    public void recordSearch(long millis) {
+        searches.increment();
+        searchMillis.add(millis);
+    }
+
+    public void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    public void recordLogin(int searchCount, long millis) {
+        logins.increment();
+        loginMillis.add(millis);
+        maxSearchesPerLogin.accumulateAndGet(searchCount, Math::max);
+        lastLoginSearches = searchCount;
+        lastLoginMillis = millis;
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Logins Resolving LDAP Groups")
+    public long getLoginCount() {
+        return logins.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "LDAP Group Searches")
+    public long getSearchCount() {
+        return searches.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "LDAP Group Searches Served From Cache")
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Average LDAP Group Searches per Login")
+    public double getAverageSearchesPerLogin() {
+        long count = logins.sum();
+        return count == 0 ? 0 : (double) searches.sum() / count;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Maximum LDAP Group Searches per Login")
+    public long getMaxSearchesPerLogin() {
+        return maxSearchesPerLogin.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Average LDAP Group Resolution Time per Login (ms)")
+    public double getAverageLoginLatency() {
+        long count = logins.sum();
+        return count == 0 ? 0 : (double) loginMillis.sum() / count;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Average LDAP Group Search Time (ms)")
+    public double getAverageSearchLatency() {
+        long count = searches.sum();
+        return count == 0 ? 0 : (double) searchMillis.sum() / count;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "LDAP Group Searches of the Last Login")
+    public long getLastLoginSearchCount() {
+        return lastLoginSearches;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "LDAP Group Resolution Time of the Last Login (ms)")
+    public long getLastLoginLatency() {
+        return lastLoginMillis;
+    }
+}
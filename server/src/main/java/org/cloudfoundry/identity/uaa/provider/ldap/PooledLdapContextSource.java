@@ -0,0 +1,103 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.provider.ldap;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.ldap.NamingException;
+import org.springframework.ldap.core.DistinguishedName;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.ldap.pool2.factory.PoolConfig;
+import org.springframework.ldap.pool2.factory.PooledContextSource;
+import org.springframework.ldap.pool2.validation.DefaultDirContextValidator;
+
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.LdapName;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the connections bound as the manager DN in a pool, so that the user and group searches of a login
+ * reuse open connections instead of paying for a new TCP and TLS handshake every time.
+ * <p>
+ * Pooled connections are validated when they are borrowed and while they are idle, and connections idle for
+ * longer than {@code idleEvictionSeconds} are closed. When all connections are in use, a search waits at most
+ * {@code maxWaitMillis} for one to be returned and then fails. Binds with the credentials of a user, as done by the
+ * {@code BindAuthenticator}, are never pooled and go straight to the delegate.
+ */
+public class PooledLdapContextSource implements BaseLdapPathContextSource, DisposableBean {
+
+    private final BaseLdapPathContextSource delegate;
+    private final PooledContextSource pool;
+    private final long maxWaitMillis;
+
+    public PooledLdapContextSource(BaseLdapPathContextSource delegate, int maxSize, int idleEvictionSeconds, long maxWaitMillis) {
+        this.delegate = delegate;
+        this.maxWaitMillis = Math.max(1, maxWaitMillis);
+        long idleEvictionMillis = TimeUnit.SECONDS.toMillis(Math.max(1, idleEvictionSeconds));
+
+        PoolConfig config = new PoolConfig();
+        config.setMaxTotalPerKey(maxSize);
+        config.setMaxIdlePerKey(maxSize);
+        config.setMinIdlePerKey(0);
+        config.setMaxWaitMillis(this.maxWaitMillis);
+        config.setTestOnBorrow(true);
+        config.setTestWhileIdle(true);
+        config.setMinEvictableIdleTimeMillis(idleEvictionMillis);
+        config.setTimeBetweenEvictionRunsMillis(Math.max(1000, idleEvictionMillis / 2));
+
+        pool = new PooledContextSource(config);
+        pool.setContextSource(delegate);
+        pool.setDirContextValidator(new DefaultDirContextValidator());
+    }
+
+    @Override
+    public DirContext getReadOnlyContext() throws NamingException {
+        return pool.getReadOnlyContext();
+    }
+
+    long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    @Override
+    public DirContext getReadWriteContext() throws NamingException {
+        return pool.getReadWriteContext();
+    }
+
+    @Override
+    public DirContext getContext(String principal, String credentials) throws NamingException {
+        return delegate.getContext(principal, credentials);
+    }
+
+    @Override
+    public DistinguishedName getBaseLdapPath() {
+        return delegate.getBaseLdapPath();
+    }
+
+    @Override
+    public LdapName getBaseLdapName() {
+        return delegate.getBaseLdapName();
+    }
+
+    @Override
+    public String getBaseLdapPathAsString() {
+        return delegate.getBaseLdapPathAsString();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        pool.destroy();
+    }
+}
@@ -15,18 +15,33 @@
  */
 package org.cloudfoundry.identity.uaa.provider.ldap.extension;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.provider.ldap.LdapGroupSearchMetrics;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.ldap.core.ContextSource;
 import org.springframework.ldap.core.DirContextOperations;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static java.util.Collections.EMPTY_LIST;
@@ -60,15 +75,27 @@ import static java.util.Collections.EMPTY_LIST;
  * </pre>
  * <p>
  * During an authentication
+ * <p>
+ * When {@code maxConcurrentSearches} is greater than one, the groups are resolved level by level and the searches
+ * of a level run concurrently, at most {@code maxConcurrentSearches} at a time. When a cache TTL is set, the parent
+ * groups found for a group are kept for that long, so users sharing a group tree reuse the resolution.
+ * The search of the user's own groups is never cached.
  */
 
-public class NestedLdapAuthoritiesPopulator extends DefaultLdapAuthoritiesPopulator {
+public class NestedLdapAuthoritiesPopulator extends DefaultLdapAuthoritiesPopulator implements DisposableBean {
     public static final String MEMBER_OF = "memberOf";
     private static final Log logger = LogFactory.getLog(NestedLdapAuthoritiesPopulator.class);
 
     private Set<String> attributeNames;
+    //the attribute names and the group role attribute, fixed when configured and shared by concurrent searches
+    private volatile String[] searchAttributes = new String[0];
 
     private int maxSearchDepth = 10;
+
+    private int maxConcurrentSearches = 1;
+    private ExecutorService searchExecutor;
+    private Cache<String, Set<Map<String, String[]>>> parentGroups;
+    private LdapGroupSearchMetrics metrics = new LdapGroupSearchMetrics();
     /**
      * Constructor for group search scenarios. <tt>userRoleAttributes</tt> may still be
      * set as a property.
@@ -78,6 +105,7 @@ public class NestedLdapAuthoritiesPopulator extends DefaultLdapAuthoritiesPopula
      */
     public NestedLdapAuthoritiesPopulator(ContextSource contextSource, String groupSearchBase) {
         super(contextSource, groupSearchBase);
+        updateSearchAttributes();
     }
 
     @Override
@@ -101,13 +129,27 @@ public class NestedLdapAuthoritiesPopulator extends DefaultLdapAuthoritiesPopula
         }
 
         Set<GrantedAuthority> authorities = new HashSet<GrantedAuthority>();
-
-        performNestedSearch(userDn, username, authorities, getMaxSearchDepth());
+        AtomicInteger searches = new AtomicInteger(0);
+        long start = System.nanoTime();
+        try {
+            if (maxConcurrentSearches > 1) {
+                performConcurrentNestedSearch(userDn, username, authorities, getMaxSearchDepth(), searches);
+            } else {
+                performNestedSearch(userDn, username, authorities, getMaxSearchDepth(), searches);
+            }
+        } finally {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            metrics.recordLogin(searches.get(), elapsed);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Resolved " + authorities.size() + " roles for user '" + username + "' with " +
+                    searches.get() + " LDAP searches in " + elapsed + "ms");
+            }
+        }
 
         return authorities;
     }
 
-    protected void performNestedSearch(String userDn, String username, Set<GrantedAuthority> authorities, int depth) {
+    protected void performNestedSearch(String userDn, String username, Set<GrantedAuthority> authorities, int depth, AtomicInteger searches) {
         if (depth==0) {
             //back out of recursion
             logger.debug("Search aborted, max depth reached,"+
@@ -116,44 +158,138 @@ public class NestedLdapAuthoritiesPopulator extends DefaultLdapAuthoritiesPopula
             return;
         }
 
-        if (logger.isDebugEnabled()) {
-            logger.debug("Searching for roles for user '" + username + "', DN = " + "'" + userDn + "', with filter "
-                + getGroupSearchFilter() + " in search base '" + getGroupSearchBase() + "'");
+        //only the parents of groups are shared between users
+        Set<Map<String,String[]>> userRoles = searchForRoles(userDn, username, depth < getMaxSearchDepth(), searches);
+
+        for (Map<String,String[]> record : userRoles) {
+            String roleName = addRoles(record, authorities);
+            if (roleName != null) {
+                performNestedSearch(record.get(SpringSecurityLdapTemplate.DN_KEY)[0], roleName, authorities, (depth - 1), searches);
+            }
         }
+    }
 
-        if (StringUtils.hasText(getGroupRoleAttribute()) && !getAttributeNames().contains(getGroupRoleAttribute())) {
-            getAttributeNames().add(getGroupRoleAttribute());
+    /**
+     * Resolves the groups one level at a time, running the searches of a level concurrently.
+     */
+    protected void performConcurrentNestedSearch(String userDn, String username, Set<GrantedAuthority> authorities, int maxDepth, AtomicInteger searches) {
+        Map<String, String> level = new LinkedHashMap<>();
+        level.put(userDn, username);
+        for (int depth = maxDepth; depth > 0 && !level.isEmpty(); depth--) {
+            boolean cacheable = depth < maxDepth;
+            List<Set<Map<String, String[]>>> results = new ArrayList<>();
+            if (level.size() == 1) {
+                Map.Entry<String, String> entry = level.entrySet().iterator().next();
+                results.add(searchForRoles(entry.getKey(), entry.getValue(), cacheable, searches));
+            } else {
+                List<CompletableFuture<Set<Map<String, String[]>>>> futures = new ArrayList<>();
+                for (Map.Entry<String, String> entry : level.entrySet()) {
+                    futures.add(CompletableFuture.supplyAsync(
+                        () -> searchForRoles(entry.getKey(), entry.getValue(), cacheable, searches),
+                        getSearchExecutor()
+                    ));
+                }
+                for (CompletableFuture<Set<Map<String, String[]>>> future : futures) {
+                    results.add(join(future));
+                }
+            }
+
+            Map<String, String> next = new LinkedHashMap<>();
+            for (Set<Map<String, String[]>> userRoles : results) {
+                for (Map<String, String[]> record : userRoles) {
+                    String roleName = addRoles(record, authorities);
+                    String dn = record.get(SpringSecurityLdapTemplate.DN_KEY)[0];
+                    if (roleName != null && !next.containsKey(dn)) {
+                        next.put(dn, roleName);
+                    }
+                }
+            }
+            level = next;
         }
 
+        if (!level.isEmpty()) {
+            logger.debug("Search aborted, max depth reached, for roles for user '" + username + "', DN = '" + userDn +
+                "', with filter " + getGroupSearchFilter() + " in search base '" + getGroupSearchBase() + "'");
+        }
+    }
+
+    protected Set<Map<String, String[]>> searchForRoles(String dn, String name, boolean cacheable, AtomicInteger searches) {
+        String key = dn + "\n" + name;
+        if (cacheable && parentGroups != null) {
+            Set<Map<String, String[]>> cached = parentGroups.getIfPresent(key);
+            if (cached != null) {
+                metrics.recordCacheHit();
+                return cached;
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Searching for roles for user '" + name + "', DN = " + "'" + dn + "', with filter "
+                + getGroupSearchFilter() + " in search base '" + getGroupSearchBase() + "'");
+        }
+
+        long start = System.nanoTime();
         Set<Map<String,String[]>> userRoles = getLdapTemplate().searchForMultipleAttributeValues(
             getGroupSearchBase(),
             getGroupSearchFilter(),
-            new String[]{userDn, username},
-            getAttributeNames().toArray(new String[getAttributeNames().size()]));
+            new String[]{dn, name},
+            searchAttributes);
+        searches.incrementAndGet();
+        metrics.recordSearch(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
 
         if (logger.isDebugEnabled()) {
             logRoles(userRoles);
         }
 
-        for (Map<String,String[]> record : userRoles) {
-            boolean circular = false;
-            String dn = record.get(SpringSecurityLdapTemplate.DN_KEY)[0];
-            String[] roleValues = record.get(getGroupRoleAttribute());
-            Set<String> roles = new HashSet<String>();
-            roles.addAll(Arrays.asList(roleValues!=null?roleValues:new String[0]));
-            for (String role : roles) {
-                if (isConvertToUpperCase()) {
-                    role = role.toUpperCase();
-                }
-                role = getRolePrefix() + role;
-                circular = circular | (!authorities.add(new LdapAuthority(role,dn,record)));
+        if (cacheable && parentGroups != null) {
+            userRoles = Collections.unmodifiableSet(userRoles);
+            parentGroups.put(key, userRoles);
+        }
+        return userRoles;
+    }
+
+    /**
+     * @return the name to search the parents of the group with, or null if the group was found before
+     */
+    protected String addRoles(Map<String, String[]> record, Set<GrantedAuthority> authorities) {
+        boolean circular = false;
+        String dn = record.get(SpringSecurityLdapTemplate.DN_KEY)[0];
+        String[] roleValues = record.get(getGroupRoleAttribute());
+        Set<String> roles = new HashSet<String>();
+        roles.addAll(Arrays.asList(roleValues!=null?roleValues:new String[0]));
+        for (String role : roles) {
+            if (isConvertToUpperCase()) {
+                role = role.toUpperCase();
             }
-            String roleName = roles.size()>0 ? roles.iterator().next() : dn;
-            if (!circular) {
-                performNestedSearch(dn, roleName, authorities, (depth - 1));
+            role = getRolePrefix() + role;
+            circular = circular | (!authorities.add(new LdapAuthority(role,dn,record)));
+        }
+        if (circular) {
+            return null;
+        }
+        return roles.size()>0 ? roles.iterator().next() : dn;
+    }
+
+    private Set<Map<String, String[]>> join(CompletableFuture<Set<Map<String, String[]>>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw e;
+        }
+    }
 
+    private synchronized ExecutorService getSearchExecutor() {
+        if (searchExecutor == null) {
+            searchExecutor = Executors.newFixedThreadPool(maxConcurrentSearches, runnable -> {
+                Thread thread = new Thread(runnable, "ldap-group-search");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
+        return searchExecutor;
     }
 
     protected void logRoles(Set<Map<String, String[]>> userRoles) {
@@ -186,6 +322,21 @@ public class NestedLdapAuthoritiesPopulator extends DefaultLdapAuthoritiesPopula
 
     public void setAttributeNames(Set<String> attributeNames) {
         this.attributeNames = attributeNames;
+        updateSearchAttributes();
+    }
+
+    @Override
+    public void setGroupRoleAttribute(String groupRoleAttribute) {
+        super.setGroupRoleAttribute(groupRoleAttribute);
+        updateSearchAttributes();
+    }
+
+    private void updateSearchAttributes() {
+        Set<String> names = attributeNames == null ? new LinkedHashSet<>() : new LinkedHashSet<>(attributeNames);
+        if (StringUtils.hasText(getGroupRoleAttribute())) {
+            names.add(getGroupRoleAttribute());
+        }
+        searchAttributes = names.toArray(new String[names.size()]);
     }
 
     public int getMaxSearchDepth() {
@@ -196,6 +347,45 @@ public class NestedLdapAuthoritiesPopulator extends DefaultLdapAuthoritiesPopula
         this.maxSearchDepth = maxSearchDepth;
     }
 
+    public int getMaxConcurrentSearches() {
+        return maxConcurrentSearches;
+    }
+
+    /**
+     * @param maxConcurrentSearches number of group searches of a level that run at the same time,
+     *                              one searches the groups sequentially, depth first
+     */
+    public void setMaxConcurrentSearches(int maxConcurrentSearches) {
+        this.maxConcurrentSearches = Math.max(1, maxConcurrentSearches);
+    }
+
+    /**
+     * @param ttlSeconds how long the parent groups found for a group are reused, zero disables caching
+     */
+    public void setParentGroupCacheTtl(int ttlSeconds) {
+        if (ttlSeconds > 0) {
+            parentGroups = CacheBuilder
+                .newBuilder()
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .maximumSize(10000)
+                .build();
+        } else {
+            parentGroups = null;
+        }
+    }
+
+    public void setMetrics(LdapGroupSearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (searchExecutor != null) {
+            searchExecutor.shutdownNow();
+            searchExecutor = null;
+        }
+    }
+
 
 
 }
@@ -1,21 +1,65 @@
 package org.cloudfoundry.identity.uaa.provider.oauth;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.lang3.StringUtils;
 import org.cloudfoundry.identity.uaa.cache.UrlContentCache;
 import org.cloudfoundry.identity.uaa.provider.OIDCIdentityProviderDefinition;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.util.Optional.ofNullable;
 
+/**
+ * Fills in the endpoints of OIDC providers from their discovery document.
+ * <p>
+ * By default the discovery document is read through the {@link UrlContentCache} on every call. When a refresh
+ * interval is set, the parsed documents are kept in memory instead: a document older than the interval keeps being
+ * served while it is refreshed in the background, and concurrent callers waiting for the same document share
+ * a single fetch. {@link #updateDefinitionFromLoadedMetadata(OIDCIdentityProviderDefinition)} never waits for
+ * the network, which keeps upstream calls out of the login page. After a failed fetch, background loads of the
+ * same document are not retried before the retry backoff has passed.
+ */
 public class OidcMetadataFetcher {
+    private static final Logger logger = LoggerFactory.getLogger(OidcMetadataFetcher.class);
+
     private final UrlContentCache contentCache;
     private final RestTemplate trustingRestTemplate;
     private final RestTemplate nonTrustingRestTemplate;
 
+    private final Cache<String, MetadataEntry> metadata = CacheBuilder
+        .newBuilder()
+        .expireAfterAccess(1, TimeUnit.DAYS)
+        .maximumSize(10000)
+        .build();
+    private final Cache<String, Long> retryNotBefore = CacheBuilder
+        .newBuilder()
+        .maximumSize(10000)
+        .build();
+    private final ConcurrentMap<String, CompletableFuture<OidcMetadata>> loading = new ConcurrentHashMap<>();
+
+    private Duration refreshInterval = Duration.ZERO;
+    private Duration retryBackoff = Duration.ofSeconds(30);
+    private TimeService timeService = new TimeServiceImpl();
+    private Executor refreshExecutor;
+
     public OidcMetadataFetcher(UrlContentCache contentCache,
                                RestTemplate trustingRestTemplate,
                                RestTemplate nonTrustingRestTemplate
@@ -27,20 +71,131 @@ public class OidcMetadataFetcher {
 
     public void fetchMetadataAndUpdateDefinition(OIDCIdentityProviderDefinition definition) throws OidcMetadataFetchingException {
         if (shouldFetchMetadata(definition)) {
-            OidcMetadata oidcMetadata =
-                    fetchMetadata(definition.getDiscoveryUrl(), definition.isSkipSslValidation());
+            OidcMetadata oidcMetadata;
+            if (isBackgroundRefreshEnabled()) {
+                oidcMetadata = getLoadedMetadata(definition);
+                if (oidcMetadata == null) {
+                    oidcMetadata = load(getKey(definition), definition.getDiscoveryUrl(), definition.isSkipSslValidation());
+                }
+            } else {
+                oidcMetadata = fetchMetadata(definition.getDiscoveryUrl(), definition.isSkipSslValidation());
+            }
 
             updateIdpDefinition(definition, oidcMetadata);
         }
     }
 
-    private OidcMetadata fetchMetadata(URL discoveryUrl, boolean shouldDoSslValidation) throws OidcMetadataFetchingException {
-        byte[] rawContents;
-        if (shouldDoSslValidation) {
-            rawContents = contentCache.getUrlContent(discoveryUrl.toString(), trustingRestTemplate);
-        } else {
-            rawContents = contentCache.getUrlContent(discoveryUrl.toString(), nonTrustingRestTemplate);
+    /**
+     * Like {@link #fetchMetadataAndUpdateDefinition(OIDCIdentityProviderDefinition)}, but only uses discovery
+     * documents that are already in memory. A missing document is loaded in the background.
+     * Without a refresh interval this fetches the document like {@code fetchMetadataAndUpdateDefinition}.
+     * @throws OidcMetadataNotLoadedException if the discovery document has not been loaded yet
+     */
+    public void updateDefinitionFromLoadedMetadata(OIDCIdentityProviderDefinition definition) throws OidcMetadataFetchingException {
+        if (!isBackgroundRefreshEnabled()) {
+            fetchMetadataAndUpdateDefinition(definition);
+        } else if (shouldFetchMetadata(definition)) {
+            OidcMetadata oidcMetadata = getLoadedMetadata(definition);
+            if (oidcMetadata == null) {
+                preload(definition);
+                throw new OidcMetadataNotLoadedException("Discovery metadata not loaded yet for " + definition.getDiscoveryUrl());
+            }
+            updateIdpDefinition(definition, oidcMetadata);
+        }
+    }
+
+    /**
+     * Starts loading the discovery document of the provider in the background, unless it is already in memory
+     * or a recent fetch failed. Does nothing without a refresh interval.
+     */
+    public void preload(OIDCIdentityProviderDefinition definition) {
+        if (isBackgroundRefreshEnabled() && shouldFetchMetadata(definition)) {
+            String key = getKey(definition);
+            if (metadata.getIfPresent(key) == null && !isBackingOff(key)) {
+                loadInBackground(key, definition.getDiscoveryUrl(), definition.isSkipSslValidation());
+            }
+        }
+    }
+
+    private OidcMetadata getLoadedMetadata(OIDCIdentityProviderDefinition definition) {
+        String key = getKey(definition);
+        MetadataEntry entry = metadata.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        if (timeService.getCurrentTimeMillis() - entry.fetchedAt >= refreshInterval.toMillis()
+            && !isBackingOff(key)
+            && entry.refreshing.compareAndSet(false, true)) {
+            loadInBackground(key, definition.getDiscoveryUrl(), definition.isSkipSslValidation());
+        }
+        return entry.metadata;
+    }
+
+    private void loadInBackground(String key, URL discoveryUrl, boolean skipSslValidation) {
+        if (loading.containsKey(key)) {
+            return;
+        }
+        getRefreshExecutor().execute(() -> {
+            try {
+                load(key, discoveryUrl, skipSslValidation);
+            } catch (OidcMetadataFetchingException | RuntimeException x) {
+                logger.warn("Unable to refresh discovery metadata from " + discoveryUrl, x);
+                MetadataEntry entry = metadata.getIfPresent(key);
+                if (entry != null) {
+                    entry.refreshing.set(false);
+                }
+            }
+        });
+    }
+
+    private OidcMetadata load(String key, URL discoveryUrl, boolean skipSslValidation) throws OidcMetadataFetchingException {
+        CompletableFuture<OidcMetadata> future = new CompletableFuture<>();
+        CompletableFuture<OidcMetadata> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return join(existing);
         }
+        try {
+            OidcMetadata oidcMetadata = parse(getRestTemplate(skipSslValidation).getForObject(discoveryUrl.toURI(), byte[].class));
+            metadata.put(key, new MetadataEntry(oidcMetadata, timeService.getCurrentTimeMillis()));
+            retryNotBefore.invalidate(key);
+            future.complete(oidcMetadata);
+            return oidcMetadata;
+        } catch (URISyntaxException e) {
+            OidcMetadataFetchingException x = new OidcMetadataFetchingException(e);
+            retryNotBefore.put(key, timeService.getCurrentTimeMillis() + retryBackoff.toMillis());
+            future.completeExceptionally(x);
+            throw x;
+        } catch (OidcMetadataFetchingException | RuntimeException e) {
+            retryNotBefore.put(key, timeService.getCurrentTimeMillis() + retryBackoff.toMillis());
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    private OidcMetadata join(CompletableFuture<OidcMetadata> future) throws OidcMetadataFetchingException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OidcMetadataFetchingException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OidcMetadataFetchingException) {
+                throw (OidcMetadataFetchingException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new OidcMetadataFetchingException(e.getCause());
+        }
+    }
+
+    private OidcMetadata fetchMetadata(URL discoveryUrl, boolean shouldDoSslValidation) throws OidcMetadataFetchingException {
+        byte[] rawContents = contentCache.getUrlContent(discoveryUrl.toString(), getRestTemplate(shouldDoSslValidation));
+        return parse(rawContents);
+    }
+
+    private OidcMetadata parse(byte[] rawContents) throws OidcMetadataFetchingException {
         try {
             return new ObjectMapper().readValue(rawContents, OidcMetadata.class);
         } catch (IOException e) {
@@ -48,6 +203,10 @@ public class OidcMetadataFetcher {
         }
     }
 
+    private RestTemplate getRestTemplate(boolean skipSslValidation) {
+        return skipSslValidation ? trustingRestTemplate : nonTrustingRestTemplate;
+    }
+
     private void updateIdpDefinition(OIDCIdentityProviderDefinition definition, OidcMetadata oidcMetadata) {
         definition.setAuthUrl(ofNullable(definition.getAuthUrl()).orElse(oidcMetadata.getAuthorizationEndpoint()));
         definition.setTokenUrl(ofNullable(definition.getTokenUrl()).orElse(oidcMetadata.getTokenEndpoint()));
@@ -59,4 +218,67 @@ public class OidcMetadataFetcher {
     private boolean shouldFetchMetadata(OIDCIdentityProviderDefinition definition) {
         return definition.getDiscoveryUrl() != null && !StringUtils.isBlank(definition.getDiscoveryUrl().toString());
     }
+
+    private static String getKey(OIDCIdentityProviderDefinition definition) {
+        return (definition.isSkipSslValidation() ? "trusting:" : "validating:") + definition.getDiscoveryUrl();
+    }
+
+    private boolean isBackingOff(String key) {
+        Long notBefore = retryNotBefore.getIfPresent(key);
+        return notBefore != null && timeService.getCurrentTimeMillis() < notBefore;
+    }
+
+    public boolean isBackgroundRefreshEnabled() {
+        return !refreshInterval.isZero() && !refreshInterval.isNegative();
+    }
+
+    private synchronized Executor getRefreshExecutor() {
+        if (refreshExecutor == null) {
+            refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "oidc-metadata-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return refreshExecutor;
+    }
+
+    public synchronized void setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * @param refreshInterval age after which an in-memory discovery document is refreshed in the background,
+     *                        zero reads the document through the content cache on every call
+     */
+    public void setRefreshInterval(Duration refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * @param retryBackoff time after a failed fetch during which the document is not loaded in the background again
+     */
+    public void setRetryBackoff(Duration retryBackoff) {
+        this.retryBackoff = retryBackoff;
+    }
+
+    public void setTimeService(TimeService timeService) {
+        this.timeService = timeService;
+    }
+
+    public void clear() {
+        metadata.invalidateAll();
+        retryNotBefore.invalidateAll();
+    }
+
+    static class MetadataEntry {
+        final OidcMetadata metadata;
+        final long fetchedAt;
+        final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        MetadataEntry(OidcMetadata metadata, long fetchedAt) {
+            this.metadata = metadata;
+            this.fetchedAt = fetchedAt;
+        }
+    }
 }
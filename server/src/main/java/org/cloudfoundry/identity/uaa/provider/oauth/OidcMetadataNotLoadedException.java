@@ -0,0 +1,10 @@
+package org.cloudfoundry.identity.uaa.provider.oauth;
+
+/**
+ * The discovery document of a provider is not in memory yet and is being loaded in the background.
+ */
+public class OidcMetadataNotLoadedException extends OidcMetadataFetchingException {
+    public OidcMetadataNotLoadedException(String message) {
+        super(message);
+    }
+}
@@ -113,6 +113,7 @@ public class XOAuthAuthenticationManager extends ExternalLoginAuthenticationMana
 
     private TokenEndpointBuilder tokenEndpointBuilder;
     private KeyInfoService keyInfoService;
+    private XOAuthTokenKeyCache tokenKeyCache;
 
     //origin is per thread during execution
     private final ThreadLocal<String> origin = ThreadLocal.withInitial(() -> "unknown");
@@ -525,8 +526,7 @@ public class XOAuthAuthenticationManager extends ExternalLoginAuthenticationMana
             List<SignatureVerifier> signatureVerifiers = getTokenKeyForUaaOrigin();
             validation = buildIdTokenValidator(idToken, new ChainedSignatureVerifier(signatureVerifiers), keyInfoService);
         } else {
-            JsonWebKeySet<JsonWebKey> tokenKeyFromOAuth = getTokenKeyFromOAuth(config);
-            validation = buildIdTokenValidator(idToken, new ChainedSignatureVerifier(tokenKeyFromOAuth), keyInfoService)
+            validation = buildIdTokenValidator(idToken, getTokenKeyVerifier(idToken, config), keyInfoService)
                 .checkIssuer((isEmpty(config.getIssuer()) ? config.getTokenUrl().toString() : config.getIssuer()))
                 .checkAudience(config.getRelyingPartyId());
         }
@@ -545,6 +545,16 @@ public class XOAuthAuthenticationManager extends ExternalLoginAuthenticationMana
         return key.startsWith("-----BEGIN");
     }
 
+    private ChainedSignatureVerifier getTokenKeyVerifier(String idToken, AbstractXOAuthIdentityProviderDefinition config) {
+        URL tokenKeyUrl = config.getTokenKeyUrl();
+        if (tokenKeyCache == null || StringUtils.hasText(config.getTokenKey()) || tokenKeyUrl == null || !StringUtils.hasText(tokenKeyUrl.toString())) {
+            return new ChainedSignatureVerifier(getTokenKeyFromOAuth(config));
+        }
+        String kid = JwtHelper.decode(idToken).getHeader().getKid();
+        String key = tokenKeyUrl.toString() + "|" + config.getRelyingPartyId() + "|" + config.isSkipSslValidation();
+        return tokenKeyCache.getVerifier(key, kid, () -> fetchTokenKeys(config));
+    }
+
     private JsonWebKeySet<JsonWebKey> getTokenKeyFromOAuth(AbstractXOAuthIdentityProviderDefinition config) {
 
         String tokenKey = config.getTokenKey();
@@ -560,6 +570,11 @@ public class XOAuthAuthenticationManager extends ExternalLoginAuthenticationMana
             return new JsonWebKeySet<>(Collections.emptyList());
         }
 
+        return JsonWebKeyHelper.deserialize(fetchTokenKeys(config).getBody());
+    }
+
+    private ResponseEntity<String> fetchTokenKeys(AbstractXOAuthIdentityProviderDefinition config) {
+        URL tokenKeyUrl = config.getTokenKeyUrl();
         MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
         headers.add("Authorization", getClientAuthHeader(config));
         headers.add("Accept", "application/json");
@@ -568,7 +583,7 @@ public class XOAuthAuthenticationManager extends ExternalLoginAuthenticationMana
         ResponseEntity<String> responseEntity = getRestTemplate(config).exchange(tokenKeyUrl.toString(), HttpMethod.GET, tokenKeyRequest, String.class);
         logger.debug("Token key response:"+responseEntity.getStatusCode());
         if (responseEntity.getStatusCode() == HttpStatus.OK) {
-            return JsonWebKeyHelper.deserialize(responseEntity.getBody());
+            return responseEntity;
         } else {
             throw new InvalidTokenException("Unable to fetch verification keys, status:" + responseEntity.getStatusCode());
         }
@@ -643,6 +658,10 @@ public class XOAuthAuthenticationManager extends ExternalLoginAuthenticationMana
         return keyInfoService;
     }
 
+    public void setTokenKeyCache(XOAuthTokenKeyCache tokenKeyCache) {
+        this.tokenKeyCache = tokenKeyCache;
+    }
+
     protected static class AuthenticationData {
 
         private Map<String, Object> claims;
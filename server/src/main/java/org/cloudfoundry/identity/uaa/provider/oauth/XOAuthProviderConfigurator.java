@@ -20,8 +20,14 @@ import org.cloudfoundry.identity.uaa.provider.AbstractXOAuthIdentityProviderDefi
 import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
 import org.cloudfoundry.identity.uaa.provider.IdentityProviderProvisioning;
 import org.cloudfoundry.identity.uaa.provider.OIDCIdentityProviderDefinition;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneProvisioning;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityProviderModifiedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 
@@ -37,12 +43,20 @@ import static java.util.Optional.ofNullable;
 import static org.cloudfoundry.identity.uaa.constants.OriginKeys.OAUTH20;
 import static org.cloudfoundry.identity.uaa.constants.OriginKeys.OIDC10;
 
-public class XOAuthProviderConfigurator implements IdentityProviderProvisioning {
+/**
+ * Completes OAuth and OIDC providers with the endpoints of their discovery documents.
+ * <p>
+ * When the {@link OidcMetadataFetcher} keeps discovery documents in memory, the documents of the active OIDC
+ * providers of all zones are preloaded at startup, and again when a provider is modified, so that the login page
+ * does not leave them out while they load.
+ */
+public class XOAuthProviderConfigurator implements IdentityProviderProvisioning, ApplicationListener<ApplicationEvent> {
 
     private static Logger log = LoggerFactory.getLogger(XOAuthProviderConfigurator.class);
 
     private final IdentityProviderProvisioning providerProvisioning;
     private OidcMetadataFetcher oidcMetadataFetcher;
+    private IdentityZoneProvisioning identityZoneProvisioning;
 
     public XOAuthProviderConfigurator(IdentityProviderProvisioning providerProvisioning, OidcMetadataFetcher oidcMetadataFetcher) {
         this.providerProvisioning = providerProvisioning;
@@ -126,6 +140,19 @@ public class XOAuthProviderConfigurator implements IdentityProviderProvisioning
 
     @Override
     public List<IdentityProvider> retrieveAll(boolean activeOnly, String zoneId) {
+        return retrieveAll(activeOnly, zoneId, true);
+    }
+
+    /**
+     * Same as {@link #retrieveAll(boolean, String)}, but OIDC providers are only completed from discovery
+     * metadata that has already been loaded, so that rendering the login page does not wait for upstream calls.
+     * Providers whose metadata is still loading are left out.
+     */
+    public List<IdentityProvider> retrieveAllWithLoadedMetadata(boolean activeOnly, String zoneId) {
+        return retrieveAll(activeOnly, zoneId, false);
+    }
+
+    private List<IdentityProvider> retrieveAll(boolean activeOnly, String zoneId, boolean fetchMetadata) {
         final List<String> types = Arrays.asList(OAUTH20, OIDC10);
         List<IdentityProvider> providers = providerProvisioning.retrieveAll(activeOnly, zoneId);
         List<IdentityProvider> overlayedProviders = new ArrayList<>();
@@ -134,8 +161,16 @@ public class XOAuthProviderConfigurator implements IdentityProviderProvisioning
           .forEach(p -> {
               if (p.getType().equals(OIDC10)) {
                   try {
-                      OIDCIdentityProviderDefinition overlayedDefinition = overlay((OIDCIdentityProviderDefinition) p.getConfig());
-                      p.setConfig(overlayedDefinition);
+                      OIDCIdentityProviderDefinition definition = (OIDCIdentityProviderDefinition) p.getConfig();
+                      if (fetchMetadata) {
+                          p.setConfig(overlay(definition));
+                      } else {
+                          oidcMetadataFetcher.updateDefinitionFromLoadedMetadata(definition);
+                          p.setConfig(definition);
+                      }
+                  } catch (OidcMetadataNotLoadedException e) {
+                      log.debug("Identity provider " + p.getOriginKey() + " excluded from login page until its discovery metadata is loaded.");
+                      return;
                   } catch (Exception e) {
                       log.error("Identity provider excluded from login page due to a problem.", e);
                       return;
@@ -163,4 +198,37 @@ public class XOAuthProviderConfigurator implements IdentityProviderProvisioning
         }
         return p;
     }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (!oidcMetadataFetcher.isBackgroundRefreshEnabled()) {
+            return;
+        }
+        if (event instanceof ContextRefreshedEvent && identityZoneProvisioning != null) {
+            try {
+                for (IdentityZone zone : identityZoneProvisioning.retrieveAll()) {
+                    for (IdentityProvider provider : providerProvisioning.retrieveAll(true, zone.getId())) {
+                        preload(provider);
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.warn("Unable to preload OIDC discovery metadata.", e);
+            }
+        } else if (event instanceof IdentityProviderModifiedEvent) {
+            IdentityProvider provider = (IdentityProvider) ((IdentityProviderModifiedEvent) event).getSource();
+            if (provider.isActive()) {
+                preload(provider);
+            }
+        }
+    }
+
+    private void preload(IdentityProvider provider) {
+        if (OIDC10.equals(provider.getType()) && provider.getConfig() instanceof OIDCIdentityProviderDefinition) {
+            oidcMetadataFetcher.preload((OIDCIdentityProviderDefinition) provider.getConfig());
+        }
+    }
+
+    public void setIdentityZoneProvisioning(IdentityZoneProvisioning identityZoneProvisioning) {
+        this.identityZoneProvisioning = identityZoneProvisioning;
+    }
 }
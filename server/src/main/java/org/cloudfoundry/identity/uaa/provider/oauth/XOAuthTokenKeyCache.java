@@ -0,0 +1,224 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.provider.oauth;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.cloudfoundry.identity.uaa.oauth.jwk.JsonWebKey;
+import org.cloudfoundry.identity.uaa.oauth.jwk.JsonWebKeyHelper;
+import org.cloudfoundry.identity.uaa.oauth.jwk.JsonWebKeySet;
+import org.cloudfoundry.identity.uaa.oauth.jwt.ChainedSignatureVerifier;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Caches the token keys (JWKS) of external OAuth/OIDC providers together with the signature verifier built from them.
+ * <p>
+ * An entry expires after the {@code max-age} of the key response, or after the default expiration when the
+ * response has no {@code Cache-Control} header. Responses marked {@code no-store} or {@code no-cache} are not cached.
+ * Once an entry has used up most of its lifetime it is refreshed in the background while the cached keys
+ * keep being served. A token signed with a key id that is not in the cached set triggers a single synchronous
+ * refetch, unless the keys were fetched less than the minimum refetch interval ago.
+ */
+public class XOAuthTokenKeyCache implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(XOAuthTokenKeyCache.class);
+
+    private static final Duration MAX_EXPIRATION = Duration.ofDays(1);
+
+    private final Duration cacheExpiration;
+    private final TimeService timeService;
+    private final Cache<String, CacheEntry> cache;
+
+    private Duration minimumRefetchInterval = Duration.ofSeconds(30);
+    private Executor refreshExecutor;
+    private ExecutorService ownedRefreshExecutor;
+    private boolean destroyed;
+
+    public XOAuthTokenKeyCache(Duration cacheExpiration, TimeService timeService, int maxEntries) {
+        this.cacheExpiration = cacheExpiration;
+        this.timeService = timeService;
+        this.cache = CacheBuilder
+            .newBuilder()
+            .expireAfterWrite(MAX_EXPIRATION.toMillis(), TimeUnit.MILLISECONDS)
+            .maximumSize(maxEntries)
+            .build();
+    }
+
+    /**
+     * Returns a verifier for the token keys cached under {@code key}, fetching them with {@code fetcher} when
+     * they are missing, expired or do not contain {@code kid}.
+     * @param key - identifies the provider and key URL
+     * @param kid - the key id from the token header, may be null
+     * @param fetcher - fetches the token keys, must throw if the keys cannot be retrieved
+     * @return the signature verifier for the provider's keys
+     * @throws IllegalArgumentException if the provider returned no keys
+     */
+    public ChainedSignatureVerifier getVerifier(String key, String kid, Supplier<ResponseEntity<String>> fetcher) {
+        long now = timeService.getCurrentTimeMillis();
+        CacheEntry entry = cache.getIfPresent(key);
+        if (entry == null || now >= entry.expiresAt) {
+            entry = fetch(key, fetcher);
+        } else if (StringUtils.hasText(kid) && !entry.kids.isEmpty() && !entry.kids.contains(kid)
+            && now - entry.fetchedAt >= minimumRefetchInterval.toMillis()) {
+            logger.debug("Unknown key id " + kid + ", refetching token keys for " + key);
+            entry = fetch(key, fetcher);
+        } else if (now >= entry.refreshAt) {
+            refreshInBackground(key, entry, fetcher);
+        }
+        return entry.getVerifier();
+    }
+
+    protected CacheEntry fetch(String key, Supplier<ResponseEntity<String>> fetcher) {
+        ResponseEntity<String> response = fetcher.get();
+        long now = timeService.getCurrentTimeMillis();
+        Duration expiration = getExpiration(response.getHeaders().getCacheControl());
+        CacheEntry entry = new CacheEntry(JsonWebKeyHelper.deserialize(response.getBody()), now, expiration.toMillis());
+        if (expiration.isZero()) {
+            cache.invalidate(key);
+        } else {
+            cache.put(key, entry);
+        }
+        return entry;
+    }
+
+    private void refreshInBackground(String key, CacheEntry entry, Supplier<ResponseEntity<String>> fetcher) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            getRefreshExecutor().execute(() -> {
+                try {
+                    fetch(key, fetcher);
+                } catch (RuntimeException x) {
+                    logger.warn("Unable to refresh token keys for " + key, x);
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException x) {
+            logger.debug("Background refresh of token keys for " + key + " rejected, the cache is shutting down");
+            entry.refreshing.set(false);
+        }
+    }
+
+    protected Duration getExpiration(String cacheControl) {
+        if (!StringUtils.hasText(cacheControl)) {
+            return cacheExpiration;
+        }
+        Duration result = cacheExpiration;
+        for (String directive : StringUtils.commaDelimitedListToStringArray(cacheControl.toLowerCase())) {
+            directive = directive.trim();
+            if ("no-store".equals(directive) || "no-cache".equals(directive)) {
+                return Duration.ZERO;
+            } else if (directive.startsWith("max-age=")) {
+                try {
+                    result = Duration.ofSeconds(Math.max(0, Long.parseLong(directive.substring("max-age=".length()).trim())));
+                } catch (NumberFormatException x) {
+                    logger.debug("Ignoring invalid Cache-Control directive:" + directive);
+                }
+            }
+        }
+        return result.compareTo(MAX_EXPIRATION) > 0 ? MAX_EXPIRATION : result;
+    }
+
+    private synchronized Executor getRefreshExecutor() {
+        if (destroyed) {
+            throw new RejectedExecutionException("Token key cache has been destroyed");
+        }
+        if (refreshExecutor == null) {
+            ownedRefreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "xoauth-token-key-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refreshExecutor = ownedRefreshExecutor;
+        }
+        return refreshExecutor;
+    }
+
+    public synchronized void setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Stops the refresh thread started by this cache; stale keys are then only refetched once they expire.
+     * Executors passed to {@link #setRefreshExecutor(Executor)} are left to their owner.
+     */
+    @Override
+    public synchronized void destroy() {
+        destroyed = true;
+        if (ownedRefreshExecutor != null) {
+            ownedRefreshExecutor.shutdownNow();
+        }
+    }
+
+    public void setMinimumRefetchInterval(Duration minimumRefetchInterval) {
+        this.minimumRefetchInterval = minimumRefetchInterval;
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    static class CacheEntry {
+        final JsonWebKeySet<JsonWebKey> keys;
+        final Set<String> kids = new HashSet<>();
+        final long fetchedAt;
+        final long refreshAt;
+        final long expiresAt;
+        final AtomicBoolean refreshing = new AtomicBoolean(false);
+        private final ChainedSignatureVerifier verifier;
+
+        CacheEntry(JsonWebKeySet<JsonWebKey> keys, long fetchedAt, long expiration) {
+            this.keys = keys;
+            this.fetchedAt = fetchedAt;
+            this.refreshAt = fetchedAt + expiration - expiration / 5;
+            this.expiresAt = fetchedAt + expiration;
+            boolean hasKeys = keys != null && keys.getKeys() != null && !keys.getKeys().isEmpty();
+            if (hasKeys) {
+                for (JsonWebKey key : keys.getKeys()) {
+                    if (key.getKid() != null) {
+                        kids.add(key.getKid());
+                    }
+                }
+            }
+            this.verifier = hasKeys ? new ChainedSignatureVerifier(keys) : null;
+        }
+
+        ChainedSignatureVerifier getVerifier() {
+            //an empty key set is rejected by the verifier, just like an uncached one
+            return verifier != null ? verifier : new ChainedSignatureVerifier(keys);
+        }
+    }
+}
@@ -15,6 +15,9 @@
 
 package org.cloudfoundry.identity.uaa.provider.saml;
 
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
 import org.cloudfoundry.identity.uaa.provider.SamlIdentityProviderDefinition;
 import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
@@ -55,6 +58,7 @@ import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
 import org.springframework.security.saml.key.KeyManager;
 import org.springframework.security.saml.metadata.ExtendedMetadata;
 import org.springframework.security.saml.metadata.ExtendedMetadataDelegate;
@@ -72,14 +76,29 @@ import javax.xml.namespace.QName;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
-public class NonSnarlMetadataManager extends MetadataManager implements ExtendedMetadataProvider, InitializingBean, DisposableBean {
+/**
+ * Serves the metadata of the local service provider and of the SAML identity providers of the current zone.
+ * <p>
+ * Initialized identity provider delegates are cached per zone and reused for as long as the provider's
+ * last modified date and its metadata stay the same, so the metadata is not parsed, initialized and
+ * signature checked again on every request. Providers that are removed or deactivated drop out of the
+ * cache the next time the zone is resolved.
+ */
+public class NonSnarlMetadataManager extends MetadataManager implements ExtendedMetadataProvider, InitializingBean, DisposableBean, ApplicationListener<AbstractUaaEvent> {
 
     // Class logger
     protected final Logger log = LoggerFactory.getLogger(NonSnarlMetadataManager.class);
@@ -92,6 +111,8 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
     private final SamlIdentityProviderConfigurator configurator;
     private ZoneAwareMetadataGenerator generator;
 
+    private final ConcurrentMap<String, ZoneProviders> zoneProviders = new ConcurrentHashMap<>();
+
     public NonSnarlMetadataManager(SamlIdentityProviderConfigurator configurator) throws MetadataProviderException {
         super(Collections.EMPTY_LIST);
         this.configurator = configurator;
@@ -101,7 +122,14 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
 
     @Override
     public void destroy() {
+        zoneProviders.clear();
+    }
 
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (event instanceof EntityDeletedEvent && ((EntityDeletedEvent<?>) event).getDeleted() instanceof IdentityZone) {
+            zoneProviders.remove(((IdentityZone) ((EntityDeletedEvent<?>) event).getDeleted()).getId());
+        }
     }
 
     @Override
@@ -140,28 +168,64 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
     }
 
     public List<ExtendedMetadataDelegate> getAvailableProviders() {
-        IdentityZone zone = IdentityZoneHolder.get();
         List<ExtendedMetadataDelegate> result = new ArrayList<>();
         try {
             result.add(getLocalServiceProvider());
         } catch (MetadataProviderException e) {
             throw new IllegalStateException(e);
         }
-        for (SamlIdentityProviderDefinition definition : configurator.getIdentityProviderDefinitions()) {
-            log.info("Adding SAML IDP zone[" + zone.getId() + "] alias[" + definition.getIdpEntityAlias() + "]");
+        for (CachedProvider provider : getZoneProviders().providers.values()) {
+            result.add(provider.delegate);
+        }
+        return result;
+    }
+
+    protected ZoneProviders getZoneProviders() {
+        IdentityZone zone = IdentityZoneHolder.get();
+        ZoneProviders previous = zoneProviders.get(zone.getId());
+        Map<String, CachedProvider> providers = new LinkedHashMap<>();
+        for (IdentityProvider<SamlIdentityProviderDefinition> idp : configurator.getIdentityProvidersForZone(zone)) {
+            SamlIdentityProviderDefinition definition = idp.getConfig();
+            String key = StringUtils.hasText(idp.getId()) ? idp.getId() : definition.getUniqueAlias();
             try {
-                ExtendedMetadataDelegate delegate = configurator.getExtendedMetadataDelegate(definition);
-                initializeProvider(delegate);
-                initializeProviderData(delegate);
-                initializeProviderFilters(delegate);
-                result.add(delegate);
+                String metadata = configurator.getMetadata(definition);
+                CachedProvider provider = previous != null ? previous.providers.get(key) : null;
+                if (provider == null || !provider.isCurrent(idp.getLastModified(), metadata)) {
+                    log.info("Adding SAML IDP zone[" + zone.getId() + "] alias[" + definition.getIdpEntityAlias() + "]");
+                    provider = cacheProvider(idp.getLastModified(), metadata, initializeDelegate(definition, metadata));
+                }
+                providers.put(key, provider);
             } catch (RestClientException | MetadataProviderException e) {
                 log.error("Invalid SAML IDP zone[" + zone.getId() + "] alias[" + definition.getIdpEntityAlias() + "]", e);
             }
         }
+        ZoneProviders result = new ZoneProviders(providers);
+        zoneProviders.put(zone.getId(), result);
         return result;
     }
 
+    private CachedProvider cacheProvider(Date lastModified, String metadata, ExtendedMetadataDelegate delegate) {
+        String idpEntityName = null;
+        List<String> entityIDs = Collections.emptyList();
+        try {
+            idpEntityName = getProviderIdpAlias(delegate);
+            entityIDs = parseProvider(delegate);
+        } catch (MetadataProviderException e) {
+            log.error("Unable to get IDP alias for:"+delegate, e);
+        }
+        return new CachedProvider(lastModified, metadata, delegate, idpEntityName, entityIDs);
+    }
+
+    protected ExtendedMetadataDelegate initializeDelegate(SamlIdentityProviderDefinition definition, String metadata) throws MetadataProviderException {
+        SamlIdentityProviderDefinition resolved = definition.clone();
+        resolved.setMetaDataLocation(metadata);
+        ExtendedMetadataDelegate delegate = configurator.getExtendedMetadataDelegate(resolved);
+        initializeProvider(delegate);
+        initializeProviderData(delegate);
+        initializeProviderFilters(delegate);
+        return delegate;
+    }
+
     @Override
     protected void initializeProvider(ExtendedMetadataDelegate provider) throws MetadataProviderException {
         // Initialize provider and perform signature verification
@@ -392,14 +456,9 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
     @Override
     public Set<String> getIDPEntityNames() {
         Set<String> result = new HashSet<>();
-        for (ExtendedMetadataDelegate delegate : getAvailableProviders()) {
-            try {
-                String idp = getProviderIdpAlias(delegate);
-                if (StringUtils.hasText(idp)) {
-                    result.add(idp);
-                }
-            } catch (MetadataProviderException e) {
-                log.error("Unable to get IDP alias for:"+delegate, e);
+        for (CachedProvider provider : getZoneProviders().providers.values()) {
+            if (StringUtils.hasText(provider.idpEntityName)) {
+                result.add(provider.idpEntityName);
             }
         }
         return result;
@@ -594,6 +653,13 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
 
     /** {@inheritDoc} */
     public EntityDescriptor getEntityDescriptor(String entityID) throws MetadataProviderException {
+        ExtendedMetadataDelegate indexed = getZoneProviders().byEntityID.get(entityID);
+        if (indexed != null) {
+            EntityDescriptor descriptor = indexed.getEntityDescriptor(entityID);
+            if (descriptor != null) {
+                return descriptor;
+            }
+        }
         EntityDescriptor descriptor = null;
         for (MetadataProvider provider : getProviders()) {
             log.debug("Checking child metadata provider for entity descriptor with entity ID: {}", entityID);
@@ -939,4 +1005,38 @@ public class NonSnarlMetadataManager extends MetadataManager implements Extended
         }
 
     }
-}
\ No newline at end of file
+
+    protected static class ZoneProviders {
+        private final Map<String, CachedProvider> providers;
+        private final Map<String, ExtendedMetadataDelegate> byEntityID = new HashMap<>();
+
+        private ZoneProviders(Map<String, CachedProvider> providers) {
+            this.providers = providers;
+            for (CachedProvider provider : providers.values()) {
+                for (String entityID : provider.entityIDs) {
+                    byEntityID.putIfAbsent(entityID, provider.delegate);
+                }
+            }
+        }
+    }
+
+    protected static class CachedProvider {
+        private final Date lastModified;
+        private final String metadata;
+        private final ExtendedMetadataDelegate delegate;
+        private final String idpEntityName;
+        private final List<String> entityIDs;
+
+        private CachedProvider(Date lastModified, String metadata, ExtendedMetadataDelegate delegate, String idpEntityName, List<String> entityIDs) {
+            this.lastModified = lastModified;
+            this.metadata = metadata;
+            this.delegate = delegate;
+            this.idpEntityName = idpEntityName;
+            this.entityIDs = entityIDs;
+        }
+
+        private boolean isCurrent(Date lastModified, String metadata) {
+            return this.lastModified != null && this.lastModified.equals(lastModified) && Objects.equals(this.metadata, metadata);
+        }
+    }
+}
@@ -48,9 +48,17 @@ public class SamlIdentityProviderConfigurator implements InitializingBean {
 
     public List<SamlIdentityProviderDefinition> getIdentityProviderDefinitionsForZone(IdentityZone zone) {
         List<SamlIdentityProviderDefinition> result = new LinkedList<>();
+        for (IdentityProvider<SamlIdentityProviderDefinition> provider : getIdentityProvidersForZone(zone)) {
+            result.add(provider.getConfig());
+        }
+        return result;
+    }
+
+    public List<IdentityProvider<SamlIdentityProviderDefinition>> getIdentityProvidersForZone(IdentityZone zone) {
+        List<IdentityProvider<SamlIdentityProviderDefinition>> result = new LinkedList<>();
         for (IdentityProvider provider : providerProvisioning.retrieveActive(zone.getId())) {
             if (OriginKeys.SAML.equals(provider.getType())) {
-                result.add((SamlIdentityProviderDefinition) provider.getConfig());
+                result.add(provider);
             }
         }
         return result;
@@ -161,14 +169,33 @@ public class SamlIdentityProviderConfigurator implements InitializingBean {
     }
 
     protected ExtendedMetadataDelegate configureURLMetadata(SamlIdentityProviderDefinition def) throws MetadataProviderException {
+        def = def.clone();
+        def.setMetaDataLocation(fetchURLMetadata(def));
+        return configureXMLMetadata(def);
+    }
+
+    /**
+     * Returns the XML metadata of a provider, fetching it if the provider is configured with a metadata URL.
+     * Fetched metadata is served from the URL content cache.
+     */
+    public String getMetadata(SamlIdentityProviderDefinition def) throws MetadataProviderException {
+        switch (def.getType()) {
+            case DATA:
+                return def.getMetaDataLocation();
+            case URL:
+                return fetchURLMetadata(def);
+            default:
+                throw new MetadataProviderException("Invalid metadata type for alias[" + def.getIdpEntityAlias() + "]:" + def.getMetaDataLocation());
+        }
+    }
+
+    protected String fetchURLMetadata(SamlIdentityProviderDefinition def) throws MetadataProviderException {
         try {
-            def = def.clone();
             String adjustedMetatadataURIForPort = adjustURIForPort(def.getMetaDataLocation());
 
             byte[] metadata = fixedHttpMetaDataProvider.fetchMetadata(adjustedMetatadataURIForPort, def.isSkipSslValidation());
 
-            def.setMetaDataLocation(new String(metadata, StandardCharsets.UTF_8));
-            return configureXMLMetadata(def);
+            return new String(metadata, StandardCharsets.UTF_8);
         } catch (URISyntaxException e) {
             throw new MetadataProviderException("Invalid socket factory(invalid URI):" + def.getMetaDataLocation(), e);
         }
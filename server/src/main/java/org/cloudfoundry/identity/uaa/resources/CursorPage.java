@@ -0,0 +1,53 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.resources;
+
+import java.util.List;
+
+/**
+ * One page of a keyset paginated query.
+ */
+public class CursorPage<T> {
+
+    public static final int TOTAL_NOT_COUNTED = -1;
+
+    private final List<T> resources;
+    private final PageCursor next;
+    private final int totalResults;
+
+    public CursorPage(List<T> resources, PageCursor next, int totalResults) {
+        this.resources = resources;
+        this.next = next;
+        this.totalResults = totalResults;
+    }
+
+    public List<T> getResources() {
+        return resources;
+    }
+
+    /**
+     * @return the position to continue from, or null if this is the last page
+     */
+    public PageCursor getNext() {
+        return next;
+    }
+
+    /**
+     * @return the number of results matching the query, or {@link #TOTAL_NOT_COUNTED}
+     */
+    public int getTotalResults() {
+        return totalResults;
+    }
+}
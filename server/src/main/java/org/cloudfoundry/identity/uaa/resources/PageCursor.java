@@ -0,0 +1,144 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.resources;
+
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Position of a keyset paginated query: the sort value and id of the last returned row,
+ * together with the sort column and direction the position is valid for.
+ * <p>
+ * Clients receive the position as an opaque token, see {@link #encode()} and {@link #decode(String)}.
+ */
+public class PageCursor {
+
+    private static final String COLUMN = "c";
+    private static final String ASCENDING = "a";
+    private static final String TYPE = "t";
+    private static final String VALUE = "v";
+    private static final String NANOS = "n";
+    private static final String ID = "i";
+
+    private final String sortColumn;
+    private final boolean ascending;
+    private final Object sortValue;
+    private final String id;
+
+    public PageCursor(String sortColumn, boolean ascending, Object sortValue, String id) {
+        this.sortColumn = sortColumn;
+        this.ascending = ascending;
+        this.sortValue = sortValue instanceof LocalDateTime ? Timestamp.valueOf((LocalDateTime) sortValue) : sortValue;
+        this.id = id;
+    }
+
+    public String getSortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public Object getSortValue() {
+        return sortValue;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String encode() {
+        Map<String, Object> token = new LinkedHashMap<>();
+        token.put(COLUMN, sortColumn);
+        token.put(ASCENDING, ascending);
+        if (sortValue instanceof Date) {
+            token.put(TYPE, "t");
+            token.put(VALUE, ((Date) sortValue).getTime());
+            if (sortValue instanceof Timestamp) {
+                token.put(NANOS, ((Timestamp) sortValue).getNanos());
+            }
+        } else if (sortValue instanceof String) {
+            token.put(TYPE, "s");
+            token.put(VALUE, sortValue);
+        } else if (sortValue instanceof BigDecimal) {
+            token.put(TYPE, "d");
+            token.put(VALUE, sortValue.toString());
+        } else if (sortValue instanceof Number) {
+            token.put(TYPE, "l");
+            token.put(VALUE, ((Number) sortValue).longValue());
+        } else if (sortValue instanceof Boolean) {
+            token.put(TYPE, "b");
+            token.put(VALUE, sortValue);
+        } else if (sortValue != null) {
+            throw new IllegalArgumentException("Unable to page by sort value of type " + sortValue.getClass().getName());
+        }
+        token.put(ID, id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(JsonUtils.writeValueAsBytes(token));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not created by {@link #encode()}
+     */
+    public static PageCursor decode(String token) throws IllegalArgumentException {
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            Map<String, Object> values = JsonUtils.readValue(json, Map.class);
+            String sortColumn = (String) values.get(COLUMN);
+            String id = (String) values.get(ID);
+            if (!StringUtils.hasText(sortColumn) || !StringUtils.hasText(id)) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+            return new PageCursor(sortColumn, Boolean.TRUE.equals(values.get(ASCENDING)), getSortValue(values), id);
+        } catch (ClassCastException | NullPointerException | JsonUtils.JsonUtilException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    private static Object getSortValue(Map<String, Object> values) {
+        String type = (String) values.get(TYPE);
+        Object value = values.get(VALUE);
+        if (type == null) {
+            return null;
+        }
+        switch (type) {
+            case "t":
+                Timestamp timestamp = new Timestamp(((Number) value).longValue());
+                if (values.get(NANOS) != null) {
+                    timestamp.setNanos(((Number) values.get(NANOS)).intValue());
+                }
+                return timestamp;
+            case "s":
+                return (String) value;
+            case "d":
+                return new BigDecimal((String) value);
+            case "l":
+                return ((Number) value).longValue();
+            case "b":
+                return (Boolean) value;
+            default:
+                throw new IllegalArgumentException("Invalid cursor value type: " + type);
+        }
+    }
+}
@@ -12,7 +12,9 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.resources;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface Queryable<T> {
 
@@ -20,4 +22,41 @@ public interface Queryable<T> {
 
     List<T> query(String filter, String sortBy, boolean ascending, String zoneId);
 
+    /**
+     * Keyset pagination: returns the results that sort after the given position, without
+     * skipping over the results of the previous pages.
+     *
+     * @param after the position returned with the previous page, or null for the first page
+     * @param count the maximum number of results to return
+     * @param countTotal false to skip counting the total number of results
+     */
+    CursorPage<T> query(String filter, String sortBy, boolean ascending, PageCursor after, int count, boolean countTotal, String zoneId);
+
+    /**
+     * @return true if {@link #queryAttributes} can select the given attributes, sorted by sortBy,
+     * without loading whole resources
+     */
+    default boolean canQueryAttributes(Collection<String> attributes, String sortBy) {
+        return false;
+    }
+
+    /**
+     * Like {@link #query(String, String, boolean, String)}, but only selects the given attributes.
+     *
+     * @return the values of the attributes for each result, keyed by attribute name
+     * @throws IllegalArgumentException if {@link #canQueryAttributes(Collection, String)} is false
+     */
+    default List<Map<String, Object>> queryAttributes(Collection<String> attributes, String filter, String sortBy, boolean ascending, String zoneId) {
+        throw new IllegalArgumentException("Attributes can not be queried directly:" + attributes);
+    }
+
+    /**
+     * Like {@link #query(String, String, boolean, PageCursor, int, boolean, String)}, but only selects the given attributes.
+     *
+     * @throws IllegalArgumentException if {@link #canQueryAttributes(Collection, String)} is false
+     */
+    default CursorPage<Map<String, Object>> queryAttributes(Collection<String> attributes, String filter, String sortBy, boolean ascending, PageCursor after, int count, boolean countTotal, String zoneId) {
+        throw new IllegalArgumentException("Attributes can not be queried directly:" + attributes);
+    }
+
 }
@@ -14,15 +14,27 @@ package org.cloudfoundry.identity.uaa.resources.jdbc;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.resources.CursorPage;
+import org.cloudfoundry.identity.uaa.resources.PageCursor;
 import org.cloudfoundry.identity.uaa.resources.Queryable;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public abstract class AbstractQueryable<T> implements Queryable<T> {
@@ -73,17 +85,79 @@ public abstract class AbstractQueryable<T> implements Queryable<T> {
 
     @Override
     public List<T> query(String filter, String sortBy, boolean ascending, String zoneId) {
-        validateOrderBy(queryConverter.map(sortBy));
-        if (StringUtils.hasText(filter)) {
-            filter = "("+ filter+ ") and";
+        return query(getBaseSqlQuery(), rowMapper, filter, sortBy, ascending, zoneId);
+    }
+
+    @Override
+    public boolean canQueryAttributes(Collection<String> attributes, String sortBy) {
+        //sorting by column position depends on the columns of the base query
+        return !attributes.isEmpty() && getAttributeColumns().keySet().containsAll(attributes) && !isSortedByPosition(sortBy);
+    }
+
+    private static boolean isSortedByPosition(String sortBy) {
+        for (String s : StringUtils.commaDelimitedListToStringArray(sortBy)) {
+            try {
+                Integer.parseInt(s);
+                return true;
+            } catch (NumberFormatException e) {
+                //sorted by column name
+            }
         }
-        filter += " identity_zone_id eq \""+ zoneId +"\"";
+        return false;
+    }
+
+    @Override
+    public List<Map<String, Object>> queryAttributes(Collection<String> attributes, String filter, String sortBy, boolean ascending, String zoneId) {
+        Map<String, String> columns = getColumns(attributes);
+        return query(getProjectionSql(columns.values()), getAttributeRowMapper(columns), filter, sortBy, ascending, zoneId);
+    }
+
+    @Override
+    public CursorPage<Map<String, Object>> queryAttributes(Collection<String> attributes, String filter, String sortBy, boolean ascending, PageCursor after, int count, boolean countTotal, String zoneId) {
+        Map<String, String> columns = getColumns(attributes);
+        //the keyset reads the sort value and id of the last row
+        Set<String> selected = new LinkedHashSet<>(columns.values());
+        selected.add(getCursorSortColumn(sortBy));
+        selected.add(getIdColumn());
+        return query(getProjectionSql(selected), getAttributeRowMapper(columns), filter, sortBy, ascending, after, count, countTotal, zoneId);
+    }
+
+    private Map<String, String> getColumns(Collection<String> attributes) {
+        Map<String, String> attributeColumns = getAttributeColumns();
+        Map<String, String> columns = new LinkedHashMap<>();
+        for (String attribute : attributes) {
+            String column = attributeColumns.get(attribute);
+            if (column == null) {
+                throw new IllegalArgumentException("Attribute can not be queried directly:" + attribute);
+            }
+            columns.put(attribute, column);
+        }
+        return columns;
+    }
+
+    private String getProjectionSql(Collection<String> columns) {
+        return "select " + StringUtils.collectionToCommaDelimitedString(new LinkedHashSet<>(columns)) + " from " + getTableName();
+    }
+
+    private RowMapper<Map<String, Object>> getAttributeRowMapper(Map<String, String> columns) {
+        return (rs, rowNum) -> {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (Map.Entry<String, String> column : columns.entrySet()) {
+                values.put(column.getKey(), getAttributeValue(rs, column.getValue()));
+            }
+            return values;
+        };
+    }
+
+    private <R> List<R> query(String baseSql, RowMapper<R> rowMapper, String filter, String sortBy, boolean ascending, String zoneId) {
+        validateOrderBy(queryConverter.map(sortBy));
+        filter = getZoneFilter(filter, zoneId);
 
         SearchQueryConverter.ProcessedFilter where = queryConverter.convert(filter, sortBy, ascending);
         logger.debug("Filtering groups with SQL: " + where);
-        List<T> result;
+        List<R> result;
         try {
-            String completeSql = getQuerySQL(filter, where);
+            String completeSql = getQuerySQL(baseSql, filter, where);
             logger.debug("complete sql: " + completeSql + ", params: " + where.getParams());
             if (pageSize > 0 && pageSize < Integer.MAX_VALUE) {
                 result = pagingListFactory.createJdbcPagingList(completeSql, where.getParams(), rowMapper, pageSize);
@@ -98,17 +172,123 @@ public abstract class AbstractQueryable<T> implements Queryable<T> {
         }
     }
 
+    @Override
+    public CursorPage<T> query(String filter, String sortBy, boolean ascending, PageCursor after, int count, boolean countTotal, String zoneId) {
+        return query(getBaseSqlQuery(), rowMapper, filter, sortBy, ascending, after, count, countTotal, zoneId);
+    }
+
+    private String getCursorSortColumn(String sortBy) {
+        String sortColumn = StringUtils.hasText(sortBy) ? queryConverter.map(sortBy).toLowerCase() : getIdColumn();
+        if (!getCursorSortColumns().contains(sortColumn)) {
+            throw new IllegalArgumentException("Invalid sort field for cursor pagination:" + sortBy);
+        }
+        return sortColumn;
+    }
+
+    private <R> CursorPage<R> query(String baseSql, RowMapper<R> rowMapper, String filter, String sortBy, boolean ascending, PageCursor after, int count, boolean countTotal, String zoneId) {
+        String sortColumn = getCursorSortColumn(sortBy);
+        if (after != null && (!sortColumn.equals(after.getSortColumn()) || ascending != after.isAscending())) {
+            throw new IllegalArgumentException("Cursor was created for a different sort order");
+        }
+        Assert.isTrue(count > 0, "count must be positive");
+        filter = getZoneFilter(filter, zoneId);
+
+        SearchQueryConverter.ProcessedFilter where = queryConverter.convert(filter, null, ascending);
+        LimitSqlAdapter limitSqlAdapter = pagingListFactory.getLimitSqlAdapter();
+        Map<String, Object> params = new HashMap<>(where.getParams());
+        StringBuilder sql = new StringBuilder(getQuerySQL(baseSql, filter, where));
+        if (after != null) {
+            String sortParameter = where.getParamPrefix() + "cursor_sort";
+            String idParameter = where.getParamPrefix() + "cursor_id";
+            sql.append(" and ").append(limitSqlAdapter.getKeysetSql(sortColumn, getIdColumn(), ascending, sortParameter, idParameter));
+            params.put(sortParameter, after.getSortValue());
+            params.put(idParameter, after.getId());
+        }
+        String direction = ascending ? " ASC" : " DESC";
+        sql.append(SearchQueryConverter.ProcessedFilter.ORDER_BY).append(sortColumn).append(direction);
+        if (!sortColumn.equals(getIdColumn())) {
+            sql.append(", ").append(getIdColumn()).append(direction);
+        }
+
+        try {
+            //one extra row tells whether there is a next page
+            String completeSql = limitSqlAdapter.getLimitSql(sql.toString(), 0, count + 1);
+            logger.debug("complete sql: " + completeSql + ", params: " + params);
+            List<KeysetRow<R>> rows = jdbcTemplate.query(completeSql, params, (rs, rowNum) ->
+                new KeysetRow<R>(rowMapper.mapRow(rs, rowNum), rs.getObject(sortColumn), rs.getString(getIdColumn()))
+            );
+            int total = CursorPage.TOTAL_NOT_COUNTED;
+            if (countTotal) {
+                total = jdbcTemplate.queryForObject(JdbcPagingList.getCountSql(getQuerySQL(baseSql, filter, where)), where.getParams(), Integer.class);
+            }
+
+            List<R> resources = new ArrayList<>(Math.min(count, rows.size()));
+            for (KeysetRow<R> row : rows.subList(0, Math.min(count, rows.size()))) {
+                resources.add(row.resource);
+            }
+            PageCursor next = null;
+            if (rows.size() > count) {
+                KeysetRow<R> last = rows.get(count - 1);
+                next = new PageCursor(sortColumn, ascending, last.sortValue, last.id);
+            }
+            return new CursorPage<>(resources, next, total);
+        } catch (DataAccessException e) {
+            logger.debug("Filter '" + filter + "' generated invalid SQL", e);
+            throw new IllegalArgumentException("Invalid filter: " + filter);
+        }
+    }
+
+    private String getZoneFilter(String filter, String zoneId) {
+        if (StringUtils.hasText(filter)) {
+            filter = "("+ filter+ ") and";
+        }
+        return filter + " identity_zone_id eq \""+ zoneId +"\"";
+    }
+
     protected String getQuerySQL(String filter, SearchQueryConverter.ProcessedFilter where) {
+        return getQuerySQL(getBaseSqlQuery(), filter, where);
+    }
+
+    private String getQuerySQL(String baseSql, String filter, SearchQueryConverter.ProcessedFilter where) {
         if (filter == null || filter.trim().length()==0) {
-            return getBaseSqlQuery();
+            return baseSql;
         }
         if (where.hasOrderBy()) {
-            return getBaseSqlQuery() + " where (" + where.getSql().replace(where.ORDER_BY, ")"+where.ORDER_BY);
+            return baseSql + " where (" + where.getSql().replace(where.ORDER_BY, ")"+where.ORDER_BY);
         } else {
-            return getBaseSqlQuery() + " where (" + where.getSql() + ")";
+            return baseSql + " where (" + where.getSql() + ")";
         }
     }
 
+    /**
+     * @return the column that uniquely identifies a row within a zone
+     */
+    protected String getIdColumn() {
+        return "id";
+    }
+
+    /**
+     * @return the columns that can be used to sort keyset paginated queries. The columns must not be nullable.
+     */
+    protected Set<String> getCursorSortColumns() {
+        return Collections.singleton(getIdColumn());
+    }
+
+    /**
+     * @return the column of each attribute that can be queried without loading the whole resource,
+     * keyed by the attribute name as it appears in the serialized resource
+     */
+    protected Map<String, String> getAttributeColumns() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * @return the value of a column selected for {@link #getAttributeColumns()}, as it appears in the serialized resource
+     */
+    protected Object getAttributeValue(ResultSet rs, String column) throws SQLException {
+        return rs.getObject(column);
+    }
+
     protected abstract String getBaseSqlQuery();
     protected abstract String getTableName();
 
@@ -139,4 +319,15 @@ public abstract class AbstractQueryable<T> implements Queryable<T> {
         }
     }
 
+    private static final class KeysetRow<T> {
+        private final T resource;
+        private final Object sortValue;
+        private final String id;
+
+        private KeysetRow(T resource, Object sortValue, String id) {
+            this.resource = resource;
+            this.sortValue = sortValue;
+            this.id = id;
+        }
+    }
 }
@@ -35,6 +35,10 @@ public class JdbcPagingListFactory {
         this.limitSqlAdapter = limitSqlAdapter;
     }
 
+    public LimitSqlAdapter getLimitSqlAdapter() {
+        return limitSqlAdapter;
+    }
+
     public <T> List<T> createJdbcPagingList(String sql, Map<String, ?> args, RowMapper<T> mapper, int pageSize) {
         return new JdbcPagingList<T>(jdbcTemplate, limitSqlAdapter, sql, args, mapper, pageSize);
     }
@@ -18,5 +18,17 @@ public interface LimitSqlAdapter {
         return sql + " limit " + size + " offset " + index;
     }
 
+    /**
+     * @return a predicate matching the rows that sort after the given sort value and id, using
+     * named parameters for the values
+     */
+    default String getKeysetSql(String sortColumn, String idColumn, boolean ascending, String sortParameter, String idParameter) {
+        String operator = ascending ? " > " : " < ";
+        if (sortColumn.equals(idColumn)) {
+            return idColumn + operator + ":" + idParameter;
+        }
+        return "(" + sortColumn + ", " + idColumn + ")" + operator + "(:" + sortParameter + ", :" + idParameter + ")";
+    }
+
     String getDeleteExpiredQuery(String tablename, String primaryKeyColumn, String expiresColumn, int maxRows);
 }
@@ -28,6 +28,17 @@ public class SQLServerLimitSqlAdapter implements LimitSqlAdapter {
         }
     }
 
+    @Override
+    public String getKeysetSql(String sortColumn, String idColumn, boolean ascending, String sortParameter, String idParameter) {
+        //no row value comparison, expand it
+        String operator = ascending ? " > " : " < ";
+        if (sortColumn.equals(idColumn)) {
+            return idColumn + operator + ":" + idParameter;
+        }
+        return "(" + sortColumn + operator + ":" + sortParameter +
+            " or (" + sortColumn + " = :" + sortParameter + " and " + idColumn + operator + ":" + idParameter + "))";
+    }
+
     @Override
     public String getDeleteExpiredQuery(String tablename, String primaryKeyColumn, String expiresColumn, int maxRows) {
         return "DELETE FROM " +
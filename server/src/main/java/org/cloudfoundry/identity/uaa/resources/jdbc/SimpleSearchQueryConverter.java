@@ -13,6 +13,8 @@
 
 package org.cloudfoundry.identity.uaa.resources.jdbc;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.unboundid.scim.sdk.InvalidResourceException;
 import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMFilter;
@@ -28,18 +30,29 @@ import org.springframework.util.StringUtils;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import static com.unboundid.scim.sdk.SCIMException.createException;
 import static java.util.Collections.emptyList;
 import static java.util.Optional.ofNullable;
 import static org.cloudfoundry.identity.uaa.resources.jdbc.SearchQueryConverter.ProcessedFilter.ORDER_BY;
 
+/**
+ * Converts SCIM filters to SQL where clauses.
+ * <p>
+ * Converted filters are cached by their shape: the filter text with the literal values left out,
+ * together with the sort order and attribute name mapper. Filters that only differ in their literal
+ * values share the same SQL, and only the parameter values are computed for each call.
+ * See {@link #setFilterCacheSize(int)}.
+ */
 public class SimpleSearchQueryConverter implements SearchQueryConverter {
 
     //LOWER
@@ -98,10 +111,14 @@ public class SimpleSearchQueryConverter implements SearchQueryConverter {
     );
 
     private static Log logger = LogFactory.getLog(SimpleSearchQueryConverter.class);
+    private static final RandomValueStringGenerator parameterPrefixGenerator = new RandomValueStringGenerator();
     private AttributeNameMapper mapper = new SimpleAttributeNameMapper(Collections.<String, String> emptyMap());
 
     private boolean dbCaseInsensitive = false;
 
+    private int filterCacheSize = 1000;
+    private Cache<FilterKey, CompiledFilter> compiledFilters = buildCache(filterCacheSize);
+
     public SimpleSearchQueryConverter() {
     }
 
@@ -111,10 +128,28 @@ public class SimpleSearchQueryConverter implements SearchQueryConverter {
 
     public void setDbCaseInsensitive(boolean caseInsensitive) {
         this.dbCaseInsensitive = caseInsensitive;
+        this.compiledFilters = buildCache(filterCacheSize);
     }
 
     public void setAttributeNameMapper(AttributeNameMapper mapper) {
         this.mapper = mapper;
+        this.compiledFilters = buildCache(filterCacheSize);
+    }
+
+    /**
+     * @param filterCacheSize the maximum number of converted filter shapes to keep, 0 disables the cache
+     */
+    public void setFilterCacheSize(int filterCacheSize) {
+        this.filterCacheSize = filterCacheSize;
+        this.compiledFilters = buildCache(filterCacheSize);
+    }
+
+    public long getCachedFilterCount() {
+        return compiledFilters == null ? 0 : compiledFilters.size();
+    }
+
+    private static Cache<FilterKey, CompiledFilter> buildCache(int size) {
+        return size > 0 ? CacheBuilder.newBuilder().maximumSize(size).build() : null;
     }
 
     @Override
@@ -124,9 +159,37 @@ public class SimpleSearchQueryConverter implements SearchQueryConverter {
 
     @Override
     public ProcessedFilter convert(String filter, String sortBy, boolean ascending, AttributeNameMapper mapper) {
+        Cache<FilterKey, CompiledFilter> cache = compiledFilters;
+        FilterShape shape = cache != null && StringUtils.hasText(filter) ? FilterShape.of(filter, this) : null;
+        if (shape == null) {
+            String paramPrefix = generateParameterPrefix(filter);
+            Map<String, Object> values = new HashMap<>();
+            String where = StringUtils.hasText(filter) ? getWhereClause(parseFilter(filter), sortBy, ascending, values, mapper, paramPrefix) : null;
+            return getProcessedFilter(where, values, sortBy, paramPrefix);
+        }
+
+        FilterKey key = new FilterKey(shape.getKey(), sortBy, ascending, mapper);
+        CompiledFilter compiled = cache.getIfPresent(key);
+        if (compiled != null && compiled.getParameterCount() == shape.getLiterals().size()) {
+            return getProcessedFilter(compiled.getSql(), compiled.bind(shape.getLiterals()), sortBy, compiled.getParamPrefix());
+        }
+
         String paramPrefix = generateParameterPrefix(filter);
         Map<String, Object> values = new HashMap<>();
-        String where = StringUtils.hasText(filter) ? getWhereClause(filter, sortBy, ascending, values, mapper, paramPrefix) : null;
+        SCIMFilter scimFilter = parseFilter(filter);
+        String where = getWhereClause(scimFilter, sortBy, ascending, values, mapper, paramPrefix);
+        List<ParameterBinder> binders = new ArrayList<>();
+        if (collectBinders(scimFilter, binders)) {
+            compiled = new CompiledFilter(where, paramPrefix, binders);
+            //only cache the shape if binding the literals found in the text gives the values of the parsed filter
+            if (compiled.matches(shape.getLiterals(), values)) {
+                cache.put(key, compiled);
+            }
+        }
+        return getProcessedFilter(where, values, sortBy, paramPrefix);
+    }
+
+    private ProcessedFilter getProcessedFilter(String where, Map<String, Object> values, String sortBy, String paramPrefix) {
         ProcessedFilter pf = new ProcessedFilter(where, values, StringUtils.hasText(sortBy));
         pf.setParamPrefix(paramPrefix);
         return pf;
@@ -134,31 +197,33 @@ public class SimpleSearchQueryConverter implements SearchQueryConverter {
 
     protected String generateParameterPrefix(String filter) {
         while (true) {
-            String s = new RandomValueStringGenerator().generate().toLowerCase();
-            if (!filter.contains(s)) {
+            String s = parameterPrefixGenerator.generate().toLowerCase();
+            if (filter == null || !filter.contains(s)) {
                 return "__"+s+"_";
             }
         }
     }
 
-    private String getWhereClause(String filter, String sortBy, boolean ascending, Map<String, Object> values, AttributeNameMapper mapper, String paramPrefix) {
-
+    private SCIMFilter parseFilter(String filter) {
         try {
-            SCIMFilter scimFilter = scimFilter(filter);
-            String whereClause = createFilter(scimFilter, values, mapper, paramPrefix);
-            if (sortBy != null) {
-                sortBy = mapper.mapToInternal(sortBy);
-                // Need to add "asc" or "desc" explicitly to ensure that the pattern
-                // splitting below works
-                whereClause += ORDER_BY + sortBy + (ascending ? " ASC" : " DESC");
-            }
-            return whereClause;
+            return scimFilter(filter);
         } catch (SCIMException e) {
             logger.debug("Unable to parse " + filter, e);
             throw new IllegalArgumentException("Invalid SCIM Filter:"+filter+" Message:"+e.getMessage());
         }
     }
 
+    private String getWhereClause(SCIMFilter scimFilter, String sortBy, boolean ascending, Map<String, Object> values, AttributeNameMapper mapper, String paramPrefix) {
+        String whereClause = createFilter(scimFilter, values, mapper, paramPrefix);
+        if (sortBy != null) {
+            sortBy = mapper.mapToInternal(sortBy);
+            // Need to add "asc" or "desc" explicitly to ensure that the pattern
+            // splitting below works
+            whereClause += ORDER_BY + sortBy + (ascending ? " ASC" : " DESC");
+        }
+        return whereClause;
+    }
+
     @Override
     public MultiValueMap<String,Object> getFilterValues(String filter, List<String> validAttributes) throws IllegalArgumentException {
         try {
@@ -342,4 +407,279 @@ public class SimpleSearchQueryConverter implements SearchQueryConverter {
     public String map(String attribute) {
         return StringUtils.hasText(attribute) ? mapper.mapToInternal(attribute) : attribute;
     }
+
+    /**
+     * Collects how the parameter values of the filter are computed, in the order
+     * {@link #comparisonClause} adds them.
+     * @return false if the filter contains a clause that can not be cached
+     */
+    private boolean collectBinders(SCIMFilter filter, List<ParameterBinder> binders) {
+        switch (filter.getFilterType()) {
+            case AND:
+            case OR:
+                return collectBinders(filter.getFilterComponents().get(0), binders) &&
+                    collectBinders(filter.getFilterComponents().get(1), binders);
+            case PRESENCE:
+                return true;
+            case CONTAINS:
+                return collectBinder(filter, binders, "%", "%");
+            case STARTS_WITH:
+                return collectBinder(filter, binders, "", "%");
+            case EQUALITY:
+            case GREATER_THAN:
+            case GREATER_OR_EQUAL:
+            case LESS_THAN:
+            case LESS_OR_EQUAL:
+                return collectBinder(filter, binders, "", "");
+            default:
+                return false;
+        }
+    }
+
+    private boolean collectBinder(SCIMFilter filter, List<ParameterBinder> binders, String valuePrefix, String valueSuffix) {
+        String value = filter.getFilterValue();
+        if (value == null) {
+            return true;
+        }
+        char type = getLiteralType(value, filter.isQuoteFilterValue());
+        switch (filter.getFilterAttribute().getAttributeName().toLowerCase()) {
+            case "client_secret" :
+            case "password" :
+            case "salt" :
+                binders.add(new ParameterBinder(type, valuePrefix, valueSuffix, true));
+                break;
+            default:
+                binders.add(new ParameterBinder(type, valuePrefix, valueSuffix, false));
+        }
+        return type != ParameterBinder.INVALID;
+    }
+
+    private char getLiteralType(String value, boolean quoted) {
+        if (quoted) {
+            return getStringOrDate(value) instanceof Date ? ParameterBinder.DATE : ParameterBinder.STRING;
+        }
+        try {
+            Double.parseDouble(value);
+            return ParameterBinder.NUMBER;
+        } catch (NumberFormatException x) {
+            if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+                return ParameterBinder.BOOLEAN;
+            }
+            return ParameterBinder.INVALID;
+        }
+    }
+
+    /**
+     * Computes the value of one parameter from a literal of the filter, like {@link #comparisonClause} does.
+     */
+    private static class ParameterBinder {
+        static final char STRING = 'S';
+        static final char DATE = 'D';
+        static final char NUMBER = 'N';
+        static final char BOOLEAN = 'B';
+        static final char INVALID = 'X';
+
+        private final char type;
+        private final String valuePrefix;
+        private final String valueSuffix;
+        private final boolean hidden;
+
+        ParameterBinder(char type, String valuePrefix, String valueSuffix, boolean hidden) {
+            this.type = type;
+            this.valuePrefix = valuePrefix;
+            this.valueSuffix = valueSuffix;
+            this.hidden = hidden;
+        }
+
+        Object bind(Literal literal) {
+            switch (type) {
+                case STRING:
+                    return valuePrefix + (hidden ? "" : literal.getValue()) + valueSuffix;
+                case DATE:
+                    return literal.getDate();
+                case NUMBER:
+                    return Double.parseDouble(literal.getValue());
+                default:
+                    return Boolean.valueOf(literal.getValue());
+            }
+        }
+    }
+
+    /**
+     * The SQL of a filter shape and the binders for its parameters.
+     */
+    private static class CompiledFilter {
+        private final String sql;
+        private final String paramPrefix;
+        private final List<ParameterBinder> binders;
+
+        CompiledFilter(String sql, String paramPrefix, List<ParameterBinder> binders) {
+            this.sql = sql;
+            this.paramPrefix = paramPrefix;
+            this.binders = binders;
+        }
+
+        String getSql() {
+            return sql;
+        }
+
+        String getParamPrefix() {
+            return paramPrefix;
+        }
+
+        int getParameterCount() {
+            return binders.size();
+        }
+
+        Map<String, Object> bind(List<Literal> literals) {
+            Map<String, Object> values = new HashMap<>();
+            for (int i = 0; i < binders.size(); i++) {
+                values.put(paramPrefix + i, binders.get(i).bind(literals.get(i)));
+            }
+            return values;
+        }
+
+        boolean matches(List<Literal> literals, Map<String, Object> values) {
+            if (literals.size() != binders.size() || values.size() != binders.size()) {
+                return false;
+            }
+            for (int i = 0; i < binders.size(); i++) {
+                if (binders.get(i).type != literals.get(i).getType()) {
+                    return false;
+                }
+            }
+            return bind(literals).equals(values);
+        }
+    }
+
+    private static class Literal {
+        private final char type;
+        private final String value;
+        private final Date date;
+
+        Literal(char type, String value, Date date) {
+            this.type = type;
+            this.value = value;
+            this.date = date;
+        }
+
+        char getType() {
+            return type;
+        }
+
+        String getValue() {
+            return value;
+        }
+
+        Date getDate() {
+            return date;
+        }
+    }
+
+    /**
+     * The filter text with each literal value replaced by a marker for its type, and the literal values in order.
+     * Two filters with the same shape only differ in their literal values.
+     */
+    private static class FilterShape {
+        private final String key;
+        private final List<Literal> literals;
+
+        private FilterShape(String key, List<Literal> literals) {
+            this.key = key;
+            this.literals = literals;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        List<Literal> getLiterals() {
+            return literals;
+        }
+
+        /**
+         * @return the shape of the filter, or null if the filter uses quoting that is left to the SCIM parser
+         */
+        static FilterShape of(String filter, SimpleSearchQueryConverter converter) {
+            //escapes and legacy single quoted values always go through the parser
+            if (filter.indexOf('\\') >= 0 || filter.indexOf('\'') >= 0) {
+                return null;
+            }
+            StringBuilder key = new StringBuilder(filter.length());
+            List<Literal> literals = new ArrayList<>();
+            int length = filter.length();
+            int i = 0;
+            while (i < length) {
+                char c = filter.charAt(i);
+                if (c == '"') {
+                    int end = filter.indexOf('"', i + 1);
+                    if (end < 0) {
+                        return null;
+                    }
+                    String value = filter.substring(i + 1, end);
+                    Object parsed = converter.getStringOrDate(value);
+                    char type = parsed instanceof Date ? ParameterBinder.DATE : ParameterBinder.STRING;
+                    key.append('"').append(type).append('"');
+                    literals.add(new Literal(type, value, parsed instanceof Date ? (Date) parsed : null));
+                    i = end + 1;
+                } else if (isTokenCharacter(c)) {
+                    int end = i;
+                    while (end < length && isTokenCharacter(filter.charAt(end))) {
+                        end++;
+                    }
+                    String token = filter.substring(i, end);
+                    char type = converter.getLiteralType(token, false);
+                    if (type == ParameterBinder.INVALID) {
+                        key.append(token);
+                    } else {
+                        key.append('"').append(type);
+                        literals.add(new Literal(type, token, null));
+                    }
+                    i = end;
+                } else {
+                    key.append(c);
+                    i++;
+                }
+            }
+            return new FilterShape(key.toString(), literals);
+        }
+
+        private static boolean isTokenCharacter(char c) {
+            return c != '"' && c != '(' && c != ')' && !Character.isWhitespace(c);
+        }
+    }
+
+    private static class FilterKey {
+        private final String shape;
+        private final String sortBy;
+        private final boolean ascending;
+        private final AttributeNameMapper mapper;
+
+        FilterKey(String shape, String sortBy, boolean ascending, AttributeNameMapper mapper) {
+            this.shape = shape;
+            this.sortBy = sortBy;
+            this.ascending = ascending;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FilterKey)) {
+                return false;
+            }
+            FilterKey other = (FilterKey) o;
+            return ascending == other.ascending &&
+                mapper == other.mapper &&
+                shape.equals(other.shape) &&
+                Objects.equals(sortBy, other.sortBy);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(shape, sortBy, ascending, System.identityHashCode(mapper));
+        }
+    }
 }
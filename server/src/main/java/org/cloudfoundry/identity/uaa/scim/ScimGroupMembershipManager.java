@@ -16,7 +16,9 @@ import org.cloudfoundry.identity.uaa.scim.exception.MemberAlreadyExistsException
 import org.cloudfoundry.identity.uaa.scim.exception.MemberNotFoundException;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public interface ScimGroupMembershipManager  {
@@ -58,6 +60,18 @@ public interface ScimGroupMembershipManager  {
      */
     Set<ScimGroup> getGroupsWithMember(String memberId, boolean transitive, String zoneId) throws ScimResourceNotFoundException;
 
+    /**
+     * Retrieve all groups that each of the given users belongs to, directly, through nested groups, or as a default
+     * group of the zone. Gives the same groups as {@link #getGroupsWithMember(String, boolean, String)} with and
+     * without transitive resolution for every user, without querying the memberships of each user separately.
+     *
+     * @param userIds
+     * @param zoneId
+     * @return the groups of each user, keyed by user id. Default groups and groups the user is a member of are
+     *         {@link ScimUser.Group.Type#DIRECT}, groups reached through nested groups are {@link ScimUser.Group.Type#INDIRECT}.
+     */
+    Map<String, Set<ScimUser.Group>> getGroupsWithUsers(Collection<String> userIds, String zoneId);
+
     /**
      * Retrieve a particular member's membership details
      *
@@ -127,4 +141,18 @@ public interface ScimGroupMembershipManager  {
      */
     Set<ScimGroup> getGroupsWithExternalMember(String memberId, String origin) throws ScimResourceNotFoundException;
 
+    /**
+     * Makes the external memberships of a member, for the given origin, match the given group names.
+     * Memberships in groups that are not listed are revoked, memberships in listed groups are added.
+     * Memberships the member already has through another origin are left alone.
+     *
+     * @param memberId
+     * @param origin the origin of the memberships
+     * @param groupNames display names of the groups the member should belong to
+     * @param createGroups true to create listed groups that do not exist yet, false to ignore them
+     * @param zoneId
+     * @return the listed groups that exist or were created, except the default groups of the zone
+     */
+    Set<ScimGroup> syncExternalMember(String memberId, String origin, Collection<String> groupNames, boolean createGroups, String zoneId);
+
 }
@@ -50,9 +50,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.validation.constraints.NotNull;
 
@@ -258,22 +256,14 @@ public class ScimUserBootstrap implements
         }
         if (event instanceof ExternalGroupAuthorizationEvent) {
             ExternalGroupAuthorizationEvent exEvent = (ExternalGroupAuthorizationEvent)event;
-            //delete previous membership relation ships
+            //replace previous membership relation ships
             String origin = exEvent.getUser().getOrigin();
             if (!OriginKeys.UAA.equals(origin)) {
-                Set<ScimGroup> groupsWithMember = membershipManager.getGroupsWithExternalMember(exEvent.getUser().getId(), origin);
-                Map<String, ScimGroup> groupsMap = groupsWithMember.stream().collect(Collectors.toMap(ScimGroup::getDisplayName, Function.identity()));
-                Collection<? extends GrantedAuthority> externalAuthorities = exEvent.getExternalAuthorities();
-                for (GrantedAuthority authority : externalAuthorities) {
-                    if (groupsMap.containsKey(authority.getAuthority())) {
-                        groupsMap.remove(authority.getAuthority());
-                    } else {
-                        addToGroup(exEvent.getUser().getId(), authority.getAuthority(), origin, exEvent.isAddGroups());
-                    }
-                }
-                for (ScimGroup group : groupsMap.values()) {
-                    membershipManager.removeMemberById(group.getId(), exEvent.getUser().getId(), group.getZoneId());
-                }
+                List<String> externalGroups = exEvent.getExternalAuthorities()
+                    .stream()
+                    .map(GrantedAuthority::getAuthority)
+                    .collect(Collectors.toList());
+                membershipManager.syncExternalMember(exEvent.getUser().getId(), origin, externalGroups, exEvent.isAddGroups(), IdentityZoneHolder.get().getId());
             }
             //update the user itself
             if(event.isUserModified()) {
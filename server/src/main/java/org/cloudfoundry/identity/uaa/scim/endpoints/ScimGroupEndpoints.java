@@ -16,6 +16,8 @@ import com.jayway.jsonpath.JsonPathException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.resources.AttributeNameMapper;
+import org.cloudfoundry.identity.uaa.resources.CursorPage;
+import org.cloudfoundry.identity.uaa.resources.PageCursor;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
 import org.cloudfoundry.identity.uaa.resources.SearchResultsFactory;
 import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
@@ -150,6 +152,20 @@ public class ScimGroupEndpoints {
         return response;
     }
 
+    public SearchResults<?> listGroups(String attributesCommaSeparated,
+                                       String filter,
+                                       String sortBy,
+                                       String sortOrder,
+                                       int startIndex,
+                                       int count) {
+        return listGroups(attributesCommaSeparated, filter, sortBy, sortOrder, startIndex, count, null, true);
+    }
+
+    /**
+     * @param cursor when present, the groups are paged by cursor instead of by startIndex. Pass an empty
+     *               cursor for the first page, and the returned nextCursor for the following pages.
+     * @param countTotal false to skip counting the total number of results when paging by cursor
+     */
     @RequestMapping(value = {"/Groups"}, method = RequestMethod.GET)
     @ResponseBody
     public SearchResults<?> listGroups(
@@ -158,12 +174,25 @@ public class ScimGroupEndpoints {
         @RequestParam(required = false, defaultValue = "created") String sortBy,
         @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
         @RequestParam(required = false, defaultValue = "1") int startIndex,
-        @RequestParam(required = false, defaultValue = "100") int count) {
+        @RequestParam(required = false, defaultValue = "100") int count,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(required = false, defaultValue = "true") boolean countTotal) {
 
         if (count > groupMaxCount) {
             count = groupMaxCount;
         }
 
+        if (StringUtils.hasLength(attributesCommaSeparated)) {
+            List<String> attributes = Arrays.asList(attributesCommaSeparated.split(","));
+            if (dao.canQueryAttributes(attributes, sortBy)) {
+                return listGroupAttributes(attributes, filter, sortBy, sortOrder, startIndex, count, cursor, countTotal);
+            }
+        }
+
+        if (cursor != null) {
+            return listGroupsByCursor(attributesCommaSeparated, filter, sortBy, sortOrder, Math.max(count, 1), cursor, countTotal);
+        }
+
         List<ScimGroup> result;
         try {
             result = dao.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder), IdentityZoneHolder.get().getId());
@@ -191,6 +220,95 @@ public class ScimGroupEndpoints {
         }
     }
 
+    private SearchResults<?> listGroupsByCursor(String attributesCommaSeparated,
+                                                String filter,
+                                                String sortBy,
+                                                String sortOrder,
+                                                int count,
+                                                String cursor,
+                                                boolean countTotal) {
+        PageCursor after = getPageCursor(cursor);
+
+        CursorPage<ScimGroup> page;
+        try {
+            page = dao.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder), after, count, countTotal, IdentityZoneHolder.get().getId());
+        } catch (IllegalArgumentException e) {
+            throw new ScimException("Invalid filter expression: [" + filter + "]", HttpStatus.BAD_REQUEST);
+        }
+
+        String[] attributes = StringUtils.hasLength(attributesCommaSeparated) ? attributesCommaSeparated.split(",") : null;
+        if (attributes == null || Arrays.asList(attributes).contains("members")) {
+            for (ScimGroup group : page.getResources()) {
+                group.setMembers(membershipManager.getMembers(group.getId(), false, IdentityZoneHolder.get().getId()));
+            }
+        }
+
+        SearchResults<?> results;
+        if (attributes == null) {
+            results = new SearchResults<>(Arrays.asList(ScimCore.SCHEMAS), page.getResources(), 1, count, page.getTotalResults());
+        } else {
+            try {
+                results = SearchResultsFactory.buildSearchResultFrom(page.getResources(), 1, count, page.getTotalResults(), attributes,
+                    new SimpleAttributeNameMapper(Collections.emptyMap()), Arrays.asList(ScimCore.SCHEMAS));
+            } catch (JsonPathException e) {
+                throw new ScimException("Invalid attributes: [" + attributesCommaSeparated + "]", HttpStatus.BAD_REQUEST);
+            }
+        }
+        if (page.getNext() != null) {
+            results.setNextCursor(page.getNext().encode());
+        }
+        return results;
+    }
+
+    /**
+     * Selects only the columns of the requested attributes, instead of loading whole groups and
+     * reading the attributes from their serialized form.
+     */
+    private SearchResults<?> listGroupAttributes(List<String> attributes,
+                                                 String filter,
+                                                 String sortBy,
+                                                 String sortOrder,
+                                                 int startIndex,
+                                                 int count,
+                                                 String cursor,
+                                                 boolean countTotal) {
+        String zoneId = IdentityZoneHolder.get().getId();
+        boolean ascending = "ascending".equalsIgnoreCase(sortOrder);
+        List<Map<String, Object>> resources;
+        PageCursor next = null;
+        int total;
+        try {
+            if (cursor == null) {
+                List<Map<String, Object>> result = dao.queryAttributes(attributes, filter, sortBy, ascending, zoneId);
+                resources = UaaPagingUtils.subList(result, startIndex, count);
+                total = result.size();
+            } else {
+                startIndex = 1;
+                count = Math.max(count, 1);
+                CursorPage<Map<String, Object>> page = dao.queryAttributes(attributes, filter, sortBy, ascending, getPageCursor(cursor), count, countTotal, zoneId);
+                resources = page.getResources();
+                total = page.getTotalResults();
+                next = page.getNext();
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ScimException("Invalid filter expression: [" + filter + "]", HttpStatus.BAD_REQUEST);
+        }
+
+        SearchResults<?> results = new SearchResults<>(Arrays.asList(ScimCore.SCHEMAS), resources, startIndex, count, total);
+        if (next != null) {
+            results.setNextCursor(next.encode());
+        }
+        return results;
+    }
+
+    private PageCursor getPageCursor(String cursor) {
+        try {
+            return StringUtils.hasText(cursor) ? PageCursor.decode(cursor) : null;
+        } catch (IllegalArgumentException e) {
+            throw new ScimException("Invalid cursor: [" + cursor + "]", HttpStatus.BAD_REQUEST);
+        }
+    }
+
     @RequestMapping(value = {"/Groups/External/list"}, method = RequestMethod.GET)
     @ResponseBody
     @Deprecated
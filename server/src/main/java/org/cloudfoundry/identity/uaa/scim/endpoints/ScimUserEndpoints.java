@@ -342,6 +342,20 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
         }
     }
 
+    public SearchResults<?> findUsers(String attributesCommaSeparated,
+                                      String filter,
+                                      String sortBy,
+                                      String sortOrder,
+                                      int startIndex,
+                                      int count) {
+        return findUsers(attributesCommaSeparated, filter, sortBy, sortOrder, startIndex, count, null, true);
+    }
+
+    /**
+     * @param cursor when present, the users are paged by cursor instead of by startIndex. Pass an empty
+     *               cursor for the first page, and the returned nextCursor for the following pages.
+     * @param countTotal false to skip counting the total number of results when paging by cursor
+     */
     @RequestMapping(value = "/Users", method = RequestMethod.GET)
     @ResponseBody
     public SearchResults<?> findUsers(
@@ -350,7 +364,9 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
                     @RequestParam(required = false, defaultValue = "created") String sortBy,
                     @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
                     @RequestParam(required = false, defaultValue = "1") int startIndex,
-                    @RequestParam(required = false, defaultValue = "100") int count) {
+                    @RequestParam(required = false, defaultValue = "100") int count,
+                    @RequestParam(required = false) String cursor,
+                    @RequestParam(required = false, defaultValue = "true") boolean countTotal) {
 
         if (startIndex < 1) {
             startIndex = 1;
@@ -360,50 +376,137 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
             count = userMaxCount;
         }
 
+        PageCursor after = getPageCursor(cursor);
+        PageCursor next = null;
         List<ScimUser> input = new ArrayList<ScimUser>();
-        List<ScimUser> result;
+        int total;
         Set<String> attributes = StringUtils.commaDelimitedListToSet(attributesCommaSeparated);
+        AttributeNameMapper mapper = getAttributeMapper();
+        Map<String, String> attributePaths = new LinkedHashMap<>();
+        attributes.forEach(attribute -> attributePaths.put(attribute, mapper.mapToInternal(attribute)));
+        if (scimUserProvisioning.canQueryAttributes(attributePaths.values(), sortBy)) {
+            return findUserAttributes(attributePaths, filter, sortBy, sortOrder, startIndex, count, cursor, after, countTotal);
+        }
         try {
-            result = scimUserProvisioning.query(filter, sortBy, sortOrder.equals("ascending"), IdentityZoneHolder.get().getId());
-            for (ScimUser user : UaaPagingUtils.subList(result, startIndex, count)) {
-                if(attributes.isEmpty() || attributes.stream().anyMatch(p -> "groups".equalsIgnoreCase(p))) {
-                    syncGroups(user);
-                }
-                if(attributes.isEmpty() || attributes.stream().anyMatch(p -> "approvals".equalsIgnoreCase(p))) {
-                    syncApprovals(user);
-                }
-                input.add(user);
+            if (cursor == null) {
+                List<ScimUser> result = scimUserProvisioning.query(filter, sortBy, sortOrder.equals("ascending"), IdentityZoneHolder.get().getId());
+                input.addAll(UaaPagingUtils.subList(result, startIndex, count));
+                total = result.size();
+            } else {
+                startIndex = 1;
+                count = Math.max(count, 1);
+                CursorPage<ScimUser> page = scimUserProvisioning.query(filter, sortBy, sortOrder.equals("ascending"), after, count, countTotal, IdentityZoneHolder.get().getId());
+                input.addAll(page.getResources());
+                total = page.getTotalResults();
+                next = page.getNext();
             }
-        } catch (IllegalArgumentException e) {
-            String msg = "Invalid filter expression: [" + filter + "]";
-            if (StringUtils.hasText(sortBy)) {
-                msg += " [" +sortBy+"]";
+            if(attributes.isEmpty() || attributes.stream().anyMatch(p -> "groups".equalsIgnoreCase(p))) {
+                syncGroups(input);
+            }
+            if(attributes.isEmpty() || attributes.stream().anyMatch(p -> "approvals".equalsIgnoreCase(p))) {
+                syncApprovals(input);
             }
-            throw new ScimException(msg, HttpStatus.BAD_REQUEST);
+        } catch (IllegalArgumentException e) {
+            throw getInvalidFilterException(filter, sortBy);
         }
 
+        SearchResults<?> results;
         if (!StringUtils.hasLength(attributesCommaSeparated)) {
             // Return all user data
-            return new SearchResults<>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count, result.size());
+            results = new SearchResults<>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count, total);
+        } else {
+            try {
+                results = SearchResultsFactory.buildSearchResultFrom(input,
+                                                                     startIndex,
+                                                                     count,
+                                                                     total,
+                                                                     attributes.toArray(new String[attributes.size()]),
+                                                                     mapper,
+                                                                     Arrays.asList(ScimCore.SCHEMAS)
+                );
+            } catch (JsonPathException e) {
+                throw new ScimException("Invalid attributes: [" + attributesCommaSeparated + "]", HttpStatus.BAD_REQUEST);
+            }
+        }
+        if (next != null) {
+            results.setNextCursor(next.encode());
+        }
+        return results;
+    }
+
+    /**
+     * Selects only the columns of the requested attributes, instead of loading whole users and
+     * reading the attributes from their serialized form.
+     */
+    private SearchResults<?> findUserAttributes(Map<String, String> attributePaths,
+                                                String filter,
+                                                String sortBy,
+                                                String sortOrder,
+                                                int startIndex,
+                                                int count,
+                                                String cursor,
+                                                PageCursor after,
+                                                boolean countTotal) {
+        Set<String> paths = new LinkedHashSet<>(attributePaths.values());
+        String zoneId = IdentityZoneHolder.get().getId();
+        boolean ascending = sortOrder.equals("ascending");
+        List<Map<String, Object>> rows;
+        PageCursor next = null;
+        int total;
+        try {
+            if (cursor == null) {
+                List<Map<String, Object>> result = scimUserProvisioning.queryAttributes(paths, filter, sortBy, ascending, zoneId);
+                rows = UaaPagingUtils.subList(result, startIndex, count);
+                total = result.size();
+            } else {
+                startIndex = 1;
+                count = Math.max(count, 1);
+                CursorPage<Map<String, Object>> page = scimUserProvisioning.queryAttributes(paths, filter, sortBy, ascending, after, count, countTotal, zoneId);
+                rows = page.getResources();
+                total = page.getTotalResults();
+                next = page.getNext();
+            }
+        } catch (IllegalArgumentException e) {
+            throw getInvalidFilterException(filter, sortBy);
         }
 
+        List<Map<String, Object>> resources = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Map<String, Object> resource = new LinkedHashMap<>();
+            attributePaths.forEach((attribute, path) -> resource.put(attribute, row.get(path)));
+            resources.add(resource);
+        }
+        SearchResults<?> results = new SearchResults<>(Arrays.asList(ScimCore.SCHEMAS), resources, startIndex, count, total);
+        if (next != null) {
+            results.setNextCursor(next.encode());
+        }
+        return results;
+    }
+
+    private AttributeNameMapper getAttributeMapper() {
         Map<String, String> attributeMap = new HashMap<>();
         attributeMap.put("^emails\\.", "emails[*].");
         attributeMap.put("familyName", "name.familyName");
         attributeMap.put("givenName", "name.givenName");
-        AttributeNameMapper mapper = new SimpleAttributeNameMapper(attributeMap);
+        return new SimpleAttributeNameMapper(attributeMap);
+    }
+
+    private ScimException getInvalidFilterException(String filter, String sortBy) {
+        String msg = "Invalid filter expression: [" + filter + "]";
+        if (StringUtils.hasText(sortBy)) {
+            msg += " [" +sortBy+"]";
+        }
+        return new ScimException(msg, HttpStatus.BAD_REQUEST);
+    }
 
+    private PageCursor getPageCursor(String cursor) {
+        if (!StringUtils.hasText(cursor)) {
+            return null;
+        }
         try {
-            return SearchResultsFactory.buildSearchResultFrom(input,
-                                                              startIndex,
-                                                              count,
-                                                              result.size(),
-                                                              attributes.toArray(new String[attributes.size()]),
-                                                              mapper,
-                                                              Arrays.asList(ScimCore.SCHEMAS)
-            );
-        } catch (JsonPathException e) {
-            throw new ScimException("Invalid attributes: [" + attributesCommaSeparated + "]", HttpStatus.BAD_REQUEST);
+            return PageCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ScimException("Invalid cursor: [" + cursor + "]", HttpStatus.BAD_REQUEST);
         }
     }
 
@@ -446,33 +549,71 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
         }
 
         Set<ScimGroup> directGroups = membershipManager.getGroupsWithMember(user.getId(), false, IdentityZoneHolder.get().getId());
-        Set<ScimGroup> indirectGroups = membershipManager.getGroupsWithMember(user.getId(), true, IdentityZoneHolder.get().getId());
-        indirectGroups.removeAll(directGroups);
+        Set<ScimGroup> allGroups = membershipManager.getGroupsWithMember(user.getId(), true, IdentityZoneHolder.get().getId());
+        setGroups(user, directGroups, allGroups);
+        return user;
+    }
+
+    /**
+     * Loads the groups of a whole page of users at once, instead of querying the memberships of each user.
+     */
+    protected void syncGroups(List<ScimUser> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+
+        List<String> userIds = users.stream().map(ScimUser::getId).collect(Collectors.toList());
+        Map<String, Set<ScimUser.Group>> groups = membershipManager.getGroupsWithUsers(userIds, IdentityZoneHolder.get().getId());
+        for (ScimUser user : users) {
+            user.setGroups(groups.getOrDefault(user.getId(), Collections.emptySet()));
+        }
+    }
+
+    private void setGroups(ScimUser user, Set<ScimGroup> directGroups, Set<ScimGroup> allGroups) {
         Set<ScimUser.Group> groups = new HashSet<ScimUser.Group>();
         for (ScimGroup group : directGroups) {
             groups.add(new ScimUser.Group(group.getId(), group.getDisplayName(), ScimUser.Group.Type.DIRECT));
         }
-        for (ScimGroup group : indirectGroups) {
-            groups.add(new ScimUser.Group(group.getId(), group.getDisplayName(), ScimUser.Group.Type.INDIRECT));
+        for (ScimGroup group : allGroups) {
+            if (!directGroups.contains(group)) {
+                groups.add(new ScimUser.Group(group.getId(), group.getDisplayName(), ScimUser.Group.Type.INDIRECT));
+            }
         }
 
         user.setGroups(groups);
-        return user;
     }
 
     protected ScimUser syncApprovals(ScimUser user) {
         if (user == null || approvalStore == null) {
             return user;
         }
-        Set<Approval> approvals = new HashSet<Approval>(approvalStore.getApprovalsForUser(user.getId(), IdentityZoneHolder.get().getId()));
-        Set<Approval> active = new HashSet<Approval>(approvals);
+        setApprovals(user, approvalStore.getApprovalsForUser(user.getId(), IdentityZoneHolder.get().getId()));
+        return user;
+    }
+
+    /**
+     * Loads the approvals of a whole page of users at once, instead of querying the approvals of each user.
+     */
+    protected void syncApprovals(List<ScimUser> users) {
+        if (users.isEmpty() || approvalStore == null) {
+            return;
+        }
+        List<String> userIds = users.stream().map(ScimUser::getId).collect(Collectors.toList());
+        Map<String, List<Approval>> approvals = approvalStore.getApprovalsForUsers(userIds, IdentityZoneHolder.get().getId());
+        for (ScimUser user : users) {
+            setApprovals(user, approvals.getOrDefault(user.getId(), Collections.emptyList()));
+        }
+    }
+
+    private void setApprovals(ScimUser user, Collection<Approval> approvals) {
+        Date now = new Date();
+        Set<Approval> active = new HashSet<Approval>();
         for (Approval approval : approvals) {
-            if (!approval.isActiveAsOf(new Date())) {
-                active.remove(approval);
+            if (approval.isActiveAsOf(now)) {
+                active.add(approval);
             }
         }
         user.setApprovals(active);
-        return user;
     }
 
     @ExceptionHandler(UaaException.class)
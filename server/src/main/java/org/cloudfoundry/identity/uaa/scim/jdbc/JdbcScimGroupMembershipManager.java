@@ -35,10 +35,14 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
 import java.sql.PreparedStatement;
@@ -46,14 +50,22 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 import static org.springframework.util.StringUtils.hasText;
 
@@ -95,6 +107,22 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
             " from %s m, %s g where m.group_id = g.id and g.identity_zone_id = ? and m.member_id = ? and m.origin = ?",
         MEMBERSHIP_TABLE, GROUP_TABLE);
 
+    public static final String GET_GROUPS_BY_MEMBERS_SQL = String.format("select g.id, g.displayName, g.description, g.created, g.lastModified, g.version, g.identity_zone_id, m.member_id" +
+            " from %s m, %s g where m.group_id = g.id and g.identity_zone_id = ? and m.member_id in (%%s)",
+        MEMBERSHIP_TABLE, GROUP_TABLE);
+
+    public static final String GET_MEMBERSHIPS_BY_MEMBER_SQL = String.format("select group_id, origin from %s where member_id=? and identity_zone_id=?", MEMBERSHIP_TABLE);
+
+    public static final String GET_GROUPS_BY_NAMES_SQL = String.format("select id, displayName, description, created, lastModified, version, identity_zone_id" +
+            " from %s where identity_zone_id = ? and lower(displayName) in (%%s)",
+        GROUP_TABLE);
+
+    private static final int MAX_IN_CLAUSE_PARAMETERS = 500;
+
+    private static final int SYNC_ATTEMPTS = 3;
+
+    private PlatformTransactionManager transactionManager;
+
     private ScimUserProvisioning userProvisioning;
 
     private ScimGroupProvisioning groupProvisioning;
@@ -103,6 +131,8 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
 
     private ScimGroupMemberRowMapper rowMapper;
 
+    private JdbcTransitiveGroupResolver groupResolver;
+
     private TimeBasedExpiringValueMap<String, ScimGroup> defaultGroupCache = new TimeBasedExpiringValueMap<>(timeService);;
 
     @Override
@@ -152,6 +182,20 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
         this.timeService = timeService;
     }
 
+    public void setGroupResolver(JdbcTransitiveGroupResolver groupResolver) {
+        this.groupResolver = groupResolver;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    private void nestingChanged(String zoneId) {
+        if (groupResolver != null) {
+            groupResolver.invalidate(zoneId);
+        }
+    }
+
     public JdbcScimGroupMembershipManager(JdbcTemplate jdbcTemplate) {
         Assert.notNull(jdbcTemplate);
         this.jdbcTemplate = jdbcTemplate;
@@ -191,6 +235,9 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
         } catch (DuplicateKeyException e) {
             throw new MemberAlreadyExistsException(member.getMemberId() + " is already part of the group: " + groupId);
         }
+        if (member.getType() == ScimGroupMember.Type.GROUP) {
+            nestingChanged(zoneId);
+        }
         return getMemberById(groupId, member.getMemberId(), zoneId);
     }
 
@@ -265,6 +312,71 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
 
     }
 
+    @Override
+    public Map<String, Set<ScimUser.Group>> getGroupsWithUsers(Collection<String> userIds, String zoneId) {
+        Map<String, Set<ScimGroup>> directGroups = getGroupsByMember(new HashSet<>(userIds), zoneId);
+        //resolve the nesting of all groups of the page level by level, one query per level
+        Map<String, Set<ScimGroup>> parentGroups = new HashMap<>();
+        Set<String> level = getGroupIds(directGroups.values());
+        while (!level.isEmpty()) {
+            Map<String, Set<ScimGroup>> parents = getGroupsByMember(level, zoneId);
+            for (String groupId : level) {
+                parentGroups.put(groupId, parents.getOrDefault(groupId, emptySet()));
+            }
+            level = getGroupIds(parents.values());
+            level.removeAll(parentGroups.keySet());
+        }
+
+        Set<ScimGroup> defaultGroups = getDefaultUserGroups(zoneId);
+        Map<String, Set<ScimUser.Group>> result = new HashMap<>();
+        for (String userId : userIds) {
+            Set<ScimGroup> direct = new HashSet<>(directGroups.getOrDefault(userId, emptySet()));
+            Set<ScimGroup> all = new HashSet<>(direct);
+            Deque<ScimGroup> pending = new ArrayDeque<>(direct);
+            while (!pending.isEmpty()) {
+                for (ScimGroup parent : parentGroups.getOrDefault(pending.pop().getId(), emptySet())) {
+                    if (all.add(parent)) {
+                        pending.push(parent);
+                    }
+                }
+            }
+            direct.addAll(defaultGroups);
+            all.addAll(defaultGroups);
+
+            Set<ScimUser.Group> groups = new HashSet<>();
+            for (ScimGroup group : all) {
+                ScimUser.Group.Type type = direct.contains(group) ? ScimUser.Group.Type.DIRECT : ScimUser.Group.Type.INDIRECT;
+                groups.add(new ScimUser.Group(group.getId(), group.getDisplayName(), type));
+            }
+            result.put(userId, groups);
+        }
+        return result;
+    }
+
+    /**
+     * @return the groups each of the given members directly belongs to, keyed by member id
+     */
+    private Map<String, Set<ScimGroup>> getGroupsByMember(Collection<String> memberIds, String zoneId) {
+        List<String> ids = new ArrayList<>(memberIds);
+        Map<String, Set<ScimGroup>> result = new HashMap<>();
+        ScimGroupRowMapper groupRowMapper = new ScimGroupRowMapper();
+        for (int from = 0; from < ids.size(); from += MAX_IN_CLAUSE_PARAMETERS) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IN_CLAUSE_PARAMETERS));
+            String sql = String.format(GET_GROUPS_BY_MEMBERS_SQL, String.join(",", Collections.nCopies(chunk.size(), "?")));
+            List<Object> parameters = new ArrayList<>(chunk.size() + 1);
+            parameters.add(zoneId);
+            parameters.addAll(chunk);
+            jdbcTemplate.query(sql, rs -> {
+                result.computeIfAbsent(rs.getString(8), k -> new HashSet<>()).add(groupRowMapper.mapRow(rs, 0));
+            }, parameters.toArray());
+        }
+        return result;
+    }
+
+    private static Set<String> getGroupIds(Collection<Set<ScimGroup>> groups) {
+        return groups.stream().flatMap(Set::stream).map(ScimGroup::getId).collect(toSet());
+    }
+
     @Override
     public Set<ScimGroup> getGroupsWithExternalMember(final String memberId, final String origin) throws ScimResourceNotFoundException {
         List<ScimGroup> results;
@@ -282,6 +394,136 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
         return new HashSet<>(results);
     }
 
+    @Override
+    public Set<ScimGroup> syncExternalMember(final String memberId,
+                                             final String origin,
+                                             final Collection<String> groupNames,
+                                             final boolean createGroups,
+                                             final String zoneId) {
+        Map<String, ScimGroup> groups = getGroupsByName(groupNames, zoneId);
+        if (createGroups) {
+            for (String name : groupNames) {
+                if (hasText(name) && !groups.containsKey(name.toLowerCase(Locale.ROOT))) {
+                    logger.debug("Creating external group:" + name);
+                    groups.put(name.toLowerCase(Locale.ROOT), groupProvisioning.createOrGet(new ScimGroup(null, name, zoneId), zoneId));
+                }
+            }
+        }
+        Set<String> defaultGroupIds = getDefaultUserGroups(zoneId).stream().map(ScimGroup::getId).collect(toSet());
+        Map<String, ScimGroup> wanted = new LinkedHashMap<>();
+        for (ScimGroup group : groups.values()) {
+            if (!defaultGroupIds.contains(group.getId())) {
+                wanted.put(group.getId(), group);
+            }
+        }
+
+        TransactionTemplate template = new TransactionTemplate(getTransactionManager());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                template.execute(status -> {
+                    applyExternalMemberships(memberId, origin, wanted, zoneId);
+                    return null;
+                });
+                return new HashSet<>(wanted.values());
+            } catch (DuplicateKeyException e) {
+                //a concurrent login of the same user added some of the memberships, recompute the difference
+                if (attempt >= SYNC_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("Concurrent membership change for member:" + memberId + ", retrying");
+            }
+        }
+    }
+
+    private void applyExternalMemberships(String memberId, String origin, Map<String, ScimGroup> wanted, String zoneId) {
+        Map<String, String> current = new HashMap<>();
+        jdbcTemplate.query(GET_MEMBERSHIPS_BY_MEMBER_SQL, rs -> {
+            current.put(rs.getString(1), rs.getString(2));
+        }, memberId, zoneId);
+
+        final List<String> toRemove = new ArrayList<>();
+        for (Map.Entry<String, String> membership : current.entrySet()) {
+            if (origin.equals(membership.getValue()) && !wanted.containsKey(membership.getKey())) {
+                toRemove.add(membership.getKey());
+            }
+        }
+        final List<String> toAdd = new ArrayList<>();
+        for (String groupId : wanted.keySet()) {
+            if (!current.containsKey(groupId)) {
+                toAdd.add(groupId);
+            }
+        }
+        logger.debug(String.format("Syncing external memberships for member:%s, adding %s, removing %s", memberId, toAdd, toRemove));
+
+        if (!toRemove.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_MEMBER_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ps.setString(1, memberId);
+                    ps.setString(2, toRemove.get(i));
+                    ps.setString(3, zoneId);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return toRemove.size();
+                }
+            });
+        }
+        if (!toAdd.isEmpty()) {
+            final Timestamp added = new Timestamp(timeService.getCurrentTimeMillis());
+            jdbcTemplate.batchUpdate(ADD_MEMBER_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ps.setString(1, toAdd.get(i));
+                    ps.setString(2, memberId);
+                    ps.setString(3, ScimGroupMember.Type.USER.toString());
+                    ps.setNull(4, Types.VARCHAR);
+                    ps.setTimestamp(5, added);
+                    ps.setString(6, origin);
+                    ps.setString(7, zoneId);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return toAdd.size();
+                }
+            });
+        }
+    }
+
+    /**
+     * Resolves groups by display name, ignoring case like a SCIM {@code displayName eq} filter does.
+     * @return the groups found, keyed by the lower case display name
+     */
+    private Map<String, ScimGroup> getGroupsByName(Collection<String> groupNames, String zoneId) {
+        List<String> names = groupNames
+            .stream()
+            .filter(name -> hasText(name))
+            .map(name -> name.toLowerCase(Locale.ROOT))
+            .distinct()
+            .collect(toList());
+        Map<String, ScimGroup> result = new HashMap<>();
+        for (int from = 0; from < names.size(); from += MAX_IN_CLAUSE_PARAMETERS) {
+            List<String> chunk = names.subList(from, Math.min(names.size(), from + MAX_IN_CLAUSE_PARAMETERS));
+            String sql = String.format(GET_GROUPS_BY_NAMES_SQL, String.join(",", Collections.nCopies(chunk.size(), "?")));
+            List<Object> parameters = new ArrayList<>(chunk.size() + 1);
+            parameters.add(zoneId);
+            parameters.addAll(chunk);
+            for (ScimGroup group : jdbcTemplate.query(sql, new ScimGroupRowMapper(), parameters.toArray())) {
+                result.putIfAbsent(group.getDisplayName().toLowerCase(Locale.ROOT), group);
+            }
+        }
+        return result;
+    }
+
+    private PlatformTransactionManager getTransactionManager() {
+        if (transactionManager == null) {
+            transactionManager = new DataSourceTransactionManager(jdbcTemplate.getDataSource());
+        }
+        return transactionManager;
+    }
+
     @Override
     public ScimGroupMember getMemberById(String groupId, String memberId, String zoneId) throws ScimResourceNotFoundException,
                     MemberNotFoundException {
@@ -329,6 +571,9 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
             }
         });
 
+        if (member.getType() == ScimGroupMember.Type.GROUP) {
+            nestingChanged(zoneId);
+        }
         if (deleted != 1) {
             throw new IncorrectResultSizeDataAccessException("unexpected number of members removed", 1, deleted);
         }
@@ -347,6 +592,7 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
             ps.setString(2, zoneId);
             }
         });
+        nestingChanged(zoneId);
         if (deleted != members.size()) {
             throw new IncorrectResultSizeDataAccessException("unexpected number of members removed", members.size(),
                             deleted);
@@ -368,6 +614,7 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
             ps.setString(1, memberId);
             ps.setString(2, zoneId);
         });
+        nestingChanged(zoneId);
 
         int expectedDelete = isUser(memberId) ? groups.size() - getDefaultUserGroups(zoneId).size() : groups.size();
         if (deleted != expectedDelete) {
@@ -448,6 +695,7 @@ public class JdbcScimGroupMembershipManager implements ScimGroupMembershipManage
     @Override
     public void deleteMembersByOrigin(String origin, String zoneId) throws ScimResourceNotFoundException {
         jdbcTemplate.update(DELETE_MEMBERS_WITH_ORIGIN_GROUP_SQL, origin, zoneId);
+        nestingChanged(zoneId);
     }
 
 }
@@ -37,10 +37,15 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.util.Assert;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.cloudfoundry.identity.uaa.zone.ZoneManagementScopes.getSystemScopes;
@@ -52,6 +57,7 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
     private JdbcScimGroupExternalMembershipManager externalGroupMappingManager;
     private JdbcTemplate jdbcTemplate;
     private JdbcScimGroupMembershipManager membershipManager;
+    private JdbcTransitiveGroupResolver groupResolver;
 
     private final Log logger = LogFactory.getLog(getClass());
 
@@ -95,6 +101,8 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
         GROUP_TABLE
     );
 
+    private static final Set<String> CURSOR_SORT_COLUMNS = new HashSet<>(Arrays.asList("id", "created", "lastmodified", "displayname"));
+
     public static final String DELETE_GROUP_SQL = String.format(
         "delete from %s where id=? and identity_zone_id=?",
         GROUP_TABLE
@@ -211,6 +219,21 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
     }
 
 
+    @Override
+    protected Set<String> getCursorSortColumns() {
+        return CURSOR_SORT_COLUMNS;
+    }
+
+    @Override
+    protected Map<String, String> getAttributeColumns() {
+        return ScimAttributeColumns.GROUP_ATTRIBUTE_COLUMNS;
+    }
+
+    @Override
+    protected Object getAttributeValue(ResultSet rs, String column) throws SQLException {
+        return ScimAttributeColumns.getValue(rs, column);
+    }
+
     @Override
     public List<ScimGroup> retrieveAll(final String zoneId) {
         return query("id pr", "created", true, zoneId);
@@ -274,6 +297,7 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
             if (updated != 1) {
                 throw new IncorrectResultSizeDataAccessException(1, updated);
             }
+            nestingChanged(zoneId);
             return retrieve(id, zoneId);
         } catch (DuplicateKeyException ex) {
             throw new InvalidScimResourceException("A group with displayName: " + group.getDisplayName()
@@ -295,6 +319,7 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
         if (deleted != 1) {
             throw new IncorrectResultSizeDataAccessException(1, deleted);
         }
+        nestingChanged(zoneId);
         return group;
     }
 
@@ -303,12 +328,26 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
         jdbcTemplate.update(DELETE_ZONE_ADMIN_GROUPS_BY_ZONE, IdentityZone.getUaa().getId(), "zones." + zoneId + ".%");
         jdbcTemplate.update(DELETE_EXTERNAL_GROUP_BY_ZONE, zoneId);
         jdbcTemplate.update(DELETE_GROUP_MEMBERSHIP_BY_ZONE, zoneId);
-        return jdbcTemplate.update(DELETE_GROUP_BY_ZONE, zoneId);
+        int deleted = jdbcTemplate.update(DELETE_GROUP_BY_ZONE, zoneId);
+        nestingChanged(zoneId);
+        return deleted;
     }
 
     public int deleteByOrigin(String origin, String zoneId) {
         jdbcTemplate.update(DELETE_EXTERNAL_GROUP_BY_PROVIDER, zoneId, origin);
-        return jdbcTemplate.update(DELETE_GROUP_MEMBERSHIP_BY_PROVIDER, zoneId, origin);
+        int deleted = jdbcTemplate.update(DELETE_GROUP_MEMBERSHIP_BY_PROVIDER, zoneId, origin);
+        nestingChanged(zoneId);
+        return deleted;
+    }
+
+    public void setGroupResolver(JdbcTransitiveGroupResolver groupResolver) {
+        this.groupResolver = groupResolver;
+    }
+
+    private void nestingChanged(String zoneId) {
+        if (groupResolver != null) {
+            groupResolver.invalidate(zoneId);
+        }
     }
 
     @Override
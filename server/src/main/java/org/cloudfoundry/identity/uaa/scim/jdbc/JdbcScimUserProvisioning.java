@@ -31,6 +31,7 @@ import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceConstraintFailed
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
 import org.cloudfoundry.identity.uaa.scim.util.ScimUtils;
 import org.cloudfoundry.identity.uaa.user.JdbcUaaUserDatabase;
+import org.cloudfoundry.identity.uaa.user.LastLogonTimeUpdater;
 import org.cloudfoundry.identity.uaa.util.TimeService;
 import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
 import org.springframework.dao.DuplicateKeyException;
@@ -50,12 +51,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Pattern;
 
@@ -99,6 +103,8 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
 
     public static final String ALL_USERS = "select " + USER_FIELDS + " from users";
 
+    private static final Set<String> CURSOR_SORT_COLUMNS = new HashSet<>(Arrays.asList("id", "created", "lastmodified", "username"));
+
     public static final String HARD_DELETE_OF_GROUP_MEMBERS_BY_ZONE = "delete from group_membership where identity_zone_id = ?";
 
     public static final String HARD_DELETE_OF_GROUP_MEMBERS_BY_PROVIDER = "delete from group_membership where identity_zone_id = ? and origin = ?";
@@ -119,6 +125,8 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
 
     private TimeService timeService = new TimeServiceImpl();
 
+    private LastLogonTimeUpdater lastLogonTimeUpdater;
+
     public JdbcScimUserProvisioning(JdbcTemplate jdbcTemplate, JdbcPagingListFactory pagingListFactory) {
         super(jdbcTemplate, pagingListFactory, mapper);
         Assert.notNull(jdbcTemplate);
@@ -149,6 +157,21 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
         return "users";
     }
 
+    @Override
+    protected Set<String> getCursorSortColumns() {
+        return CURSOR_SORT_COLUMNS;
+    }
+
+    @Override
+    protected Map<String, String> getAttributeColumns() {
+        return ScimAttributeColumns.USER_ATTRIBUTE_COLUMNS;
+    }
+
+    @Override
+    protected Object getAttributeValue(ResultSet rs, String column) throws SQLException {
+        return ScimAttributeColumns.getValue(rs, column);
+    }
+
     @Override
     public List<ScimUser> retrieveAll(String zoneId) {
         return query("id pr", "created", true, zoneId);
@@ -516,6 +539,14 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
 
     @Override
     public void updateLastLogonTime(String id, String zoneId) {
+        if (lastLogonTimeUpdater != null) {
+            lastLogonTimeUpdater.updateLastLogonTime(id, zoneId);
+            return;
+        }
         jdbcTemplate.update(UPDATE_LAST_LOGON_TIME_SQL, timeService.getCurrentTimeMillis(), id, zoneId);
     }
+
+    public void setLastLogonTimeUpdater(LastLogonTimeUpdater lastLogonTimeUpdater) {
+        this.lastLogonTimeUpdater = lastLogonTimeUpdater;
+    }
 }
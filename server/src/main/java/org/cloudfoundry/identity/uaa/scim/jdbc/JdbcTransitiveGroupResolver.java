@@ -0,0 +1,207 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.scim.jdbc;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.util.TimeBasedExpiringValueMap;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the display names of all groups a member belongs to, directly or through nested groups.
+ * <p>
+ * On PostgreSQL, MySQL 8 and SQL Server the closure is computed with a single recursive query.
+ * HSQLDB, and databases that reject the recursive query, fall back to walking the nesting
+ * level by level. When {@link #setCacheNestingEdges(boolean)} is enabled, the group-in-group
+ * edges of each zone are kept in memory and the closure is computed from the member's direct
+ * groups without further queries; {@link JdbcScimGroupMembershipManager} and
+ * {@link JdbcScimGroupProvisioning} invalidate the edges of a zone whenever group nesting changes
+ * or a group is renamed or deleted.
+ */
+public class JdbcTransitiveGroupResolver {
+
+    private static final Log logger = LogFactory.getLog(JdbcTransitiveGroupResolver.class);
+
+    public static final String DIRECT_GROUPS_SQL =
+        "select g.id, g.displayName from groups g, group_membership m where g.id = m.group_id and g.identity_zone_id=? and m.member_id = ?";
+
+    public static final String NESTING_EDGES_SQL =
+        "select m.member_id, g.id, g.displayName from groups g, group_membership m where g.id = m.group_id and g.identity_zone_id=? and m.member_type='GROUP'";
+
+    public static final String RECURSIVE_GROUPS_SQL =
+        "with recursive member_groups(id, displayName) as (" +
+            "select g.id, g.displayName from groups g, group_membership m where g.id = m.group_id and g.identity_zone_id=? and m.member_id = ? " +
+            "union " +
+            "select g.id, g.displayName from groups g, group_membership m, member_groups mg where g.id = m.group_id and g.identity_zone_id=? and m.member_id = mg.id" +
+        ") select displayName from member_groups";
+
+    // SQL Server has no "recursive" keyword and only allows union all, so cycles are cut using the visited path
+    public static final String SQLSERVER_RECURSIVE_GROUPS_SQL =
+        "with member_groups(id, displayName, path) as (" +
+            "select g.id, g.displayName, cast('/' + g.id + '/' as varchar(max)) from groups g, group_membership m where g.id = m.group_id and g.identity_zone_id=? and m.member_id = ? " +
+            "union all " +
+            "select g.id, g.displayName, cast(mg.path + g.id + '/' as varchar(max)) from groups g, group_membership m, member_groups mg where g.id = m.group_id and g.identity_zone_id=? and m.member_id = mg.id and mg.path not like '%/' + g.id + '/%'" +
+        ") select distinct displayName from member_groups";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String recursiveSql;
+    private volatile boolean recursiveQuerySupported;
+
+    private boolean cacheNestingEdges = false;
+    private TimeService timeService = new TimeServiceImpl();
+    private TimeBasedExpiringValueMap<String, Map<String, List<GroupRef>>> nestingEdges;
+
+    public JdbcTransitiveGroupResolver(JdbcTemplate jdbcTemplate, String platform) {
+        Assert.notNull(jdbcTemplate);
+        this.jdbcTemplate = jdbcTemplate;
+        if ("postgresql".equals(platform) || "mysql".equals(platform)) {
+            recursiveSql = RECURSIVE_GROUPS_SQL;
+        } else if ("sqlserver".equals(platform)) {
+            recursiveSql = SQLSERVER_RECURSIVE_GROUPS_SQL;
+        } else {
+            recursiveSql = null;
+        }
+        recursiveQuerySupported = recursiveSql != null;
+        nestingEdges = new TimeBasedExpiringValueMap<>(timeService);
+    }
+
+    public Set<String> getGroupNames(String memberId, String zoneId) {
+        if (cacheNestingEdges) {
+            return resolveFromNestingEdges(memberId, zoneId);
+        }
+        if (recursiveQuerySupported) {
+            try {
+                return new HashSet<>(jdbcTemplate.queryForList(recursiveSql, String.class, zoneId, memberId, zoneId));
+            } catch (BadSqlGrammarException e) {
+                logger.warn("Recursive group query is not supported by the database, falling back to level by level resolution", e);
+                recursiveQuerySupported = false;
+            }
+        }
+        return resolveLevelByLevel(memberId, zoneId);
+    }
+
+    /**
+     * Drops the cached nesting edges of a zone. Inside a transaction the edges are dropped once it
+     * commits, so that a concurrent login cannot reload and keep the edges as they were before the change.
+     */
+    public void invalidate(String zoneId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    nestingEdges.remove(zoneId);
+                }
+            });
+        } else {
+            nestingEdges.remove(zoneId);
+        }
+    }
+
+    private Set<String> resolveFromNestingEdges(String memberId, String zoneId) {
+        Map<String, List<GroupRef>> edges = getNestingEdges(zoneId);
+        Set<String> visited = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        Deque<GroupRef> pending = new ArrayDeque<>(getDirectGroups(memberId, zoneId));
+        while (!pending.isEmpty()) {
+            GroupRef group = pending.pop();
+            if (visited.add(group.id)) {
+                names.add(group.displayName);
+                pending.addAll(edges.getOrDefault(group.id, Collections.emptyList()));
+            }
+        }
+        return names;
+    }
+
+    private Set<String> resolveLevelByLevel(String memberId, String zoneId) {
+        Set<String> names = new HashSet<>();
+        List<String> memberIds = Collections.singletonList(memberId);
+        while (!memberIds.isEmpty()) {
+            StringBuilder sql = new StringBuilder("select g.id, g.displayName from groups g, group_membership m where g.id = m.group_id and g.identity_zone_id=? and m.member_id in (");
+            for (int i = 0; i < memberIds.size(); i++) {
+                sql.append(i == 0 ? "?" : ",?");
+            }
+            sql.append(")");
+            List<Object> parameters = new ArrayList<>(memberIds.size() + 1);
+            parameters.add(zoneId);
+            parameters.addAll(memberIds);
+
+            List<String> nextLevel = new ArrayList<>();
+            for (Map<String, Object> row : jdbcTemplate.queryForList(sql.toString(), parameters.toArray())) {
+                if (names.add((String) row.get("displayName"))) {
+                    nextLevel.add((String) row.get("id"));
+                }
+            }
+            memberIds = nextLevel;
+        }
+        return names;
+    }
+
+    private List<GroupRef> getDirectGroups(String memberId, String zoneId) {
+        return jdbcTemplate.query(DIRECT_GROUPS_SQL, (rs, rowNum) -> new GroupRef(rs.getString(1), rs.getString(2)), zoneId, memberId);
+    }
+
+    private Map<String, List<GroupRef>> getNestingEdges(String zoneId) {
+        Map<String, List<GroupRef>> edges = nestingEdges.get(zoneId);
+        if (edges == null) {
+            Map<String, List<GroupRef>> loaded = new HashMap<>();
+            jdbcTemplate.query(NESTING_EDGES_SQL, rs -> {
+                loaded.computeIfAbsent(rs.getString(1), k -> new ArrayList<>()).add(new GroupRef(rs.getString(2), rs.getString(3)));
+            }, zoneId);
+            edges = Collections.unmodifiableMap(loaded);
+            nestingEdges.put(zoneId, edges);
+        }
+        return edges;
+    }
+
+    public boolean isCacheNestingEdges() {
+        return cacheNestingEdges;
+    }
+
+    public void setCacheNestingEdges(boolean cacheNestingEdges) {
+        this.cacheNestingEdges = cacheNestingEdges;
+    }
+
+    public void setTimeService(TimeService timeService) {
+        this.timeService = timeService;
+        this.nestingEdges = new TimeBasedExpiringValueMap<>(timeService);
+    }
+
+    private static final class GroupRef {
+        private final String id;
+        private final String displayName;
+
+        private GroupRef(String id, String displayName) {
+            this.id = id;
+            this.displayName = displayName;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.scim.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.cloudfoundry.identity.uaa.impl.JsonDateDeserializer.DATE_FORMATTER;
+
+/**
+ * Columns of the SCIM attributes that can be selected without loading whole users or groups.
+ * Attributes are named by their path in the serialized resource, and the values are read
+ * the way they are serialized.
+ */
+final class ScimAttributeColumns {
+
+    static final Map<String, String> USER_ATTRIBUTE_COLUMNS;
+    static final Map<String, String> GROUP_ATTRIBUTE_COLUMNS;
+
+    static {
+        Map<String, String> user = new HashMap<>();
+        user.put("id", "id");
+        user.put("externalId", "external_id");
+        user.put("userName", "username");
+        user.put("name.givenName", "givenName");
+        user.put("name.familyName", "familyName");
+        user.put("active", "active");
+        user.put("verified", "verified");
+        user.put("origin", "origin");
+        user.put("zoneId", "identity_zone_id");
+        user.put("lastLogonTime", "last_logon_success_time");
+        user.put("previousLogonTime", "previous_logon_success_time");
+        user.put("meta.version", "version");
+        user.put("meta.created", "created");
+        user.put("meta.lastModified", "lastModified");
+        USER_ATTRIBUTE_COLUMNS = Collections.unmodifiableMap(user);
+
+        Map<String, String> group = new HashMap<>();
+        group.put("id", "id");
+        group.put("displayName", "displayName");
+        group.put("description", "description");
+        group.put("zoneId", "identity_zone_id");
+        group.put("meta.version", "version");
+        group.put("meta.created", "created");
+        group.put("meta.lastModified", "lastModified");
+        GROUP_ATTRIBUTE_COLUMNS = Collections.unmodifiableMap(group);
+    }
+
+    private ScimAttributeColumns() {
+    }
+
+    static Object getValue(ResultSet rs, String column) throws SQLException {
+        switch (column) {
+            case "active":
+            case "verified":
+                return rs.getBoolean(column);
+            case "version":
+                return rs.getInt(column);
+            case "created":
+            case "lastModified":
+                Timestamp timestamp = rs.getTimestamp(column);
+                return timestamp == null ? null : new SimpleDateFormat(DATE_FORMATTER).format(timestamp);
+            case "last_logon_success_time":
+            case "previous_logon_success_time":
+                return rs.getObject(column);
+            default:
+                return rs.getString(column);
+        }
+    }
+}
@@ -12,9 +12,9 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.user;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.scim.jdbc.JdbcTransitiveGroupResolver;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.util.TimeService;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
@@ -30,12 +30,9 @@ import org.springframework.util.StringUtils;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
 
 import static org.springframework.util.StringUtils.hasText;
@@ -70,6 +67,10 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
 
     private boolean caseInsensitive = false;
 
+    private JdbcTransitiveGroupResolver groupResolver;
+
+    private LastLogonTimeUpdater lastLogonTimeUpdater;
+
     public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
@@ -90,6 +91,15 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
         Assert.notNull(jdbcTemplate);
         this.jdbcTemplate = jdbcTemplate;
         this.timeService = timeService;
+        this.groupResolver = new JdbcTransitiveGroupResolver(jdbcTemplate, null);
+    }
+
+    public void setGroupResolver(JdbcTransitiveGroupResolver groupResolver) {
+        this.groupResolver = groupResolver;
+    }
+
+    public void setLastLogonTimeUpdater(LastLogonTimeUpdater lastLogonTimeUpdater) {
+        this.lastLogonTimeUpdater = lastLogonTimeUpdater;
     }
 
     @Override
@@ -156,7 +166,11 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
 
     @Override
     public void updateLastLogonTime(String userId) {
-        int update = jdbcTemplate.update(DEFAULT_UPDATE_USER_LAST_LOGON, timeService.getCurrentTimeMillis(), userId, IdentityZoneHolder.get().getId());
+        if (lastLogonTimeUpdater != null) {
+            lastLogonTimeUpdater.updateLastLogonTime(userId, IdentityZoneHolder.get().getId());
+            return;
+        }
+        jdbcTemplate.update(DEFAULT_UPDATE_USER_LAST_LOGON, timeService.getCurrentTimeMillis(), userId, IdentityZoneHolder.get().getId());
     }
 
     private final class UserInfoRowMapper implements RowMapper<UserInfo> {
@@ -211,38 +225,9 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
         }
 
         private String getAuthorities(final String userId) {
-            Set<String> authorities = new HashSet<>();
-            getAuthorities(authorities, Arrays.asList(userId));
+            Set<String> authorities = new HashSet<>(groupResolver.getGroupNames(userId, IdentityZoneHolder.get().getId()));
             authorities.addAll(IdentityZoneHolder.get().getConfig().getUserConfig().getDefaultGroups());
-            return StringUtils.collectionToCommaDelimitedString(new HashSet<>(authorities));
-        }
-
-        protected void getAuthorities(Set<String> authorities, final List<String> memberIdList) {
-            List<Map<String, Object>> results;
-            if(memberIdList.size() == 0) {
-                return;
-            }
-            StringBuffer dynamicAuthoritiesQuery = new StringBuffer("select g.id,g.displayName from groups g, group_membership m where g.id = m.group_id  and g.identity_zone_id=? and m.member_id in (");
-            for (int i = 0; i < memberIdList.size() - 1; i++) {
-                dynamicAuthoritiesQuery.append("?,");
-            }
-            dynamicAuthoritiesQuery.append("?);");
-
-            Object[] parameterList = ArrayUtils.addAll(new Object[]{IdentityZoneHolder.get().getId()},memberIdList.toArray());
-
-            results = jdbcTemplate.queryForList(dynamicAuthoritiesQuery.toString(), parameterList);
-            List<String> newMemberIdList = new ArrayList<>();
-
-            for(int i=0;i<results.size();i++) {
-                Map<String, Object> record = results.get(i);
-                String displayName = (String) record.get("displayName");
-                String groupId = (String) record.get("id");
-                if (!authorities.contains(displayName)) {
-                    authorities.add(displayName);
-                    newMemberIdList.add(groupId);
-                }
-            }
-            getAuthorities(authorities,newMemberIdList);
+            return StringUtils.collectionToCommaDelimitedString(authorities);
         }
     }
 }
@@ -0,0 +1,281 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.user;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.cloudfoundry.identity.uaa.user.JdbcUaaUserDatabase.DEFAULT_UPDATE_USER_LAST_LOGON;
+
+/**
+ * Records successful logons in the users table.
+ * <p>
+ * With a flush interval of zero every logon is written immediately. With a positive flush interval
+ * logons are collected in memory, one entry per user, and written in JDBC batches every interval
+ * or as soon as the maximum batch size is reached. When a user logged on several times between two
+ * flushes the last two logons become the last and previous logon times, just as if each logon had
+ * been written on its own. Pending logons are written when the bean is destroyed, and logons recorded
+ * after that are written on the calling thread.
+ */
+@ManagedResource(
+    objectName = "cloudfoundry.identity:name=LastLogonTimeUpdater",
+    description = "UAA Last Logon Time Update Metrics"
+)
+public class LastLogonTimeUpdater implements InitializingBean, DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(LastLogonTimeUpdater.class);
+
+    public static final String UPDATE_USER_LOGON_TIMES = "update users set previous_logon_success_time = ?, last_logon_success_time = ? where id = ? and identity_zone_id=?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TimeService timeService;
+    private final ConcurrentMap<String, PendingLogon> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+
+    private long flushInterval = 0;
+    private int maxBatchSize = 500;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean destroyed = false;
+
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushedCount = new LongAdder();
+    private final LongAdder failedFlushCount = new LongAdder();
+    private volatile long lastFlushLag = 0;
+    private volatile long maxFlushLag = 0;
+    private volatile int lastBatchSize = 0;
+
+    public LastLogonTimeUpdater(JdbcTemplate jdbcTemplate, TimeService timeService) {
+        Assert.notNull(jdbcTemplate);
+        this.jdbcTemplate = jdbcTemplate;
+        this.timeService = timeService;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (isWriteBehind()) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "last-logon-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void updateLastLogonTime(String userId, String zoneId) {
+        long now = timeService.getCurrentTimeMillis();
+        if (!isWriteBehind()) {
+            jdbcTemplate.update(DEFAULT_UPDATE_USER_LAST_LOGON, now, userId, zoneId);
+            return;
+        }
+        pending.merge(getKey(userId, zoneId), new PendingLogon(userId, zoneId, null, now, now), PendingLogon::followedBy);
+        if (destroyed) {
+            flushQuietly();
+        } else if (pending.size() >= maxBatchSize && scheduler != null && flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                flushQuietly();
+            }
+        }
+    }
+
+    /**
+     * Writes all pending logons.
+     * @return the number of users that were updated
+     */
+    public synchronized int flush() {
+        flushRequested.set(false);
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        List<PendingLogon> single = new ArrayList<>();
+        List<PendingLogon> repeated = new ArrayList<>();
+        long oldest = Long.MAX_VALUE;
+        for (String key : pending.keySet()) {
+            PendingLogon logon = pending.remove(key);
+            if (logon != null) {
+                oldest = Math.min(oldest, logon.queuedAt);
+                if (logon.previous == null) {
+                    single.add(logon);
+                } else {
+                    repeated.add(logon);
+                }
+            }
+        }
+        int flushed = write(DEFAULT_UPDATE_USER_LAST_LOGON, single, false) + write(UPDATE_USER_LOGON_TIMES, repeated, true);
+
+        long lag = timeService.getCurrentTimeMillis() - oldest;
+        lastFlushLag = lag;
+        maxFlushLag = Math.max(maxFlushLag, lag);
+        lastBatchSize = flushed;
+        flushCount.increment();
+        flushedCount.add(flushed);
+        return flushed;
+    }
+
+    private int write(String sql, List<PendingLogon> logons, boolean withPrevious) {
+        if (logons.isEmpty()) {
+            return 0;
+        }
+        try {
+            jdbcTemplate.batchUpdate(sql, logons, maxBatchSize, (ps, logon) -> {
+                int index = 1;
+                if (withPrevious) {
+                    ps.setLong(index++, logon.previous);
+                }
+                ps.setLong(index++, logon.last);
+                ps.setString(index++, logon.userId);
+                ps.setString(index, logon.zoneId);
+            });
+            return logons.size();
+        } catch (DataAccessException e) {
+            logger.warn("Unable to write " + logons.size() + " last logon times, will retry on the next flush", e);
+            failedFlushCount.increment();
+            for (PendingLogon logon : logons) {
+                pending.merge(getKey(logon.userId, logon.zoneId), logon, (newer, older) -> older.followedBy(newer));
+            }
+            return 0;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Unable to flush last logon times", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        destroyed = true;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(flushInterval, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushQuietly();
+    }
+
+    private boolean isWriteBehind() {
+        return flushInterval > 0;
+    }
+
+    private static String getKey(String userId, String zoneId) {
+        return zoneId + ":" + userId;
+    }
+
+    /**
+     * @param flushInterval milliseconds between writes of pending logons, zero to write every logon immediately
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be positive");
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Pending Last Logon Updates")
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Last Logon Flush Lag (ms)")
+    public long getLastFlushLag() {
+        return lastFlushLag;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Max Last Logon Flush Lag (ms)")
+    public long getMaxFlushLag() {
+        return maxFlushLag;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Last Logon Batch Size")
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Average Last Logon Batch Size")
+    public double getAverageBatchSize() {
+        long flushes = flushCount.sum();
+        return flushes == 0 ? 0 : (double) flushedCount.sum() / flushes;
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Last Logon Flushes")
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Failed Last Logon Flushes")
+    public long getFailedFlushCount() {
+        return failedFlushCount.sum();
+    }
+
+    static final class PendingLogon {
+        final String userId;
+        final String zoneId;
+        final Long previous;
+        final long last;
+        final long queuedAt;
+
+        PendingLogon(String userId, String zoneId, Long previous, long last, long queuedAt) {
+            this.userId = userId;
+            this.zoneId = zoneId;
+            this.previous = previous;
+            this.last = last;
+            this.queuedAt = queuedAt;
+        }
+
+        PendingLogon followedBy(PendingLogon next) {
+            return new PendingLogon(
+                userId,
+                zoneId,
+                next.previous != null ? next.previous : last,
+                next.last,
+                Math.min(queuedAt, next.queuedAt)
+            );
+        }
+    }
+}
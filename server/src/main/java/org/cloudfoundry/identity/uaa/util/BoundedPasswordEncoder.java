@@ -0,0 +1,151 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a slow password encoder, such as bcrypt, on a dedicated pool of threads with a bounded queue.
+ * When the queue is full the call is rejected immediately with a {@link PasswordHashingUnavailableException}
+ * instead of tying up another request thread, so a burst of password checks cannot starve the rest of the server.
+ * A pool size of zero disables the pool and calls the encoder on the calling thread.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder, DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(BoundedPasswordEncoder.class);
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalQueueWaitNanos = new LongAdder();
+
+    public BoundedPasswordEncoder(PasswordEncoder passwordEncoder, int poolSize, int queueDepth) {
+        this.passwordEncoder = passwordEncoder;
+        if (poolSize > 0) {
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueDepth)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+            );
+        } else {
+            executor = null;
+        }
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return execute(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    protected <T> T execute(Callable<T> task) {
+        if (executor == null) {
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        long submitted = System.nanoTime();
+        Future<T> result;
+        try {
+            result = executor.submit(() -> {
+                totalQueueWaitNanos.add(System.nanoTime() - submitted);
+                executed.increment();
+                return task.call();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            logger.debug("Password hashing queue is full, rejecting request");
+            throw new PasswordHashingUnavailableException("Server is busy, retry later.", e);
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingUnavailableException("Interrupted while waiting for password hashing.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    public PasswordEncoder getPasswordEncoder() {
+        return passwordEncoder;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    /**
+     * @return the average time, in milliseconds, a password check waited for a hashing thread
+     */
+    public double getAverageQueueWaitTime() {
+        long count = executed.sum();
+        return count == 0 ? 0 : (double) totalQueueWaitNanos.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public int getQueueDepth() {
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
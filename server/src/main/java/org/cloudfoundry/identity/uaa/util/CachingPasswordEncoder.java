@@ -16,6 +16,9 @@ package org.cloudfoundry.identity.uaa.util;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.crypto.codec.Hex;
 import org.springframework.security.crypto.codec.Utf8;
@@ -32,16 +35,26 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import static org.springframework.security.crypto.util.EncodingUtils.concatenate;
 
 /**
  * Wrapper around a slow password encoder that does a fast translation in memory only
  * This uses a hash to as a key to store a list of
+ * <p>
+ * The cache holds at most {@link #getMaxKeys()} keys and evicts the least recently used key once full.
  */
+@ManagedResource(
+    objectName = "cloudfoundry.identity:name=PasswordEncoderCache",
+    description = "UAA Password Encoder Cache Metrics"
+)
 public class CachingPasswordEncoder implements PasswordEncoder {
 
-    private final MessageDigest messageDigest;
+    private static final String ALGORITHM = "SHA-256";
+
+    //MessageDigest is not thread safe, each thread gets its own
+    private final ThreadLocal<MessageDigest> messageDigest = ThreadLocal.withInitial(CachingPasswordEncoder::newMessageDigest);
     private final byte[] secret;
     private final byte[] salt;
     private final int iterations;
@@ -63,8 +76,12 @@ public class CachingPasswordEncoder implements PasswordEncoder {
 
     private PasswordEncoder passwordEncoder;
 
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
     public CachingPasswordEncoder() throws NoSuchAlgorithmException {
-        messageDigest = MessageDigest.getInstance("SHA-256");
+        //fail fast if the algorithm is not available
+        MessageDigest.getInstance(ALGORITHM);
         this.secret = Utf8.encode(new RandomValueStringGenerator().generate());
         this.salt = KeyGenerators.secureRandom().generateKey();
         iterations = 25;
@@ -98,12 +115,13 @@ public class CachingPasswordEncoder implements PasswordEncoder {
     protected Set<String> getOrCreateHashList(String cacheKey) {
         Set<String> result = cache.getIfPresent(cacheKey);
         if (result==null) {
-            if (cache.size()>=getMaxKeys()) {
-                cache.invalidateAll();
+            Set<String> created = Collections.synchronizedSet(new LinkedHashSet<>());
+            result = cache.asMap().putIfAbsent(cacheKey, created);
+            if (result==null) {
+                result = created;
             }
-            cache.put(cacheKey, Collections.synchronizedSet(new LinkedHashSet<>()));
         }
-        return cache.getIfPresent(cacheKey);
+        return result;
     }
 
     private boolean internalMatches(String cacheKey, CharSequence rawPassword, String encodedPassword) {
@@ -112,9 +130,11 @@ public class CachingPasswordEncoder implements PasswordEncoder {
         List<String> searchList = (cacheValue!=null ? new ArrayList(cacheValue) : Collections.<String>emptyList());
         for (String encoded : searchList) {
             if (hashesEquals(encoded, encodedPassword)) {
+                hits.increment();
                 return true;
             }
         }
+        misses.increment();
         if (!result) {
             if (getPasswordEncoder().matches(rawPassword, encodedPassword)) {
                 result = true;
@@ -144,11 +164,18 @@ public class CachingPasswordEncoder implements PasswordEncoder {
     }
 
     private byte[] digest(byte[] value) {
-        synchronized (messageDigest) {
-            for (int i = 0; i < iterations; i++) {
-                value = messageDigest.digest(value);
-            }
-            return value;
+        MessageDigest digest = messageDigest.get();
+        for (int i = 0; i < iterations; i++) {
+            value = digest.digest(value);
+        }
+        return value;
+    }
+
+    private static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
 
@@ -185,10 +212,26 @@ public class CachingPasswordEncoder implements PasswordEncoder {
         buildCache();
     }
 
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Number of Cached Keys")
     public long getNumberOfKeys() {
         return cache.size();
     }
 
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Cache Hit Count")
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Cache Miss Count")
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Cache Eviction Count")
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
     public ConcurrentMap<CharSequence, Set<String>> asMap() {
         return cache.asMap();
     }
@@ -203,8 +246,13 @@ public class CachingPasswordEncoder implements PasswordEncoder {
     }
 
     protected void buildCache() {
+        //a single segment, so the size bound applies to the whole cache rather than per segment.
+        //reads do not lock, and writes only happen after a slow password check.
         cache = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumSize(maxKeys)
             .expireAfterWrite(expiryInSeconds, TimeUnit.SECONDS)
+            .recordStats()
             .build();
     }
 }
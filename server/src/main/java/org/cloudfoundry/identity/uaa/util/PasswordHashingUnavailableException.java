@@ -0,0 +1,43 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.util;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+
+/**
+ * Thrown when a password check is rejected because the password hashing pool is saturated.
+ * Rendered as a 503 with the OAuth2 error code {@code temporarily_unavailable}.
+ */
+public class PasswordHashingUnavailableException extends OAuth2Exception {
+
+    public PasswordHashingUnavailableException(String msg) {
+        super(msg);
+    }
+
+    public PasswordHashingUnavailableException(String msg, Throwable t) {
+        super(msg, t);
+    }
+
+    @Override
+    public String getOAuth2ErrorCode() {
+        return "temporarily_unavailable";
+    }
+
+    @Override
+    public int getHttpErrorCode() {
+        return HttpStatus.SERVICE_UNAVAILABLE.value();
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.zone;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.client.event.AbstractClientAdminEvent;
+import org.cloudfoundry.identity.uaa.oauth.event.TokenRevocationEvent;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.oauth2.provider.ClientAlreadyExistsException;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the result of {@link #loadClientByClientId(String, String)} per zone and client,
+ * saving the query and the JSON parsing done by the JDBC implementation on every token
+ * request, client authentication and token validation.
+ * <p>
+ * Writes made through this class invalidate the affected entry before returning. Writes made
+ * elsewhere on this node are picked up through the client admin, client deletion, zone deletion
+ * and token revocation events. To detect changes made on other nodes, an entry is re-checked
+ * against the {@code lastmodified} column at most once per staleness check interval, and dropped
+ * when the column no longer matches. A TTL of zero disables caching.
+ * <p>
+ * Callers receive a copy of the cached client, so modifying it does not affect the cache.
+ */
+public class CachingClientDetailsService extends ClientServicesExtension implements ApplicationListener<AbstractUaaEvent> {
+
+    private static final Log logger = LogFactory.getLog(CachingClientDetailsService.class);
+
+    public static final String LAST_MODIFIED_QUERY =
+        "select lastmodified from oauth_client_details where client_id = ? and identity_zone_id = ?";
+
+    private static final String LAST_MODIFIED = "lastModified";
+
+    private final ClientServicesExtension delegate;
+    private final long ttlMillis;
+    private final Cache<String, CachedClient> clients;
+
+    private JdbcTemplate jdbcTemplate;
+    private long stalenessCheckIntervalMillis = 0;
+    private TimeService timeService = new TimeServiceImpl();
+
+    public CachingClientDetailsService(ClientServicesExtension delegate, int ttlSeconds, int maxEntries) {
+        this.delegate = delegate;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(Math.max(0, ttlSeconds));
+        this.clients = CacheBuilder
+            .newBuilder()
+            .expireAfterWrite(Math.max(1, ttlMillis), TimeUnit.MILLISECONDS)
+            .maximumSize(maxEntries)
+            .build();
+    }
+
+    @Override
+    public ClientDetails loadClientByClientId(String clientId, String zoneId) throws ClientRegistrationException {
+        if (ttlMillis <= 0 || clientId == null) {
+            return delegate.loadClientByClientId(clientId, zoneId);
+        }
+        String key = getKey(clientId, zoneId);
+        CachedClient cached = clients.getIfPresent(key);
+        if (cached != null && isStale(cached, clientId, zoneId)) {
+            clients.invalidate(key);
+            cached = null;
+        }
+        if (cached == null) {
+            cached = new CachedClient(delegate.loadClientByClientId(clientId, zoneId), timeService.getCurrentTimeMillis());
+            clients.put(key, cached);
+        }
+        return copy(cached.client);
+    }
+
+    @Override
+    public void addClientDetails(ClientDetails clientDetails, String zoneId) throws ClientAlreadyExistsException {
+        try {
+            delegate.addClientDetails(clientDetails, zoneId);
+        } finally {
+            invalidate(clientDetails.getClientId(), zoneId);
+        }
+    }
+
+    @Override
+    public void updateClientDetails(ClientDetails clientDetails, String zoneId) throws NoSuchClientException {
+        try {
+            delegate.updateClientDetails(clientDetails, zoneId);
+        } finally {
+            invalidate(clientDetails.getClientId(), zoneId);
+        }
+    }
+
+    @Override
+    public void updateClientSecret(String clientId, String secret, String zoneId) throws NoSuchClientException {
+        try {
+            delegate.updateClientSecret(clientId, secret, zoneId);
+        } finally {
+            invalidate(clientId, zoneId);
+        }
+    }
+
+    @Override
+    public void addClientSecret(String clientId, String newSecret, String zoneId) throws NoSuchClientException {
+        try {
+            delegate.addClientSecret(clientId, newSecret, zoneId);
+        } finally {
+            invalidate(clientId, zoneId);
+        }
+    }
+
+    @Override
+    public void deleteClientSecret(String clientId, String zoneId) throws NoSuchClientException {
+        try {
+            delegate.deleteClientSecret(clientId, zoneId);
+        } finally {
+            invalidate(clientId, zoneId);
+        }
+    }
+
+    @Override
+    public void removeClientDetails(String clientId, String zoneId) throws NoSuchClientException {
+        try {
+            delegate.removeClientDetails(clientId, zoneId);
+        } finally {
+            invalidate(clientId, zoneId);
+        }
+    }
+
+    @Override
+    public List<ClientDetails> listClientDetails(String zoneId) {
+        return delegate.listClientDetails(zoneId);
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (event instanceof AbstractClientAdminEvent && ((AbstractClientAdminEvent) event).getClient() != null) {
+            invalidate(((AbstractClientAdminEvent) event).getClient().getClientId(), event.getIdentityZone().getId());
+        } else if (event instanceof TokenRevocationEvent && ((TokenRevocationEvent) event).getClientId() != null) {
+            //revoking the tokens of a client changes its token salt
+            TokenRevocationEvent revocation = (TokenRevocationEvent) event;
+            invalidate(revocation.getClientId(), revocation.getZoneId());
+        } else if (event instanceof EntityDeletedEvent) {
+            Object deleted = ((EntityDeletedEvent<?>) event).getDeleted();
+            if (deleted instanceof ClientDetails) {
+                invalidate(((ClientDetails) deleted).getClientId(), event.getIdentityZone().getId());
+            } else if (deleted instanceof IdentityZone) {
+                String prefix = getKey("", ((IdentityZone) deleted).getId());
+                clients.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+            }
+        }
+    }
+
+    public void invalidate(String clientId, String zoneId) {
+        clients.invalidate(getKey(clientId, zoneId));
+    }
+
+    protected boolean isStale(CachedClient cached, String clientId, String zoneId) {
+        if (jdbcTemplate == null || stalenessCheckIntervalMillis <= 0) {
+            return false;
+        }
+        long now = timeService.getCurrentTimeMillis();
+        if (now - cached.checkedAt < stalenessCheckIntervalMillis) {
+            return false;
+        }
+        List<Timestamp> lastModified = jdbcTemplate.queryForList(LAST_MODIFIED_QUERY, Timestamp.class, clientId, zoneId);
+        if (lastModified.size() != 1 || getTime(lastModified.get(0)) != getTime(cached.client.getAdditionalInformation().get(LAST_MODIFIED))) {
+            logger.debug("Client " + clientId + " changed in zone " + zoneId + ", reloading");
+            return true;
+        }
+        cached.checkedAt = now;
+        return false;
+    }
+
+    private static long getTime(Object date) {
+        return date instanceof Date ? ((Date) date).getTime() : 0;
+    }
+
+    private static String getKey(String clientId, String zoneId) {
+        return zoneId + ":" + clientId;
+    }
+
+    private static ClientDetails copy(ClientDetails client) {
+        if (client == null || client.getClass() != BaseClientDetails.class) {
+            return client;
+        }
+        BaseClientDetails copy = new BaseClientDetails(client);
+        copy.setAdditionalInformation(client.getAdditionalInformation());
+        copy.setAutoApproveScopes(((BaseClientDetails) client).getAutoApproveScopes());
+        return copy;
+    }
+
+    public void clear() {
+        clients.invalidateAll();
+    }
+
+    public long size() {
+        return clients.size();
+    }
+
+    public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void setStalenessCheckIntervalSeconds(int stalenessCheckIntervalSeconds) {
+        this.stalenessCheckIntervalMillis = TimeUnit.SECONDS.toMillis(Math.max(0, stalenessCheckIntervalSeconds));
+    }
+
+    public void setTimeService(TimeService timeService) {
+        this.timeService = timeService;
+    }
+
+    protected static class CachedClient {
+        private final ClientDetails client;
+        private volatile long checkedAt;
+
+        private CachedClient(ClientDetails client, long checkedAt) {
+            this.client = client;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.zone;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityZoneModifiedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the subdomain to zone lookups performed by {@link IdentityZoneResolvingFilter} on every request.
+ * All other operations are passed through to the delegate.
+ * <p>
+ * Entries expire after {@code ttlSeconds} and are invalidated when a zone is created, updated or deleted on
+ * this node. When a {@link JdbcTemplate} and a poll interval are configured, the number of zones and their
+ * latest {@code lastmodified} timestamp are checked at most once per interval, and the cache is cleared when
+ * either changed, which picks up changes made on other nodes. A TTL of zero disables caching.
+ */
+public class CachingIdentityZoneProvisioning implements IdentityZoneProvisioning, ApplicationListener<AbstractUaaEvent> {
+
+    private static final Log logger = LogFactory.getLog(CachingIdentityZoneProvisioning.class);
+
+    public static final String ZONE_FINGERPRINT_QUERY = "select count(*), max(lastmodified) from identity_zone";
+
+    private final IdentityZoneProvisioning delegate;
+    private final long ttlMillis;
+    private final Cache<String, IdentityZone> zonesBySubdomain;
+
+    private JdbcTemplate jdbcTemplate;
+    private long pollIntervalMillis = 0;
+    private TimeService timeService = new TimeServiceImpl();
+    private final AtomicLong lastPoll = new AtomicLong(0);
+    private volatile String fingerprint;
+
+    public CachingIdentityZoneProvisioning(IdentityZoneProvisioning delegate, int ttlSeconds, int maxEntries) {
+        this.delegate = delegate;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(Math.max(0, ttlSeconds));
+        this.zonesBySubdomain = CacheBuilder
+            .newBuilder()
+            .expireAfterWrite(Math.max(1, ttlMillis), TimeUnit.MILLISECONDS)
+            .maximumSize(maxEntries)
+            .ticker(Ticker.systemTicker())
+            .build();
+    }
+
+    @Override
+    public IdentityZone retrieveBySubdomain(String subdomain) {
+        if (ttlMillis <= 0 || subdomain == null) {
+            return delegate.retrieveBySubdomain(subdomain);
+        }
+        pollForChanges();
+        String key = subdomain.toLowerCase();
+        IdentityZone zone = zonesBySubdomain.getIfPresent(key);
+        if (zone == null) {
+            zone = delegate.retrieveBySubdomain(subdomain);
+            if (zone != null) {
+                zonesBySubdomain.put(key, zone);
+            }
+        }
+        return zone;
+    }
+
+    @Override
+    public IdentityZone create(IdentityZone identityZone) {
+        return delegate.create(identityZone);
+    }
+
+    @Override
+    public IdentityZone update(IdentityZone identityZone) {
+        return delegate.update(identityZone);
+    }
+
+    @Override
+    public IdentityZone retrieve(String id) {
+        return delegate.retrieve(id);
+    }
+
+    @Override
+    public IdentityZone retrieveIgnoreActiveFlag(String id) {
+        return delegate.retrieveIgnoreActiveFlag(id);
+    }
+
+    @Override
+    public List<IdentityZone> retrieveAll() {
+        return delegate.retrieveAll();
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        IdentityZone zone = null;
+        if (event instanceof IdentityZoneModifiedEvent) {
+            zone = (IdentityZone) event.getSource();
+        } else if (event instanceof EntityDeletedEvent && ((EntityDeletedEvent) event).getDeleted() instanceof IdentityZone) {
+            zone = (IdentityZone) ((EntityDeletedEvent) event).getDeleted();
+        }
+        if (zone != null) {
+            invalidate(zone);
+        }
+    }
+
+    protected void invalidate(IdentityZone zone) {
+        if (zone.getSubdomain() != null) {
+            zonesBySubdomain.invalidate(zone.getSubdomain().toLowerCase());
+        }
+        //the subdomain may have changed, drop any entry still pointing to the zone
+        zonesBySubdomain.asMap().values().removeIf(z -> Objects.equals(z.getId(), zone.getId()));
+    }
+
+    protected void pollForChanges() {
+        if (jdbcTemplate == null || pollIntervalMillis <= 0) {
+            return;
+        }
+        long now = timeService.getCurrentTimeMillis();
+        long last = lastPoll.get();
+        if (now - last < pollIntervalMillis || !lastPoll.compareAndSet(last, now)) {
+            return;
+        }
+        try {
+            String current = jdbcTemplate.queryForObject(ZONE_FINGERPRINT_QUERY, (rs, rowNum) -> {
+                Timestamp lastModified = rs.getTimestamp(2);
+                return rs.getLong(1) + ":" + (lastModified == null ? 0 : lastModified.getTime());
+            });
+            if (fingerprint != null && !fingerprint.equals(current)) {
+                logger.debug("Identity zones changed, clearing zone cache");
+                clear();
+            }
+            fingerprint = current;
+        } catch (EmptyResultDataAccessException e) {
+            clear();
+        }
+    }
+
+    public void clear() {
+        zonesBySubdomain.invalidateAll();
+    }
+
+    public long size() {
+        return zonesBySubdomain.size();
+    }
+
+    public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void setPollIntervalSeconds(int pollIntervalSeconds) {
+        this.pollIntervalMillis = TimeUnit.SECONDS.toMillis(Math.max(0, pollIntervalSeconds));
+    }
+
+    public void setTimeService(TimeService timeService) {
+        this.timeService = timeService;
+    }
+}
@@ -20,6 +20,8 @@ import org.cloudfoundry.identity.uaa.oauth.client.ClientConstants;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
 import org.cloudfoundry.identity.uaa.security.ContextSensitiveOAuth2SecurityExpressionMethods;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.InvalidDataAccessResourceUsageException;
@@ -93,7 +95,7 @@ public class MultitenantJdbcClientDetailsService extends ClientServicesExtension
 
     private static final String DEFAULT_UPDATE_SECRET_STATEMENT =
         "update oauth_client_details "
-            + "set client_secret = ? where client_id = ? and identity_zone_id = ?";
+            + "set client_secret = ?, lastmodified = ? where client_id = ? and identity_zone_id = ?";
 
     static final String DEFAULT_DELETE_STATEMENT =
         "delete from oauth_client_details where client_id = ? and identity_zone_id = ?";
@@ -111,6 +113,8 @@ public class MultitenantJdbcClientDetailsService extends ClientServicesExtension
 
     private JdbcListFactory listFactory;
 
+    private TimeService timeService = new TimeServiceImpl();
+
     public MultitenantJdbcClientDetailsService(JdbcTemplate jdbcTemplate) {
         Assert.notNull(jdbcTemplate, "JDbcTemplate required");
         this.jdbcTemplate = jdbcTemplate;
@@ -125,6 +129,10 @@ public class MultitenantJdbcClientDetailsService extends ClientServicesExtension
         this.passwordEncoder = passwordEncoder;
     }
 
+    public void setTimeService(TimeService timeService) {
+        this.timeService = timeService;
+    }
+
     @Override
     public ClientDetails loadClientByClientId(String clientId, String zoneId) throws InvalidClientException {
         ClientDetails details;
@@ -156,7 +164,7 @@ public class MultitenantJdbcClientDetailsService extends ClientServicesExtension
 
     @Override
     public void updateClientSecret(String clientId, String secret, String zoneId) throws NoSuchClientException {
-        int count = jdbcTemplate.update(DEFAULT_UPDATE_SECRET_STATEMENT, passwordEncoder.encode(secret), clientId, zoneId);
+        int count = jdbcTemplate.update(DEFAULT_UPDATE_SECRET_STATEMENT, passwordEncoder.encode(secret), new Timestamp(timeService.getCurrentTimeMillis()), clientId, zoneId);
         if (count != 1) {
             throw new NoSuchClientException("No client found with id = " + clientId);
         }
@@ -207,7 +215,7 @@ public class MultitenantJdbcClientDetailsService extends ClientServicesExtension
             clientDetails.getRefreshTokenValiditySeconds(),
             json,
             getAutoApproveScopes(clientDetails),
-            new Timestamp(System.currentTimeMillis()),
+            new Timestamp(timeService.getCurrentTimeMillis()),
             collectionToString(requiredGroups),
             clientDetails.getClientId(),
             zoneId
@@ -261,7 +269,7 @@ public class MultitenantJdbcClientDetailsService extends ClientServicesExtension
         StringBuilder newSecretBuilder = new StringBuilder()
             .append(clientDetails.getClientSecret()==null ? "" : clientDetails.getClientSecret() +" ")
             .append(encodedNewSecret);
-        int count = jdbcTemplate.update(DEFAULT_UPDATE_SECRET_STATEMENT, newSecretBuilder.toString(), clientId, zoneId);
+        int count = jdbcTemplate.update(DEFAULT_UPDATE_SECRET_STATEMENT, newSecretBuilder.toString(), new Timestamp(timeService.getCurrentTimeMillis()), clientId, zoneId);
         if (count != 1) {
             throw new NoSuchClientException("No client found with id = " + clientId);
         }
@@ -271,7 +279,7 @@ public class MultitenantJdbcClientDetailsService extends ClientServicesExtension
     public void deleteClientSecret(String clientId, String zoneId) throws NoSuchClientException {
         ClientDetails clientDetails = loadClientByClientId(clientId, zoneId);
         String clientSecret = clientDetails.getClientSecret().split(" ")[1];
-        int count = jdbcTemplate.update(DEFAULT_UPDATE_SECRET_STATEMENT, clientSecret, clientId, zoneId);
+        int count = jdbcTemplate.update(DEFAULT_UPDATE_SECRET_STATEMENT, clientSecret, new Timestamp(timeService.getCurrentTimeMillis()), clientId, zoneId);
         if (count != 1) {
             throw new NoSuchClientException("Unable to update client with " + clientId);
         }
@@ -0,0 +1,8 @@
+-- keyset pagination of /Users, /Groups and /oauth/clients within a zone
+CREATE INDEX users_created_in_zone ON users (identity_zone_id, created, id);
+CREATE INDEX users_username_in_zone ON users (identity_zone_id, username, id);
+CREATE INDEX users_lastmodified_in_zone ON users (identity_zone_id, lastmodified, id);
+CREATE INDEX groups_created_in_zone ON groups (identity_zone_id, created, id);
+CREATE INDEX groups_displayname_in_zone ON groups (identity_zone_id, displayname, id);
+CREATE INDEX groups_lastmodified_in_zone ON groups (identity_zone_id, lastmodified, id);
+CREATE INDEX client_id_in_zone ON oauth_client_details (identity_zone_id, client_id);
@@ -0,0 +1,9 @@
+CREATE TABLE failed_login_counter (
+   identity_zone_id VARCHAR(36) NOT NULL,
+   principal_id VARCHAR(128) NOT NULL,
+   event_type INTEGER NOT NULL,
+   bucket_start BIGINT NOT NULL,
+   failure_count INTEGER NOT NULL,
+   last_failure BIGINT NOT NULL,
+   PRIMARY KEY (identity_zone_id, principal_id, event_type, bucket_start)
+);
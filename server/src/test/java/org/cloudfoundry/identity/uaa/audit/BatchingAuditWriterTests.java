@@ -0,0 +1,111 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.audit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InOrder;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.cloudfoundry.identity.uaa.audit.BatchingAuditWriter.OverflowPolicy.DROP_OLDEST;
+import static org.cloudfoundry.identity.uaa.audit.BatchingAuditWriter.OverflowPolicy.SYNCHRONOUS;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class BatchingAuditWriterTests {
+
+    private static final String INSERT = "insert into sec_audit (principal_id) values (?)";
+    private static final String DELETE = "delete from sec_audit where principal_id=?";
+
+    private JdbcTemplate template;
+
+    @Captor
+    private ArgumentCaptor<List<Object[]>> args;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        template = mock(JdbcTemplate.class);
+    }
+
+    @Test
+    public void writesImmediatelyWithoutQueue() {
+        BatchingAuditWriter writer = new BatchingAuditWriter(template, 0);
+        writer.update(INSERT, "user-1");
+        verify(template).update(INSERT, "user-1");
+    }
+
+    @Test
+    public void consecutiveStatementsAreBatchedInOrder() {
+        BatchingAuditWriter writer = new BatchingAuditWriter(template, 10);
+        writer.update(INSERT, "user-1");
+        writer.update(INSERT, "user-2");
+        writer.update(DELETE, "user-1");
+        writer.update(INSERT, "user-3");
+        verifyZeroInteractions(template);
+
+        assertEquals(4, writer.flush());
+
+        InOrder inOrder = inOrder(template);
+        inOrder.verify(template).batchUpdate(eq(INSERT), args.capture());
+        inOrder.verify(template).update(DELETE, "user-1");
+        inOrder.verify(template).update(INSERT, "user-3");
+        assertEquals(2, args.getValue().size());
+        assertEquals(0, writer.getQueueDepth());
+        assertEquals(4, writer.getWrittenCount());
+    }
+
+    @Test
+    public void dropOldestWhenFull() {
+        BatchingAuditWriter writer = new BatchingAuditWriter(template, 2);
+        writer.setOverflowPolicy(DROP_OLDEST);
+        writer.update(INSERT, "user-1");
+        writer.update(INSERT, "user-2");
+        writer.update(INSERT, "user-3");
+        assertEquals(1, writer.getDroppedCount());
+
+        writer.flush();
+        verify(template).batchUpdate(eq(INSERT), args.capture());
+        assertEquals("user-2", args.getValue().get(0)[0]);
+        assertEquals("user-3", args.getValue().get(1)[0]);
+    }
+
+    @Test
+    public void synchronousWhenFull() {
+        BatchingAuditWriter writer = new BatchingAuditWriter(template, 1);
+        writer.setOverflowPolicy(SYNCHRONOUS);
+        writer.update(INSERT, "user-1");
+        writer.update(DELETE, "user-1");
+
+        InOrder inOrder = inOrder(template);
+        inOrder.verify(template).update(INSERT, "user-1");
+        inOrder.verify(template).update(DELETE, "user-1");
+        verify(template, never()).batchUpdate(anyString(), anyList());
+        assertEquals(1, writer.getOverflowCount());
+        assertEquals(0, writer.getQueueDepth());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.audit;
+
+import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.cloudfoundry.identity.uaa.audit.AuditEventType.MfaAuthenticationFailure;
+import static org.cloudfoundry.identity.uaa.audit.AuditEventType.UserAuthenticationFailure;
+import static org.junit.Assert.assertEquals;
+
+public class JdbcFailedLoginCounterTests extends JdbcTestBase {
+
+    private static final long WINDOW = 60000L;
+    private static final String ZONE_ID = "uaa";
+
+    private JdbcFailedLoginCounter counter;
+
+    @Before
+    public void createCounter() {
+        counter = new JdbcFailedLoginCounter(jdbcTemplate);
+    }
+
+    @Test
+    public void failuresInTheSameBucketShareARow() {
+        counter.recordFailure("principal", UserAuthenticationFailure, ZONE_ID, 120000L, WINDOW);
+        counter.recordFailure("principal", UserAuthenticationFailure, ZONE_ID, 121000L, WINDOW);
+
+        JdbcFailedLoginCounter.Counter result = getCounter(130000L);
+        assertEquals(2, result.getFailureCount());
+        assertEquals(121000L, result.getLastFailure());
+        assertEquals(1, countRows("principal"));
+    }
+
+    @Test
+    public void windowSlidesOneBucketAtATime() {
+        counter.recordFailure("principal", UserAuthenticationFailure, ZONE_ID, 100000L, WINDOW);
+        counter.recordFailure("principal", UserAuthenticationFailure, ZONE_ID, 130000L, WINDOW);
+        counter.recordFailure("principal", UserAuthenticationFailure, ZONE_ID, 150000L, WINDOW);
+        assertEquals(3, getCounter(150000L).getFailureCount());
+
+        //the first failure drops out of the window, the later ones keep counting
+        assertEquals(2, getCounter(170000L).getFailureCount());
+        assertEquals(1, getCounter(200000L).getFailureCount());
+        assertEquals(0, getCounter(215000L).getFailureCount());
+        assertEquals(0, getCounter(215000L).getLastFailure());
+    }
+
+    @Test
+    public void expiredBucketsAreDeletedOnTheNextFailure() {
+        counter.recordFailure("principal", UserAuthenticationFailure, ZONE_ID, 100000L, WINDOW);
+        counter.recordFailure("principal", UserAuthenticationFailure, ZONE_ID, 130000L, WINDOW);
+        assertEquals(2, countRows("principal"));
+
+        counter.recordFailure("principal", UserAuthenticationFailure, ZONE_ID, 170000L, WINDOW);
+        assertEquals(2, countRows("principal"));
+        assertEquals(2, getCounter(170000L).getFailureCount());
+    }
+
+    @Test
+    public void resetOnlyClearsTheGivenEventType() {
+        counter.recordFailure("principal", UserAuthenticationFailure, ZONE_ID, 100000L, WINDOW);
+        counter.recordFailure("principal", MfaAuthenticationFailure, ZONE_ID, 100000L, WINDOW);
+        counter.recordFailure("other", UserAuthenticationFailure, ZONE_ID, 100000L, WINDOW);
+
+        counter.reset("principal", UserAuthenticationFailure, ZONE_ID);
+
+        assertEquals(0, getCounter(110000L).getFailureCount());
+        assertEquals(1, counter.getCounter("principal", MfaAuthenticationFailure, ZONE_ID, 110000L - WINDOW).getFailureCount());
+        assertEquals(1, counter.getCounter("other", UserAuthenticationFailure, ZONE_ID, 110000L - WINDOW).getFailureCount());
+    }
+
+    @Test
+    public void bucketsAreATenthOfTheWindow() {
+        assertEquals(120000L, JdbcFailedLoginCounter.getBucketStart(125999L, WINDOW));
+        assertEquals(126000L, JdbcFailedLoginCounter.getBucketStart(126000L, WINDOW));
+        //never shorter than a second
+        assertEquals(125000L, JdbcFailedLoginCounter.getBucketStart(125999L, 5000L));
+    }
+
+    private JdbcFailedLoginCounter.Counter getCounter(long now) {
+        return counter.getCounter("principal", UserAuthenticationFailure, ZONE_ID, now - WINDOW);
+    }
+
+    private int countRows(String principalId) {
+        return jdbcTemplate.queryForObject("select count(*) from failed_login_counter where principal_id=?", Integer.class, principalId);
+    }
+}
@@ -32,6 +32,8 @@ import org.cloudfoundry.identity.uaa.user.UaaAuthority;
 import org.cloudfoundry.identity.uaa.user.UaaUser;
 import org.cloudfoundry.identity.uaa.user.UaaUserDatabase;
 import org.cloudfoundry.identity.uaa.user.UaaUserPrototype;
+import org.cloudfoundry.identity.uaa.util.BoundedPasswordEncoder;
+import org.cloudfoundry.identity.uaa.util.PasswordHashingUnavailableException;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.junit.After;
 import org.junit.Before;
@@ -46,6 +48,7 @@ import org.springframework.security.authentication.event.AuthenticationFailureLo
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 
 import javax.servlet.http.HttpServletRequest;
@@ -54,6 +57,8 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.instanceOf;
@@ -176,6 +181,49 @@ public class AuthzAuthenticationManagerTests {
         assertTrue(authentication.isAuthenticated());
     }
 
+    @Test
+    public void passwordCheckIsRejectedWhenHashingIsSaturated() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder slowEncoder = mock(PasswordEncoder.class);
+        when(slowEncoder.matches(any(), anyString())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return false;
+        });
+        BoundedPasswordEncoder boundedEncoder = new BoundedPasswordEncoder(slowEncoder, 1, 1);
+        mgr = new AuthzAuthenticationManager(db, boundedEncoder, providerProvisioning);
+        mgr.setApplicationEventPublisher(publisher);
+        mgr.setOrigin(OriginKeys.UAA);
+        AccountLoginPolicy mockAccountLoginPolicy = mock(AccountLoginPolicy.class);
+        when(mockAccountLoginPolicy.isAllowed(any(), any())).thenReturn(true);
+        mgr.setAccountLoginPolicy(mockAccountLoginPolicy);
+        when(db.retrieveUserByName("auser", OriginKeys.UAA)).thenReturn(user);
+
+        Thread running = new Thread(() -> boundedEncoder.matches("a", "a"));
+        running.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        Thread queued = new Thread(() -> boundedEncoder.matches("b", "b"));
+        queued.start();
+        while (boundedEncoder.getQueueDepth() == 0) {
+            Thread.sleep(10);
+        }
+
+        try {
+            mgr.authenticate(createAuthRequest("auser", "password"));
+            fail("expected the saturated hashing pool to reject the login");
+        } catch (PasswordHashingUnavailableException e) {
+            assertEquals(503, e.getHttpErrorCode());
+            // an overloaded server must not count as a failed login for the user
+            assertFalse(eventCaptor.getAllValues().stream().anyMatch(event -> event instanceof UserAuthenticationFailureEvent));
+        } finally {
+            release.countDown();
+            running.join();
+            queued.join();
+            boundedEncoder.destroy();
+        }
+    }
+
     @Test(expected = BadCredentialsException.class)
     public void unsuccessfulLoginServerUserAuthentication() {
         when(db.retrieveUserByName(loginServerUserName, OriginKeys.UAA)).thenReturn(null);
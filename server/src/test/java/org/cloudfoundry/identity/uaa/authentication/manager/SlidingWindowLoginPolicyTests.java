@@ -0,0 +1,151 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.authentication.manager;
+
+import org.cloudfoundry.identity.uaa.audit.AuditEvent;
+import org.cloudfoundry.identity.uaa.audit.AuditEventType;
+import org.cloudfoundry.identity.uaa.audit.JdbcFailedLoginCounter;
+import org.cloudfoundry.identity.uaa.audit.UaaAuditService;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.authentication.event.AbstractUaaAuthenticationEvent;
+import org.cloudfoundry.identity.uaa.provider.LockoutPolicy;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.cloudfoundry.identity.uaa.audit.AuditEventType.UserAuthenticationFailure;
+import static org.cloudfoundry.identity.uaa.audit.AuditEventType.UserAuthenticationSuccess;
+import static org.cloudfoundry.identity.uaa.authentication.manager.SlidingWindowLoginPolicy.FailureSource.AUDIT;
+import static org.cloudfoundry.identity.uaa.authentication.manager.SlidingWindowLoginPolicy.FailureSource.COUNTER;
+import static org.cloudfoundry.identity.uaa.authentication.manager.SlidingWindowLoginPolicy.FailureSource.MEMORY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SlidingWindowLoginPolicyTests {
+
+    private SlidingWindowLoginPolicy policy;
+    private UaaAuditService auditService;
+    private TimeService timeService;
+    private String zoneId;
+
+    @Before
+    public void setup() {
+        auditService = mock(UaaAuditService.class);
+        timeService = mock(TimeService.class);
+        LockoutPolicyRetriever lockoutPolicyRetriever = mock(LockoutPolicyRetriever.class);
+        when(lockoutPolicyRetriever.getLockoutPolicy()).thenReturn(new LockoutPolicy(60, 2, 300));
+        when(timeService.getCurrentTimeMillis()).thenReturn(100000L);
+        zoneId = IdentityZoneHolder.get().getId();
+        when(auditService.find(anyString(), anyLong(), anyString())).thenReturn(Collections.emptyList());
+
+        policy = new SlidingWindowLoginPolicy(auditService, lockoutPolicyRetriever, UserAuthenticationSuccess, UserAuthenticationFailure, timeService, true);
+        policy.setFailureSource(MEMORY);
+    }
+
+    @Test
+    public void failuresAreCountedInMemory() {
+        assertTrue(policy.isAllowed("principal").isAllowed());
+        publish(UserAuthenticationFailure, 99000L);
+        publish(UserAuthenticationFailure, 99500L);
+
+        LoginPolicy.Result result = policy.isAllowed("principal");
+        assertFalse(result.isAllowed());
+        assertEquals(2, result.getFailureCount());
+        verify(auditService, times(1)).find(eq("principal"), anyLong(), eq(zoneId));
+    }
+
+    @Test
+    public void successResetsFailures() {
+        policy.isAllowed("principal");
+        publish(UserAuthenticationFailure, 99000L);
+        publish(UserAuthenticationFailure, 99500L);
+        publish(UserAuthenticationSuccess, 99600L);
+
+        LoginPolicy.Result result = policy.isAllowed("principal");
+        assertTrue(result.isAllowed());
+        assertEquals(0, result.getFailureCount());
+    }
+
+    @Test
+    public void failuresOutsideTheWindowAreNotCounted() {
+        policy.isAllowed("principal");
+        publish(UserAuthenticationFailure, 30000L);
+        publish(UserAuthenticationFailure, 99500L);
+
+        LoginPolicy.Result result = policy.isAllowed("principal");
+        assertTrue(result.isAllowed());
+        assertEquals(1, result.getFailureCount());
+    }
+
+    @Test
+    public void failuresAreWarmedUpFromAudit() {
+        when(auditService.find(eq("principal"), anyLong(), eq(zoneId))).thenReturn(Arrays.asList(
+            new AuditEvent(UserAuthenticationFailure, "principal", null, null, 99500L, zoneId, null, null),
+            new AuditEvent(UserAuthenticationFailure, "principal", null, null, 99000L, zoneId, null, null)
+        ));
+
+        assertFalse(policy.isAllowed("principal").isAllowed());
+        assertFalse(policy.isAllowed("principal").isAllowed());
+        verify(auditService, times(1)).find(eq("principal"), anyLong(), eq(zoneId));
+    }
+
+    @Test
+    public void sharedCounterIsUsed() {
+        JdbcFailedLoginCounter counter = mock(JdbcFailedLoginCounter.class);
+        policy.setFailedLoginCounter(counter);
+        policy.setFailureSource(COUNTER);
+        when(counter.getCounter("principal", UserAuthenticationFailure, zoneId, 40000L)).thenReturn(new JdbcFailedLoginCounter.Counter(2, 99500L));
+
+        publish(UserAuthenticationFailure, 99500L);
+        verify(counter).recordFailure("principal", UserAuthenticationFailure, zoneId, 99500L, 60000L);
+        assertFalse(policy.isAllowed("principal").isAllowed());
+
+        publish(UserAuthenticationSuccess, 99600L);
+        verify(counter).reset("principal", UserAuthenticationFailure, zoneId);
+    }
+
+    @Test
+    public void otherEventsAreIgnoredWithoutBuildingTheirAuditEvent() {
+        AbstractUaaEvent event = mock(AbstractUaaEvent.class);
+        policy.onApplicationEvent(event);
+        verify(event, never()).getAuditEvent();
+    }
+
+    @Test
+    public void auditTableIsTheDefaultFailureSource() {
+        SlidingWindowLoginPolicy defaultPolicy = new SlidingWindowLoginPolicy(auditService, mock(LockoutPolicyRetriever.class), UserAuthenticationSuccess, UserAuthenticationFailure, timeService, true);
+        assertEquals(AUDIT, defaultPolicy.getFailureSource());
+    }
+
+    private void publish(AuditEventType type, long time) {
+        AbstractUaaEvent event = mock(AbstractUaaAuthenticationEvent.class);
+        when(event.getAuditEvent()).thenReturn(new AuditEvent(type, "principal", null, null, time, zoneId, null, null));
+        policy.onApplicationEvent(event);
+    }
+}
@@ -29,6 +29,11 @@ import java.net.URISyntaxException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -138,6 +143,66 @@ class ExpiringUrlCacheTests {
         assertEquals(2, cache.size());
     }
 
+    @Test
+    void stale_entry_is_served_while_refreshing() throws Exception {
+        Instant start = Instant.now();
+        when(mockTimeService.getCurrentTimeMillis())
+                .thenReturn(
+                        start.toEpochMilli(),
+                        start.plus(CACHE_EXPIRATION).plus(Duration.ofMinutes(1)).toEpochMilli()
+                );
+        cache.setMaxStale(Duration.ofMinutes(5));
+        cache.setRefreshExecutor(Runnable::run);
+
+        byte[] c1 = cache.getUrlContent(uri, template);
+        byte[] c2 = cache.getUrlContent(uri, template);
+        byte[] c3 = cache.getUrlContent(uri, template);
+        assertSame(c1, c2);
+        assertNotSame(c1, c3);
+        verify(template, times(2)).getForObject(eq(new URI(uri)), same((new byte[0]).getClass()));
+        assertEquals(1, cache.getStaleCount());
+    }
+
+    @Test
+    void concurrent_loads_share_one_fetch() throws Exception {
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        template = mock(RestTemplate.class);
+        when(template.getForObject(any(URI.class), any())).thenAnswer(invocation -> {
+            fetching.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return content;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<byte[]> first = executor.submit(() -> cache.getUrlContent(uri, template));
+            assertTrue(fetching.await(5, TimeUnit.SECONDS));
+            Future<byte[]> second = executor.submit(() -> cache.getUrlContent(uri, template));
+            while (cache.getCoalescedCount() == 0 && !second.isDone()) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(template, times(1)).getForObject(any(URI.class), any());
+    }
+
+    @Test
+    void failing_uri_is_not_fetched_during_backoff() throws Exception {
+        template = mock(RestTemplate.class);
+        when(template.getForObject(any(URI.class), any())).thenThrow(new RestClientException("mock"));
+        cache.setFailureBackoff(Duration.ofMinutes(1));
+
+        assertThrows(RestClientException.class, () -> cache.getUrlContent(uri, template));
+        assertThrows(RestClientException.class, () -> cache.getUrlContent(uri, template));
+        verify(template, times(1)).getForObject(eq(new URI(uri)), same((new byte[0]).getClass()));
+        assertEquals(1, cache.getFailureCount());
+        assertEquals(1, cache.getBackedOffCount());
+        assertEquals(1, cache.getStatistics(uri).getFailureCount());
+    }
+
     @Nested
     @DisplayName("When a http server never returns a http response")
     class DeadHttpServer {
@@ -20,6 +20,8 @@ import org.cloudfoundry.identity.uaa.client.ClientDetailsValidator.Mode;
 import org.cloudfoundry.identity.uaa.error.UaaException;
 import org.cloudfoundry.identity.uaa.oauth.client.ClientDetailsModification;
 import org.cloudfoundry.identity.uaa.oauth.client.SecretChangeRequest;
+import org.cloudfoundry.identity.uaa.resources.CursorPage;
+import org.cloudfoundry.identity.uaa.resources.PageCursor;
 import org.cloudfoundry.identity.uaa.resources.QueryableResourceManager;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
@@ -80,6 +82,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -522,6 +525,37 @@ public class ClientAdminEndpointsTests {
         endpoints.listClientDetails("client_id", "filter", "sortBy", "ascending", 1, 100);
     }
 
+    @Test
+    public void testFindClientDetailsWithCursor() throws Exception {
+        String zoneId = IdentityZoneHolder.get().getId();
+        PageCursor next = new PageCursor("client_id", true, "foo-0", "foo-0");
+        when(clientDetailsService.query(eq("client_id pr"), eq("client_id"), eq(true), isNull(), eq(1), eq(true), eq(zoneId)))
+            .thenReturn(new CursorPage<>(Arrays.<ClientDetails>asList(inputs[0]), next, 2));
+        when(clientDetailsService.query(eq("client_id pr"), eq("client_id"), eq(true), any(PageCursor.class), eq(1), eq(false), eq(zoneId)))
+            .thenReturn(new CursorPage<>(Arrays.<ClientDetails>asList(inputs[1]), null, CursorPage.TOTAL_NOT_COUNTED));
+
+        SearchResults<?> result = endpoints.listClientDetails(null, "client_id pr", "client_id", "ascending", 1, 1, "", true);
+        assertEquals(1, result.getResources().size());
+        assertEquals(2, result.getTotalResults());
+        assertEquals(next.encode(), result.getNextCursor());
+        assertNull(((ClientDetails) result.getResources().iterator().next()).getClientSecret());
+
+        result = endpoints.listClientDetails(null, "client_id pr", "client_id", "ascending", 1, 1, result.getNextCursor(), false);
+        assertEquals(1, result.getResources().size());
+        assertEquals(CursorPage.TOTAL_NOT_COUNTED, result.getTotalResults());
+        assertNull(result.getNextCursor());
+
+        ArgumentCaptor<PageCursor> after = ArgumentCaptor.forClass(PageCursor.class);
+        verify(clientDetailsService).query(eq("client_id pr"), eq("client_id"), eq(true), after.capture(), eq(1), eq(false), eq(zoneId));
+        assertEquals("foo-0", after.getValue().getId());
+        assertEquals("client_id", after.getValue().getSortColumn());
+    }
+
+    @Test(expected = UaaException.class)
+    public void testFindClientDetailsWithInvalidCursor() throws Exception {
+        endpoints.listClientDetails(null, "client_id pr", "client_id", "ascending", 1, 1, "not-a-cursor", true);
+    }
+
     @Test
     public void testFindClientDetails_Test_Attribute_Filter() throws Exception {
         when(clientDetailsService.query(anyString(), anyString(), anyBoolean(), eq(IdentityZoneHolder.get().getId()))).thenReturn(Arrays.asList(inputs));
@@ -0,0 +1,89 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.db;
+
+import org.cloudfoundry.identity.uaa.db.ExpiringCodeTableTest.TestColumn;
+import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.cloudfoundry.identity.uaa.audit.JdbcFailedLoginCounter.INSERT_COUNTER_SQL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FailedLoginCounterTableTest extends JdbcTestBase {
+
+    private static final String TABLE_NAME = "failed_login_counter";
+
+    private static final List<TestColumn> TEST_COLUMNS = Arrays.asList(
+        new TestColumn("identity_zone_id", "varchar/nvarchar", 36),
+        new TestColumn("principal_id", "varchar/nvarchar", 128),
+        new TestColumn("event_type", "int/integer/int4", -1),
+        new TestColumn("bucket_start", "bigint/int8", -1),
+        new TestColumn("failure_count", "int/integer/int4", -1),
+        new TestColumn("last_failure", "bigint/int8", -1)
+    );
+
+    @Test
+    public void validate_table() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData meta = connection.getMetaData();
+            int foundColumn = 0;
+            try (ResultSet rs = meta.getColumns(connection.getCatalog(), null, null, null)) {
+                while (rs.next()) {
+                    if (TABLE_NAME.equalsIgnoreCase(rs.getString("TABLE_NAME"))) {
+                        String name = rs.getString("COLUMN_NAME");
+                        assertTrue("Testing column:" + name, testColumn(name, rs.getString("TYPE_NAME"), rs.getInt("COLUMN_SIZE")));
+                        foundColumn++;
+                    }
+                }
+            }
+            assertEquals("Table " + TABLE_NAME + " is missing columns!", TEST_COLUMNS.size(), foundColumn);
+
+            Set<String> primaryKey = new HashSet<>();
+            for (String tableName : Arrays.asList(TABLE_NAME, TABLE_NAME.toUpperCase())) {
+                try (ResultSet rs = meta.getPrimaryKeys(connection.getCatalog(), null, tableName)) {
+                    while (rs.next()) {
+                        primaryKey.add(rs.getString("COLUMN_NAME").toLowerCase());
+                    }
+                }
+            }
+            assertEquals(new HashSet<>(Arrays.asList("identity_zone_id", "principal_id", "event_type", "bucket_start")), primaryKey);
+        }
+    }
+
+    @Test(expected = DuplicateKeyException.class)
+    public void bucket_is_unique_per_principal_and_event_type() {
+        jdbcTemplate.update(INSERT_COUNTER_SQL, "uaa", "principal", 1, 120000L, 120000L);
+        jdbcTemplate.update(INSERT_COUNTER_SQL, "uaa", "principal", 1, 120000L, 121000L);
+    }
+
+    private static boolean testColumn(String name, String type, int size) {
+        for (TestColumn c : TEST_COLUMNS) {
+            if (c.name.equalsIgnoreCase(name)) {
+                return c.type.toLowerCase().contains(type.toLowerCase()) && (c.size <= 0 || c.size == size);
+            }
+        }
+        return false;
+    }
+}
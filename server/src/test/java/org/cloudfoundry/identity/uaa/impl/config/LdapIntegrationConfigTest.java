@@ -0,0 +1,90 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.impl.config;
+
+import org.cloudfoundry.identity.uaa.provider.ldap.PooledLdapContextSource;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.security.core.authority.mapping.GrantedAuthoritiesMapper;
+import org.springframework.security.ldap.DefaultSpringSecurityContextSource;
+import org.springframework.security.ldap.authentication.LdapAuthenticationProvider;
+import org.springframework.security.ldap.userdetails.LdapAuthoritiesPopulator;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class LdapIntegrationConfigTest {
+
+    private AnnotationConfigApplicationContext context;
+
+    @After
+    public void closeContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void pooledContextSourceIsPrimaryWhenPoolSizeIsSet() {
+        context = getContext("2");
+        BaseLdapPathContextSource contextSource = context.getBean(BaseLdapPathContextSource.class);
+        assertTrue(contextSource instanceof PooledLdapContextSource);
+        assertSame(contextSource, context.getBean("pooledLdapContextSource"));
+        assertNotNull(context.getBean("defaultSpringSecurityContextSource", DefaultSpringSecurityContextSource.class));
+        assertNotNull(context.getBean(LdapAuthenticationProvider.class));
+    }
+
+    @Test
+    public void defaultContextSourceIsUsedWithoutPoolSize() {
+        context = getContext("0");
+        assertFalse(context.containsBean("pooledLdapContextSource"));
+        assertSame(context.getBean("defaultSpringSecurityContextSource"), context.getBean(BaseLdapPathContextSource.class));
+        assertNotNull(context.getBean(LdapAuthenticationProvider.class));
+    }
+
+    private static AnnotationConfigApplicationContext getContext(String poolSize) {
+        MockEnvironment environment = new MockEnvironment();
+        environment.setProperty("ldap.profile.file", "ldap/ldap-search-and-bind.xml");
+        environment.setProperty(LdapIntegrationConfig.LDAP_CONNECTION_POOL_SIZE, poolSize);
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.setEnvironment(environment);
+        context.register(LdapIntegrationConfig.class, LdapSearchAndBindConfig.class, LdapGroupMocks.class);
+        context.refresh();
+        return context;
+    }
+
+    @Configuration
+    public static class LdapGroupMocks {
+        @Bean
+        public LdapAuthoritiesPopulator ldapAuthoritiesPopulator() {
+            return mock(LdapAuthoritiesPopulator.class);
+        }
+
+        @Bean
+        public GrantedAuthoritiesMapper ldapAuthoritiesMapper() {
+            return mock(GrantedAuthoritiesMapper.class);
+        }
+    }
+}
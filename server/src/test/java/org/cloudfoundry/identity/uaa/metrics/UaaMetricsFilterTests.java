@@ -15,6 +15,7 @@
 
 package org.cloudfoundry.identity.uaa.metrics;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.util.TimeService;
 import org.cloudfoundry.identity.uaa.util.TimeServiceImpl;
@@ -81,6 +82,21 @@ public class UaaMetricsFilterTests {
         assertTrue(filter.isEnabled());
     }
 
+    @Test
+    public void token_validation_cache_metrics() throws Exception {
+        assertEquals(0, filter.getTokenValidationCacheHits());
+
+        CacheMetrics cache = mock(CacheMetrics.class);
+        when(cache.getHitCount()).thenReturn(3L);
+        when(cache.getMissCount()).thenReturn(2L);
+        when(cache.getEvictionCount()).thenReturn(1L);
+        filter.setTokenValidationCache(cache);
+
+        assertEquals(3, filter.getTokenValidationCacheHits());
+        assertEquals(2, filter.getTokenValidationCacheMisses());
+        assertEquals(1, filter.getTokenValidationCacheEvictions());
+    }
+
     @Test
     public void per_request_disabled_by_default() throws Exception {
         assertFalse(filter.isPerRequestMetrics());
@@ -118,6 +134,17 @@ public class UaaMetricsFilterTests {
         assertEquals(0, queue.getTotals().getCount());
     }
 
+    @Test
+    public void latencies_recorded_per_group_and_globally() throws Exception {
+        performTwoSimpleRequests();
+        Map<String, String> latencies = filter.getLatencies();
+        for (String group : Arrays.asList("/api", MetricsUtil.GLOBAL_GROUP)) {
+            Map<String, LatencySummary> summaries = JsonUtils.readValue(latencies.get(group), new TypeReference<Map<String, LatencySummary>>() {});
+            assertEquals(2, summaries.get(RequestLatencies.REQUEST_TIME).getCount());
+            assertEquals(0, summaries.get(RequestLatencies.DATABASE_TIME).getCount());
+        }
+    }
+
     public String performTwoSimpleRequests() throws ServletException, IOException {
         String path = "/authenticate/test";
         setRequestData(path);
@@ -0,0 +1,148 @@
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.cloudfoundry.identity.uaa.oauth.event.TokenRevocationEvent;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingResourceServerTokenServicesTests {
+
+    private static final String TOKEN = "header.claims.signature";
+
+    private ResourceServerTokenServices delegate;
+    private TimeService timeService;
+    private CachingResourceServerTokenServices cachingTokenServices;
+    private OAuth2Authentication authentication;
+    private DefaultOAuth2AccessToken accessToken;
+
+    @Before
+    public void setUp() {
+        IdentityZoneHolder.clear();
+        delegate = mock(ResourceServerTokenServices.class);
+        timeService = mock(TimeService.class);
+        when(timeService.getCurrentTimeMillis()).thenReturn(1000L);
+
+        OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "client", Collections.emptyList(), true, Collections.emptySet(), Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+        authentication = new OAuth2Authentication(request, null);
+        accessToken = new DefaultOAuth2AccessToken(TOKEN);
+        accessToken.setExpiration(new Date(20000L));
+        when(delegate.loadAuthentication(TOKEN)).thenReturn(authentication);
+        when(delegate.readAccessToken(TOKEN)).thenReturn(accessToken);
+
+        cachingTokenServices = new CachingResourceServerTokenServices(delegate, 60, 100);
+        cachingTokenServices.setTimeService(timeService);
+    }
+
+    @After
+    public void tearDown() {
+        IdentityZoneHolder.clear();
+    }
+
+    @Test
+    public void validationResultsAreCached() {
+        assertSame(accessToken, cachingTokenServices.readAccessToken(TOKEN));
+        assertSame(authentication, cachingTokenServices.loadAuthentication(TOKEN));
+        assertSame(accessToken, cachingTokenServices.readAccessToken(TOKEN));
+        assertSame(authentication, cachingTokenServices.loadAuthentication(TOKEN));
+
+        verify(delegate, times(1)).readAccessToken(TOKEN);
+        verify(delegate, times(1)).loadAuthentication(TOKEN);
+        assertEquals(2, cachingTokenServices.getHitCount());
+        assertEquals(2, cachingTokenServices.getMissCount());
+    }
+
+    @Test
+    public void entriesDoNotOutliveTheToken() {
+        cachingTokenServices.readAccessToken(TOKEN);
+        when(timeService.getCurrentTimeMillis()).thenReturn(20000L);
+        cachingTokenServices.readAccessToken(TOKEN);
+
+        verify(delegate, times(2)).readAccessToken(TOKEN);
+    }
+
+    @Test
+    public void authenticationsDoNotOutliveTheTokenExpiryClaim() {
+        String jwt = base64Url("{\"alg\":\"HS256\"}") + "." + base64Url("{\"exp\":20}") + "." + base64Url("signature");
+        when(delegate.loadAuthentication(jwt)).thenReturn(authentication);
+
+        cachingTokenServices.loadAuthentication(jwt);
+        cachingTokenServices.loadAuthentication(jwt);
+        verify(delegate, times(1)).loadAuthentication(jwt);
+
+        when(timeService.getCurrentTimeMillis()).thenReturn(20000L);
+        cachingTokenServices.loadAuthentication(jwt);
+        verify(delegate, times(2)).loadAuthentication(jwt);
+    }
+
+    @Test
+    public void authenticationsOfOpaqueTokensAreNotCachedWithoutTheToken() {
+        cachingTokenServices.loadAuthentication(TOKEN);
+        assertEquals(0, cachingTokenServices.size());
+
+        cachingTokenServices.readAccessToken(TOKEN);
+        cachingTokenServices.loadAuthentication(TOKEN);
+        cachingTokenServices.loadAuthentication(TOKEN);
+        verify(delegate, times(2)).loadAuthentication(TOKEN);
+    }
+
+    @Test
+    public void failuresAreNotCached() {
+        when(delegate.loadAuthentication(TOKEN)).thenThrow(new InvalidTokenException("invalid"));
+        for (int i = 0; i < 2; i++) {
+            try {
+                cachingTokenServices.loadAuthentication(TOKEN);
+                fail();
+            } catch (InvalidTokenException ignored) {
+            }
+        }
+        verify(delegate, times(2)).loadAuthentication(TOKEN);
+    }
+
+    @Test
+    public void revocationEvictsEntries() {
+        cachingTokenServices.readAccessToken(TOKEN);
+        cachingTokenServices.loadAuthentication(TOKEN);
+
+        cachingTokenServices.onApplicationEvent(new TokenRevocationEvent(null, "other-client", IdentityZoneHolder.get().getId(), mock(Authentication.class)));
+        assertEquals(1, cachingTokenServices.size());
+
+        cachingTokenServices.onApplicationEvent(new TokenRevocationEvent(null, "client", IdentityZoneHolder.get().getId(), mock(Authentication.class)));
+        assertEquals(0, cachingTokenServices.size());
+        assertEquals(1, cachingTokenServices.getEvictionCount());
+    }
+
+    @Test
+    public void zeroTtlDisablesCaching() {
+        cachingTokenServices = new CachingResourceServerTokenServices(delegate, 0, 100);
+        cachingTokenServices.loadAuthentication(TOKEN);
+        cachingTokenServices.loadAuthentication(TOKEN);
+
+        verify(delegate, times(2)).loadAuthentication(TOKEN);
+        assertEquals(0, cachingTokenServices.size());
+    }
+
+    private static String base64Url(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
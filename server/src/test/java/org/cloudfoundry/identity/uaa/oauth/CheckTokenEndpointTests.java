@@ -505,6 +505,11 @@ public class CheckTokenEndpointTests {
         }
     }
 
+    @Test(expected = InvalidTokenException.class)
+    public void malformedClaimsAreRejectedAsInvalidToken() throws Exception {
+        endpoint.checkToken("eyJhbGciOiJIUzI1NiJ9.eyJzdWIiOiJqb2VsIn0\\.c2lnbmF0dXJl", Collections.emptyList(), request);
+    }
+
     @Test(expected = InvalidTokenException.class)
     public void revokingScopesFromUser_invalidatesToken() throws Exception {
         OAuth2AccessToken accessToken = tokenServices.createAccessToken(authentication);
@@ -117,4 +117,18 @@ public class IntrospectEndpointTest {
         Assert.assertFalse(claimsResult.isActive());
         Assert.assertNull(claimsResult.getName());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMalformedClaimsAreInactive() {
+        OAuth2AccessToken token = mock(OAuth2AccessToken.class);
+        when(resourceServerTokenServices.readAccessToken("malformed-claims")).thenReturn(token);
+        when(token.isExpired()).thenReturn(false);
+        when(token.getValue()).thenReturn("malformed-claims");
+        Mockito.when(JwtHelper.decode("malformed-claims")).thenThrow(new IllegalArgumentException("Bad Base64 input character"));
+
+        IntrospectionClaims claimsResult = introspectEndpoint.introspect("malformed-claims");
+
+        Assert.assertFalse(claimsResult.isActive());
+        Assert.assertNull(claimsResult.getName());
+    }
+}
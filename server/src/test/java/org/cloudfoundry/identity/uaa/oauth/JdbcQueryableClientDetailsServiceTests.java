@@ -13,12 +13,19 @@
 package org.cloudfoundry.identity.uaa.oauth;
 
 import org.cloudfoundry.identity.uaa.client.JdbcQueryableClientDetailsService;
+import org.cloudfoundry.identity.uaa.resources.CursorPage;
+import org.cloudfoundry.identity.uaa.resources.PageCursor;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
 import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
 import org.cloudfoundry.identity.uaa.zone.*;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.cloudfoundry.identity.uaa.oauth.token.TokenConstants.GRANT_TYPE_AUTHORIZATION_CODE;
 import static org.junit.Assert.assertEquals;
@@ -93,4 +100,34 @@ public class JdbcQueryableClientDetailsServiceTests extends JdbcTestBase {
         testQueryExists();
         assertEquals(8,delegate.getTotalCount());
     }
+
+    @Test
+    public void testQueryPagesByCursor() {
+        addClients();
+        IdentityZoneHolder.set(otherZone);
+        addClient("other", "secret", "cc", "cc.read", "implicit", "myRedirectUri", "cc.read", 100, 200);
+        IdentityZoneHolder.clear();
+
+        assertEquals(Arrays.asList("admin", "app", "cf", "scimadmin"), pageClientIds(true));
+        assertEquals(Arrays.asList("scimadmin", "cf", "app", "admin"), pageClientIds(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCannotPageByCursorOnNullableSortField() {
+        service.query("client_id pr", "scope", true, null, 3, true, IdentityZoneHolder.get().getId());
+    }
+
+    private List<String> pageClientIds(boolean ascending) {
+        List<String> clientIds = new ArrayList<>();
+        PageCursor cursor = null;
+        do {
+            CursorPage<ClientDetails> page = service.query("client_id pr", "client_id", ascending, cursor, 3, cursor == null, IdentityZoneHolder.get().getId());
+            assertEquals(cursor == null ? 4 : CursorPage.TOTAL_NOT_COUNTED, page.getTotalResults());
+            for (ClientDetails client : page.getResources()) {
+                clientIds.add(client.getClientId());
+            }
+            cursor = page.getNext() == null ? null : PageCursor.decode(page.getNext().encode());
+        } while (cursor != null);
+        return clientIds;
+    }
 }
@@ -16,7 +16,9 @@ import org.cloudfoundry.identity.uaa.approval.Approval;
 import org.cloudfoundry.identity.uaa.approval.ApprovalStore;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class InMemoryApprovalStore implements ApprovalStore {
@@ -77,6 +79,13 @@ public class InMemoryApprovalStore implements ApprovalStore {
             .collect(Collectors.toList());
     }
 
+    @Override
+    public Map<String, List<Approval>> getApprovalsForUsers(Collection<String> userIds, final String zoneId) {
+        return store.stream()
+            .filter(approval -> userIds.contains(approval.getUserId()))
+            .collect(Collectors.groupingBy(Approval::getUserId));
+    }
+
     @Override
     public List<Approval> getApprovalsForClient(String clientId, final String zoneId) {
         return store.stream()
@@ -35,6 +35,7 @@ import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import static org.cloudfoundry.identity.uaa.approval.Approval.ApprovalStatus.APPROVED;
 import static org.cloudfoundry.identity.uaa.approval.Approval.ApprovalStatus.DENIED;
@@ -124,6 +125,16 @@ public class JdbcApprovalStoreTests extends JdbcTestBase {
         IdentityZoneHolder.clear();
     }
 
+    @Test
+    public void get_approvals_for_several_users() {
+        String zoneId = IdentityZoneHolder.getUaaZone().getId();
+        Map<String, List<Approval>> approvals = dao.getApprovalsForUsers(Arrays.asList("u1", "u2", "u3"), zoneId);
+        assertEquals(2, approvals.get("u1").size());
+        assertEquals(1, approvals.get("u2").size());
+        assertFalse(approvals.containsKey("u3"));
+        assertTrue(dao.getApprovalsForUsers(Arrays.asList("u1", "u2"), otherZone.getId()).isEmpty());
+    }
+
     @Test
     public void delete_zone_deletes_approvals() throws Exception {
         String zoneId = IdentityZoneHolder.getUaaZone().getId();
@@ -4,10 +4,12 @@ import org.cloudfoundry.identity.uaa.oauth.KeyInfo;
 import org.cloudfoundry.identity.uaa.oauth.KeyInfoBuilder;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.springframework.security.jwt.codec.Codecs.b64UrlEncode;
 
 public class JwtHelperTest {
     private KeyInfo keyInfo;
@@ -31,4 +33,31 @@ public class JwtHelperTest {
         Jwt jwt = JwtHelper.encode("testJwtContent", keyInfo);
         assertThat(jwt.getHeader().getJku(), is("https://localhost/uaa/token_keys"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void decodedTokenVerifiesOverOriginalSegments() {
+        String token = JwtHelper.encode("{\"sub\":\"joel\"}", keyInfo).getEncoded();
+
+        Jwt jwt = JwtHelper.decode(token);
+        jwt.verifySignature(keyInfo.getVerifier());
+        assertEquals(token, jwt.getEncoded());
+        assertEquals("{\"sub\":\"joel\"}", jwt.getClaims());
+    }
+
+    @Test(expected = InvalidSignatureException.class)
+    public void tamperedClaimsFailVerification() {
+        String token = JwtHelper.encode("{\"sub\":\"joel\"}", keyInfo).getEncoded();
+        String[] segments = token.split("\\.");
+        String tampered = segments[0] + "." + new String(b64UrlEncode("{\"sub\":\"admin\"}")) + "." + segments[2];
+
+        JwtHelper.decode(tampered).verifySignature(keyInfo.getVerifier());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedClaimsAreRejectedOnDecode() {
+        String token = JwtHelper.encode("{\"sub\":\"joel\"}", keyInfo).getEncoded();
+        String[] segments = token.split("\\.");
+
+        JwtHelper.decode(segments[0] + ".eyJzdWIiOiJqb2VsIn0\\." + segments[2]);
+    }
+}
@@ -12,6 +12,7 @@
 *******************************************************************************/
 package org.cloudfoundry.identity.uaa.oauth.token;
 
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
 import org.cloudfoundry.identity.uaa.impl.config.LegacyTokenKey;
 import org.cloudfoundry.identity.uaa.oauth.KeyInfo;
 import org.cloudfoundry.identity.uaa.oauth.KeyInfoService;
@@ -23,6 +24,7 @@ import org.cloudfoundry.identity.uaa.zone.TokenPolicy;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 
 import java.util.Collections;
@@ -32,7 +34,13 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -156,7 +164,60 @@ public class KeyInfoServiceTests {
         assertEquals(keyInfoService.getActiveKey().verifierKey(), "testLegacyKey");
     }
 
-    private void configureDefaultZoneKeys(Map<String,String> keys) {
+    @Test
+    public void testKeysAreReusedUntilTokenPolicyChanges() {
+        String keyId = generator.generate();
+        configureDefaultZoneKeys(Collections.singletonMap(keyId, SIGNING_KEY));
+
+        KeyInfo key = keyInfoService.getKey(keyId);
+        assertSame(key, keyInfoService.getKey(keyId));
+        assertSame(key, keyInfoService.getActiveKey());
+
+        String otherKeyId = generator.generate();
+        configureDefaultZoneKeys(Collections.singletonMap(otherKeyId, "testkey"));
+
+        assertNull(keyInfoService.getKey(keyId));
+        assertNotNull(keyInfoService.getKey(otherKeyId));
+        assertNotSame(key, keyInfoService.getKey(otherKeyId));
+    }
+
+    @Test
+    public void testUnchangedTokenPolicyIsNotCopied() {
+        String keyId = generator.generate();
+        TokenPolicy tokenPolicy = configureDefaultZoneKeys(Collections.singletonMap(keyId, SIGNING_KEY));
+        TokenPolicy spy = spy(tokenPolicy);
+        IdentityZoneHolder.get().getConfig().setTokenPolicy(spy);
+
+        KeyInfo key = keyInfoService.getKey(keyId);
+        assertSame(key, keyInfoService.getKey(keyId));
+        verify(spy, times(1)).getKeys();
+    }
+
+    @Test
+    public void testKeysAreRebuiltWhenTokenPolicyKeysAreReplaced() {
+        String keyId = generator.generate();
+        TokenPolicy tokenPolicy = configureDefaultZoneKeys(Collections.singletonMap(keyId, SIGNING_KEY));
+        assertNotNull(keyInfoService.getKey(keyId));
+
+        String otherKeyId = generator.generate();
+        tokenPolicy.setKeys(Collections.singletonMap(otherKeyId, "testkey"));
+
+        assertNull(keyInfoService.getKey(keyId));
+        assertNotNull(keyInfoService.getKey(otherKeyId));
+    }
+
+    @Test
+    public void testKeysAreRebuiltAfterZoneDeletion() {
+        String keyId = generator.generate();
+        configureDefaultZoneKeys(Collections.singletonMap(keyId, SIGNING_KEY));
+
+        KeyInfo key = keyInfoService.getKey(keyId);
+        keyInfoService.onApplicationEvent(new EntityDeletedEvent<>(IdentityZoneHolder.get(), mock(Authentication.class)));
+
+        assertNotSame(key, keyInfoService.getKey(keyId));
+    }
+
+    private TokenPolicy configureDefaultZoneKeys(Map<String,String> keys) {
         IdentityZoneHolder.clear();
         IdentityZoneProvisioning provisioning = mock(IdentityZoneProvisioning.class);
         IdentityZoneHolder.setProvisioning(provisioning);
@@ -167,5 +228,6 @@ public class KeyInfoServiceTests {
         config.setTokenPolicy(tokenPolicy);
         zone.setConfig(config);
         when(provisioning.retrieve("uaa")).thenReturn(zone);
+        return tokenPolicy;
     }
 }
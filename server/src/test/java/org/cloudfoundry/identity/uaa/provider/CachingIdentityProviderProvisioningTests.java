@@ -0,0 +1,148 @@
+package org.cloudfoundry.identity.uaa.provider;
+
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityProviderModifiedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.security.core.Authentication;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.cloudfoundry.identity.uaa.constants.OriginKeys.LDAP;
+import static org.cloudfoundry.identity.uaa.constants.OriginKeys.OIDC10;
+import static org.cloudfoundry.identity.uaa.constants.OriginKeys.SAML;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingIdentityProviderProvisioningTests {
+
+    private IdentityProviderProvisioning delegate;
+    private CachingIdentityProviderProvisioning provisioning;
+    private IdentityProvider<LdapIdentityProviderDefinition> ldap;
+    private IdentityProvider<OIDCIdentityProviderDefinition> oidc;
+
+    @Before
+    public void setUp() {
+        ldap = new IdentityProvider<>();
+        ldap.setId("ldap-id").setOriginKey(LDAP).setIdentityZoneId("zone-id").setActive(false);
+        ldap.setConfig(new LdapIdentityProviderDefinition());
+        oidc = new IdentityProvider<>();
+        oidc.setId("oidc-id").setOriginKey("my-oidc").setIdentityZoneId("zone-id");
+        oidc.setConfig(new OIDCIdentityProviderDefinition());
+        delegate = mock(IdentityProviderProvisioning.class);
+        when(delegate.retrieveAll(false, "zone-id")).thenReturn(Arrays.asList(ldap, oidc));
+        provisioning = new CachingIdentityProviderProvisioning(delegate, 60, 100);
+    }
+
+    @Test
+    public void lookupsAreServedFromTheSnapshot() {
+        assertEquals("ldap-id", provisioning.retrieveByOriginIgnoreActiveFlag(LDAP, "zone-id").getId());
+        assertEquals("my-oidc", provisioning.retrieve("oidc-id", "zone-id").getOriginKey());
+        List<IdentityProvider> active = provisioning.retrieveActive("zone-id");
+        assertEquals(1, active.size());
+        assertEquals(OIDC10, active.get(0).getType());
+        assertEquals(2, provisioning.retrieveAll(false, "zone-id").size());
+        verify(delegate, times(1)).retrieveAll(false, "zone-id");
+    }
+
+    @Test(expected = EmptyResultDataAccessException.class)
+    public void inactiveProvidersAreNotFoundByOrigin() {
+        provisioning.retrieveByOrigin(LDAP, "zone-id");
+    }
+
+    @Test
+    public void oidcDefinitionsAreCopied() {
+        IdentityProvider<OIDCIdentityProviderDefinition> provider = provisioning.retrieveByOrigin("my-oidc", "zone-id");
+        assertNotSame(oidc.getConfig(), provider.getConfig());
+        provider.getConfig().setIssuer("http://issuer");
+        assertNull(oidc.getConfig().getIssuer());
+    }
+
+    @Test
+    public void definitionsAreNotParsedOnSnapshotHits() {
+        IdentityProvider<LdapIdentityProviderDefinition> first = provisioning.retrieve("ldap-id", "zone-id");
+        IdentityProvider<LdapIdentityProviderDefinition> second = provisioning.retrieveByOriginIgnoreActiveFlag(LDAP, "zone-id");
+        assertNotSame(first, second);
+        assertSame(ldap.getConfig(), first.getConfig());
+        assertSame(ldap.getConfig(), second.getConfig());
+        verify(delegate, times(1)).retrieveAll(false, "zone-id");
+    }
+
+    @Test
+    public void samlDefinitionsKeepTheirOriginAndZone() {
+        IdentityProvider<SamlIdentityProviderDefinition> saml = new IdentityProvider<>();
+        saml.setConfig(new SamlIdentityProviderDefinition().setMetaDataLocation("http://metadata"));
+        saml.setId("saml-id").setOriginKey("my-saml").setIdentityZoneId("zone-id");
+        when(delegate.retrieveAll(false, "zone-id")).thenReturn(Arrays.asList(ldap, oidc, saml));
+
+        IdentityProvider<SamlIdentityProviderDefinition> provider = provisioning.retrieveByOrigin("my-saml", "zone-id");
+        assertSame(saml.getConfig(), provider.getConfig());
+        assertEquals(SAML, provider.getType());
+        assertEquals("my-saml", provider.getConfig().getIdpEntityAlias());
+        assertEquals("zone-id", provider.getConfig().getZoneId());
+        assertEquals("http://metadata", provider.getConfig().getMetaDataLocation());
+    }
+
+    @Test
+    public void zeroTtlDisablesCaching() {
+        provisioning = new CachingIdentityProviderProvisioning(delegate, 0, 100);
+        provisioning.retrieveAll(false, "zone-id");
+        provisioning.retrieveAll(false, "zone-id");
+        verify(delegate, times(2)).retrieveAll(false, "zone-id");
+    }
+
+    @Test
+    public void providerModificationInvalidatesTheZone() {
+        provisioning.retrieveActive("zone-id");
+        provisioning.onApplicationEvent(IdentityProviderModifiedEvent.identityProviderModified(oidc));
+        assertEquals(0, provisioning.size());
+    }
+
+    @Test
+    public void providerDeletionInvalidatesTheZone() {
+        provisioning.retrieveActive("zone-id");
+        provisioning.onApplicationEvent(new EntityDeletedEvent<>(oidc, mock(Authentication.class)));
+        assertEquals(0, provisioning.size());
+    }
+
+    @Test
+    public void updatesInvalidateTheZone() {
+        provisioning.retrieveActive("zone-id");
+        provisioning.update(oidc, "zone-id");
+        verify(delegate).update(oidc, "zone-id");
+        assertEquals(0, provisioning.size());
+    }
+
+    @Test
+    public void pollingRebuildsTheSnapshotWhenProvidersChange() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        TimeService timeService = mock(TimeService.class);
+        when(jdbcTemplate.queryForObject(anyString(), any(RowMapper.class), eq("zone-id"))).thenReturn("2:1000", "2:1000", "2:2000", "2:2000");
+        when(timeService.getCurrentTimeMillis()).thenReturn(10000L, 20000L, 30000L, 40000L);
+        provisioning.setJdbcTemplate(jdbcTemplate);
+        provisioning.setTimeService(timeService);
+        provisioning.setPollIntervalSeconds(5);
+
+        provisioning.retrieveActive("zone-id");
+        provisioning.retrieveActive("zone-id");
+        verify(delegate, times(1)).retrieveAll(false, "zone-id");
+
+        assertFalse(provisioning.retrieveActive("zone-id").isEmpty());
+        verify(delegate, times(2)).retrieveAll(false, "zone-id");
+    }
+}
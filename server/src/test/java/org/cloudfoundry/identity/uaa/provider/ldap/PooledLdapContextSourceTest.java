@@ -0,0 +1,105 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2018] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.provider.ldap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PooledLdapContextSourceTest {
+
+    private BaseLdapPathContextSource delegate;
+    private PooledLdapContextSource contextSource;
+
+    @Before
+    public void setUp() {
+        delegate = mock(BaseLdapPathContextSource.class);
+        contextSource = new PooledLdapContextSource(delegate, 1, 60, 200);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        contextSource.destroy();
+    }
+
+    @Test
+    public void userBindsSkipThePool() {
+        DirContext userContext = mock(DirContext.class);
+        when(delegate.getContext("uid=marissa,ou=Users,dc=test,dc=com", "koala")).thenReturn(userContext);
+
+        assertSame(userContext, contextSource.getContext("uid=marissa,ou=Users,dc=test,dc=com", "koala"));
+        assertSame(userContext, contextSource.getContext("uid=marissa,ou=Users,dc=test,dc=com", "koala"));
+
+        verify(delegate, times(2)).getContext("uid=marissa,ou=Users,dc=test,dc=com", "koala");
+        verify(delegate, never()).getReadOnlyContext();
+        verify(delegate, never()).getReadWriteContext();
+    }
+
+    @Test(timeout = 10000)
+    public void exhaustedPoolFailsAfterMaxWait() throws Exception {
+        DirContext pooledContext = mock(DirContext.class);
+        NamingEnumeration<SearchResult> results = mock(NamingEnumeration.class);
+        when(results.hasMore()).thenReturn(true);
+        when(pooledContext.search(anyString(), anyString(), any(SearchControls.class))).thenReturn(results);
+        when(delegate.getReadOnlyContext()).thenReturn(pooledContext);
+
+        DirContext borrowed = contextSource.getReadOnlyContext();
+        long start = System.currentTimeMillis();
+        try {
+            contextSource.getReadOnlyContext();
+            fail("Expected the exhausted pool to give up waiting");
+        } catch (RuntimeException expected) {
+            assertTrue(System.currentTimeMillis() - start >= 150);
+        } finally {
+            borrowed.close();
+        }
+        assertEquals(200, contextSource.getMaxWaitMillis());
+    }
+
+    @Test
+    public void maxWaitIsAlwaysBounded() throws Exception {
+        PooledLdapContextSource unbounded = new PooledLdapContextSource(delegate, 1, 60, -1);
+        try {
+            assertEquals(1, unbounded.getMaxWaitMillis());
+        } finally {
+            unbounded.destroy();
+        }
+    }
+
+    @Test
+    public void baseLdapPathIsTakenFromTheDelegate() {
+        when(delegate.getBaseLdapPathAsString()).thenReturn("dc=test,dc=com");
+        assertEquals("dc=test,dc=com", contextSource.getBaseLdapPathAsString());
+    }
+}
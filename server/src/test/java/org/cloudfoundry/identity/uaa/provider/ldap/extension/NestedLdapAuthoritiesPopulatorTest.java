@@ -0,0 +1,132 @@
+package org.cloudfoundry.identity.uaa.provider.ldap.extension;
+
+import org.cloudfoundry.identity.uaa.provider.ldap.LdapGroupSearchMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NestedLdapAuthoritiesPopulatorTest {
+
+    private static final String SEARCH_BASE = "ou=groups,dc=test,dc=com";
+    private static final String SEARCH_FILTER = "member={0}";
+
+    private SpringSecurityLdapTemplate template;
+    private NestedLdapAuthoritiesPopulator populator;
+    private LdapGroupSearchMetrics metrics;
+    private Map<String, Set<Map<String, String[]>>> parents;
+
+    @Before
+    public void setUp() {
+        //both users are in developers and testers, which are both in engineering
+        parents = new HashMap<>();
+        parents.put("uid=marissa", groups("developers", "testers"));
+        parents.put("uid=paul", groups("developers", "testers"));
+        parents.put("cn=developers", groups("engineering"));
+        parents.put("cn=testers", groups("engineering"));
+        parents.put("cn=engineering", Collections.emptySet());
+
+        template = mock(SpringSecurityLdapTemplate.class);
+        when(template.searchForMultipleAttributeValues(eq(SEARCH_BASE), eq(SEARCH_FILTER), any(Object[].class), any(String[].class)))
+            .thenAnswer(invocation -> new HashSet<>(parents.get((String) invocation.<Object[]>getArgument(2)[0])));
+
+        populator = new NestedLdapAuthoritiesPopulator(mock(ContextSource.class), SEARCH_BASE) {
+            @Override
+            protected SpringSecurityLdapTemplate getLdapTemplate() {
+                return template;
+            }
+        };
+        populator.setGroupSearchFilter(SEARCH_FILTER);
+        populator.setGroupRoleAttribute("cn");
+        populator.setRolePrefix("");
+        populator.setConvertToUpperCase(false);
+        populator.setAttributeNames(new HashSet<>(Arrays.asList("cn")));
+        metrics = new LdapGroupSearchMetrics();
+        populator.setMetrics(metrics);
+    }
+
+    @After
+    public void tearDown() {
+        populator.destroy();
+    }
+
+    @Test
+    public void concurrentSearchResolvesNestedGroups() {
+        populator.setMaxConcurrentSearches(4);
+        assertEquals(roles("developers", "testers", "engineering"), getRoles("uid=marissa", "marissa"));
+        verify(template, times(1)).searchForMultipleAttributeValues(eq(SEARCH_BASE), eq(SEARCH_FILTER), eq(new Object[] {"cn=engineering", "engineering"}), any(String[].class));
+        assertEquals(4, metrics.getSearchCount());
+        assertEquals(1, metrics.getLoginCount());
+    }
+
+    @Test
+    public void sequentialSearchResolvesNestedGroups() {
+        assertEquals(roles("developers", "testers", "engineering"), getRoles("uid=marissa", "marissa"));
+        assertEquals(1, metrics.getLoginCount());
+    }
+
+    @Test
+    public void parentGroupsAreSharedBetweenUsers() {
+        populator.setMaxConcurrentSearches(4);
+        populator.setParentGroupCacheTtl(60);
+        getRoles("uid=marissa", "marissa");
+        assertEquals(roles("developers", "testers", "engineering"), getRoles("uid=paul", "paul"));
+
+        verify(template, times(1)).searchForMultipleAttributeValues(eq(SEARCH_BASE), eq(SEARCH_FILTER), eq(new Object[] {"cn=developers", "developers"}), any(String[].class));
+        assertEquals(5, metrics.getSearchCount());
+        assertEquals(3, metrics.getCacheHitCount());
+        assertEquals(1, metrics.getLastLoginSearchCount());
+    }
+
+    @Test
+    public void groupRoleAttributeIsSearchedWithoutChangingTheAttributeNames() {
+        Set<String> attributeNames = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("cn")));
+        populator.setAttributeNames(attributeNames);
+        populator.setGroupRoleAttribute("description");
+        populator.setMaxConcurrentSearches(4);
+
+        getRoles("uid=marissa", "marissa");
+
+        verify(template, times(4)).searchForMultipleAttributeValues(eq(SEARCH_BASE), eq(SEARCH_FILTER), any(Object[].class), eq(new String[] {"cn", "description"}));
+        assertEquals(Collections.singleton("cn"), populator.getAttributeNames());
+    }
+
+    private Set<String> getRoles(String userDn, String username) {
+        return populator.getGroupMembershipRoles(userDn, username)
+            .stream()
+            .map(GrantedAuthority::getAuthority)
+            .collect(Collectors.toSet());
+    }
+
+    private static Set<String> roles(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    private static Set<Map<String, String[]>> groups(String... names) {
+        Set<Map<String, String[]>> result = new HashSet<>();
+        for (String name : names) {
+            Map<String, String[]> record = new HashMap<>();
+            record.put(SpringSecurityLdapTemplate.DN_KEY, new String[] {"cn=" + name});
+            record.put("cn", new String[] {name});
+            result.add(record);
+        }
+        return result;
+    }
+}
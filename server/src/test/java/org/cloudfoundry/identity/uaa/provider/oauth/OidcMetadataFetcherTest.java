@@ -3,18 +3,23 @@ package org.cloudfoundry.identity.uaa.provider.oauth;
 import org.cloudfoundry.identity.uaa.cache.UrlContentCache;
 import org.cloudfoundry.identity.uaa.provider.OIDCIdentityProviderDefinition;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.util.TimeService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.mockito.Answers;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URL;
+import java.time.Duration;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -106,6 +111,97 @@ class OidcMetadataFetcherTest {
         }
     }
 
+    @Nested
+    class WithBackgroundRefresh {
+
+        private TimeService timeService;
+        private byte[] metadataContent;
+
+        @BeforeEach
+        public void setup() throws MalformedURLException {
+            definition.setDiscoveryUrl(new URL("http://discovery.url"));
+            OidcMetadata oidcMetadata = new OidcMetadata();
+            oidcMetadata.setAuthorizationEndpoint(new URL("http://authz.endpoint"));
+            oidcMetadata.setIssuer("metadataissuer");
+            metadataContent = JsonUtils.writeValueAsBytes(oidcMetadata);
+            when(restTemplate.getForObject(any(URI.class), eq(byte[].class))).thenReturn(metadataContent);
+
+            timeService = mock(TimeService.class);
+            when(timeService.getCurrentTimeMillis()).thenReturn(1000L);
+            metadataDiscoverer.setTimeService(timeService);
+            metadataDiscoverer.setRefreshExecutor(Runnable::run);
+            metadataDiscoverer.setRefreshInterval(Duration.ofSeconds(60));
+        }
+
+        @Test
+        public void shouldServeLoadedMetadataUntilItIsRefreshed() throws Exception {
+            metadataDiscoverer.fetchMetadataAndUpdateDefinition(definition);
+            OIDCIdentityProviderDefinition other = new OIDCIdentityProviderDefinition();
+            other.setDiscoveryUrl(definition.getDiscoveryUrl());
+            metadataDiscoverer.fetchMetadataAndUpdateDefinition(other);
+            assertThat(other.getIssuer(), is("metadataissuer"));
+            verify(restTemplate, times(1)).getForObject(any(URI.class), eq(byte[].class));
+            assertThat(definition.getAuthUrl().toString(), is("http://authz.endpoint"));
+
+            when(timeService.getCurrentTimeMillis()).thenReturn(61000L);
+            metadataDiscoverer.fetchMetadataAndUpdateDefinition(definition);
+            verify(restTemplate, times(2)).getForObject(any(URI.class), eq(byte[].class));
+            verifyZeroInteractions(urlContentCache);
+        }
+
+        @Test
+        public void shouldNotWaitForMetadataThatIsNotLoaded() throws Exception {
+            assertThrows(OidcMetadataFetchingException.class, () -> metadataDiscoverer.updateDefinitionFromLoadedMetadata(definition));
+            assertThat(definition.getAuthUrl(), nullValue());
+
+            metadataDiscoverer.updateDefinitionFromLoadedMetadata(definition);
+            assertThat(definition.getIssuer(), is("metadataissuer"));
+            verify(restTemplate, times(1)).getForObject(any(URI.class), eq(byte[].class));
+        }
+
+        @Test
+        public void shouldPreloadMetadata() throws Exception {
+            metadataDiscoverer.preload(definition);
+            metadataDiscoverer.preload(definition);
+            verify(restTemplate, times(1)).getForObject(any(URI.class), eq(byte[].class));
+
+            metadataDiscoverer.updateDefinitionFromLoadedMetadata(definition);
+            assertThat(definition.getIssuer(), is("metadataissuer"));
+            verify(restTemplate, times(1)).getForObject(any(URI.class), eq(byte[].class));
+        }
+
+        @Test
+        public void shouldNotRetryFailedFetchBeforeTheBackoff() throws Exception {
+            metadataDiscoverer.setRetryBackoff(Duration.ofSeconds(30));
+            when(restTemplate.getForObject(any(URI.class), eq(byte[].class)))
+                .thenThrow(new RestClientException("unavailable"))
+                .thenReturn(metadataContent);
+
+            assertThrows(OidcMetadataNotLoadedException.class, () -> metadataDiscoverer.updateDefinitionFromLoadedMetadata(definition));
+            assertThrows(OidcMetadataNotLoadedException.class, () -> metadataDiscoverer.updateDefinitionFromLoadedMetadata(definition));
+            metadataDiscoverer.preload(definition);
+            verify(restTemplate, times(1)).getForObject(any(URI.class), eq(byte[].class));
+
+            when(timeService.getCurrentTimeMillis()).thenReturn(31000L);
+            assertThrows(OidcMetadataNotLoadedException.class, () -> metadataDiscoverer.updateDefinitionFromLoadedMetadata(definition));
+            verify(restTemplate, times(2)).getForObject(any(URI.class), eq(byte[].class));
+            metadataDiscoverer.updateDefinitionFromLoadedMetadata(definition);
+            assertThat(definition.getIssuer(), is("metadataissuer"));
+        }
+
+        @Test
+        public void shouldNotRefreshStaleMetadataBeforeTheBackoff() throws Exception {
+            metadataDiscoverer.preload(definition);
+            when(restTemplate.getForObject(any(URI.class), eq(byte[].class))).thenThrow(new RestClientException("unavailable"));
+
+            when(timeService.getCurrentTimeMillis()).thenReturn(61000L);
+            metadataDiscoverer.updateDefinitionFromLoadedMetadata(definition);
+            metadataDiscoverer.updateDefinitionFromLoadedMetadata(definition);
+            assertThat(definition.getIssuer(), is("metadataissuer"));
+            verify(restTemplate, times(2)).getForObject(any(URI.class), eq(byte[].class));
+        }
+    }
+
     @Nested
     class WithoutDiscoveryUrl {
         @BeforeEach
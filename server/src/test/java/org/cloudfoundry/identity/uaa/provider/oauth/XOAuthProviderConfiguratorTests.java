@@ -18,6 +18,8 @@ package org.cloudfoundry.identity.uaa.provider.oauth;
 import org.cloudfoundry.identity.uaa.provider.*;
 import org.cloudfoundry.identity.uaa.util.UaaUrlUtils;
 import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneProvisioning;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityProviderModifiedEvent;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -26,6 +28,8 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -304,4 +308,45 @@ public class XOAuthProviderConfiguratorTests {
         assertEquals(oauthProvider.getName(), providers.get(0).getName());
         verify(configurator, times(1)).overlay(eq(config));
     }
+
+    @Test
+    public void loginPageExcludesOidcProviderWithoutLoadedMetadata() throws OidcMetadataFetchingException {
+        doThrow(new OidcMetadataNotLoadedException("not loaded")).when(oidcMetadataFetcher)
+                .updateDefinitionFromLoadedMetadata(any(OIDCIdentityProviderDefinition.class));
+
+        List<IdentityProvider> providers = configurator.retrieveAllWithLoadedMetadata(true, IdentityZone.getUaa().getId());
+        assertEquals(1, providers.size());
+        assertEquals(oauthProvider.getName(), providers.get(0).getName());
+        verify(configurator, never()).overlay(any(OIDCIdentityProviderDefinition.class));
+        verify(oidcMetadataFetcher, never()).fetchMetadataAndUpdateDefinition(any(OIDCIdentityProviderDefinition.class));
+    }
+
+    @Test
+    public void preloadsDiscoveryMetadataAtStartup() {
+        IdentityZoneProvisioning zoneProvisioning = mock(IdentityZoneProvisioning.class);
+        when(zoneProvisioning.retrieveAll()).thenReturn(Arrays.asList(IdentityZone.getUaa()));
+        when(oidcMetadataFetcher.isBackgroundRefreshEnabled()).thenReturn(true);
+        configurator.setIdentityZoneProvisioning(zoneProvisioning);
+
+        configurator.onApplicationEvent(new ContextRefreshedEvent(mock(ApplicationContext.class)));
+        verify(oidcMetadataFetcher, times(1)).preload(config);
+        verify(oidcMetadataFetcher, times(1)).preload(any(OIDCIdentityProviderDefinition.class));
+    }
+
+    @Test
+    public void preloadsDiscoveryMetadataOfModifiedProvider() {
+        when(oidcMetadataFetcher.isBackgroundRefreshEnabled()).thenReturn(true);
+        configurator.onApplicationEvent(IdentityProviderModifiedEvent.identityProviderModified(oidcProvider));
+        verify(oidcMetadataFetcher, times(1)).preload(config);
+    }
+
+    @Test
+    public void doesNotPreloadWithoutBackgroundRefresh() {
+        IdentityZoneProvisioning zoneProvisioning = mock(IdentityZoneProvisioning.class);
+        configurator.setIdentityZoneProvisioning(zoneProvisioning);
+        configurator.onApplicationEvent(new ContextRefreshedEvent(mock(ApplicationContext.class)));
+        configurator.onApplicationEvent(IdentityProviderModifiedEvent.identityProviderModified(oidcProvider));
+        verifyZeroInteractions(zoneProvisioning);
+        verify(oidcMetadataFetcher, never()).preload(any(OIDCIdentityProviderDefinition.class));
+    }
 }
@@ -0,0 +1,120 @@
+package org.cloudfoundry.identity.uaa.provider.oauth;
+
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class XOAuthTokenKeyCacheTests {
+
+    private static final String KEYS = "{\"keys\":[{\"kty\":\"MAC\",\"kid\":\"key-1\",\"value\":\"secret\"}]}";
+
+    private TimeService timeService;
+    private XOAuthTokenKeyCache cache;
+    private AtomicInteger fetches;
+    private String cacheControl;
+    private Supplier<ResponseEntity<String>> fetcher;
+
+    @Before
+    public void setUp() {
+        timeService = mock(TimeService.class);
+        when(timeService.getCurrentTimeMillis()).thenReturn(0L);
+        cache = new XOAuthTokenKeyCache(Duration.ofMinutes(10), timeService, 100);
+        cache.setRefreshExecutor(Runnable::run);
+        fetches = new AtomicInteger();
+        fetcher = () -> {
+            fetches.incrementAndGet();
+            HttpHeaders headers = new HttpHeaders();
+            if (cacheControl != null) {
+                headers.setCacheControl(cacheControl);
+            }
+            return new ResponseEntity<>(KEYS, headers, HttpStatus.OK);
+        };
+    }
+
+    @Test
+    public void verifierIsCached() {
+        assertNotNull(cache.getVerifier("key", "key-1", fetcher));
+        assertSame(cache.getVerifier("key", "key-1", fetcher), cache.getVerifier("key", null, fetcher));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void expiredKeysAreFetchedAgain() {
+        cache.getVerifier("key", "key-1", fetcher);
+        when(timeService.getCurrentTimeMillis()).thenReturn(Duration.ofMinutes(11).toMillis());
+        cache.getVerifier("key", "key-1", fetcher);
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void keysAreRefreshedBeforeExpiry() {
+        cache.getVerifier("key", "key-1", fetcher);
+        when(timeService.getCurrentTimeMillis()).thenReturn(Duration.ofMinutes(9).toMillis());
+        cache.getVerifier("key", "key-1", fetcher);
+        cache.getVerifier("key", "key-1", fetcher);
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void maxAgeIsHonored() {
+        cacheControl = "public, max-age=60";
+        cache.getVerifier("key", "key-1", fetcher);
+        when(timeService.getCurrentTimeMillis()).thenReturn(Duration.ofSeconds(61).toMillis());
+        cache.getVerifier("key", "key-1", fetcher);
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void noStoreIsNotCached() {
+        cacheControl = "no-store";
+        cache.getVerifier("key", "key-1", fetcher);
+        cache.getVerifier("key", "key-1", fetcher);
+        assertEquals(2, fetches.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void unknownKeyIdIsRefetchedOnce() {
+        cache.getVerifier("key", "key-1", fetcher);
+        cache.getVerifier("key", "key-2", fetcher);
+        assertEquals(1, fetches.get());
+
+        when(timeService.getCurrentTimeMillis()).thenReturn(Duration.ofSeconds(31).toMillis());
+        cache.getVerifier("key", "key-2", fetcher);
+        cache.getVerifier("key", "key-2", fetcher);
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void destroyStopsTheBackgroundRefresh() {
+        cache = new XOAuthTokenKeyCache(Duration.ofMinutes(10), timeService, 100);
+        cache.getVerifier("key", "key-1", fetcher);
+        cache.destroy();
+
+        when(timeService.getCurrentTimeMillis()).thenReturn(Duration.ofMinutes(9).toMillis());
+        assertNotNull(cache.getVerifier("key", "key-1", fetcher));
+        assertEquals(1, fetches.get());
+
+        when(timeService.getCurrentTimeMillis()).thenReturn(Duration.ofMinutes(11).toMillis());
+        cache.getVerifier("key", "key-1", fetcher);
+        assertEquals(2, fetches.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyKeySetIsRejected() {
+        cache.getVerifier("key", null, () -> new ResponseEntity<>("{\"keys\":[]}", HttpStatus.OK));
+    }
+}
@@ -0,0 +1,109 @@
+package org.cloudfoundry.identity.uaa.provider.saml;
+
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
+import org.cloudfoundry.identity.uaa.provider.IdentityProviderProvisioning;
+import org.cloudfoundry.identity.uaa.provider.SamlIdentityProviderDefinition;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.xml.parse.BasicParserPool;
+import org.springframework.security.core.Authentication;
+
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NonSnarlMetadataManagerTests {
+
+    private static final String ENTITY_ID = "http://www.okta.com/cached-entity";
+
+    private SamlIdentityProviderConfigurator configurator;
+    private IdentityProviderProvisioning provisioning;
+    private NonSnarlMetadataManager manager;
+    private IdentityProvider provider;
+
+    @BeforeClass
+    public static void initializeOpenSAML() throws Exception {
+        if (!org.apache.xml.security.Init.isInitialized()) {
+            DefaultBootstrap.bootstrap();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        IdentityZoneHolder.clear();
+        SamlIdentityProviderDefinition definition = new SamlIdentityProviderDefinition()
+            .setMetaDataLocation(String.format(BootstrapSamlIdentityProviderDataTests.xmlWithoutID, ENTITY_ID))
+            .setIdpEntityAlias("cached-alias")
+            .setNameID("sample-nameID")
+            .setMetadataTrustCheck(false)
+            .setZoneId(IdentityZone.getUaa().getId());
+        provider = new IdentityProvider<SamlIdentityProviderDefinition>();
+        provider.setId("idp-id");
+        provider.setType(OriginKeys.SAML);
+        provider.setOriginKey("cached-alias");
+        provider.setConfig(definition);
+        provider.setLastModified(new Date(1000));
+
+        provisioning = mock(IdentityProviderProvisioning.class);
+        when(provisioning.retrieveActive(IdentityZone.getUaa().getId())).thenReturn(Collections.singletonList(provider));
+        configurator = spy(new SamlIdentityProviderConfigurator());
+        configurator.setParserPool(new BasicParserPool());
+        configurator.setIdentityProviderProvisioning(provisioning);
+        manager = new NonSnarlMetadataManager(configurator);
+    }
+
+    @After
+    public void clear() {
+        IdentityZoneHolder.clear();
+    }
+
+    @Test
+    public void initializedProvidersAreReused() throws Exception {
+        assertEquals(Collections.singleton(ENTITY_ID), manager.getIDPEntityNames());
+        assertEquals(Collections.singleton(ENTITY_ID), manager.getIDPEntityNames());
+        assertNotNull(manager.getEntityDescriptor(ENTITY_ID));
+
+        verify(configurator, times(1)).getExtendedMetadataDelegate(any());
+    }
+
+    @Test
+    public void modifiedProvidersAreReinitialized() throws Exception {
+        manager.getIDPEntityNames();
+        provider.setLastModified(new Date(2000));
+        manager.getIDPEntityNames();
+
+        verify(configurator, times(2)).getExtendedMetadataDelegate(any());
+    }
+
+    @Test
+    public void removedProvidersDropOut() throws Exception {
+        manager.getIDPEntityNames();
+        when(provisioning.retrieveActive(IdentityZone.getUaa().getId())).thenReturn(Collections.emptyList());
+
+        assertEquals(Collections.emptySet(), manager.getIDPEntityNames());
+    }
+
+    @Test
+    public void zoneDeletionDropsCachedProviders() throws Exception {
+        manager.getIDPEntityNames();
+        manager.onApplicationEvent(new EntityDeletedEvent<>(IdentityZone.getUaa(), mock(Authentication.class)));
+        manager.getIDPEntityNames();
+
+        verify(configurator, times(2)).getExtendedMetadataDelegate(any());
+    }
+}
@@ -2,6 +2,7 @@ package org.cloudfoundry.identity.uaa.resources.jdbc;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class JdbcSqlAdapterTests {
@@ -24,4 +25,29 @@ public class JdbcSqlAdapterTests {
         generatedSql = sqlServerLimitAdapter.getLimitSql(originSql, 1, 1);
         assertTrue(generatedSql.equalsIgnoreCase("select * from table1 ORDER BY 1 OFFSET 1 ROWS FETCH NEXT 1 ROWS ONLY;"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDefaultKeyset() {
+        LimitSqlAdapter adapter = new HsqlDbLimitSqlAdapter();
+        assertEquals("(created, id) > (:s, :i)", adapter.getKeysetSql("created", "id", true, "s", "i"));
+        assertEquals("(created, id) < (:s, :i)", adapter.getKeysetSql("created", "id", false, "s", "i"));
+        assertEquals("id > :i", adapter.getKeysetSql("id", "id", true, "s", "i"));
+    }
+
+    @Test
+    public void testSQLServerKeyset() {
+        assertExpandedKeyset(new SQLServerLimitSqlAdapter());
+    }
+
+    @Test
+    public void testOracleKeyset() {
+        assertExpandedKeyset(new OracleLimitSqlAdapter());
+    }
+
+    private void assertExpandedKeyset(LimitSqlAdapter adapter) {
+        assertEquals("(created > :s or (created = :s and id > :i))", adapter.getKeysetSql("created", "id", true, "s", "i"));
+        assertEquals("(created < :s or (created = :s and id < :i))", adapter.getKeysetSql("created", "id", false, "s", "i"));
+        assertEquals("id > :i", adapter.getKeysetSql("id", "id", true, "s", "i"));
+        assertEquals("id < :i", adapter.getKeysetSql("id", "id", false, "s", "i"));
+    }
+}
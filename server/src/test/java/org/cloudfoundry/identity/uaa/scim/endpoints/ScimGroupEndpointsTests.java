@@ -16,6 +16,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.provider.JdbcIdentityProviderProvisioning;
+import org.cloudfoundry.identity.uaa.resources.CursorPage;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapterFactory;
@@ -71,6 +72,7 @@ import static java.util.Collections.emptyList;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
@@ -232,6 +234,43 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
         validateSearchResults(endpoints.listGroups("id,displayName", "id pr", "created", "ascending", 1, 100), 11);
     }
 
+    @Test
+    public void testListGroupsWithCursor() throws Exception {
+        for (String attributes : Arrays.asList(null, "id,displayName")) {
+            for (String sortBy : Arrays.asList("created", "displayName", "id")) {
+                Set<String> ids = new HashSet<>();
+                String cursor = "";
+                int pages = 0;
+                do {
+                    SearchResults<?> results = endpoints.listGroups(attributes, "id pr", sortBy, "ascending", 1, 5, cursor, pages == 0);
+                    assertEquals(pages == 0 ? 11 : CursorPage.TOTAL_NOT_COUNTED, results.getTotalResults());
+                    for (Object resource : results.getResources()) {
+                        ids.add(resource instanceof ScimGroup ? ((ScimGroup) resource).getId() : (String) ((Map<?, ?>) resource).get("id"));
+                    }
+                    cursor = results.getNextCursor();
+                    pages++;
+                } while (cursor != null);
+
+                assertEquals(3, pages);
+                assertEquals(11, ids.size());
+            }
+        }
+    }
+
+    @Test
+    public void testListGroupsWithCursorOnLastPage() throws Exception {
+        SearchResults<?> results = endpoints.listGroups(null, "id pr", "created", "ascending", 1, 20, "", true);
+        validateSearchResults(results, 11);
+        assertNull(results.getNextCursor());
+    }
+
+    @Test
+    public void testListGroupsWithInvalidCursor() throws Exception {
+        expectedEx.expect(ScimException.class);
+        expectedEx.expectMessage("Invalid cursor");
+        endpoints.listGroups(null, "id pr", "created", "ascending", 1, 5, "not-a-cursor", true);
+    }
+
     @Test
     public void testListGroupsWithAttributesWithoutMembersDoesNotQueryMembers() throws Exception {
         ScimGroupMembershipManager memberManager = mock(ScimGroupMembershipManager.class);
@@ -25,6 +25,7 @@ import org.cloudfoundry.identity.uaa.provider.JdbcIdentityProviderProvisioning;
 import org.cloudfoundry.identity.uaa.provider.LdapIdentityProviderDefinition;
 import org.cloudfoundry.identity.uaa.provider.OIDCIdentityProviderDefinition;
 import org.cloudfoundry.identity.uaa.provider.UaaIdentityProviderDefinition;
+import org.cloudfoundry.identity.uaa.resources.CursorPage;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
 import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
@@ -105,6 +106,8 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
@@ -637,8 +640,10 @@ public class ScimUserEndpointsTests {
         ScimUserEndpoints spy = spy(endpoints);
         SearchResults<?> results = spy.findUsers("id,groups,approvals", "id pr", null, "ascending", 1, 100);
         assertEquals(2, results.getTotalResults());
-        verify(spy, times(2)).syncGroups(any(ScimUser.class));
-        verify(spy, times(2)).syncApprovals(any(ScimUser.class));
+        verify(spy, times(1)).syncGroups(anyList());
+        verify(spy, times(1)).syncApprovals(anyList());
+        verify(spy, never()).syncGroups(any(ScimUser.class));
+        verify(spy, never()).syncApprovals(any(ScimUser.class));
     }
 
     @Test
@@ -648,6 +653,41 @@ public class ScimUserEndpointsTests {
         assertEquals(1, results.getResources().size());
     }
 
+    @Test
+    public void testFindPagesOfIdsWithCursor() {
+        SearchResults<?> results = endpoints.findUsers("id", "id pr", null, "ascending", 1, 1, "", true);
+        assertEquals(2, results.getTotalResults());
+        assertEquals(1, results.getResources().size());
+        assertNotNull(results.getNextCursor());
+
+        results = endpoints.findUsers("id", "id pr", null, "ascending", 1, 1, results.getNextCursor(), false);
+        assertEquals(CursorPage.TOTAL_NOT_COUNTED, results.getTotalResults());
+        assertEquals(1, results.getResources().size());
+        assertNull(results.getNextCursor());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFindUserAttributesWithCursor() {
+        SearchResults<?> results = endpoints.findUsers("id,userName,active", "id pr", "userName", "ascending", 1, 1, "", true);
+        assertEquals(2, results.getTotalResults());
+        Map<String, Object> first = (Map<String, Object>) results.getResources().get(0);
+        assertEquals(new HashSet<>(asList("id", "userName", "active")), first.keySet());
+        assertEquals("jdsa", first.get("userName"));
+        assertEquals(Boolean.TRUE, first.get("active"));
+
+        results = endpoints.findUsers("id,userName,active", "id pr", "userName", "ascending", 1, 1, results.getNextCursor(), true);
+        assertEquals("olds", ((Map<String, Object>) results.getResources().get(0)).get("userName"));
+        assertNull(results.getNextCursor());
+    }
+
+    @Test
+    public void testFindUsersWithInvalidCursor() {
+        expected.expect(ScimException.class);
+        expected.expectMessage("Invalid cursor");
+        endpoints.findUsers("id", "id pr", null, "ascending", 1, 1, "not-a-cursor", true);
+    }
+
     @Test
     public void testFindMultiplePagesOfIds() {
         dao.setPageSize(1);
@@ -733,7 +773,7 @@ public class ScimUserEndpointsTests {
         endpoints.setScimGroupMembershipManager(mockgroupMembershipManager);
 
         endpoints.findUsers("", "id pr", null, "ascending", 1, 100);
-        verify(mockgroupMembershipManager, atLeastOnce()).getGroupsWithMember(anyString(), anyBoolean(), eq(IdentityZoneHolder.get().getId()));
+        verify(mockgroupMembershipManager, times(1)).getGroupsWithUsers(anyCollection(), eq(IdentityZoneHolder.get().getId()));
 
         endpoints.setScimGroupMembershipManager(mm);
     }
@@ -744,7 +784,7 @@ public class ScimUserEndpointsTests {
         endpoints.setScimGroupMembershipManager(mockgroupMembershipManager);
 
         endpoints.findUsers("groups", "id pr", null, "ascending", 1, 100);
-        verify(mockgroupMembershipManager, atLeastOnce()).getGroupsWithMember(anyString(), anyBoolean(), eq(IdentityZoneHolder.get().getId()));
+        verify(mockgroupMembershipManager, times(1)).getGroupsWithUsers(anyCollection(), eq(IdentityZoneHolder.get().getId()));
 
         endpoints.setScimGroupMembershipManager(mm);
     }
@@ -766,7 +806,7 @@ public class ScimUserEndpointsTests {
         endpoints.setApprovalStore(mockApprovalStore);
 
         endpoints.findUsers("", "id pr", null, "ascending", 1, 100);
-        verify(mockApprovalStore, atLeastOnce()).getApprovalsForUser(anyString(), eq(IdentityZoneHolder.get().getId()));
+        verify(mockApprovalStore, atLeastOnce()).getApprovalsForUsers(anyCollection(), eq(IdentityZoneHolder.get().getId()));
 
         endpoints.setApprovalStore(am);
     }
@@ -777,7 +817,7 @@ public class ScimUserEndpointsTests {
         endpoints.setApprovalStore(mockApprovalStore);
 
         endpoints.findUsers("approvals", "id pr", null, "ascending", 1, 100);
-        verify(mockApprovalStore, atLeastOnce()).getApprovalsForUser(anyString(), eq(IdentityZoneHolder.get().getId()));
+        verify(mockApprovalStore, atLeastOnce()).getApprovalsForUsers(anyCollection(), eq(IdentityZoneHolder.get().getId()));
 
         endpoints.setApprovalStore(am);
     }
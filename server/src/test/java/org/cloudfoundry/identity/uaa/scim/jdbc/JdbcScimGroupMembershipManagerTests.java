@@ -18,6 +18,7 @@ import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.scim.ScimGroup;
 import org.cloudfoundry.identity.uaa.scim.ScimGroupMember;
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
 import org.cloudfoundry.identity.uaa.scim.exception.InvalidScimResourceException;
 import org.cloudfoundry.identity.uaa.scim.exception.MemberNotFoundException;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
@@ -40,6 +41,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -407,6 +409,23 @@ public class JdbcScimGroupMembershipManagerTests extends JdbcTestBase {
         assertEquals(4, groups.size());
     }
 
+    @Test
+    public void canGetGroupsForSeveralUsers() {
+        addMembers();
+        addMember("g3", "g1", "GROUP", OriginKeys.UAA);
+        List<String> userIds = asList("m1", "m2", "m3");
+
+        Map<String, Set<ScimUser.Group>> groups = dao.getGroupsWithUsers(userIds, IdentityZoneHolder.get().getId());
+        for (String userId : userIds) {
+            Set<String> direct = groups.get(userId).stream().filter(g -> g.getType() == ScimUser.Group.Type.DIRECT).map(ScimUser.Group::getValue).collect(Collectors.toSet());
+            Set<String> all = groups.get(userId).stream().map(ScimUser.Group::getValue).collect(Collectors.toSet());
+            assertEquals(dao.getGroupsWithMember(userId, false, IdentityZoneHolder.get().getId()).stream().map(ScimGroup::getId).collect(Collectors.toSet()), direct);
+            assertEquals(dao.getGroupsWithMember(userId, true, IdentityZoneHolder.get().getId()).stream().map(ScimGroup::getId).collect(Collectors.toSet()), all);
+        }
+        assertEquals(1, groups.get("m1").size());
+        assertEquals(4, groups.get("m3").size());
+    }
+
     @Test
     public void canAddMember() throws Exception {
         validateCount(0);
@@ -626,4 +645,32 @@ public class JdbcScimGroupMembershipManagerTests extends JdbcTestBase {
         assertThat(groupIds, hasItem("g2"));
     }
 
+    @Test
+    public void canSyncExternalMember() {
+        addMember("g1", "m1", "USER", LDAP);
+        addMember("g2", "m1", "USER", LDAP);
+        addMember("g3", "m1", "USER", UAA);
+
+        Set<ScimGroup> groups = dao.syncExternalMember("m1", LDAP, asList("TEST2", "test3", "uaa.user", "unknown"), false, IdentityZoneHolder.get().getId());
+
+        List<String> groupIds = groups.stream().map(ScimGroup::getId).collect(Collectors.toList());
+        assertThat(groupIds.size(), equalTo(2));
+        assertThat(groupIds, hasItem("g2"));
+        assertThat(groupIds, hasItem("g3"));
+        validateUserGroups("m1", "test2", "test3");
+        assertEquals(UAA, dao.getMemberById("g3", "m1", IdentityZoneHolder.get().getId()).getOrigin());
+        assertEquals(LDAP, dao.getMemberById("g2", "m1", IdentityZoneHolder.get().getId()).getOrigin());
+    }
+
+    @Test
+    public void syncExternalMemberCreatesMissingGroups() {
+        addMember("g1", "m1", "USER", LDAP);
+
+        dao.syncExternalMember("m1", LDAP, asList("test1", "new-group"), true, IdentityZoneHolder.get().getId());
+        validateUserGroups("m1", "test1", "new-group");
+
+        dao.syncExternalMember("m1", LDAP, emptyList(), true, IdentityZoneHolder.get().getId());
+        validateUserGroups("m1");
+    }
+
 }
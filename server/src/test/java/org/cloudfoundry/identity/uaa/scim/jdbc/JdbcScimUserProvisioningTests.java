@@ -16,6 +16,9 @@ import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
 import org.cloudfoundry.identity.uaa.provider.JdbcIdentityProviderProvisioning;
+import org.cloudfoundry.identity.uaa.resources.CursorPage;
+import org.cloudfoundry.identity.uaa.resources.PageCursor;
+import org.cloudfoundry.identity.uaa.resources.SearchResultsFactory;
 import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.resources.jdbc.SimpleSearchQueryConverter;
@@ -51,6 +54,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -956,6 +960,58 @@ public class JdbcScimUserProvisioningTests extends JdbcTestBase {
         assertEquals(2 + existingUserCount, db.query("username pr", "emails.value", true, IdentityZoneHolder.get().getId()).size());
     }
 
+    @Test
+    public void canPageUsersWithCursor() {
+        String zoneId = IdentityZoneHolder.get().getId();
+        for (String sortBy : Arrays.asList("created", "userName", "id")) {
+            for (boolean ascending : Arrays.asList(true, false)) {
+                List<String> expected = new ArrayList<>();
+                for (ScimUser user : db.query("username pr", sortBy, ascending, zoneId)) {
+                    expected.add(user.getId());
+                }
+
+                List<String> paged = new ArrayList<>();
+                PageCursor cursor = null;
+                do {
+                    CursorPage<ScimUser> page = db.query("username pr", sortBy, ascending, cursor, 1, cursor == null, zoneId);
+                    assertEquals(cursor == null ? expected.size() : CursorPage.TOTAL_NOT_COUNTED, page.getTotalResults());
+                    for (ScimUser user : page.getResources()) {
+                        paged.add(user.getId());
+                    }
+                    cursor = page.getNext() == null ? null : PageCursor.decode(page.getNext().encode());
+                } while (cursor != null);
+
+                assertEquals(expected.size(), paged.size());
+                assertEquals(new HashSet<>(expected), new HashSet<>(paged));
+            }
+        }
+    }
+
+    @Test
+    public void canQueryUserAttributes() {
+        String zoneId = IdentityZoneHolder.get().getId();
+        List<String> attributes = new ArrayList<>(ScimAttributeColumns.USER_ATTRIBUTE_COLUMNS.keySet());
+        assertTrue(db.canQueryAttributes(attributes, "created"));
+        assertFalse(db.canQueryAttributes(Arrays.asList("id", "emails[*].value"), "created"));
+        assertFalse(db.canQueryAttributes(attributes, "1,created"));
+
+        List<ScimUser> users = db.query("username pr", "created", true, zoneId);
+        List<Map<String, Object>> expected = SearchResultsFactory.buildSearchResultFrom(
+            users, 1, users.size(), users.size(), attributes.toArray(new String[0]), Arrays.asList(ScimUser.SCHEMAS)
+        ).getResources();
+        assertEquals(expected, new ArrayList<>(db.queryAttributes(attributes, "username pr", "created", true, zoneId)));
+
+        CursorPage<Map<String, Object>> page = db.queryAttributes(Arrays.asList("id", "userName"), "username pr", "userName", true, null, 1, true, zoneId);
+        assertEquals(users.size(), page.getTotalResults());
+        assertEquals(new HashSet<>(Arrays.asList("id", "userName")), page.getResources().get(0).keySet());
+        assertNotNull(page.getNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotPageUsersWithCursorOnNullableSortField() {
+        db.query("username pr", "emails.value", true, null, 10, true, IdentityZoneHolder.get().getId());
+    }
+
     @Test
     public void canRetrieveUsersWithFilterBooleanAnd() {
         assertEquals(2, db.query("username pr and emails.value co \".com\"", IdentityZoneHolder.get().getId()).size());
@@ -0,0 +1,126 @@
+package org.cloudfoundry.identity.uaa.scim.jdbc;
+
+import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
+import org.cloudfoundry.identity.uaa.scim.ScimGroup;
+import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class JdbcTransitiveGroupResolverTests extends JdbcTestBase {
+
+    private static final String ADD_GROUP_SQL = "insert into groups (id, displayName, identity_zone_id) values (?,?,?)";
+    private static final String ADD_MEMBER_SQL = "insert into group_membership (group_id, member_id, member_type, authorities, identity_zone_id) values (?,?,?,?,?)";
+
+    private String zoneId;
+    private String userId;
+
+    @Before
+    public void createGroups() {
+        zoneId = IdentityZoneHolder.get().getId();
+        userId = UUID.randomUUID().toString();
+        addGroup("g1", "group.one");
+        addGroup("g2", "group.two");
+        addGroup("g3", "group.three");
+        addGroup("g4", "group.four");
+        addMember("g1", userId, "USER");
+        addMember("g2", "g1", "GROUP");
+        addMember("g3", "g2", "GROUP");
+        // cycle back to the first group
+        addMember("g1", "g3", "GROUP");
+    }
+
+    @Test
+    public void resolvesNestedGroupsLevelByLevel() {
+        JdbcTransitiveGroupResolver resolver = new JdbcTransitiveGroupResolver(jdbcTemplate, null);
+        assertEquals(new HashSet<>(Arrays.asList("group.one", "group.two", "group.three")), resolver.getGroupNames(userId, zoneId));
+    }
+
+    @Test
+    public void resolvesNestedGroupsForTheActivePlatform() {
+        JdbcTransitiveGroupResolver resolver = new JdbcTransitiveGroupResolver(jdbcTemplate, webApplicationContext.getBean("platform", String.class));
+        assertEquals(new HashSet<>(Arrays.asList("group.one", "group.two", "group.three")), resolver.getGroupNames(userId, zoneId));
+    }
+
+    @Test
+    public void resolvesNestedGroupsFromCachedEdges() {
+        JdbcTransitiveGroupResolver resolver = new JdbcTransitiveGroupResolver(jdbcTemplate, null);
+        resolver.setCacheNestingEdges(true);
+        assertEquals(new HashSet<>(Arrays.asList("group.one", "group.two", "group.three")), resolver.getGroupNames(userId, zoneId));
+
+        addMember("g4", "g3", "GROUP");
+        assertEquals(3, resolver.getGroupNames(userId, zoneId).size());
+
+        resolver.invalidate(zoneId);
+        assertEquals(new HashSet<>(Arrays.asList("group.one", "group.two", "group.three", "group.four")), resolver.getGroupNames(userId, zoneId));
+    }
+
+    @Test
+    public void renamingAGroupInvalidatesCachedEdges() {
+        JdbcTransitiveGroupResolver resolver = cachingResolver();
+        JdbcScimGroupProvisioning groupProvisioning = groupProvisioning(resolver);
+        resolver.getGroupNames(userId, zoneId);
+
+        ScimGroup group = groupProvisioning.retrieve("g2", zoneId);
+        group.setDisplayName("group.renamed");
+        groupProvisioning.update("g2", group, zoneId);
+
+        assertEquals(new HashSet<>(Arrays.asList("group.one", "group.renamed", "group.three")), resolver.getGroupNames(userId, zoneId));
+    }
+
+    @Test
+    public void deletingAGroupInvalidatesCachedEdges() {
+        JdbcTransitiveGroupResolver resolver = cachingResolver();
+        JdbcScimGroupProvisioning groupProvisioning = groupProvisioning(resolver);
+        resolver.getGroupNames(userId, zoneId);
+
+        groupProvisioning.delete("g2", 0, zoneId);
+
+        assertEquals(Collections.singleton("group.one"), resolver.getGroupNames(userId, zoneId));
+    }
+
+    @Test
+    public void cachedEdgesAreInvalidatedAfterCommit() {
+        JdbcTransitiveGroupResolver resolver = cachingResolver();
+        resolver.getGroupNames(userId, zoneId);
+
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> {
+            addMember("g4", "g3", "GROUP");
+            resolver.invalidate(zoneId);
+            // a login running before the commit must not reload and keep the old edges
+            assertEquals(3, resolver.getGroupNames(userId, zoneId).size());
+            return null;
+        });
+
+        assertEquals(new HashSet<>(Arrays.asList("group.one", "group.two", "group.three", "group.four")), resolver.getGroupNames(userId, zoneId));
+    }
+
+    private JdbcTransitiveGroupResolver cachingResolver() {
+        JdbcTransitiveGroupResolver resolver = new JdbcTransitiveGroupResolver(jdbcTemplate, null);
+        resolver.setCacheNestingEdges(true);
+        return resolver;
+    }
+
+    private JdbcScimGroupProvisioning groupProvisioning(JdbcTransitiveGroupResolver resolver) {
+        JdbcScimGroupProvisioning groupProvisioning = new JdbcScimGroupProvisioning(jdbcTemplate, new JdbcPagingListFactory(jdbcTemplate, limitSqlAdapter));
+        groupProvisioning.setGroupResolver(resolver);
+        return groupProvisioning;
+    }
+
+    private void addGroup(String id, String displayName) {
+        jdbcTemplate.update(ADD_GROUP_SQL, id, displayName, zoneId);
+    }
+
+    private void addMember(String groupId, String memberId, String type) {
+        jdbcTemplate.update(ADD_MEMBER_SQL, groupId, memberId, type, "READ", zoneId);
+    }
+}
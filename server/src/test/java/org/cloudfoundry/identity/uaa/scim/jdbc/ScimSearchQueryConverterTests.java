@@ -18,11 +18,13 @@ import org.cloudfoundry.identity.uaa.resources.jdbc.SimpleSearchQueryConverter;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class ScimSearchQueryConverterTests {
 
@@ -142,6 +144,42 @@ public class ScimSearchQueryConverterTests {
         validate(filterProcessor.convert("username pr", "emails.value", true), "username IS NOT NULL ORDER BY email ASC", 0);
     }
 
+    @Test
+    public void filtersWithTheSameShapeShareTheirSql() {
+        ProcessedFilter first = filterProcessor.convert("username eq \"joe\" and meta.created gt \"1970-01-01T00:00:00.000Z\" and active eq true", "username", true);
+        ProcessedFilter second = filterProcessor.convert("username eq \"Marissa\" and meta.created gt \"2018-01-01T00:00:00.000Z\" and active eq false", "username", true);
+        assertEquals(1, filterProcessor.getCachedFilterCount());
+        assertEquals(first.getSql(), second.getSql());
+        assertEquals(first.getParamPrefix(), second.getParamPrefix());
+        assertEquals("Marissa", second.getParams().get(second.getParamPrefix() + "0"));
+        assertEquals(Date.class, second.getParams().get(second.getParamPrefix() + "1").getClass());
+        assertEquals(Boolean.FALSE, second.getParams().get(second.getParamPrefix() + "2"));
+
+        ProcessedFilter like = filterProcessor.convert("emails.value co \"test\" or password eq \"secret\"", null, false);
+        assertEquals("%test%", like.getParams().get(like.getParamPrefix() + "0"));
+        assertEquals("", like.getParams().get(like.getParamPrefix() + "1"));
+        like = filterProcessor.convert("emails.value co \"other\" or password eq \"other\"", null, false);
+        assertEquals("%other%", like.getParams().get(like.getParamPrefix() + "0"));
+        assertEquals("", like.getParams().get(like.getParamPrefix() + "1"));
+
+        ProcessedFilter dated = filterProcessor.convert("username eq \"2018-01-01T00:00:00.000Z\" and meta.created gt \"2018-01-01T00:00:00.000Z\" and active eq true", "username", true);
+        assertTrue(dated.getSql().contains("username = :" + dated.getParamPrefix() + "0"));
+        assertEquals(3, filterProcessor.getCachedFilterCount());
+    }
+
+    @Test
+    public void legacyFiltersAreNotCached() {
+        validate(filterProcessor.convert("username eq 'joe'", null, false), "LOWER(username) = LOWER(:__value_0)", 1);
+        assertEquals(0, filterProcessor.getCachedFilterCount());
+    }
+
+    @Test
+    public void canConvertWithoutCache() {
+        filterProcessor.setFilterCacheSize(0);
+        validate(filterProcessor.convert("username eq \"joe\" or emails.value co \".com\"", null, false),"(LOWER(username) = LOWER(:__value_0) OR LOWER(email) LIKE LOWER(:__value_1))", 2);
+        assertEquals(0, filterProcessor.getCachedFilterCount());
+    }
+
     private void validate(ProcessedFilter filter, String expectedSql, int expectedParamCount, Class... types) {
         assertNotNull(filter);
         expectedSql = expectedSql.replaceAll("__value_", filter.getParamPrefix());
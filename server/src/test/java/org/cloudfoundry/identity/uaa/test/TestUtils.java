@@ -49,6 +49,7 @@ public class TestUtils {
         jdbcTemplate.update("DELETE FROM authz_approvals");
         jdbcTemplate.update("DELETE FROM expiring_code_store");
         jdbcTemplate.update("DELETE FROM external_group_mapping");
+        jdbcTemplate.update("DELETE FROM failed_login_counter");
         jdbcTemplate.update("DELETE FROM group_membership");
         jdbcTemplate.update("DELETE FROM groups");
         jdbcTemplate.update("DELETE FROM identity_provider");
@@ -355,6 +355,57 @@ public class JdbcUaaUserDatabaseTests extends JdbcTestBase {
         assertEquals((long) joe.getLastLogonTime(), 2000L);
     }
 
+    @Test
+    public void testWriteBehindLastLogonTime() {
+        LastLogonTimeUpdater updater = new LastLogonTimeUpdater(template, timeService);
+        updater.setFlushInterval(60000);
+        db.setLastLogonTimeUpdater(updater);
+
+        when(timeService.getCurrentTimeMillis()).thenReturn(1000L);
+        db.updateLastLogonTime(JOE_ID);
+        db.updateLastLogonTime(MABEL_ID);
+        assertNull(db.retrieveUserById(JOE_ID).getLastLogonTime());
+        assertEquals(2, updater.getPendingCount());
+
+        when(timeService.getCurrentTimeMillis()).thenReturn(2000L);
+        db.updateLastLogonTime(JOE_ID);
+        when(timeService.getCurrentTimeMillis()).thenReturn(3000L);
+        db.updateLastLogonTime(JOE_ID);
+        assertEquals(2, updater.flush());
+        assertEquals(0, updater.getPendingCount());
+        assertEquals(2, updater.getLastBatchSize());
+        assertEquals(2000L, updater.getLastFlushLag());
+
+        UaaUser joe = db.retrieveUserById(JOE_ID);
+        assertEquals(2000L, (long) joe.getPreviousLogonTime());
+        assertEquals(3000L, (long) joe.getLastLogonTime());
+        UaaUser mabel = db.retrieveUserById(MABEL_ID);
+        assertNull(mabel.getPreviousLogonTime());
+        assertEquals(1000L, (long) mabel.getLastLogonTime());
+
+        when(timeService.getCurrentTimeMillis()).thenReturn(4000L);
+        db.updateLastLogonTime(JOE_ID);
+        updater.destroy();
+        joe = db.retrieveUserById(JOE_ID);
+        assertEquals(3000L, (long) joe.getPreviousLogonTime());
+        assertEquals(4000L, (long) joe.getLastLogonTime());
+    }
+
+    @Test
+    public void logonsAfterDestroyAreWrittenImmediately() {
+        LastLogonTimeUpdater updater = new LastLogonTimeUpdater(template, timeService);
+        updater.setFlushInterval(60000);
+        updater.setMaxBatchSize(1);
+        updater.afterPropertiesSet();
+        db.setLastLogonTimeUpdater(updater);
+        updater.destroy();
+
+        when(timeService.getCurrentTimeMillis()).thenReturn(5000L);
+        db.updateLastLogonTime(JOE_ID);
+        assertEquals(0, updater.getPendingCount());
+        assertEquals(5000L, (long) db.retrieveUserById(JOE_ID).getLastLogonTime());
+    }
+
     @Test(expected = UsernameNotFoundException.class)
     public void getValidUserInDefaultZoneFromOtherZoneFails() {
         IdentityZoneHolder.set(otherIdentityZone);
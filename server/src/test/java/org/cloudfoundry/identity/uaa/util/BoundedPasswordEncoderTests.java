@@ -0,0 +1,112 @@
+package org.cloudfoundry.identity.uaa.util;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BoundedPasswordEncoderTests {
+
+    private BoundedPasswordEncoder encoder;
+
+    @After
+    public void tearDown() {
+        if (encoder != null) {
+            encoder.destroy();
+        }
+    }
+
+    @Test
+    public void delegatesToEncoder() {
+        encoder = new BoundedPasswordEncoder(new PlainTextEncoder(null), 2, 10);
+        assertEquals("secret", encoder.encode("secret"));
+        assertTrue(encoder.matches("secret", "secret"));
+        assertFalse(encoder.matches("secret", "other"));
+        assertEquals(3, encoder.getExecutedCount());
+        assertEquals(0, encoder.getRejectedCount());
+    }
+
+    @Test
+    public void zeroPoolSizeRunsOnCallingThread() {
+        encoder = new BoundedPasswordEncoder(new PlainTextEncoder(null), 0, 10);
+        assertTrue(encoder.matches("secret", "secret"));
+        assertEquals(0, encoder.getExecutedCount());
+    }
+
+    @Test
+    public void fullQueueIsRejected() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        encoder = new BoundedPasswordEncoder(new PlainTextEncoder(() -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+        }), 1, 1);
+
+        Thread running = new Thread(() -> encoder.matches("a", "a"));
+        running.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        Thread queued = new Thread(() -> encoder.matches("b", "b"));
+        queued.start();
+        while (encoder.getQueueDepth() == 0) {
+            Thread.sleep(10);
+        }
+
+        try {
+            encoder.matches("c", "c");
+            fail("expected the full queue to reject the call");
+        } catch (PasswordHashingUnavailableException e) {
+            assertEquals(503, e.getHttpErrorCode());
+            assertEquals("temporarily_unavailable", e.getOAuth2ErrorCode());
+        } finally {
+            release.countDown();
+            running.join();
+            queued.join();
+        }
+        assertEquals(1, encoder.getRejectedCount());
+        assertEquals(2, encoder.getExecutedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encoderExceptionsArePropagated() {
+        encoder = new BoundedPasswordEncoder(new PlainTextEncoder(() -> {
+            throw new IllegalArgumentException();
+        }), 1, 1);
+        encoder.matches("a", "a");
+    }
+
+    private interface Blocker {
+        void block() throws InterruptedException;
+    }
+
+    private static class PlainTextEncoder implements PasswordEncoder {
+        private final Blocker blocker;
+
+        PlainTextEncoder(Blocker blocker) {
+            this.blocker = blocker;
+        }
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return rawPassword.toString();
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            if (blocker != null) {
+                try {
+                    blocker.block();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return rawPassword.toString().equals(encodedPassword);
+        }
+    }
+}
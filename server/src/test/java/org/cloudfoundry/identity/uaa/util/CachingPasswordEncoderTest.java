@@ -154,8 +154,9 @@ public class CachingPasswordEncoderTest  {
         String password = new RandomValueStringGenerator().generate();
         String encoded = cachingPasswordEncoder.encode(password);
         assertTrue(cachingPasswordEncoder.matches(password, encoded));
-        //overflow happened
-        assertEquals(1, cachingPasswordEncoder.getNumberOfKeys());
+        //overflow happened, a single key was evicted
+        assertEquals(maxkeys, cachingPasswordEncoder.getNumberOfKeys());
+        assertEquals(1, cachingPasswordEncoder.getEvictionCount());
 
 
         for (int j=1; j<cachingPasswordEncoder.getMaxEncodedPasswords(); j++) {
@@ -173,6 +174,27 @@ public class CachingPasswordEncoderTest  {
     }
 
 
+    @Test
+    public void leastRecentlyUsedKeyIsEvicted() {
+        cachingPasswordEncoder.setMaxKeys(2);
+        String first = new RandomValueStringGenerator().generate();
+        String firstEncoded = cachingPasswordEncoder.encode(first);
+        String second = new RandomValueStringGenerator().generate();
+        String secondEncoded = cachingPasswordEncoder.encode(second);
+        assertTrue(cachingPasswordEncoder.matches(first, firstEncoded));
+        assertTrue(cachingPasswordEncoder.matches(second, secondEncoded));
+        assertTrue(cachingPasswordEncoder.matches(first, firstEncoded));
+
+        String third = new RandomValueStringGenerator().generate();
+        assertTrue(cachingPasswordEncoder.matches(third, cachingPasswordEncoder.encode(third)));
+
+        ConcurrentMap<CharSequence, Set<String>> cache = cachingPasswordEncoder.asMap();
+        assertTrue(cache.containsKey(cachingPasswordEncoder.cacheEncode(first)));
+        assertFalse(cache.containsKey(cachingPasswordEncoder.cacheEncode(second)));
+        assertEquals(1, cachingPasswordEncoder.getHitCount());
+        assertEquals(3, cachingPasswordEncoder.getMissCount());
+    }
+
     @Test
     public void testDisabledMatchesSpeedTest() throws Exception {
         int iterations = 15;
@@ -0,0 +1,142 @@
+package org.cloudfoundry.identity.uaa.zone;
+
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.client.event.ClientUpdateEvent;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingClientDetailsServiceTests {
+
+    private ClientServicesExtension delegate;
+    private CachingClientDetailsService clientDetailsService;
+    private BaseClientDetails client;
+
+    @Before
+    public void setUp() {
+        client = new BaseClientDetails("client", "", "openid", "authorization_code", "uaa.none");
+        client.addAdditionalInformation("lastModified", new Timestamp(1000L));
+        delegate = mock(ClientServicesExtension.class);
+        when(delegate.loadClientByClientId("client", "zone")).thenReturn(client);
+        clientDetailsService = new CachingClientDetailsService(delegate, 60, 100);
+    }
+
+    @Test
+    public void clientsAreCachedPerZone() {
+        clientDetailsService.loadClientByClientId("client", "zone");
+        clientDetailsService.loadClientByClientId("client", "zone");
+        clientDetailsService.loadClientByClientId("client", "other-zone");
+
+        verify(delegate, times(1)).loadClientByClientId("client", "zone");
+        verify(delegate, times(1)).loadClientByClientId("client", "other-zone");
+    }
+
+    @Test
+    public void callersReceiveACopy() {
+        ClientDetails loaded = clientDetailsService.loadClientByClientId("client", "zone");
+        assertNotSame(client, loaded);
+        ((BaseClientDetails) loaded).setScope(Collections.singleton("changed"));
+
+        assertEquals(Collections.singleton("openid"), clientDetailsService.loadClientByClientId("client", "zone").getScope());
+        assertEquals(new Timestamp(1000L), clientDetailsService.loadClientByClientId("client", "zone").getAdditionalInformation().get("lastModified"));
+    }
+
+    @Test
+    public void writesInvalidateTheClient() {
+        clientDetailsService.loadClientByClientId("client", "zone");
+        clientDetailsService.updateClientDetails(client, "zone");
+        assertEquals(0, clientDetailsService.size());
+
+        clientDetailsService.loadClientByClientId("client", "zone");
+        clientDetailsService.updateClientSecret("client", "secret", "zone");
+        assertEquals(0, clientDetailsService.size());
+
+        clientDetailsService.loadClientByClientId("client", "zone");
+        clientDetailsService.addClientSecret("client", "secret", "zone");
+        assertEquals(0, clientDetailsService.size());
+
+        clientDetailsService.loadClientByClientId("client", "zone");
+        clientDetailsService.removeClientDetails("client", "zone");
+        assertEquals(0, clientDetailsService.size());
+    }
+
+    @Test
+    public void eventsInvalidateTheClient() {
+        IdentityZone zone = MultitenancyFixture.identityZone("zone", "zone");
+        IdentityZoneHolder.set(zone);
+        try {
+            clientDetailsService.loadClientByClientId("client", "zone");
+            clientDetailsService.onApplicationEvent(new ClientUpdateEvent(client, mock(Authentication.class)));
+            assertEquals(0, clientDetailsService.size());
+
+            clientDetailsService.loadClientByClientId("client", "zone");
+            clientDetailsService.onApplicationEvent(new EntityDeletedEvent<>(zone, mock(Authentication.class)));
+            assertEquals(0, clientDetailsService.size());
+        } finally {
+            IdentityZoneHolder.clear();
+        }
+    }
+
+    @Test
+    public void eventsInvalidateTheClientInTheZoneOfTheEvent() {
+        IdentityZoneHolder.set(MultitenancyFixture.identityZone("zone", "zone"));
+        ClientUpdateEvent update = new ClientUpdateEvent(client, mock(Authentication.class));
+        EntityDeletedEvent<ClientDetails> deletion = new EntityDeletedEvent<>(client, mock(Authentication.class));
+        IdentityZoneHolder.set(MultitenancyFixture.identityZone("other-zone", "other-zone"));
+        try {
+            clientDetailsService.loadClientByClientId("client", "zone");
+            clientDetailsService.onApplicationEvent(update);
+            assertEquals(0, clientDetailsService.size());
+
+            clientDetailsService.loadClientByClientId("client", "zone");
+            clientDetailsService.onApplicationEvent(deletion);
+            assertEquals(0, clientDetailsService.size());
+        } finally {
+            IdentityZoneHolder.clear();
+        }
+    }
+
+    @Test
+    public void staleClientsAreReloaded() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        TimeService timeService = mock(TimeService.class);
+        when(timeService.getCurrentTimeMillis()).thenReturn(10000L, 20000L, 30000L, 30000L);
+        when(jdbcTemplate.queryForList(anyString(), eq(Timestamp.class), any(), any()))
+            .thenReturn(Collections.singletonList(new Timestamp(1000L)), Collections.singletonList(new Timestamp(2000L)));
+        clientDetailsService.setJdbcTemplate(jdbcTemplate);
+        clientDetailsService.setTimeService(timeService);
+        clientDetailsService.setStalenessCheckIntervalSeconds(5);
+
+        clientDetailsService.loadClientByClientId("client", "zone");
+        clientDetailsService.loadClientByClientId("client", "zone");
+        verify(delegate, times(1)).loadClientByClientId("client", "zone");
+
+        clientDetailsService.loadClientByClientId("client", "zone");
+        verify(delegate, times(2)).loadClientByClientId("client", "zone");
+    }
+
+    @Test
+    public void zeroTtlDisablesCaching() {
+        clientDetailsService = new CachingClientDetailsService(delegate, 0, 100);
+        clientDetailsService.loadClientByClientId("client", "zone");
+        clientDetailsService.loadClientByClientId("client", "zone");
+        verify(delegate, times(2)).loadClientByClientId("client", "zone");
+    }
+}
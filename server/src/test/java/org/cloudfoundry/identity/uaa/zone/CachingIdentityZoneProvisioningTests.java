@@ -0,0 +1,82 @@
+package org.cloudfoundry.identity.uaa.zone;
+
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.util.TimeService;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityZoneModifiedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.security.core.Authentication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachingIdentityZoneProvisioningTests {
+
+    private IdentityZoneProvisioning delegate;
+    private CachingIdentityZoneProvisioning provisioning;
+    private IdentityZone zone;
+
+    @Before
+    public void setUp() {
+        zone = MultitenancyFixture.identityZone("zone-id", "Sub");
+        delegate = mock(IdentityZoneProvisioning.class);
+        when(delegate.retrieveBySubdomain(anyString())).thenReturn(zone);
+        provisioning = new CachingIdentityZoneProvisioning(delegate, 60, 100);
+    }
+
+    @Test
+    public void subdomainLookupsAreCached() {
+        assertSame(zone, provisioning.retrieveBySubdomain("sub"));
+        assertSame(zone, provisioning.retrieveBySubdomain("SUB"));
+        verify(delegate, times(1)).retrieveBySubdomain(anyString());
+    }
+
+    @Test
+    public void zeroTtlDisablesCaching() {
+        provisioning = new CachingIdentityZoneProvisioning(delegate, 0, 100);
+        provisioning.retrieveBySubdomain("sub");
+        provisioning.retrieveBySubdomain("sub");
+        verify(delegate, times(2)).retrieveBySubdomain("sub");
+    }
+
+    @Test
+    public void zoneModificationInvalidatesEntries() {
+        provisioning.retrieveBySubdomain("sub");
+        IdentityZone renamed = MultitenancyFixture.identityZone("zone-id", "other");
+        provisioning.onApplicationEvent(IdentityZoneModifiedEvent.identityZoneModified(renamed));
+        assertEquals(0, provisioning.size());
+    }
+
+    @Test
+    public void zoneDeletionInvalidatesEntries() {
+        provisioning.retrieveBySubdomain("sub");
+        provisioning.onApplicationEvent(new EntityDeletedEvent<>(zone, mock(Authentication.class)));
+        assertEquals(0, provisioning.size());
+    }
+
+    @Test
+    public void pollingClearsCacheWhenZonesChange() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        TimeService timeService = mock(TimeService.class);
+        when(jdbcTemplate.queryForObject(anyString(), any(RowMapper.class))).thenReturn("1:1000", "1:1000", "1:2000");
+        when(timeService.getCurrentTimeMillis()).thenReturn(10000L, 20000L, 30000L);
+        provisioning.setJdbcTemplate(jdbcTemplate);
+        provisioning.setTimeService(timeService);
+        provisioning.setPollIntervalSeconds(5);
+
+        provisioning.retrieveBySubdomain("sub");
+        provisioning.retrieveBySubdomain("sub");
+        verify(delegate, times(1)).retrieveBySubdomain("sub");
+
+        provisioning.retrieveBySubdomain("sub");
+        verify(delegate, times(2)).retrieveBySubdomain("sub");
+    }
+}
@@ -9,6 +9,7 @@ import org.cloudfoundry.identity.uaa.oauth.client.ClientConstants;
 import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
 import org.cloudfoundry.identity.uaa.test.UaaTestAccounts;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.util.TimeService;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Rule;
@@ -604,6 +605,20 @@ public class MultitenantJdbcClientDetailsServiceTests extends JdbcTestBase {
         service.updateClientDetails(clientDetails);
     }
 
+    @Test
+    public void testUpdateClientSecretSetsLastModifiedFromTheTimeService() {
+        TimeService timeService = mock(TimeService.class);
+        when(timeService.getCurrentTimeMillis()).thenReturn(2000L);
+        service.setTimeService(timeService);
+
+        BaseClientDetails clientDetails = new BaseClientDetails();
+        clientDetails.setClientId("clientWithRotatedSecret");
+        service.addClientDetails(clientDetails);
+        service.updateClientSecret(clientDetails.getClientId(), "newsecret");
+
+        assertEquals(new Timestamp(2000L), service.loadClientByClientId(clientDetails.getClientId()).getAdditionalInformation().get("lastModified"));
+    }
+
     @Test
     public void testRemoveClient() {
 
@@ -22,6 +22,7 @@ import java.lang.management.OperatingSystemMXBean;
 import java.lang.management.ThreadMXBean;
 import java.lang.reflect.Method;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -29,12 +30,16 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 
+import org.cloudfoundry.identity.uaa.metrics.LatencySummary;
 import org.cloudfoundry.identity.uaa.metrics.MetricsQueue;
+import org.cloudfoundry.identity.uaa.metrics.MetricsUtil;
+import org.cloudfoundry.identity.uaa.metrics.RequestLatencies;
 import org.cloudfoundry.identity.uaa.metrics.RequestMetricSummary;
 import org.cloudfoundry.identity.uaa.metrics.StatusCodeGroup;
 import org.cloudfoundry.identity.uaa.metrics.UaaMetrics;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.timgroup.statsd.StatsDClient;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -117,6 +122,33 @@ public class UaaMetricsEmitter {
             statsDClient.gauge(String.format(prefix + "completed.count", prefixName), metricTotals.getCount());
             statsDClient.gauge(String.format(prefix + "completed.time", prefixName), (long) metricTotals.getAverageTime());
         }
+        Map<String,String> perUrlLatencies = ofNullable(metrics.getLatencies()).orElse(Collections.emptyMap());
+        for (Map.Entry<String,String> entry : perUrlLatencies.entrySet()) {
+            if (MetricsUtil.GLOBAL_GROUP.equals(entry.getKey())) {
+                continue;
+            }
+            String prefixName = entry.getKey().startsWith("/") ? entry.getKey().substring(1) : entry.getKey();
+            emitLatencyPercentiles(String.format(prefix, prefixName), String.format("database.%s.", prefixName), entry.getValue());
+        }
+    }
+
+    public void emitLatencyPercentiles(String requestPrefix, String databasePrefix, String json) {
+        Map<String, LatencySummary> latencies = JsonUtils.readValue(json, new TypeReference<Map<String, LatencySummary>>() {});
+        if (latencies == null) {
+            return;
+        }
+        emitPercentiles(requestPrefix + "completed.", latencies.get(RequestLatencies.REQUEST_TIME));
+        emitPercentiles(databasePrefix + "completed.", latencies.get(RequestLatencies.DATABASE_TIME));
+    }
+
+    private void emitPercentiles(String prefix, LatencySummary summary) {
+        if (summary == null) {
+            return;
+        }
+        statsDClient.gauge(prefix + "p50", summary.getP50());
+        statsDClient.gauge(prefix + "p95", summary.getP95());
+        statsDClient.gauge(prefix + "p99", summary.getP99());
+        statsDClient.gauge(prefix + "max", summary.getMax());
     }
 
     public void emitGlobalServerStats(UaaMetrics metrics) {
@@ -148,6 +180,11 @@ public class UaaMetricsEmitter {
         statsDClient.count(prefix + "completed.count", getMetricDelta(prefix + "completed.count",totals.getDatabaseQueryCount()));
         statsDClient.count(prefix + "unhealthy.count", getMetricDelta(prefix + "unhealthy.count", totals.getDatabaseIntolerableQueryCount()));
         statsDClient.gauge(prefix + "unhealthy.time", (long) totals.getAverageDatabaseIntolerableQueryTime());
+        //latency percentiles
+        Map<String,String> latencies = ofNullable(metrics.getLatencies()).orElse(Collections.emptyMap());
+        if (latencies.containsKey(MetricsUtil.GLOBAL_GROUP)) {
+            emitLatencyPercentiles("requests.global.", "database.global.", latencies.get(MetricsUtil.GLOBAL_GROUP));
+        }
     }
 
     @Scheduled(fixedRate = 5000, initialDelay = 2000)
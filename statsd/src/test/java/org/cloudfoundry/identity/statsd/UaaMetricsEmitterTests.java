@@ -18,6 +18,7 @@ import javax.management.NotificationBroadcasterSupport;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.cloudfoundry.identity.uaa.metrics.MetricsUtil;
 import org.cloudfoundry.identity.uaa.metrics.UaaMetrics;
 
 import com.timgroup.statsd.ConvenienceMethodProvidingStatsDClient;
@@ -191,6 +192,27 @@ public class UaaMetricsEmitterTests {
         Mockito.verify(statsDClient).gauge(eq("requests.static-content.completed.time"), geq(23l));
     }
 
+    @Test
+    public void latency_percentiles_emitted() throws Exception {
+        Map<String,String> latencies = new HashMap<>();
+        latencies.put(MetricsUtil.GLOBAL_GROUP, "{\"requestTime\":{\"count\":10,\"p50\":12,\"p95\":95,\"p99\":350,\"max\":400},\"databaseTime\":{\"count\":8,\"p50\":1,\"p95\":4,\"p99\":9,\"max\":11}}");
+        latencies.put("/oauth-token", "{\"requestTime\":{\"count\":4,\"p50\":40,\"p95\":80,\"p99\":90,\"max\":91},\"databaseTime\":{\"count\":0,\"p50\":0,\"p95\":0,\"p99\":0,\"max\":0}}");
+        when(uaaMetrics1.getLatencies()).thenReturn(latencies);
+        Mockito.when(metricsUtils.getUaaMetrics(any())).thenReturn(uaaMetrics1);
+
+        uaaMetricsEmitter.emitGlobalRequestMetrics();
+        Mockito.verify(statsDClient).gauge("requests.global.completed.p50", 12l);
+        Mockito.verify(statsDClient).gauge("requests.global.completed.p95", 95l);
+        Mockito.verify(statsDClient).gauge("requests.global.completed.p99", 350l);
+        Mockito.verify(statsDClient).gauge("requests.global.completed.max", 400l);
+        Mockito.verify(statsDClient).gauge("database.global.completed.p99", 9l);
+
+        uaaMetricsEmitter.emitUrlGroupRequestMetrics();
+        Mockito.verify(statsDClient).gauge("requests.oauth-token.completed.p95", 80l);
+        Mockito.verify(statsDClient).gauge("database.oauth-token.completed.p99", 0l);
+        Mockito.verify(statsDClient, Mockito.never()).gauge(eq("requests.uaa.global.metrics.completed.p99"), Mockito.anyLong());
+    }
+
     @Test
     public void testNotifications() {
         uaaMetricsEmitter.enableNotification();
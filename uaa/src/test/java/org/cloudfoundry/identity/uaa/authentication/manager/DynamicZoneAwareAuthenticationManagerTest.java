@@ -254,6 +254,22 @@ public class DynamicZoneAwareAuthenticationManagerTest {
         assertEquals(manager.getLdapAuthenticationManager(ZONE, ldapActive), chainedAuthenticationManager.getDelegates()[0].getAuthenticationManager());
     }
 
+    @Test
+    public void testChainIsReusedUntilProviderVersionChanges() {
+        IdentityZoneHolder.set(ZONE);
+        when(providerProvisioning.retrieveByOrigin(OriginKeys.UAA, ZONE.getId())).thenReturn(uaaActive);
+        when(providerProvisioning.retrieveByOrigin(OriginKeys.LDAP, ZONE.getId())).thenReturn(ldapActive);
+        when(ldapActive.getVersion()).thenReturn(1);
+
+        DynamicZoneAwareAuthenticationManager manager = getDynamicZoneAwareAuthenticationManager(true);
+        ChainedAuthenticationManager chainedAuthenticationManager = manager.getChainedAuthenticationManager(ZONE, null);
+        assertSame(chainedAuthenticationManager, manager.getChainedAuthenticationManager(ZONE, null));
+        assertEquals(2, chainedAuthenticationManager.getDelegates().length);
+
+        when(ldapActive.getVersion()).thenReturn(2);
+        assertNotSame(chainedAuthenticationManager, manager.getChainedAuthenticationManager(ZONE, null));
+    }
+
     protected DynamicZoneAwareAuthenticationManager getDynamicZoneAwareAuthenticationManager() {
         return getDynamicZoneAwareAuthenticationManager(false);
     }
@@ -14,8 +14,10 @@ package org.cloudfoundry.identity.uaa.login;
 
 import org.cloudfoundry.identity.uaa.impl.config.IdentityZoneConfigurationBootstrap;
 import org.cloudfoundry.identity.uaa.impl.config.YamlServletProfileInitializer;
+import org.cloudfoundry.identity.uaa.provider.CachingIdentityProviderProvisioning;
 import org.cloudfoundry.identity.uaa.provider.SamlIdentityProviderDefinition;
 import org.cloudfoundry.identity.uaa.provider.saml.BootstrapSamlIdentityProviderData;
+import org.cloudfoundry.identity.uaa.provider.saml.SamlIdentityProviderConfigurator;
 import org.cloudfoundry.identity.uaa.scim.ScimGroup;
 import org.cloudfoundry.identity.uaa.scim.ScimGroupProvisioning;
 import org.cloudfoundry.identity.uaa.test.TestUtils;
@@ -108,6 +110,14 @@ public class BootstrapTests {
         );
     }
 
+    @Test
+    public void saml_configurator_uses_the_cached_provider_provisioning() {
+        context = getServletContext("default", "login.yml", "uaa.yml", "file:./src/main/webapp/WEB-INF/spring-servlet.xml");
+        SamlIdentityProviderConfigurator configurator = context.getBean("metaDataProviders", SamlIdentityProviderConfigurator.class);
+        assertSame(context.getBean("loginIdentityProviderProvisioning"), configurator.getIdentityProviderProvisioning());
+        assertTrue(configurator.getIdentityProviderProvisioning() instanceof CachingIdentityProviderProvisioning);
+    }
+
     @Test
     public void legacy_saml_metadata_as_xml() throws Exception {
         String metadataString = new Scanner(new File("./src/main/resources/sample-okta-localhost.xml")).useDelimiter("\\Z").next();